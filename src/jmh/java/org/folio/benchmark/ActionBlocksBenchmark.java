@@ -0,0 +1,74 @@
+package org.folio.benchmark;
+
+import static java.util.stream.Collectors.toMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.folio.domain.ActionBlocks;
+import org.folio.domain.UserSummaryStatistics;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.service.OverduePeriodCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluates a limit of every condition against summaries of growing size, once against
+ * statistics aggregated beforehand and once against the summary itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionBlocksBenchmark {
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  private int numberOfLoans;
+
+  private UserSummary userSummary;
+  private Map<String, Integer> overdueMinutes;
+  private List<PatronBlockLimit> limits;
+
+  @Setup
+  public void setUp() {
+    userSummary = SyntheticUserSummaries.buildUserSummaryWithLoans(numberOfLoans);
+    overdueMinutes = userSummary.getOpenLoans().stream()
+      .collect(toMap(OpenLoan::getLoanId, OverduePeriodCalculator::calculateOverdueMinutes));
+    limits = SyntheticUserSummaries.buildLimitForEveryCondition();
+  }
+
+  @Benchmark
+  public UserSummaryStatistics aggregateStatistics() {
+    return UserSummaryStatistics.of(userSummary, overdueMinutes);
+  }
+
+  @Benchmark
+  public void byLimitWithStatistics(Blackhole blackhole) {
+    UserSummaryStatistics statistics = UserSummaryStatistics.of(userSummary, overdueMinutes);
+    for (PatronBlockLimit limit : limits) {
+      blackhole.consume(ActionBlocks.byLimit(statistics, limit));
+    }
+  }
+
+  @Benchmark
+  public void byLimitWithUserSummary(Blackhole blackhole) {
+    for (PatronBlockLimit limit : limits) {
+      blackhole.consume(ActionBlocks.byLimit(userSummary, limit, overdueMinutes));
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package org.folio.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.folio.domain.UserSummaryCountersCalculator;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+import org.folio.service.OverduePeriodCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Overdue calculations over all loans of a summary, as done by blocks calculation and by every
+ * write of a summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OverduePeriodCalculatorBenchmark {
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  private int numberOfLoans;
+
+  private UserSummary userSummary;
+
+  @Setup
+  public void setUp() {
+    userSummary = SyntheticUserSummaries.buildUserSummaryWithLoans(numberOfLoans);
+  }
+
+  @Benchmark
+  public void calculateOverdueMinutes(Blackhole blackhole) {
+    for (OpenLoan openLoan : userSummary.getOpenLoans()) {
+      blackhole.consume(OverduePeriodCalculator.calculateOverdueMinutes(openLoan));
+    }
+  }
+
+  @Benchmark
+  public void getNextOverdueTransitionTime(Blackhole blackhole) {
+    long currentTime = System.currentTimeMillis();
+    for (OpenLoan openLoan : userSummary.getOpenLoans()) {
+      blackhole.consume(OverduePeriodCalculator.getNextOverdueTransitionTime(openLoan,
+        currentTime));
+    }
+  }
+
+  @Benchmark
+  public UserSummaryCounters calculateCounters() {
+    return UserSummaryCountersCalculator.calculate(userSummary);
+  }
+}
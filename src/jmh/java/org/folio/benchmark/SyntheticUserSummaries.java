@@ -0,0 +1,140 @@
+package org.folio.benchmark;
+
+import static org.folio.rest.utils.EntityBuilder.buildFeeFine;
+import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemAgedToLostEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemClaimedReturnedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemDeclaredLostEvent;
+import static org.folio.rest.utils.EntityBuilder.buildLoan;
+import static org.folio.rest.utils.EntityBuilder.buildLoanClosedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildLoanDueDateChangedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildUserSummary;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.folio.domain.Condition;
+import org.folio.domain.Event;
+import org.folio.domain.EventType;
+import org.folio.domain.FeeFineType;
+import org.folio.domain.PatronBlockConfiguration;
+import org.folio.rest.jaxrs.model.GracePeriod;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.PatronBlockCondition;
+import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.folio.rest.jaxrs.model.UserSummary;
+
+/**
+ * Builds user summaries of a given size for benchmarks. Summaries are generated from a fixed
+ * seed, so every run measures the same data. Loans are a mix of loans due in the future, overdue
+ * loans, overdue recalls, lost items and items claimed returned, every loan has a fee/fine.
+ */
+public final class SyntheticUserSummaries {
+  public static final String PATRON_GROUP_ID = "3684a786-6671-4268-8ed0-9db82ebca60b";
+  private static final long SEED = 42L;
+  private static final long NOW = System.currentTimeMillis();
+
+  private SyntheticUserSummaries() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  public static UserSummary buildUserSummaryWithLoans(int numberOfLoans) {
+    Random random = new Random(SEED);
+    List<OpenLoan> openLoans = new ArrayList<>(numberOfLoans);
+    List<OpenFeeFine> feesFines = new ArrayList<>(numberOfLoans);
+
+    for (int i = 0; i < numberOfLoans; i++) {
+      boolean overdue = i % 3 == 0;
+      long dueDateOffset = TimeUnit.DAYS.toMillis(1 + random.nextInt(30));
+      OpenLoan openLoan = buildLoan(i % 10 == 2 || i % 10 == 3, i % 10 == 1,
+        new Date(overdue ? NOW - dueDateOffset : NOW + dueDateOffset))
+        .withItemClaimedReturned(i % 10 == 0);
+      if (i % 5 == 4) {
+        openLoan.setGracePeriod(new GracePeriod()
+          .withDuration(1 + random.nextInt(3))
+          .withIntervalId(GracePeriod.IntervalId.DAYS));
+      }
+      openLoans.add(openLoan);
+      feesFines.add(buildFeeFine(openLoan.getLoanId(), UUID.randomUUID().toString(),
+        openLoan.getItemLost() ? FeeFineType.LOST_ITEM_FEE.getId() : UUID.randomUUID().toString(),
+        BigDecimal.valueOf(random.nextInt(10_000), 2)));
+    }
+
+    return buildUserSummary(UUID.randomUUID().toString(), feesFines, openLoans);
+  }
+
+  /**
+   * @return an event of the given type which changes a loan or a fee/fine of the summary, or
+   * adds a new loan to it
+   */
+  public static Event buildEvent(UserSummary userSummary, EventType eventType) {
+    String userId = userSummary.getUserId();
+    OpenLoan openLoan = userSummary.getOpenLoans().get(userSummary.getOpenLoans().size() / 2);
+    String loanId = openLoan.getLoanId();
+
+    switch (eventType) {
+    case FEE_FINE_BALANCE_CHANGED:
+      OpenFeeFine feeFine = userSummary.getOpenFeesFines()
+        .get(userSummary.getOpenFeesFines().size() / 2);
+      return buildFeeFineBalanceChangedEvent(userId, feeFine.getLoanId(), feeFine.getFeeFineId(),
+        feeFine.getFeeFineTypeId(), BigDecimal.ONE);
+    case ITEM_CHECKED_OUT:
+      return buildItemCheckedOutEvent(userId, UUID.randomUUID().toString(),
+        new Date(NOW + TimeUnit.DAYS.toMillis(14)));
+    case ITEM_CHECKED_IN:
+      return buildItemCheckedInEvent(userId, loanId, new Date(NOW));
+    case ITEM_DECLARED_LOST:
+      return buildItemDeclaredLostEvent(userId, loanId);
+    case ITEM_AGED_TO_LOST:
+      return buildItemAgedToLostEvent(userId, loanId);
+    case ITEM_CLAIMED_RETURNED:
+      return buildItemClaimedReturnedEvent(userId, loanId);
+    case LOAN_DUE_DATE_CHANGED:
+      return buildLoanDueDateChangedEvent(userId, loanId,
+        new Date(NOW + TimeUnit.DAYS.toMillis(7)), true);
+    case LOAN_CLOSED:
+      return buildLoanClosedEvent(userId, loanId);
+    default:
+      throw new IllegalArgumentException("Unsupported event type: " + eventType);
+    }
+  }
+
+  /**
+   * @return configuration with a limit for every condition, all of them blocking borrowing,
+   * renewals and requests
+   */
+  public static PatronBlockConfiguration buildConfigurationWithEveryCondition() {
+    List<PatronBlockCondition> conditions = new ArrayList<>();
+    List<PatronBlockLimit> limits = new ArrayList<>();
+
+    Arrays.stream(Condition.values()).forEach(condition -> {
+      conditions.add(new PatronBlockCondition()
+        .withId(condition.getId())
+        .withName(condition.name())
+        .withBlockBorrowing(true)
+        .withBlockRenewals(true)
+        .withBlockRequests(true)
+        .withMessage(condition.name()));
+      limits.add(new PatronBlockLimit()
+        .withId(UUID.randomUUID().toString())
+        .withPatronGroupId(PATRON_GROUP_ID)
+        .withConditionId(condition.getId())
+        .withValue(condition == Condition.MAX_OUTSTANDING_FEE_FINE_BALANCE ? 100.0 : 5.0));
+    });
+
+    return new PatronBlockConfiguration(1L, conditions, limits);
+  }
+
+  public static List<PatronBlockLimit> buildLimitForEveryCondition() {
+    return buildConfigurationWithEveryCondition().getLimits(PATRON_GROUP_ID);
+  }
+}
@@ -0,0 +1,165 @@
+package org.folio.benchmark;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.domain.UserSummaryCountersCalculator.withCounters;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.folio.domain.Event;
+import org.folio.domain.EventType;
+import org.folio.domain.UserSummaryChanges;
+import org.folio.repository.EventJournalRepository;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.persist.Conn;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.service.EventService;
+import org.folio.service.UserSummaryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Saves a single event of every type and applies it to summaries of growing size, the same way
+ * events are handled by the module. The database is replaced by stubs: saving events does
+ * nothing, reading the summary returns copies of only the loans and fees/fines the event asks
+ * for and writing the changes does nothing. Each invocation starts from fresh copies, because
+ * events change loans and fees/fines in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSummaryServiceBenchmark {
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  private int numberOfLoans;
+
+  @Param({"FEE_FINE_BALANCE_CHANGED", "ITEM_CHECKED_OUT", "ITEM_CHECKED_IN",
+    "ITEM_DECLARED_LOST", "ITEM_AGED_TO_LOST", "ITEM_CLAIMED_RETURNED", "LOAN_DUE_DATE_CHANGED",
+    "LOAN_CLOSED"})
+  private EventType eventType;
+
+  private UserSummaryService userSummaryService;
+  private String userId;
+  private JsonObject userSummaryJson;
+  private Event event;
+  private final Map<String, JsonObject> loansById = new HashMap<>();
+  private final Map<String, JsonObject> feesFinesById = new HashMap<>();
+  private final Map<String, List<JsonObject>> feesFinesByLoanId = new HashMap<>();
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    PostgresClient postgresClient = mock(PostgresClient.class);
+    when(postgresClient.getTenantId()).thenReturn("benchmark");
+    when(postgresClient.withTrans(any())).thenAnswer(invocation ->
+      invocation.<Function<Conn, Future<?>>>getArgument(0).apply(null));
+
+    UserSummaryRepository userSummaryRepository = new UserSummaryRepository(null) {
+      @Override
+      public Future<Optional<UserSummary>> findByUserIdForUpdate(Conn conn, String userId,
+        Set<String> loanIds, Set<String> feeFineIds) {
+
+        return succeededFuture(Optional.of(findTouched(loanIds, feeFineIds)));
+      }
+
+      @Override
+      public Future<Boolean> applyChanges(Conn conn, String summaryId,
+        UserSummaryChanges changes) {
+
+        return succeededFuture(false);
+      }
+    };
+
+    EventService eventService = new EventService((EventJournalRepository) null) {
+      @Override
+      public Future<List<Event>> discardStoredDuplicates(List<? extends Event> events) {
+        return succeededFuture(List.copyOf(events));
+      }
+
+      @Override
+      public Future<List<Event>> saveAll(Conn conn, List<? extends Event> events) {
+        return succeededFuture(List.copyOf(events));
+      }
+
+      @Override
+      public void rememberStored(List<? extends Event> events) {
+        // nothing is stored
+      }
+    };
+
+    userSummaryService = new UserSummaryService(postgresClient, userSummaryRepository,
+      eventService);
+    UserSummary original = withCounters(
+      SyntheticUserSummaries.buildUserSummaryWithLoans(numberOfLoans));
+    userId = original.getUserId();
+    event = SyntheticUserSummaries.buildEvent(original, eventType);
+    original.getOpenLoans()
+      .forEach(loan -> loansById.put(loan.getLoanId(), JsonObject.mapFrom(loan)));
+    original.getOpenFeesFines().forEach(feeFine -> {
+      JsonObject json = JsonObject.mapFrom(feeFine);
+      feesFinesById.put(feeFine.getFeeFineId(), json);
+      feesFinesByLoanId.computeIfAbsent(feeFine.getLoanId(), id -> new ArrayList<>()).add(json);
+    });
+    userSummaryJson = JsonObject.mapFrom(original.withOpenLoans(null).withOpenFeesFines(null));
+  }
+
+  @Benchmark
+  public String saveEventsAndUpdateUserSummary() {
+    return userSummaryService.saveEventsAndUpdateUserSummary(userId, List.of(event)).result();
+  }
+
+  private UserSummary findTouched(Set<String> loanIds, Set<String> feeFineIds) {
+    Map<String, JsonObject> feesFines = new LinkedHashMap<>();
+    feeFineIds.stream()
+      .map(feesFinesById::get)
+      .filter(Objects::nonNull)
+      .forEach(json -> feesFines.putIfAbsent(json.getString("feeFineId"), json));
+    loanIds.forEach(loanId -> feesFinesByLoanId.getOrDefault(loanId, List.of())
+      .forEach(json -> feesFines.putIfAbsent(json.getString("feeFineId"), json)));
+
+    Set<String> allLoanIds = new HashSet<>(loanIds);
+    feesFines.values().forEach(json -> allLoanIds.add(json.getString("loanId")));
+
+    UserSummary userSummary = userSummaryJson.mapTo(UserSummary.class);
+    userSummary.setOpenFeesFines(feesFines.values().stream()
+      .map(json -> json.mapTo(OpenFeeFine.class))
+      .collect(Collectors.toList()));
+    userSummary.setOpenLoans(allLoanIds.stream()
+      .map(loansById::get)
+      .filter(Objects::nonNull)
+      .map(json -> json.mapTo(OpenLoan.class))
+      .collect(Collectors.toList()));
+    return userSummary;
+  }
+}
@@ -0,0 +1,89 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.benchmark.SyntheticUserSummaries.PATRON_GROUP_ID;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.folio.benchmark.SyntheticUserSummaries;
+import org.folio.domain.PatronBlockConfiguration;
+import org.folio.domain.UserSummaryCountersCalculator;
+import org.folio.okapi.common.XOkapiHeaders;
+import org.folio.rest.client.UsersClient;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocks;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Whole blocks calculation of a user whose patron group has a limit for every condition. The
+ * configuration and the patron group are served from memory, so only the evaluation is
+ * measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatronBlocksServiceBenchmark {
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  private int numberOfLoans;
+
+  private Vertx vertx;
+  private PatronBlocksService patronBlocksService;
+  private UserSummary userSummary;
+
+  @Setup
+  public void setUp() {
+    vertx = Vertx.vertx();
+    PatronBlockConfiguration configuration =
+      SyntheticUserSummaries.buildConfigurationWithEveryCondition();
+
+    PatronBlockConfigurationService configurationService =
+      new PatronBlockConfigurationService(null, null, null) {
+        @Override
+        public Future<PatronBlockConfiguration> getConfiguration() {
+          return succeededFuture(configuration);
+        }
+      };
+    UsersClient usersClient = new UsersClient(vertx, Map.of(
+      XOkapiHeaders.TENANT, "benchmark", XOkapiHeaders.URL, "http://localhost")) {
+      @Override
+      public Future<String> findPatronGroupIdForUser(String userId) {
+        return succeededFuture(PATRON_GROUP_ID);
+      }
+    };
+
+    patronBlocksService = new PatronBlocksService(null, configurationService, usersClient,
+      new AutomatedPatronBlocksCache(0, 0), new StepLatencyRecorder());
+    userSummary = UserSummaryCountersCalculator.withCounters(
+      SyntheticUserSummaries.buildUserSummaryWithLoans(numberOfLoans));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public Optional<AutomatedPatronBlocks> calculateBlocks() {
+    return patronBlocksService.getBlocksAfterOverdueTransition(userSummary).result();
+  }
+}
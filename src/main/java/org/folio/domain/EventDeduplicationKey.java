@@ -0,0 +1,54 @@
+package org.folio.domain;
+
+import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
+import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
+import org.folio.rest.jaxrs.model.LoanClosedEvent;
+
+/**
+ * Identifies redeliveries of the same event. The key is built from the source event ID when the
+ * sender provides one. Otherwise only events which happen once per loan (check out, check in and
+ * loan closed) get a key built from the event type and the loan ID. Other events can
+ * legitimately repeat with the same payload, e.g. a loan declared lost again after it was
+ * claimed returned or a balance going back to a previous value, and the payload carries no
+ * sender timestamp to tell a repetition from a redelivery, so they are not deduplicated.
+ */
+public class EventDeduplicationKey {
+  private static final String SEPARATOR = ":";
+
+  private EventDeduplicationKey() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  /**
+   * @return deduplication key of the event or null when the event can not be deduplicated
+   */
+  public static String of(Event event) {
+    EventType eventType = EventType.getByEvent(event);
+    if (event.getId() != null) {
+      return join(eventType, event.getId());
+    }
+
+    switch (eventType) {
+      case ITEM_CHECKED_OUT:
+        return join(eventType, ((ItemCheckedOutEvent) event).getLoanId());
+      case ITEM_CHECKED_IN:
+        return join(eventType, ((ItemCheckedInEvent) event).getLoanId());
+      case LOAN_CLOSED:
+        return join(eventType, ((LoanClosedEvent) event).getLoanId());
+      default:
+        return null;
+    }
+  }
+
+  private static String join(EventType eventType, String... parts) {
+    StringBuilder key = new StringBuilder(eventType.name());
+    for (String part : parts) {
+      if (part == null) {
+        return null;
+      }
+      key.append(SEPARATOR).append(part);
+    }
+
+    return key.toString();
+  }
+}
@@ -0,0 +1,31 @@
+package org.folio.domain;
+
+import java.util.UUID;
+
+/**
+ * Event claimed from the event inbox together with its row ID and the number of times it has
+ * been claimed, including the current claim. The event is null when the row cannot be read.
+ */
+public class InboxEvent {
+  private final UUID id;
+  private final int attempts;
+  private final Event event;
+
+  public InboxEvent(UUID id, int attempts, Event event) {
+    this.id = id;
+    this.attempts = attempts;
+    this.event = event;
+  }
+
+  public UUID getId() {
+    return id;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+}
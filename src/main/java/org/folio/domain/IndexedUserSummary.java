@@ -0,0 +1,97 @@
+package org.folio.domain;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+
+/**
+ * Open loans and fees/fines of a user summary indexed by loan ID and fee/fine ID, used while
+ * events are applied to the summary so that each event finds its loan or fee/fine in constant
+ * time. Loans and fees/fines keep the order in which they were added, so writing them back to the
+ * summary keeps the order of its arrays. Only the first of several loans or fees/fines with the
+ * same ID is kept, which is the one events were applied to before.
+ */
+public final class IndexedUserSummary {
+  private final Map<String, OpenLoan> openLoans;
+  private final Map<String, OpenFeeFine> openFeesFines;
+
+  private IndexedUserSummary(int expectedOpenLoans, int expectedOpenFeesFines) {
+    openLoans = new LinkedHashMap<>(capacity(expectedOpenLoans));
+    openFeesFines = new LinkedHashMap<>(capacity(expectedOpenFeesFines));
+  }
+
+  public static IndexedUserSummary of(UserSummary userSummary) {
+    List<OpenLoan> loans = Optional.ofNullable(userSummary.getOpenLoans()).orElse(List.of());
+    List<OpenFeeFine> feesFines = Optional.ofNullable(userSummary.getOpenFeesFines())
+      .orElse(List.of());
+
+    IndexedUserSummary indexedUserSummary = new IndexedUserSummary(loans.size(),
+      feesFines.size());
+    loans.forEach(indexedUserSummary::addOpenLoan);
+    feesFines.forEach(indexedUserSummary::addOpenFeeFine);
+
+    return indexedUserSummary;
+  }
+
+  public Optional<OpenLoan> findOpenLoan(String loanId) {
+    return Optional.ofNullable(openLoans.get(loanId));
+  }
+
+  public void addOpenLoan(OpenLoan openLoan) {
+    openLoans.putIfAbsent(openLoan.getLoanId(), openLoan);
+  }
+
+  /**
+   * @return true when the loan was open
+   */
+  public boolean removeOpenLoan(String loanId) {
+    return openLoans.remove(loanId) != null;
+  }
+
+  public Optional<OpenFeeFine> findOpenFeeFine(String feeFineId) {
+    return Optional.ofNullable(openFeesFines.get(feeFineId));
+  }
+
+  public void addOpenFeeFine(OpenFeeFine openFeeFine) {
+    openFeesFines.putIfAbsent(openFeeFine.getFeeFineId(), openFeeFine);
+  }
+
+  public void removeOpenFeeFine(String feeFineId) {
+    openFeesFines.remove(feeFineId);
+  }
+
+  public List<OpenLoan> getOpenLoans() {
+    return new ArrayList<>(openLoans.values());
+  }
+
+  public List<OpenFeeFine> getOpenFeesFines() {
+    return new ArrayList<>(openFeesFines.values());
+  }
+
+  /**
+   * Replaces open loans and fees/fines of the summary with those of this one.
+   */
+  public UserSummary writeTo(UserSummary userSummary) {
+    userSummary.setOpenLoans(getOpenLoans());
+    userSummary.setOpenFeesFines(getOpenFeesFines());
+    return userSummary;
+  }
+
+  @Override
+  public String toString() {
+    return format("IndexedUserSummary(openLoans: %d, openFeesFines: %d)", openLoans.size(),
+      openFeesFines.size());
+  }
+
+  private static int capacity(int expectedSize) {
+    return Math.max(16, (int) (expectedSize / 0.75f) + 1);
+  }
+}
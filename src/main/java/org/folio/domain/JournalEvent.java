@@ -0,0 +1,30 @@
+package org.folio.domain;
+
+import java.util.Date;
+
+/**
+ * Event read from the event journal together with its position in the journal.
+ */
+public class JournalEvent {
+  private final long seq;
+  private final Date createdDate;
+  private final Event event;
+
+  public JournalEvent(long seq, Date createdDate, Event event) {
+    this.seq = seq;
+    this.createdDate = createdDate;
+    this.event = event;
+  }
+
+  public long getSeq() {
+    return seq;
+  }
+
+  public Date getCreatedDate() {
+    return createdDate;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+}
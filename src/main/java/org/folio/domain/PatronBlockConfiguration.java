@@ -0,0 +1,41 @@
+package org.folio.domain;
+
+import static java.util.stream.Collectors.groupingBy;
+
+import java.util.List;
+import java.util.Map;
+
+import org.folio.rest.jaxrs.model.PatronBlockCondition;
+import org.folio.rest.jaxrs.model.PatronBlockLimit;
+
+/**
+ * Patron block conditions and limits of a tenant as of the given configuration version, limits
+ * are grouped by patron group.
+ */
+public class PatronBlockConfiguration {
+  private final Long version;
+  private final List<PatronBlockCondition> conditions;
+  private final Map<String, List<PatronBlockLimit>> limitsByPatronGroupId;
+
+  public PatronBlockConfiguration(Long version, List<PatronBlockCondition> conditions,
+    List<PatronBlockLimit> limits) {
+
+    this.version = version;
+    this.conditions = List.copyOf(conditions);
+    limitsByPatronGroupId = limits.stream()
+      .filter(limit -> limit.getPatronGroupId() != null)
+      .collect(groupingBy(PatronBlockLimit::getPatronGroupId));
+  }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public List<PatronBlockCondition> getConditions() {
+    return conditions;
+  }
+
+  public List<PatronBlockLimit> getLimits(String patronGroupId) {
+    return limitsByPatronGroupId.getOrDefault(patronGroupId, List.of());
+  }
+}
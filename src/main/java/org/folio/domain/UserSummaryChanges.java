@@ -0,0 +1,124 @@
+package org.folio.domain;
+
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Open loans and fees/fines which events added, changed or closed, found by comparing the summary
+ * before the events were applied with the summary after, and the difference the changes make to
+ * the counters. Only the rows of these loans and fees/fines have to be written.
+ */
+public final class UserSummaryChanges {
+  private final List<OpenLoan> changedOpenLoans;
+  private final List<String> closedLoanIds;
+  private final List<OpenFeeFine> changedOpenFeesFines;
+  private final List<String> closedFeeFineIds;
+  private final UserSummaryCounters countersDelta;
+
+  private UserSummaryChanges(List<OpenLoan> changedOpenLoans, List<String> closedLoanIds,
+    List<OpenFeeFine> changedOpenFeesFines, List<String> closedFeeFineIds,
+    UserSummaryCounters countersDelta) {
+
+    this.changedOpenLoans = changedOpenLoans;
+    this.closedLoanIds = closedLoanIds;
+    this.changedOpenFeesFines = changedOpenFeesFines;
+    this.closedFeeFineIds = closedFeeFineIds;
+    this.countersDelta = countersDelta;
+  }
+
+  /**
+   * The summaries must not share open loans and fees/fines, events change them in place. They
+   * must hold the fees/fines of their loans and the loans of their fees/fines, see
+   * {@link UserSummaryCountersCalculator#calculateDelta(UserSummary, UserSummary)}.
+   */
+  public static UserSummaryChanges between(UserSummary before, UserSummary after) {
+    Map<String, OpenLoan> loansBefore = firstById(before.getOpenLoans(), OpenLoan::getLoanId);
+    Map<String, OpenLoan> loansAfter = firstById(after.getOpenLoans(), OpenLoan::getLoanId);
+    Map<String, OpenFeeFine> feesFinesBefore = firstById(before.getOpenFeesFines(),
+      OpenFeeFine::getFeeFineId);
+    Map<String, OpenFeeFine> feesFinesAfter = firstById(after.getOpenFeesFines(),
+      OpenFeeFine::getFeeFineId);
+
+    return new UserSummaryChanges(findChanged(loansBefore, loansAfter),
+      findClosed(loansBefore, loansAfter), findChanged(feesFinesBefore, feesFinesAfter),
+      findClosed(feesFinesBefore, feesFinesAfter),
+      UserSummaryCountersCalculator.calculateDelta(before, after));
+  }
+
+  public List<OpenLoan> getChangedOpenLoans() {
+    return changedOpenLoans;
+  }
+
+  public List<String> getClosedLoanIds() {
+    return closedLoanIds;
+  }
+
+  public List<OpenFeeFine> getChangedOpenFeesFines() {
+    return changedOpenFeesFines;
+  }
+
+  public List<String> getClosedFeeFineIds() {
+    return closedFeeFineIds;
+  }
+
+  /**
+   * @return differences of the counts and of the outstanding balance, without dates
+   */
+  public UserSummaryCounters getCountersDelta() {
+    return countersDelta;
+  }
+
+  public boolean isEmpty() {
+    return changedOpenLoans.isEmpty() && closedLoanIds.isEmpty() &&
+      changedOpenFeesFines.isEmpty() && closedFeeFineIds.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return format("UserSummaryChanges(changedOpenLoans: %d, closedLoans: %d, " +
+        "changedOpenFeesFines: %d, closedFeesFines: %d)", changedOpenLoans.size(),
+      closedLoanIds.size(), changedOpenFeesFines.size(), closedFeeFineIds.size());
+  }
+
+  private static <T> List<T> findChanged(Map<String, T> before, Map<String, T> after) {
+    return after.entrySet().stream()
+      .filter(entry -> !before.containsKey(entry.getKey()) || !JsonObject.mapFrom(
+        entry.getValue()).equals(JsonObject.mapFrom(before.get(entry.getKey()))))
+      .map(Map.Entry::getValue)
+      .collect(toList());
+  }
+
+  private static List<String> findClosed(Map<String, ?> before, Map<String, ?> after) {
+    return before.keySet().stream()
+      .filter(id -> !after.containsKey(id))
+      .collect(toList());
+  }
+
+  /**
+   * Only the first of several loans or fees/fines with the same ID is kept, as in
+   * {@link IndexedUserSummary}.
+   */
+  private static <T> Map<String, T> firstById(List<T> items, Function<T, String> idGetter) {
+    Map<String, T> itemsById = new LinkedHashMap<>();
+    for (T item : Optional.ofNullable(items).orElse(List.of())) {
+      String id = idGetter.apply(item);
+      if (id != null) {
+        itemsById.putIfAbsent(id, item);
+      }
+    }
+    return itemsById;
+  }
+}
@@ -0,0 +1,107 @@
+package org.folio.domain;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+import org.folio.service.OverduePeriodCalculator;
+
+/**
+ * Counters are calculated from all open loans and fees/fines only when the whole summary is
+ * written, which is when the summary is created or rebuilt. Events change counters by the
+ * difference their changes make, calculated from the loans and fees/fines they touched, so the
+ * cost of an event does not depend on the number of open loans and fees/fines of the user.
+ */
+public class UserSummaryCountersCalculator {
+
+  private UserSummaryCountersCalculator() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  public static UserSummaryCounters calculate(UserSummary userSummary) {
+    return calculate(userSummary, System.currentTimeMillis());
+  }
+
+  public static UserSummaryCounters calculate(UserSummary userSummary, long currentTime) {
+    int openLoanCount = 0;
+    int lostItemCount = 0;
+    int claimedReturnedCount = 0;
+    int recallCount = 0;
+    Date earliestDueDate = null;
+    long nextOverdueTransitionTime = Long.MAX_VALUE;
+    Set<String> claimedReturnedLoanIds = new HashSet<>();
+
+    for (OpenLoan openLoan : userSummary.getOpenLoans()) {
+      if (Boolean.TRUE.equals(openLoan.getItemClaimedReturned())) {
+        claimedReturnedCount++;
+        if (openLoan.getLoanId() != null) {
+          claimedReturnedLoanIds.add(openLoan.getLoanId());
+        }
+        continue;
+      }
+
+      openLoanCount++;
+      if (Boolean.TRUE.equals(openLoan.getItemLost())) {
+        lostItemCount++;
+      }
+      if (Boolean.TRUE.equals(openLoan.getRecall())) {
+        recallCount++;
+      }
+      nextOverdueTransitionTime = Math.min(nextOverdueTransitionTime,
+        OverduePeriodCalculator.getNextOverdueTransitionTime(openLoan, currentTime));
+      Date dueDate = openLoan.getDueDate();
+      if (dueDate != null && (earliestDueDate == null || dueDate.before(earliestDueDate))) {
+        earliestDueDate = dueDate;
+      }
+    }
+
+    BigDecimal outstandingFeeFineBalance = BigDecimal.ZERO;
+    for (OpenFeeFine feeFine : userSummary.getOpenFeesFines()) {
+      if (feeFine.getBalance() != null && (feeFine.getLoanId() == null ||
+        !claimedReturnedLoanIds.contains(feeFine.getLoanId()))) {
+
+        outstandingFeeFineBalance = outstandingFeeFineBalance.add(feeFine.getBalance());
+      }
+    }
+
+    return new UserSummaryCounters()
+      .withOpenLoanCount(openLoanCount)
+      .withLostItemCount(lostItemCount)
+      .withClaimedReturnedCount(claimedReturnedCount)
+      .withRecallCount(recallCount)
+      .withOutstandingFeeFineBalance(outstandingFeeFineBalance)
+      .withEarliestDueDate(earliestDueDate)
+      .withNextOverdueTransitionDate(nextOverdueTransitionTime == Long.MAX_VALUE
+        ? null
+        : new Date(nextOverdueTransitionTime));
+  }
+
+  /**
+   * Difference the changes of the given loans and fees/fines make to the counters. The summaries
+   * must hold the fees/fines of their loans and the loans of their fees/fines, because whether a
+   * fee/fine counts depends on its loan. Dates are left out, the earliest date can not be told
+   * from a difference.
+   */
+  public static UserSummaryCounters calculateDelta(UserSummary before, UserSummary after) {
+    UserSummaryCounters countersBefore = calculate(before);
+    UserSummaryCounters countersAfter = calculate(after);
+
+    return new UserSummaryCounters()
+      .withOpenLoanCount(countersAfter.getOpenLoanCount() - countersBefore.getOpenLoanCount())
+      .withLostItemCount(countersAfter.getLostItemCount() - countersBefore.getLostItemCount())
+      .withClaimedReturnedCount(countersAfter.getClaimedReturnedCount() -
+        countersBefore.getClaimedReturnedCount())
+      .withRecallCount(countersAfter.getRecallCount() - countersBefore.getRecallCount())
+      .withOutstandingFeeFineBalance(countersAfter.getOutstandingFeeFineBalance()
+        .subtract(countersBefore.getOutstandingFeeFineBalance()));
+  }
+
+  public static UserSummary withCounters(UserSummary userSummary) {
+    return userSummary.withCounters(calculate(userSummary));
+  }
+}
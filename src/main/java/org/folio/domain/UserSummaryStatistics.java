@@ -0,0 +1,111 @@
+package org.folio.domain;
+
+import static org.folio.util.LogUtil.asJson;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Figures of a user summary that patron block limits are compared with. They are aggregated in
+ * a single pass over the open loans and a single pass over the open fees/fines, so all limits of
+ * a patron group are evaluated against the same aggregate. Loans of items claimed returned and
+ * fees/fines of such loans are not taken into account.
+ */
+@Getter
+@ToString
+public class UserSummaryStatistics {
+  private static final Logger log = LogManager.getLogger(UserSummaryStatistics.class);
+  private static final double NUMBER_OF_MINUTES_IN_ONE_DAY = 1440.0;
+
+  private int numberOfOpenLoans;
+  private int numberOfLostItems;
+  private int numberOfOverdueItems;
+  private int numberOfOverdueRecalls;
+  private int maxRecallOverdueDays;
+  private BigDecimal outstandingFeeFineBalance = BigDecimal.ZERO;
+
+  private UserSummaryStatistics() {
+  }
+
+  public static UserSummaryStatistics of(UserSummary userSummary,
+    Map<String, Integer> overdueMinutes) {
+
+    log.trace("of:: parameters userSummary: {}, overdueMinutes: {}", () -> asJson(userSummary),
+      () -> overdueMinutes);
+    UserSummaryStatistics statistics = new UserSummaryStatistics();
+    Set<String> claimedReturnedLoanIds = new HashSet<>();
+
+    for (OpenLoan openLoan : userSummary.getOpenLoans()) {
+      if (Boolean.TRUE.equals(openLoan.getItemClaimedReturned())) {
+        if (openLoan.getLoanId() != null) {
+          claimedReturnedLoanIds.add(openLoan.getLoanId());
+        }
+        continue;
+      }
+
+      statistics.numberOfOpenLoans++;
+      if (Boolean.TRUE.equals(openLoan.getItemLost())) {
+        statistics.numberOfLostItems++;
+      }
+
+      int loanOverdueMinutes = getLoanOverdueMinutes(openLoan, overdueMinutes);
+      if (loanOverdueMinutes > 0) {
+        statistics.numberOfOverdueItems++;
+        if (Boolean.TRUE.equals(openLoan.getRecall())) {
+          statistics.numberOfOverdueRecalls++;
+          statistics.maxRecallOverdueDays = Math.max(statistics.maxRecallOverdueDays,
+            (int) Math.ceil(loanOverdueMinutes / NUMBER_OF_MINUTES_IN_ONE_DAY));
+        }
+      }
+    }
+
+    for (OpenFeeFine feeFine : userSummary.getOpenFeesFines()) {
+      if (feeFine.getBalance() != null && (feeFine.getLoanId() == null ||
+        !claimedReturnedLoanIds.contains(feeFine.getLoanId()))) {
+
+        statistics.outstandingFeeFineBalance =
+          statistics.outstandingFeeFineBalance.add(feeFine.getBalance());
+      }
+    }
+
+    log.debug("of:: result: {}", statistics);
+    return statistics;
+  }
+
+  /**
+   * Builds statistics from the counters stored in the summary, without iterating its loans and
+   * fees/fines. Only valid when none of the loans is overdue.
+   */
+  public static UserSummaryStatistics withoutOverdueLoans(UserSummaryCounters counters) {
+    log.trace("withoutOverdueLoans:: parameters counters: {}", () -> asJson(counters));
+    UserSummaryStatistics statistics = new UserSummaryStatistics();
+    statistics.numberOfOpenLoans = counters.getOpenLoanCount();
+    statistics.numberOfLostItems = counters.getLostItemCount();
+    statistics.outstandingFeeFineBalance = counters.getOutstandingFeeFineBalance();
+
+    log.debug("withoutOverdueLoans:: result: {}", statistics);
+    return statistics;
+  }
+
+  private static int getLoanOverdueMinutes(OpenLoan openLoan,
+    Map<String, Integer> overdueMinutes) {
+
+    if (openLoan.getLoanId() == null) {
+      return 0;
+    }
+    Integer loanOverdueMinutes = overdueMinutes.get(openLoan.getLoanId());
+    return loanOverdueMinutes == null ? 0 : loanOverdueMinutes;
+  }
+}
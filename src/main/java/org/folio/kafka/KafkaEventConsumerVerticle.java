@@ -0,0 +1,340 @@
+package org.folio.kafka;
+
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+import static org.folio.util.ConfigUtil.getInt;
+import static org.folio.util.ConfigUtil.getString;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.domain.Event;
+import org.folio.domain.EventType;
+import org.folio.okapi.common.GenericCompositeFuture;
+import org.folio.rest.jaxrs.model.Metadata;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.service.TenantServices;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecords;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * Reads events directly from the Kafka topics pubsub publishes them to, instead of handling them
+ * in pubsub HTTP callbacks. The module stays registered as a subscriber, since pubsub publishes
+ * only event types which have subscribers, and the callbacks only acknowledge the events.
+ * <p>
+ * Records are polled in batches and events of each tenant are handled as one batch, ordered by
+ * creation date, so events of a user keep their order even when they come from topics of
+ * different event types. Offsets are committed only after the whole batch has been handled, a
+ * failed poll or commit is retried after a delay. Events which fail are retried a limited number
+ * of times and then moved to the event inbox of the tenant, which retries them later on its own,
+ * so a failing event never stops the consumer. Events of tenants the module is not enabled for
+ * are skipped. Partitions are spread across all consumers of the group, in this and other module
+ * instances.
+ */
+public class KafkaEventConsumerVerticle extends AbstractVerticle {
+  private static final Logger log = LogManager.getLogger(KafkaEventConsumerVerticle.class);
+
+  public static final String KAFKA_HOST_PROPERTY = "KAFKA_HOST";
+  public static final String KAFKA_PORT_PROPERTY = "KAFKA_PORT";
+  public static final String ENVIRONMENT_PROPERTY = "ENV";
+  public static final String TOPIC_PATTERN_PROPERTY = "KAFKA_EVENTS_TOPIC_PATTERN";
+  public static final String CONSUMER_INSTANCES_PROPERTY = "KAFKA_EVENTS_CONSUMER_INSTANCES";
+  public static final String MAX_POLL_RECORDS_PROPERTY = "KAFKA_EVENTS_MAX_POLL_RECORDS";
+  public static final String MAX_ATTEMPTS_PROPERTY = "KAFKA_EVENTS_MAX_ATTEMPTS";
+  private static final String DEFAULT_KAFKA_PORT = "9092";
+  private static final String DEFAULT_ENVIRONMENT = "folio";
+  private static final int DEFAULT_CONSUMER_INSTANCES = 1;
+  private static final int DEFAULT_MAX_POLL_RECORDS = 500;
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final String CONSUMER_GROUP_NAME = "mod-patron-blocks-events";
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+  private static final long RETRY_DELAY_MS = 5000;
+
+  private static final String EVENT_TYPE_FIELD = "eventType";
+  private static final String EVENT_METADATA_FIELD = "eventMetadata";
+  private static final String TENANT_ID_FIELD = "tenantId";
+  private static final String EVENT_PAYLOAD_FIELD = "eventPayload";
+  private static final String SCHEMA_EXISTS_QUERY =
+    "SELECT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = $1) AS schema_exists";
+
+  private final Map<String, String> consumerConfig;
+  private final Pattern topicPattern;
+  private final int maxAttempts;
+  private final Set<String> enabledTenants = new HashSet<>();
+  private KafkaConsumer<String, String> consumer;
+  private volatile boolean stopped;
+
+  public KafkaEventConsumerVerticle(Map<String, String> consumerConfig, Pattern topicPattern) {
+    this.consumerConfig = consumerConfig;
+    this.topicPattern = topicPattern;
+    maxAttempts = Math.max(1, getInt(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS));
+  }
+
+  public static boolean isEnabled() {
+    return getString(KAFKA_HOST_PROPERTY, null) != null;
+  }
+
+  public static int getInstances() {
+    return Math.max(1, getInt(CONSUMER_INSTANCES_PROPERTY, DEFAULT_CONSUMER_INSTANCES));
+  }
+
+  public static String getBootstrapServers() {
+    return getString(KAFKA_HOST_PROPERTY, null) + ":" +
+      getString(KAFKA_PORT_PROPERTY, DEFAULT_KAFKA_PORT);
+  }
+
+  public static String getEnvironment() {
+    return getString(ENVIRONMENT_PROPERTY, DEFAULT_ENVIRONMENT);
+  }
+
+  public static KafkaEventConsumerVerticle fromEnvironment() {
+    return new KafkaEventConsumerVerticle(
+      buildConsumerConfig(getBootstrapServers(), buildConsumerGroupId(getEnvironment()),
+        getInt(MAX_POLL_RECORDS_PROPERTY, DEFAULT_MAX_POLL_RECORDS)),
+      Pattern.compile(getString(TOPIC_PATTERN_PROPERTY,
+        buildDefaultTopicPattern(getEnvironment()))));
+  }
+
+  public static Map<String, String> buildConsumerConfig(String bootstrapServers, String groupId,
+    int maxPollRecords) {
+
+    Map<String, String> config = new HashMap<>();
+    config.put("bootstrap.servers", bootstrapServers);
+    config.put("group.id", groupId);
+    config.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+    config.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+    config.put("enable.auto.commit", "false");
+    config.put("auto.offset.reset", "earliest");
+    config.put("max.poll.records", String.valueOf(maxPollRecords));
+    return config;
+  }
+
+  /**
+   * Environments sharing a Kafka cluster get consumer groups of their own, like their topics.
+   */
+  public static String buildConsumerGroupId(String environment) {
+    return String.join(".", environment, CONSUMER_GROUP_NAME);
+  }
+
+  /**
+   * Topics are named pub-sub.{environment}.{tenant}.{event type} by pubsub.
+   */
+  public static String buildDefaultTopicPattern(String environment) {
+    String eventTypes = Arrays.stream(EventType.values())
+      .filter(eventType -> eventType != EventType.UNKNOWN)
+      .map(EventType::name)
+      .collect(Collectors.joining("|"));
+
+    return String.format("pub-sub\\.%s\\.[^.]+\\.(%s)", Pattern.quote(environment), eventTypes);
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    log.info("start:: Subscribing to topics matching {}", topicPattern);
+    consumer = KafkaConsumer.create(vertx, consumerConfig);
+    consumer.subscribe(topicPattern)
+      .onSuccess(ignored -> poll())
+      .onComplete(startPromise);
+  }
+
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    stopped = true;
+    consumer.close()
+      .onComplete(stopPromise);
+  }
+
+  private void poll() {
+    if (stopped) {
+      return;
+    }
+
+    consumer.poll(POLL_TIMEOUT)
+      .compose(records -> records.isEmpty()
+        ? Future.<Void>succeededFuture()
+        : handle(records)
+          .compose(ignored -> consumer.commit()))
+      .onSuccess(ignored -> poll())
+      .onFailure(t -> {
+        log.warn("poll:: Failed to poll or commit events, polling again in {} ms",
+          RETRY_DELAY_MS, t);
+        vertx.setTimer(RETRY_DELAY_MS, id -> poll());
+      });
+  }
+
+  private Future<Void> handle(KafkaConsumerRecords<String, String> records) {
+    log.debug("handle:: parameters records: {}", records::size);
+
+    Map<String, List<Event>> eventsByTenantId = new LinkedHashMap<>();
+    for (int i = 0; i < records.size(); i++) {
+      addEvent(eventsByTenantId, records.recordAt(i));
+    }
+    eventsByTenantId.values().forEach(events -> events.sort(
+      Comparator.comparing((Event event) -> event.getMetadata().getCreatedDate())));
+
+    return handleWithRetries(eventsByTenantId, 1)
+      .onSuccess(ignored -> log.info("handle:: Handled {} event(s) of {} tenant(s)",
+        records.size(), eventsByTenantId.size()));
+  }
+
+  /**
+   * Handles the events and retries those which failed until they succeed or run out of
+   * attempts. Events which ran out of attempts are moved to the event inbox of their tenant.
+   */
+  private Future<Void> handleWithRetries(Map<String, List<Event>> eventsByTenantId,
+    int attempt) {
+
+    return handleOnce(eventsByTenantId)
+      .compose(failedEventsByTenantId -> {
+        if (failedEventsByTenantId.isEmpty()) {
+          return Future.succeededFuture();
+        }
+        if (stopped) {
+          return Future.failedFuture("Consumer is stopped, failed events are not committed");
+        }
+        if (attempt >= maxAttempts) {
+          return moveToInbox(failedEventsByTenantId);
+        }
+        log.warn("handleWithRetries:: Failed to handle events of {} tenant(s) on attempt {} " +
+          "of {}, retrying in {} ms", failedEventsByTenantId.size(), attempt, maxAttempts,
+          RETRY_DELAY_MS);
+        Promise<Void> retry = Promise.promise();
+        vertx.setTimer(RETRY_DELAY_MS, timerId ->
+          handleWithRetries(failedEventsByTenantId, attempt + 1).onComplete(retry));
+        return retry.future();
+      });
+  }
+
+  /**
+   * @return events which failed by tenant ID, tenants without failed events are left out
+   */
+  private Future<Map<String, List<Event>>> handleOnce(Map<String, List<Event>> eventsByTenantId) {
+    Map<String, List<Event>> failedEventsByTenantId = new LinkedHashMap<>();
+    List<Future<Void>> futures = new ArrayList<>(eventsByTenantId.size());
+    eventsByTenantId.forEach((tenantId, events) -> futures.add(
+      handleEventsOfTenant(tenantId, events)
+        .onSuccess(failedEvents -> {
+          if (!failedEvents.isEmpty()) {
+            failedEventsByTenantId.put(tenantId, failedEvents);
+          }
+        })
+        .mapEmpty()));
+
+    return GenericCompositeFuture.join(futures)
+      .map(ignored -> failedEventsByTenantId);
+  }
+
+  /**
+   * @return events which failed, all of them when the tenant could not be checked
+   */
+  private Future<List<Event>> handleEventsOfTenant(String tenantId, List<Event> events) {
+    return isModuleEnabled(tenantId)
+      .compose(enabled -> {
+        if (!enabled) {
+          log.warn("handleEventsOfTenant:: Module is not enabled for tenant {}, skipping {} " +
+            "event(s)", tenantId, events.size());
+          return Future.succeededFuture(List.<Event>of());
+        }
+        return TenantServices.forTenant(PostgresClient.getInstance(vertx, tenantId))
+          .getBatchEventHandler()
+          .handle(events);
+      })
+      .recover(t -> {
+        log.warn("handleEventsOfTenant:: Failed to handle {} event(s) of tenant {}",
+          events.size(), tenantId, t);
+        return Future.succeededFuture(events);
+      });
+  }
+
+  /**
+   * The module is enabled for a tenant when the schema of the tenant exists. Tenants found
+   * enabled are remembered, other ones are checked again with every batch.
+   */
+  private Future<Boolean> isModuleEnabled(String tenantId) {
+    if (enabledTenants.contains(tenantId)) {
+      return Future.succeededFuture(true);
+    }
+
+    return PostgresClient.getInstance(vertx)
+      .execute(SCHEMA_EXISTS_QUERY, Tuple.of(convertToPsqlStandard(tenantId)))
+      .map(rows -> rows.iterator().next().getBoolean("schema_exists"))
+      .onSuccess(enabled -> {
+        if (Boolean.TRUE.equals(enabled)) {
+          enabledTenants.add(tenantId);
+        }
+      });
+  }
+
+  /**
+   * Stores events which ran out of attempts in the event inbox of their tenant, so that offsets
+   * can be committed. Events which cannot be stored either are logged and dropped.
+   */
+  private Future<Void> moveToInbox(Map<String, List<Event>> failedEventsByTenantId) {
+    List<Future<Void>> futures = new ArrayList<>(failedEventsByTenantId.size());
+    failedEventsByTenantId.forEach((tenantId, events) -> futures.add(
+      TenantServices.forTenant(PostgresClient.getInstance(vertx, tenantId))
+        .getEventInboxService()
+        .add(events)
+        .onSuccess(count -> log.warn("moveToInbox:: Moved {} event(s) of tenant {} to the " +
+          "event inbox after {} failed attempt(s)", count, tenantId, maxAttempts))
+        .<Void>mapEmpty()
+        .recover(t -> {
+          log.error("moveToInbox:: Failed to move events of tenant {} to the event inbox, " +
+            "dropping them: {}", tenantId, events, t);
+          return Future.succeededFuture();
+        })));
+
+    return GenericCompositeFuture.join(futures)
+      .mapEmpty();
+  }
+
+  /**
+   * Reads the event from the pubsub envelope of the record. Events without creation date get the
+   * record timestamp, so a redelivered record produces the same event.
+   */
+  private static void addEvent(Map<String, List<Event>> eventsByTenantId,
+    KafkaConsumerRecord<String, String> record) {
+
+    try {
+      JsonObject envelope = new JsonObject(record.value());
+      EventType eventType = EventType.valueOf(envelope.getString(EVENT_TYPE_FIELD));
+      Event event = new JsonObject(envelope.getString(EVENT_PAYLOAD_FIELD))
+        .mapTo(eventType.getEventClass());
+      if (event.getMetadata() == null || event.getMetadata().getCreatedDate() == null) {
+        Date createdDate = new Date(record.timestamp());
+        event.setMetadata(Optional.ofNullable(event.getMetadata())
+          .orElseGet(Metadata::new)
+          .withCreatedDate(createdDate)
+          .withUpdatedDate(createdDate));
+      }
+      String tenantId = Optional.ofNullable(envelope.getJsonObject(EVENT_METADATA_FIELD))
+        .map(metadata -> metadata.getString(TENANT_ID_FIELD))
+        .orElseGet(() -> record.topic().split("\\.")[2]);
+
+      eventsByTenantId.computeIfAbsent(tenantId, key -> new ArrayList<>()).add(event);
+    } catch (Exception e) {
+      log.warn("addEvent:: Failed to read event from topic {}, partition {}, offset {}, " +
+        "event is ignored", record.topic(), record.partition(), record.offset(), e);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.folio.kafka;
+
+import static org.folio.util.ConfigUtil.getString;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.client.UsersClient;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
+
+/**
+ * Reads user domain events published by mod-users and invalidates the cached patron group of
+ * every created, updated or deleted user. Each module instance has its own cache, so each
+ * instance reads all user events in a consumer group of its own. The group is named after the
+ * instance, by default its host name, so a restarted instance joins its group again instead of
+ * leaving an abandoned group behind. A new group starts with events published after it was
+ * created, earlier events do not concern an empty cache.
+ */
+public class KafkaUserEventConsumerVerticle extends AbstractVerticle {
+  private static final Logger log = LogManager.getLogger(KafkaUserEventConsumerVerticle.class);
+
+  public static final String TOPIC_PATTERN_PROPERTY = "KAFKA_USERS_TOPIC_PATTERN";
+  public static final String INSTANCE_ID_PROPERTY = "KAFKA_USERS_CONSUMER_INSTANCE_ID";
+  private static final String HOSTNAME_PROPERTY = "HOSTNAME";
+  private static final String CONSUMER_GROUP_NAME = "mod-patron-blocks-users";
+
+  private static final String TENANT_FIELD = "tenant";
+  private static final String DATA_FIELD = "data";
+  private static final String NEW_FIELD = "new";
+  private static final String OLD_FIELD = "old";
+  private static final String ID_FIELD = "id";
+
+  private final Map<String, String> consumerConfig;
+  private final Pattern topicPattern;
+  private KafkaConsumer<String, String> consumer;
+
+  public KafkaUserEventConsumerVerticle(Map<String, String> consumerConfig,
+    Pattern topicPattern) {
+
+    this.consumerConfig = consumerConfig;
+    this.topicPattern = topicPattern;
+  }
+
+  public static KafkaUserEventConsumerVerticle fromEnvironment() {
+    String environment = KafkaEventConsumerVerticle.getEnvironment();
+    return new KafkaUserEventConsumerVerticle(
+      buildConsumerConfig(KafkaEventConsumerVerticle.getBootstrapServers(),
+        buildConsumerGroupId(environment, getInstanceId())),
+      Pattern.compile(getString(TOPIC_PATTERN_PROPERTY,
+        buildDefaultTopicPattern(environment))));
+  }
+
+  public static Map<String, String> buildConsumerConfig(String bootstrapServers,
+    String groupId) {
+
+    Map<String, String> config = new HashMap<>();
+    config.put("bootstrap.servers", bootstrapServers);
+    config.put("group.id", groupId);
+    config.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+    config.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+    config.put("enable.auto.commit", "true");
+    config.put("auto.offset.reset", "latest");
+    return config;
+  }
+
+  public static String buildConsumerGroupId(String environment, String instanceId) {
+    return String.join(".", environment, CONSUMER_GROUP_NAME, instanceId);
+  }
+
+  /**
+   * The instance ID can be set explicitly, otherwise it is the host name of the instance.
+   */
+  static String getInstanceId() {
+    return Optional.ofNullable(getString(INSTANCE_ID_PROPERTY, null))
+      .or(() -> Optional.ofNullable(getString(HOSTNAME_PROPERTY, null)))
+      .orElseGet(() -> {
+        try {
+          return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+          log.warn("getInstanceId:: Failed to resolve host name, using a random instance ID", e);
+          return UUID.randomUUID().toString();
+        }
+      });
+  }
+
+  /**
+   * Topics are named {environment}.{tenant}.users.users by mod-users.
+   */
+  public static String buildDefaultTopicPattern(String environment) {
+    return String.format("%s\\.[^.]+\\.users\\.users", Pattern.quote(environment));
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    log.info("start:: Subscribing to topics matching {} in consumer group {}", topicPattern,
+      consumerConfig.get("group.id"));
+    consumer = KafkaConsumer.create(vertx, consumerConfig);
+    consumer.handler(KafkaUserEventConsumerVerticle::handle)
+      .exceptionHandler(t -> log.warn("start:: Failed to read user events", t));
+    consumer.subscribe(topicPattern)
+      .onComplete(startPromise);
+  }
+
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    consumer.close()
+      .onComplete(stopPromise);
+  }
+
+  private static void handle(KafkaConsumerRecord<String, String> record) {
+    try {
+      JsonObject event = new JsonObject(record.value());
+      String tenantId = Optional.ofNullable(event.getString(TENANT_FIELD))
+        .orElseGet(() -> record.topic().split("\\.")[1]);
+      JsonObject data = event.getJsonObject(DATA_FIELD, new JsonObject());
+      String userId = Optional.ofNullable(record.key())
+        .or(() -> Optional.ofNullable(data.getJsonObject(NEW_FIELD))
+          .map(user -> user.getString(ID_FIELD)))
+        .or(() -> Optional.ofNullable(data.getJsonObject(OLD_FIELD))
+          .map(user -> user.getString(ID_FIELD)))
+        .orElse(null);
+
+      if (userId != null) {
+        UsersClient.invalidatePatronGroupId(tenantId, userId);
+      }
+    } catch (Exception e) {
+      log.warn("handle:: Failed to read user event from topic {}, partition {}, offset {}, " +
+        "event is ignored", record.topic(), record.partition(), record.offset(), e);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package org.folio.repository;
+
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.domain.Event;
+import org.folio.domain.EventType;
+import org.folio.domain.InboxEvent;
+import org.folio.rest.persist.PostgresClient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * Table of received events which have not been processed yet. Rows are stored in the order they
+ * were received and claimed in the same order. A claim leases the rows for a while and is
+ * committed right away, so no row locks are held while the events are processed. Rows of
+ * processed events are deleted, rows of failed events are released for a retry later or moved
+ * to the dead-letter state, in which they are no longer claimed.
+ */
+public class EventInboxRepository {
+  private static final Logger log = LogManager.getLogger(EventInboxRepository.class);
+
+  public static final String EVENT_INBOX_TABLE_NAME = "event_inbox";
+  private static final String EVENT_TYPE_FIELD = "eventType";
+  private static final String EVENT_FIELD = "event";
+  private static final String INSERT_QUERY_TEMPLATE =
+    "INSERT INTO %s.%s (id, jsonb) SELECT * FROM UNNEST($1::uuid[], $2::jsonb[])";
+  private static final String CLAIM_QUERY_TEMPLATE =
+    "UPDATE %1$s.%2$s SET attempts = attempts + 1, " +
+    "leased_until = now() + $2::int * interval '1 second' " +
+    "WHERE id IN (SELECT id FROM %1$s.%2$s " +
+    "WHERE dead_lettered_date IS NULL AND (leased_until IS NULL OR leased_until <= now()) " +
+    "ORDER BY seq LIMIT $1 FOR UPDATE SKIP LOCKED) " +
+    "RETURNING id, seq, attempts, jsonb";
+  private static final String DELETE_QUERY_TEMPLATE =
+    "DELETE FROM %s.%s WHERE id = ANY($1)";
+  private static final String RELEASE_QUERY_TEMPLATE =
+    "UPDATE %s.%s SET leased_until = now() + $2::int * interval '1 second' WHERE id = ANY($1)";
+  private static final String DEAD_LETTER_QUERY_TEMPLATE =
+    "UPDATE %s.%s SET dead_lettered_date = now(), leased_until = NULL WHERE id = ANY($1)";
+  private static final String COUNT_PENDING_QUERY_TEMPLATE =
+    "SELECT count(*) AS pending FROM " +
+    "(SELECT 1 FROM %s.%s WHERE dead_lettered_date IS NULL LIMIT $1) pending_events";
+
+  private final PostgresClient pgClient;
+
+  public EventInboxRepository(PostgresClient pgClient) {
+    this.pgClient = pgClient;
+  }
+
+  public Future<Integer> saveAll(List<? extends Event> events) {
+    log.debug("saveAll:: parameters events: {}", events::size);
+    List<UUID> ids = new ArrayList<>(events.size());
+    List<JsonObject> jsons = new ArrayList<>(events.size());
+    try {
+      for (Event event : events) {
+        ids.add(UUID.randomUUID());
+        jsons.add(new JsonObject()
+          .put(EVENT_TYPE_FIELD, EventType.getNameByEvent(event))
+          .put(EVENT_FIELD, PostgresClient.pojo2JsonObject(event)));
+      }
+    } catch (JsonProcessingException e) {
+      log.warn("saveAll:: Failed to serialize events", e);
+      return Future.failedFuture(e);
+    }
+
+    return pgClient.execute(formatQuery(INSERT_QUERY_TEMPLATE),
+        Tuple.of(ids.toArray(UUID[]::new), jsons.toArray(JsonObject[]::new)))
+      .map(RowSet::rowCount)
+      .onSuccess(rowCount -> log.info("saveAll:: Saved {} event(s) to the inbox", rowCount));
+  }
+
+  /**
+   * Claims the oldest events which are neither leased nor dead-lettered and leases them for the
+   * given number of seconds. Rows claimed by another transaction are skipped.
+   *
+   * @return claimed events in the order they were received, empty when there are none
+   */
+  public Future<List<InboxEvent>> claimNextBatch(int limit, int leaseSeconds) {
+    log.debug("claimNextBatch:: parameters limit: {}, leaseSeconds: {}", limit, leaseSeconds);
+    return pgClient.execute(formatQuery(CLAIM_QUERY_TEMPLATE), Tuple.of(limit, leaseSeconds))
+      .map(rows -> {
+        List<Row> sortedRows = new ArrayList<>(rows.size());
+        rows.forEach(sortedRows::add);
+        sortedRows.sort(Comparator.comparingLong(row -> row.getLong("seq")));
+
+        List<InboxEvent> events = new ArrayList<>(sortedRows.size());
+        for (Row row : sortedRows) {
+          events.add(new InboxEvent(row.getUUID("id"), row.getInteger("attempts"),
+            toEvent(row.getJsonObject("jsonb"))));
+        }
+        return events;
+      })
+      .onSuccess(events -> log.info("claimNextBatch:: Claimed {} event(s)", events.size()));
+  }
+
+  public Future<Integer> remove(List<UUID> ids) {
+    if (ids.isEmpty()) {
+      return Future.succeededFuture(0);
+    }
+    return pgClient.execute(formatQuery(DELETE_QUERY_TEMPLATE),
+        Tuple.of(ids.toArray(UUID[]::new)))
+      .map(RowSet::rowCount);
+  }
+
+  /**
+   * Lets the rows be claimed again once the given number of seconds has passed.
+   */
+  public Future<Integer> release(List<UUID> ids, int retryDelaySeconds) {
+    if (ids.isEmpty()) {
+      return Future.succeededFuture(0);
+    }
+    return pgClient.execute(formatQuery(RELEASE_QUERY_TEMPLATE),
+        Tuple.of(ids.toArray(UUID[]::new), retryDelaySeconds))
+      .map(RowSet::rowCount);
+  }
+
+  /**
+   * Moves the rows to the dead-letter state, they are kept in the inbox but never claimed again.
+   */
+  public Future<Integer> deadLetter(List<UUID> ids) {
+    if (ids.isEmpty()) {
+      return Future.succeededFuture(0);
+    }
+    return pgClient.execute(formatQuery(DEAD_LETTER_QUERY_TEMPLATE),
+        Tuple.of(ids.toArray(UUID[]::new)))
+      .map(RowSet::rowCount)
+      .onSuccess(count -> log.warn("deadLetter:: Moved {} event(s) to the dead-letter state",
+        count));
+  }
+
+  /**
+   * Counts events which are not dead-lettered, including leased ones, up to the given limit.
+   */
+  public Future<Integer> countPending(int limit) {
+    return pgClient.execute(formatQuery(COUNT_PENDING_QUERY_TEMPLATE), Tuple.of(limit))
+      .map(rows -> rows.iterator().next().getInteger("pending"));
+  }
+
+  private static Event toEvent(JsonObject entry) {
+    try {
+      EventType eventType = EventType.valueOf(entry.getString(EVENT_TYPE_FIELD));
+      return entry.getJsonObject(EVENT_FIELD).mapTo(eventType.getEventClass());
+    } catch (Exception e) {
+      log.warn("toEvent:: Failed to read event from the inbox: {}", entry, e);
+      return null;
+    }
+  }
+
+  private String formatQuery(String template) {
+    return String.format(template, convertToPsqlStandard(pgClient.getTenantId()),
+      EVENT_INBOX_TABLE_NAME);
+  }
+}
@@ -0,0 +1,413 @@
+package org.folio.repository;
+
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.dbschema.ObjectMapperTool;
+import org.folio.domain.Event;
+import org.folio.domain.EventDeduplicationKey;
+import org.folio.domain.EventType;
+import org.folio.domain.JournalEvent;
+import org.folio.rest.jaxrs.model.Metadata;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.Conn;
+import org.folio.rest.persist.PostgresClient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * Events of all types in one table. Besides the event itself each row has the user ID, the event
+ * type and the creation date of the event in typed columns, so that the events of a user can be
+ * read in chronological order with a single index range scan.
+ * <p>
+ * Deduplication keys of events removed by compaction are kept in a table of their own until the
+ * events are too old to be delivered again, so that a redelivered event is still recognized as a
+ * duplicate after the event itself is gone.
+ */
+public class EventJournalRepository {
+  private static final Logger log = LogManager.getLogger(EventJournalRepository.class);
+
+  public static final String EVENT_JOURNAL_TABLE_NAME = "event_journal";
+  public static final String DEDUPLICATION_KEY_TABLE_NAME = "event_deduplication_key";
+  private static final String INSERT_QUERY_TEMPLATE =
+    "INSERT INTO %1$s.%2$s (id, jsonb, user_id, event_type, created_date, deduplication_key) " +
+    "SELECT * FROM UNNEST($1::uuid[], $2::jsonb[], $3::uuid[], $4::text[], " +
+    "$5::timestamptz[], $6::text[]) " +
+    "AS events(id, jsonb, user_id, event_type, created_date, deduplication_key) " +
+    "WHERE NOT EXISTS (SELECT 1 FROM %1$s.%3$s removed " +
+    "WHERE removed.deduplication_key = events.deduplication_key) " +
+    "ON CONFLICT (deduplication_key) DO NOTHING RETURNING id";
+  private static final String FIND_DEDUPLICATION_KEYS_QUERY_TEMPLATE =
+    "SELECT deduplication_key FROM %1$s.%2$s WHERE deduplication_key = ANY($1) " +
+    "UNION SELECT deduplication_key FROM %1$s.%3$s WHERE deduplication_key = ANY($1)";
+  private static final String GET_BY_USER_ID_QUERY_TEMPLATE =
+    "SELECT event_type, jsonb FROM %s.%s WHERE user_id = $1 ORDER BY created_date, seq";
+  private static final String GET_FIRST_PAGE_BY_USER_ID_QUERY_TEMPLATE =
+    "SELECT seq, created_date, event_type, jsonb FROM %s.%s " +
+    "WHERE user_id = $1 AND seq > $2 AND created_date IS NOT NULL " +
+    "ORDER BY created_date, seq LIMIT $3";
+  private static final String GET_NEXT_PAGE_BY_USER_ID_QUERY_TEMPLATE =
+    "SELECT seq, created_date, event_type, jsonb FROM %s.%s " +
+    "WHERE user_id = $1 AND seq > $2 AND (created_date, seq) > ($4, $5) " +
+    "ORDER BY created_date, seq LIMIT $3";
+  private static final String EXISTS_CREATED_BEFORE_QUERY_TEMPLATE =
+    "SELECT EXISTS (SELECT 1 FROM %s.%s " +
+    "WHERE user_id = $1 AND seq > $2 AND created_date < $3) AS created_before";
+  private static final String GET_USER_IDS_QUERY_TEMPLATE =
+    "WITH RECURSIVE user_ids AS (" +
+    "(SELECT user_id FROM %1$s.%2$s WHERE user_id > $1 ORDER BY user_id LIMIT 1) " +
+    "UNION ALL " +
+    "SELECT (SELECT user_id FROM %1$s.%2$s WHERE user_id > user_ids.user_id " +
+    "ORDER BY user_id LIMIT 1) FROM user_ids WHERE user_ids.user_id IS NOT NULL) " +
+    "SELECT user_id FROM user_ids WHERE user_id IS NOT NULL LIMIT $2";
+  private static final String DELETE_COVERED_BY_CHECKPOINT_QUERY_TEMPLATE =
+    "WITH removed AS (DELETE FROM %1$s.%2$s WHERE id IN (SELECT id FROM %1$s.%2$s " +
+    "WHERE user_id = $1 AND seq <= $2 AND (" +
+    "(event_type = 'FEE_FINE_BALANCE_CHANGED' AND jsonb->>'feeFineId' IS NOT NULL " +
+    "AND jsonb->>'feeFineId' <> ALL($4)) OR " +
+    "(event_type <> 'FEE_FINE_BALANCE_CHANGED' AND jsonb->>'loanId' IS NOT NULL " +
+    "AND jsonb->>'loanId' <> ALL($3))) " +
+    "LIMIT $5) RETURNING deduplication_key, created_date), " +
+    "kept_keys AS (INSERT INTO %1$s.%3$s (deduplication_key, created_date) " +
+    "SELECT deduplication_key, coalesce(created_date, now()) FROM removed " +
+    "WHERE deduplication_key IS NOT NULL ON CONFLICT DO NOTHING) " +
+    "SELECT count(*) AS removed_count FROM removed";
+  private static final String DELETE_EXPIRED_DEDUPLICATION_KEYS_QUERY_TEMPLATE =
+    "DELETE FROM %1$s.%3$s WHERE created_date < now() - $1::int * interval '1 day'";
+  private static final String DELETE_BY_USER_ID_QUERY_TEMPLATE =
+    "DELETE FROM %s.%s WHERE user_id = $1";
+  private static final String DELETE_ALL_QUERY_TEMPLATE = "DELETE FROM %s.%s";
+
+  private final PostgresClient pgClient;
+
+  public EventJournalRepository(PostgresClient pgClient) {
+    this.pgClient = pgClient;
+  }
+
+  /**
+   * @return ID of the inserted row or null when the event is a duplicate
+   */
+  public Future<String> save(Event event) {
+    return insert(List.of(event), pgClient::execute)
+      .map(ids -> ids.get(0) == null ? null : ids.get(0).toString());
+  }
+
+  public Future<List<Event>> saveAll(List<? extends Event> events) {
+    return saveAll(events, pgClient::execute);
+  }
+
+  public Future<List<Event>> saveAll(Conn conn, List<? extends Event> events) {
+    return saveAll(events, conn::execute);
+  }
+
+  /**
+   * Inserts events, skipping those whose deduplication key is already stored.
+   *
+   * @return inserted events in the order they were passed
+   */
+  private Future<List<Event>> saveAll(List<? extends Event> events,
+    BiFunction<String, Tuple, Future<RowSet<Row>>> executor) {
+
+    log.debug("saveAll:: parameters events: {}", events::size);
+    if (events.isEmpty()) {
+      return Future.succeededFuture(List.of());
+    }
+
+    return insert(events, executor)
+      .map(ids -> {
+        List<Event> inserted = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+          if (ids.get(i) != null) {
+            inserted.add(events.get(i));
+          }
+        }
+        return inserted;
+      })
+      .onSuccess(inserted -> log.info("saveAll:: Inserted {} of {} event(s)", inserted.size(),
+        events.size()));
+  }
+
+  /**
+   * @return IDs of the inserted rows in the order of the events, null for skipped events
+   */
+  private Future<List<UUID>> insert(List<? extends Event> events,
+    BiFunction<String, Tuple, Future<RowSet<Row>>> executor) {
+
+    int size = events.size();
+    List<UUID> ids = new ArrayList<>(size);
+    List<JsonObject> jsons = new ArrayList<>(size);
+    List<UUID> userIds = new ArrayList<>(size);
+    List<String> eventTypes = new ArrayList<>(size);
+    List<OffsetDateTime> createdDates = new ArrayList<>(size);
+    List<String> deduplicationKeys = new ArrayList<>(size);
+    try {
+      for (Event event : events) {
+        ids.add(UUID.randomUUID());
+        jsons.add(PostgresClient.pojo2JsonObject(event));
+        userIds.add(toUuid(event.getUserId()));
+        eventTypes.add(EventType.getNameByEvent(event));
+        createdDates.add(getCreatedDate(event));
+        deduplicationKeys.add(EventDeduplicationKey.of(event));
+      }
+    } catch (JsonProcessingException e) {
+      log.warn("insert:: Failed to serialize events", e);
+      return Future.failedFuture(e);
+    }
+
+    return executor.apply(formatQuery(INSERT_QUERY_TEMPLATE),
+        Tuple.of(ids.toArray(UUID[]::new), jsons.toArray(JsonObject[]::new),
+          userIds.toArray(UUID[]::new), eventTypes.toArray(String[]::new),
+          createdDates.toArray(OffsetDateTime[]::new), deduplicationKeys.toArray(String[]::new)))
+      .map(rows -> {
+        Set<UUID> insertedIds = new HashSet<>();
+        rows.forEach(row -> insertedIds.add(row.getUUID("id")));
+        List<UUID> result = new ArrayList<>(size);
+        ids.forEach(id -> result.add(insertedIds.contains(id) ? id : null));
+        return result;
+      });
+  }
+
+  /**
+   * @return those of the keys which are already stored
+   */
+  public Future<Set<String>> findExistingDeduplicationKeys(List<String> deduplicationKeys) {
+    log.debug("findExistingDeduplicationKeys:: parameters deduplicationKeys: {}",
+      deduplicationKeys::size);
+    if (deduplicationKeys.isEmpty()) {
+      return Future.succeededFuture(Set.of());
+    }
+
+    return pgClient.execute(formatQuery(FIND_DEDUPLICATION_KEYS_QUERY_TEMPLATE),
+        Tuple.of(deduplicationKeys.toArray(String[]::new)))
+      .map(rows -> {
+        Set<String> existingKeys = new HashSet<>();
+        rows.forEach(row -> existingKeys.add(row.getString("deduplication_key")));
+        return existingKeys;
+      })
+      .onSuccess(result -> log.info("findExistingDeduplicationKeys:: Found {} of {} key(s)",
+        result.size(), deduplicationKeys.size()));
+  }
+
+  /**
+   * @return events of the user in the order they were created
+   */
+  public Future<List<Event>> getByUserId(String userId) {
+    log.debug("getByUserId:: parameters userId: {}", userId);
+    UUID userUuid = toUuid(userId);
+    if (userUuid == null) {
+      return Future.succeededFuture(List.of());
+    }
+
+    return pgClient.execute(formatQuery(GET_BY_USER_ID_QUERY_TEMPLATE), Tuple.of(userUuid))
+      .map(rows -> {
+        List<Event> events = new ArrayList<>(rows.size());
+        rows.forEach(row -> events.add(toEvent(row)));
+        return events;
+      })
+      .onSuccess(result -> log.info("getByUserId:: Found {} event(s) of user {}", result.size(),
+        userId));
+  }
+
+  /**
+   * Reads events of the user one page at a time, in the order they were created. Pages are
+   * read with a keyset on the creation date and the sequence number, so every page is a range
+   * scan of the index no matter how many events the user has. Events without a creation date
+   * can not be applied to a summary and are not read.
+   *
+   * @param afterSeq only events stored after the event with this sequence number are read
+   * @param previous last event of the previous page, null for the first page
+   */
+  public Future<List<JournalEvent>> getPageByUserId(String userId, long afterSeq,
+    JournalEvent previous, int limit) {
+
+    log.debug("getPageByUserId:: parameters userId: {}, afterSeq: {}, previous: {}, " +
+      "limit: {}", () -> userId, () -> afterSeq, () -> previous == null ? null : previous.getSeq(),
+      () -> limit);
+    UUID userUuid = toUuid(userId);
+    if (userUuid == null) {
+      return Future.succeededFuture(List.of());
+    }
+
+    Tuple params = Tuple.of(userUuid, afterSeq, limit);
+    if (previous != null) {
+      params.addOffsetDateTime(toOffsetDateTime(previous.getCreatedDate()))
+        .addLong(previous.getSeq());
+    }
+
+    return pgClient.execute(formatQuery(previous == null
+        ? GET_FIRST_PAGE_BY_USER_ID_QUERY_TEMPLATE
+        : GET_NEXT_PAGE_BY_USER_ID_QUERY_TEMPLATE), params)
+      .map(rows -> {
+        List<JournalEvent> events = new ArrayList<>(rows.size());
+        rows.forEach(row -> events.add(new JournalEvent(row.getLong("seq"),
+          toDate(row.getOffsetDateTime("created_date")), toEvent(row))));
+        return events;
+      })
+      .onSuccess(result -> log.info("getPageByUserId:: Found {} event(s) of user {}",
+        result.size(), userId));
+  }
+
+  /**
+   * @return true when an event created before the given date has been stored after the event
+   * with the given sequence number
+   */
+  public Future<Boolean> existsCreatedBefore(String userId, long afterSeq, Date createdDate) {
+    log.debug("existsCreatedBefore:: parameters userId: {}, afterSeq: {}, createdDate: {}",
+      userId, afterSeq, createdDate);
+    UUID userUuid = toUuid(userId);
+    if (userUuid == null || createdDate == null) {
+      return Future.succeededFuture(false);
+    }
+
+    return pgClient.execute(formatQuery(EXISTS_CREATED_BEFORE_QUERY_TEMPLATE),
+        Tuple.of(userUuid, afterSeq, toOffsetDateTime(createdDate)))
+      .map(rows -> rows.iterator().next().getBoolean("created_before"))
+      .onSuccess(result -> log.info("existsCreatedBefore:: result: {}", result));
+  }
+
+  /**
+   * Skips from one user to the next one in the index, so reading a page of user IDs takes one
+   * index lookup per user no matter how many events the users have.
+   *
+   * @param afterUserId only IDs greater than this one are returned, null for the first page
+   * @return IDs of users who have events, in ascending order
+   */
+  public Future<List<String>> getUserIds(String afterUserId, int limit) {
+    log.debug("getUserIds:: parameters afterUserId: {}, limit: {}", afterUserId, limit);
+    UUID afterUserUuid = afterUserId == null ? new UUID(0, 0) : toUuid(afterUserId);
+    if (afterUserUuid == null) {
+      return Future.succeededFuture(List.of());
+    }
+
+    return pgClient.execute(formatQuery(GET_USER_IDS_QUERY_TEMPLATE),
+        Tuple.of(afterUserUuid, limit))
+      .map(rows -> {
+        List<String> userIds = new ArrayList<>(rows.size());
+        rows.forEach(row -> userIds.add(row.getUUID("user_id").toString()));
+        return userIds;
+      })
+      .onSuccess(result -> log.info("getUserIds:: Found {} user(s)", result.size()));
+  }
+
+  /**
+   * Deletes events of loans and fees/fines which are not open in the checkpoint and whose
+   * events are covered by it, up to the given number of events. Loans and fees/fines are
+   * independent of each other, so applying all events of the user without those events builds
+   * the same summary as applying them. Events without a loan or fee/fine ID are kept. The
+   * deduplication keys of deleted events are kept in the same statement.
+   *
+   * @return number of deleted events
+   */
+  public Future<Integer> removeCoveredByCheckpoint(String userId,
+    UserSummaryRebuildCheckpoint checkpoint, int limit) {
+
+    log.debug("removeCoveredByCheckpoint:: parameters userId: {}, checkpoint: {}, limit: {}",
+      () -> userId, checkpoint::getLastEventSeq, () -> limit);
+    UUID userUuid = toUuid(userId);
+    if (userUuid == null) {
+      return Future.succeededFuture(0);
+    }
+
+    String[] openLoanIds = checkpoint.getOpenLoans().stream()
+      .map(OpenLoan::getLoanId)
+      .toArray(String[]::new);
+    String[] openFeeFineIds = checkpoint.getOpenFeesFines().stream()
+      .map(OpenFeeFine::getFeeFineId)
+      .toArray(String[]::new);
+
+    return pgClient.execute(formatQuery(DELETE_COVERED_BY_CHECKPOINT_QUERY_TEMPLATE),
+        Tuple.of(userUuid, checkpoint.getLastEventSeq(), openLoanIds, openFeeFineIds, limit))
+      .map(rows -> rows.iterator().next().getLong("removed_count").intValue())
+      .onSuccess(result -> log.info("removeCoveredByCheckpoint:: Deleted {} event(s) of user {}",
+        result, userId));
+  }
+
+  /**
+   * Deletes deduplication keys of removed events created more than the given number of days ago.
+   *
+   * @return number of deleted keys
+   */
+  public Future<Integer> removeExpiredDeduplicationKeys(int retentionDays) {
+    log.debug("removeExpiredDeduplicationKeys:: parameters retentionDays: {}", retentionDays);
+    return pgClient.execute(formatQuery(DELETE_EXPIRED_DEDUPLICATION_KEYS_QUERY_TEMPLATE),
+        Tuple.of(retentionDays))
+      .map(RowSet::rowCount)
+      .onSuccess(result -> log.info("removeExpiredDeduplicationKeys:: Deleted {} key(s)",
+        result));
+  }
+
+  public Future<Void> removeByUserId(String userId) {
+    log.debug("removeByUserId:: parameters userId: {}", userId);
+    UUID userUuid = toUuid(userId);
+    if (userUuid == null) {
+      return Future.succeededFuture();
+    }
+
+    return pgClient.execute(formatQuery(DELETE_BY_USER_ID_QUERY_TEMPLATE), Tuple.of(userUuid))
+      .onSuccess(rows -> log.info("removeByUserId:: Deleted {} event(s) of user {}",
+        rows.rowCount(), userId))
+      .mapEmpty();
+  }
+
+  public Future<Void> removeAll() {
+    log.debug("removeAll:: removing all events");
+    return pgClient.execute(formatQuery(DELETE_ALL_QUERY_TEMPLATE))
+      .onSuccess(rows -> log.info("removeAll:: Deleted {} event(s)", rows.rowCount()))
+      .mapEmpty();
+  }
+
+  private static Event toEvent(Row row) {
+    EventType eventType = EventType.valueOf(row.getString("event_type"));
+    return ObjectMapperTool.readValue(row.getValue("jsonb").toString(),
+      eventType.getEventClass());
+  }
+
+  private static UUID toUuid(String id) {
+    try {
+      return id == null ? null : UUID.fromString(id);
+    } catch (IllegalArgumentException e) {
+      log.warn("toUuid:: Invalid UUID: {}", id);
+      return null;
+    }
+  }
+
+  private static Date toDate(OffsetDateTime dateTime) {
+    return dateTime == null ? null : Date.from(dateTime.toInstant());
+  }
+
+  private static OffsetDateTime toOffsetDateTime(Date date) {
+    return OffsetDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC);
+  }
+
+  private static OffsetDateTime getCreatedDate(Event event) {
+    return Optional.ofNullable(event.getMetadata())
+      .map(Metadata::getCreatedDate)
+      .map(EventJournalRepository::toOffsetDateTime)
+      .orElse(null);
+  }
+
+  private String formatQuery(String template) {
+    return String.format(template, convertToPsqlStandard(pgClient.getTenantId()),
+      EVENT_JOURNAL_TABLE_NAME, DEDUPLICATION_KEY_TABLE_NAME);
+  }
+}
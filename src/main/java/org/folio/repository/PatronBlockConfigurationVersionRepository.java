@@ -0,0 +1,47 @@
+package org.folio.repository;
+
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.persist.PostgresClient;
+
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+
+/**
+ * Version of the patron block conditions and limits of a tenant. The version is incremented by
+ * database triggers on every change of either table, whoever makes the change.
+ */
+public class PatronBlockConfigurationVersionRepository {
+  private static final Logger log =
+    LogManager.getLogger(PatronBlockConfigurationVersionRepository.class);
+
+  public static final String PATRON_BLOCK_CONFIGURATION_VERSION_TABLE_NAME =
+    "patron_block_configuration_version";
+  private static final String GET_VERSION_QUERY_TEMPLATE =
+    "SELECT version FROM %s.%s WHERE id = 1";
+
+  private final PostgresClient pgClient;
+
+  public PatronBlockConfigurationVersionRepository(PostgresClient pgClient) {
+    this.pgClient = pgClient;
+  }
+
+  /**
+   * @return current version or null when the version is not tracked
+   */
+  public Future<Long> getVersion() {
+    String query = String.format(GET_VERSION_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()),
+      PATRON_BLOCK_CONFIGURATION_VERSION_TABLE_NAME);
+
+    return pgClient.execute(query)
+      .map(rows -> {
+        RowIterator<Row> iterator = rows.iterator();
+        return iterator.hasNext() ? iterator.next().getLong("version") : null;
+      })
+      .onSuccess(result -> log.debug("getVersion:: result: {}", result));
+  }
+}
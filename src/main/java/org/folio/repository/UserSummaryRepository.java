@@ -1,40 +1,213 @@
 package org.folio.repository;
 
 import static io.vertx.core.Future.succeededFuture;
-import static org.folio.util.LogUtil.asJson;
+import static org.folio.domain.UserSummaryCountersCalculator.withCounters;
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+import static org.folio.service.OverduePeriodCalculator.getNextOverdueTransitionTime;
+import static org.folio.util.LogUtil.userSummaryAsString;
 import static org.folio.util.UuidHelper.randomId;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.dbschema.ObjectMapperTool;
+import org.folio.domain.UserSummaryChanges;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.Conn;
 import org.folio.rest.persist.Criteria.Criterion;
 import org.folio.rest.persist.PostgresClient;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.sqlclient.data.Numeric;
 
+/**
+ * Open loans and fees/fines of a summary are stored as rows of the open_loan and open_fee_fine
+ * tables keyed by the summary ID and the loan or fee/fine ID, the summary document holds the
+ * rest of the summary. Writing a summary writes only the rows of loans and fees/fines which were
+ * added, changed or removed. Events read and write only the rows of the loans and fees/fines
+ * they change and add the difference they make to the counters. Summaries are read with their
+ * open loans and fees/fines in the order they were added. The rebuild checkpoint of a
+ * summary is stored in a table of its own which only rebuilds read and write. Claims of overdue
+ * transitions are kept in a table of their own as well, so claiming a summary does not change it.
+ */
 public class UserSummaryRepository extends BaseRepository<UserSummary> {
   private static final Logger log = LogManager.getLogger(UserSummaryRepository.class);
   public static final String USER_SUMMARY_TABLE_NAME = "user_summary";
+  public static final String OPEN_LOAN_TABLE_NAME = "open_loan";
+  public static final String OPEN_FEE_FINE_TABLE_NAME = "open_fee_fine";
+  public static final String REBUILD_CHECKPOINT_TABLE_NAME = "user_summary_rebuild_checkpoint";
+  public static final String OVERDUE_TRANSITION_CLAIM_TABLE_NAME =
+    "user_summary_overdue_transition_claim";
+  private static final String LOAN_ID_COLUMN = "loan_id";
+  private static final String FEE_FINE_ID_COLUMN = "fee_fine_id";
   private static final String USER_ID_FIELD = "'userId'";
-  private static final String FIND_SUMMARY_BY_FEE_FINE_ID_QUERY_TEMPLATE =
-    "openFeesFines == \"*\\\"feeFineId\\\": \\\"%s\\\"*\"";
+  private static final String SELECT_BY_FEE_FINE_ID_QUERY_TEMPLATE =
+    "SELECT summary.jsonb FROM %1$s.%2$s summary " +
+    "JOIN %1$s.%3$s fee_fine ON fee_fine.user_summary_id = summary.id " +
+    "WHERE fee_fine.fee_fine_id = $1 LIMIT 1";
+  private static final String SELECT_OPEN_ITEMS_QUERY_TEMPLATE =
+    "SELECT user_summary_id, jsonb FROM %1$s.%2$s WHERE user_summary_id = ANY($1) " +
+    "ORDER BY seq";
+  private static final String SELECT_OPEN_LOANS_BY_ID_QUERY_TEMPLATE =
+    "SELECT user_summary_id, jsonb FROM %1$s.%2$s " +
+    "WHERE user_summary_id = $1 AND loan_id = ANY($2) ORDER BY seq";
+  private static final String SELECT_OPEN_FEES_FINES_BY_ID_OR_LOAN_ID_QUERY_TEMPLATE =
+    "SELECT user_summary_id, jsonb FROM %1$s.%2$s " +
+    "WHERE user_summary_id = $1 AND (fee_fine_id = ANY($2) OR jsonb->>'loanId' = ANY($3)) " +
+    "ORDER BY seq";
+  private static final String DELETE_OTHER_OPEN_ITEMS_QUERY_TEMPLATE =
+    "WITH removed AS (DELETE FROM %1$s.%2$s " +
+    "WHERE user_summary_id = $1 AND %3$s <> ALL($2)) ";
+  private static final String UPSERT_OPEN_LOANS_QUERY_TEMPLATE =
+    "INSERT INTO %1$s.%2$s AS item " +
+    "(user_summary_id, loan_id, jsonb, due_date, next_overdue_transition) " +
+    "SELECT $1, id, jsonb, due_date, next_overdue_transition " +
+    "FROM UNNEST($2::text[], $3::jsonb[], $4::timestamptz[], $5::timestamptz[]) " +
+    "WITH ORDINALITY AS items(id, jsonb, due_date, next_overdue_transition, item_order) " +
+    "ORDER BY item_order " +
+    "ON CONFLICT (user_summary_id, loan_id) DO UPDATE SET jsonb = EXCLUDED.jsonb, " +
+    "due_date = EXCLUDED.due_date, next_overdue_transition = EXCLUDED.next_overdue_transition " +
+    "WHERE (item.jsonb, item.due_date, item.next_overdue_transition) IS DISTINCT FROM " +
+    "(EXCLUDED.jsonb, EXCLUDED.due_date, EXCLUDED.next_overdue_transition)";
+  private static final String UPSERT_OPEN_FEES_FINES_QUERY_TEMPLATE =
+    "INSERT INTO %1$s.%2$s AS item (user_summary_id, fee_fine_id, jsonb) " +
+    "SELECT $1, id, jsonb FROM UNNEST($2::text[], $3::jsonb[]) " +
+    "WITH ORDINALITY AS items(id, jsonb, item_order) ORDER BY item_order " +
+    "ON CONFLICT (user_summary_id, fee_fine_id) DO UPDATE SET jsonb = EXCLUDED.jsonb " +
+    "WHERE item.jsonb IS DISTINCT FROM EXCLUDED.jsonb";
+  private static final String DELETE_OPEN_ITEMS_QUERY_TEMPLATE =
+    "DELETE FROM %1$s.%2$s WHERE user_summary_id = $1 AND %3$s = ANY($2)";
+  private static final String DELETE_WITHOUT_OPEN_ITEMS_QUERY_TEMPLATE =
+    "DELETE FROM %1$s.%2$s WHERE id = $1 " +
+    "AND NOT EXISTS (SELECT 1 FROM %1$s.%3$s WHERE user_summary_id = $1) " +
+    "AND NOT EXISTS (SELECT 1 FROM %1$s.%4$s WHERE user_summary_id = $1)";
+  private static final String UPDATE_COUNTERS_QUERY_TEMPLATE =
+    "UPDATE %1$s.%2$s SET jsonb = jsonb_set(jsonb, '{counters}', jsonb_strip_nulls(" +
+    "jsonb_build_object(" +
+    "'openLoanCount', coalesce((jsonb->'counters'->>'openLoanCount')::int, 0) + $2, " +
+    "'lostItemCount', coalesce((jsonb->'counters'->>'lostItemCount')::int, 0) + $3, " +
+    "'claimedReturnedCount', " +
+    "coalesce((jsonb->'counters'->>'claimedReturnedCount')::int, 0) + $4, " +
+    "'recallCount', coalesce((jsonb->'counters'->>'recallCount')::int, 0) + $5, " +
+    "'outstandingFeeFineBalance', " +
+    "coalesce((jsonb->'counters'->>'outstandingFeeFineBalance')::numeric, 0) + $6, " +
+    "'earliestDueDate', " +
+    "(SELECT min(due_date) FROM %1$s.%3$s WHERE user_summary_id = $1), " +
+    "'nextOverdueTransitionDate', " +
+    "(SELECT min(next_overdue_transition) FROM %1$s.%3$s WHERE user_summary_id = $1)))) " +
+    "WHERE id = $1";
+  private static final String SELECT_OPEN_LOANS_WITH_PASSED_OVERDUE_TRANSITION_QUERY_TEMPLATE =
+    "SELECT user_summary_id, jsonb FROM %1$s.%2$s " +
+    "WHERE user_summary_id = $1 AND next_overdue_transition <= now() ORDER BY seq";
+  private static final String SELECT_REBUILD_CHECKPOINT_QUERY_TEMPLATE =
+    "SELECT jsonb FROM %s.%s WHERE user_summary_id = $1";
+  private static final String SAVE_REBUILD_CHECKPOINT_QUERY_TEMPLATE =
+    "INSERT INTO %s.%s AS checkpoint (user_summary_id, jsonb) VALUES ($1, $2) " +
+    "ON CONFLICT (user_summary_id) DO UPDATE SET jsonb = EXCLUDED.jsonb " +
+    "WHERE checkpoint.jsonb IS DISTINCT FROM EXCLUDED.jsonb";
+  private static final String DELETE_REBUILD_CHECKPOINT_QUERY_TEMPLATE =
+    "DELETE FROM %s.%s WHERE user_summary_id = $1";
+  private static final String SELECT_BY_USER_IDS_QUERY_TEMPLATE =
+    "SELECT jsonb FROM %1$s.%2$s WHERE lower(%1$s.f_unaccent(jsonb->>'userId')) = ANY($1)";
+  private static final String CLAIM_WITH_PASSED_OVERDUE_TRANSITION_QUERY_TEMPLATE =
+    "WITH candidates AS (SELECT summary.id, summary.next_overdue_transition " +
+    "FROM %1$s.%2$s summary " +
+    "LEFT JOIN %1$s.%3$s claim ON claim.user_summary_id = summary.id " +
+    "WHERE summary.next_overdue_transition <= now() " +
+    "AND (claim.claimed_until IS NULL OR claim.claimed_until <= now()) " +
+    "ORDER BY summary.next_overdue_transition LIMIT $1 FOR UPDATE OF summary SKIP LOCKED), " +
+    "claimed AS (INSERT INTO %1$s.%3$s AS claim (user_summary_id, claimed_until) " +
+    "SELECT id, now() + $2::int * interval '1 second' FROM candidates " +
+    "ON CONFLICT (user_summary_id) DO UPDATE SET claimed_until = EXCLUDED.claimed_until " +
+    "WHERE claim.claimed_until <= now() RETURNING user_summary_id) " +
+    "SELECT summary.jsonb FROM %1$s.%2$s summary " +
+    "JOIN claimed ON claimed.user_summary_id = summary.id " +
+    "ORDER BY summary.next_overdue_transition";
+  private static final String RELEASE_OVERDUE_TRANSITION_CLAIMS_QUERY_TEMPLATE =
+    "DELETE FROM %s.%s WHERE user_summary_id = ANY($1)";
+  private static final String SELECT_WITHOUT_COUNTERS_QUERY_TEMPLATE =
+    "SELECT jsonb FROM %s.%s WHERE NOT jsonb ? 'counters' LIMIT $1";
+  private static final String SELECT_BY_USER_ID_FOR_UPDATE_QUERY_TEMPLATE =
+    "SELECT jsonb FROM %1$s.%2$s " +
+    "WHERE lower(%1$s.f_unaccent(jsonb->>'userId')) = lower(%1$s.f_unaccent($1)) FOR UPDATE";
 
   public UserSummaryRepository(PostgresClient pgClient) {
     super(pgClient, USER_SUMMARY_TABLE_NAME, UserSummary.class);
   }
 
   public Future<String> upsert(UserSummary entity) {
-    return super.upsert(entity, entity.getId());
+    return upsert(entity, entity.getId());
   }
 
   public Future<String> save(UserSummary entity) {
-    return super.save(entity, entity.getId());
+    return save(entity, entity.getId());
   }
 
   public Future<Boolean> update(UserSummary entity) {
-    return super.update(entity, entity.getId());
+    return update(entity, entity.getId());
+  }
+
+  /**
+   * Counters of the summary are refreshed by every write, so they always match the open loans
+   * and fees/fines stored with them. The summary document and its open loans and fees/fines are
+   * written in one transaction.
+   */
+  @Override
+  public Future<String> upsert(UserSummary entity, String id) {
+    log.debug("upsert:: parameters entity: {}, id: {}", () -> userSummaryAsString(entity),
+      () -> id);
+    return pgClient.withTrans(conn -> upsert(conn, entity, id))
+      .onSuccess(result -> log.info("upsert:: result: {}", result));
+  }
+
+  @Override
+  public Future<String> save(UserSummary entity, String id) {
+    log.debug("save:: parameters entity: {}, id: {}", () -> userSummaryAsString(entity),
+      () -> id);
+    return pgClient.withTrans(conn -> conn.save(USER_SUMMARY_TABLE_NAME, id,
+          toSummaryDocument(withCounters(entity)))
+        .compose(savedId -> saveOpenLoansAndFeesFines(conn, id, entity).map(savedId)))
+      .onSuccess(result -> log.info("save:: result: {}", result));
+  }
+
+  @Override
+  public Future<Boolean> update(UserSummary entity, String id) {
+    log.debug("update:: parameters entity: {}, id: {}", () -> userSummaryAsString(entity),
+      () -> id);
+    return pgClient.withTrans(conn -> conn.update(USER_SUMMARY_TABLE_NAME,
+          toSummaryDocument(withCounters(entity)), id)
+        .compose(rows -> rows.rowCount() == 1
+          ? saveOpenLoansAndFeesFines(conn, id, entity).map(true)
+          : succeededFuture(false)))
+      .onSuccess(result -> log.info("update:: result: {}", result));
   }
 
   public Future<UserSummary> findByUserIdOrBuildNew(String userId) {
@@ -43,15 +216,302 @@ public class UserSummaryRepository extends BaseRepository<UserSummary> {
       .map(summary -> summary.orElseGet(() -> buildEmptyUserSummary(userId)));
   }
 
+  /**
+   * Finds user summary of the user and locks it until the end of the transaction.
+   */
+  public Future<Optional<UserSummary>> findByUserIdForUpdate(Conn conn, String userId) {
+    log.debug("findByUserIdForUpdate:: parameters userId: {}", userId);
+    return lockByUserId(conn, userId)
+      .compose(summary -> withOpenLoansAndFeesFines(summary.map(List::of).orElseGet(List::of),
+        conn::execute))
+      .map(summaries -> summaries.stream().findFirst());
+  }
+
+  /**
+   * Finds user summary of the user with only the open loans and fees/fines events of the given
+   * loans and fees/fines can change, and locks it until the end of the transaction. Fees/fines of
+   * the loans are included, so are loans of the fees/fines, because whether a fee/fine counts
+   * depends on its loan.
+   */
+  public Future<Optional<UserSummary>> findByUserIdForUpdate(Conn conn, String userId,
+    Set<String> loanIds, Set<String> feeFineIds) {
+
+    log.debug("findByUserIdForUpdate:: parameters userId: {}, loanIds: {}, feeFineIds: {}",
+      userId, loanIds, feeFineIds);
+    return lockByUserId(conn, userId)
+      .compose(summary -> summary.isEmpty()
+        ? succeededFuture(summary)
+        : findOpenFeesFines(conn, summary.get(), loanIds, feeFineIds)
+          .compose(feesFines -> findOpenLoans(conn, summary.get(), loanIds, feesFines))
+          .map(summary));
+  }
+
+  private Future<Optional<UserSummary>> lockByUserId(Conn conn, String userId) {
+    String query = String.format(SELECT_BY_USER_ID_FOR_UPDATE_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME);
+
+    return conn.execute(query, Tuple.of(userId))
+      .map(rows -> {
+        RowIterator<Row> iterator = rows.iterator();
+        return iterator.hasNext()
+          ? Optional.of(ObjectMapperTool.readValue(iterator.next().getValue(0).toString(),
+            UserSummary.class))
+          : Optional.<UserSummary>empty();
+      });
+  }
+
+  private Future<List<OpenFeeFine>> findOpenFeesFines(Conn conn, UserSummary userSummary,
+    Set<String> loanIds, Set<String> feeFineIds) {
+
+    return conn.execute(formatOpenItemsQuery(
+          SELECT_OPEN_FEES_FINES_BY_ID_OR_LOAN_ID_QUERY_TEMPLATE, OPEN_FEE_FINE_TABLE_NAME,
+          FEE_FINE_ID_COLUMN),
+        Tuple.of(UUID.fromString(userSummary.getId()), feeFineIds.toArray(String[]::new),
+          loanIds.toArray(String[]::new)))
+      .map(rows -> {
+        List<OpenFeeFine> feesFines = groupBySummaryId(rows, OpenFeeFine.class)
+          .getOrDefault(UUID.fromString(userSummary.getId()), new ArrayList<>());
+        userSummary.setOpenFeesFines(feesFines);
+        return feesFines;
+      });
+  }
+
+  private Future<Void> findOpenLoans(Conn conn, UserSummary userSummary, Set<String> loanIds,
+    List<OpenFeeFine> feesFines) {
+
+    Set<String> allLoanIds = new HashSet<>(loanIds);
+    feesFines.stream()
+      .map(OpenFeeFine::getLoanId)
+      .filter(Objects::nonNull)
+      .forEach(allLoanIds::add);
+
+    return conn.execute(formatOpenItemsQuery(SELECT_OPEN_LOANS_BY_ID_QUERY_TEMPLATE,
+          OPEN_LOAN_TABLE_NAME, LOAN_ID_COLUMN),
+        Tuple.of(UUID.fromString(userSummary.getId()), allLoanIds.toArray(String[]::new)))
+      .onSuccess(rows -> userSummary.setOpenLoans(groupBySummaryId(rows, OpenLoan.class)
+        .getOrDefault(UUID.fromString(userSummary.getId()), new ArrayList<>())))
+      .mapEmpty();
+  }
+
+  public Future<String> upsert(Conn conn, UserSummary entity) {
+    log.debug("upsert:: parameters entity: {}", () -> userSummaryAsString(entity));
+    return upsert(conn, entity, entity.getId())
+      .onSuccess(result -> log.info("upsert:: result: {}", result));
+  }
+
+  private Future<String> upsert(Conn conn, UserSummary entity, String id) {
+    return conn.upsert(USER_SUMMARY_TABLE_NAME, id, toSummaryDocument(withCounters(entity)))
+      .compose(upsertedId -> saveOpenLoansAndFeesFines(conn, id, entity).map(upsertedId));
+  }
+
+  /**
+   * Writes the changes events made to a summary found by
+   * {@link #findByUserIdForUpdate(Conn, String, Set, Set)}: rows of closed loans and fees/fines
+   * are deleted, rows of added and changed ones are written and the counters are changed by the
+   * difference the changes make. The rest of the summary document is left as it is, so the update
+   * does not conflict with other updates of the summary. The summary is deleted when it has no
+   * open loans and fees/fines left.
+   *
+   * @return true when the summary was deleted
+   */
+  public Future<Boolean> applyChanges(Conn conn, String summaryId, UserSummaryChanges changes) {
+    log.debug("applyChanges:: parameters summaryId: {}, changes: {}", summaryId, changes);
+    if (changes.isEmpty()) {
+      log.info("applyChanges:: result: no changes");
+      return succeededFuture(false);
+    }
+
+    UUID id = UUID.fromString(summaryId);
+    String schema = convertToPsqlStandard(pgClient.getTenantId());
+
+    Tuple openFeesFines;
+    try {
+      openFeesFines = toOpenItemsParams(summaryId, changes.getChangedOpenFeesFines(),
+        OpenFeeFine::getFeeFineId);
+    } catch (JsonProcessingException e) {
+      log.warn("applyChanges:: Failed to serialize open fees/fines of user summary {}",
+        summaryId, e);
+      return Future.failedFuture(e);
+    }
+
+    return deleteOpenItems(conn, id, changes.getClosedLoanIds(), OPEN_LOAN_TABLE_NAME,
+        LOAN_ID_COLUMN)
+      .compose(ignored -> deleteOpenItems(conn, id, changes.getClosedFeeFineIds(),
+        OPEN_FEE_FINE_TABLE_NAME, FEE_FINE_ID_COLUMN))
+      .compose(ignored -> changes.getChangedOpenLoans().isEmpty()
+        ? succeededFuture((Void) null)
+        : upsertOpenLoans(conn, summaryId, changes.getChangedOpenLoans()))
+      .compose(ignored -> changes.getChangedOpenFeesFines().isEmpty()
+        ? succeededFuture((Void) null)
+        : conn.execute(formatOpenItemsQuery(UPSERT_OPEN_FEES_FINES_QUERY_TEMPLATE,
+          OPEN_FEE_FINE_TABLE_NAME, FEE_FINE_ID_COLUMN), openFeesFines).<Void>mapEmpty())
+      .compose(ignored -> changes.getClosedLoanIds().isEmpty() &&
+        changes.getClosedFeeFineIds().isEmpty()
+        ? succeededFuture(false)
+        : conn.execute(String.format(DELETE_WITHOUT_OPEN_ITEMS_QUERY_TEMPLATE, schema,
+            USER_SUMMARY_TABLE_NAME, OPEN_LOAN_TABLE_NAME, OPEN_FEE_FINE_TABLE_NAME),
+          Tuple.of(id)).map(rows -> rows.rowCount() == 1))
+      .compose(deleted -> deleted
+        ? succeededFuture(true)
+        : updateCounters(conn, id, changes.getCountersDelta()).map(false))
+      .onSuccess(result -> log.info("applyChanges:: result: {}", result));
+  }
+
+  /**
+   * Moves loans whose next overdue transition has passed on to their next transition and derives
+   * the earliest transition of the summary again. Transitions of other loans do not depend on the
+   * current time and counts do not change, so nothing else is read or written. A summary stored
+   * before counters were introduced is written as a whole, so all of its counters are calculated.
+   */
+  public Future<Void> refreshOverdueTransitions(Conn conn, String userId) {
+    log.debug("refreshOverdueTransitions:: parameters userId: {}", userId);
+    return lockByUserId(conn, userId)
+      .compose(summary -> {
+        if (summary.isEmpty()) {
+          return succeededFuture((Void) null);
+        }
+        if (summary.get().getCounters() == null) {
+          return withOpenLoansAndFeesFines(List.of(summary.get()), conn::execute)
+            .compose(summaries -> upsert(conn, summary.get(), summary.get().getId()))
+            .<Void>mapEmpty();
+        }
+
+        UUID id = UUID.fromString(summary.get().getId());
+        return conn.execute(formatOpenItemsQuery(
+              SELECT_OPEN_LOANS_WITH_PASSED_OVERDUE_TRANSITION_QUERY_TEMPLATE,
+              OPEN_LOAN_TABLE_NAME, LOAN_ID_COLUMN), Tuple.of(id))
+          .compose(rows -> rows.size() == 0
+            ? succeededFuture((Void) null)
+            : upsertOpenLoans(conn, summary.get().getId(),
+              groupBySummaryId(rows, OpenLoan.class).get(id)))
+          .compose(ignored -> updateCounters(conn, id, new UserSummaryCounters()
+            .withOpenLoanCount(0)
+            .withLostItemCount(0)
+            .withClaimedReturnedCount(0)
+            .withRecallCount(0)
+            .withOutstandingFeeFineBalance(BigDecimal.ZERO)));
+      })
+      .onSuccess(result -> log.info("refreshOverdueTransitions:: overdue transitions of user " +
+        "{} refreshed", userId));
+  }
+
+  private Future<Void> upsertOpenLoans(Conn conn, String summaryId, List<OpenLoan> openLoans) {
+    try {
+      return conn.execute(formatOpenItemsQuery(UPSERT_OPEN_LOANS_QUERY_TEMPLATE,
+          OPEN_LOAN_TABLE_NAME, LOAN_ID_COLUMN), toOpenLoansParams(summaryId, openLoans))
+        .mapEmpty();
+    } catch (JsonProcessingException e) {
+      log.warn("upsertOpenLoans:: Failed to serialize open loans of user summary {}",
+        summaryId, e);
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Adds the differences to the counts and to the outstanding balance, the earliest due date and
+   * the next overdue transition are read from the indexes of the open loans.
+   */
+  private Future<Void> updateCounters(Conn conn, UUID summaryId,
+    UserSummaryCounters countersDelta) {
+
+    return conn.execute(String.format(UPDATE_COUNTERS_QUERY_TEMPLATE,
+          convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME,
+          OPEN_LOAN_TABLE_NAME),
+        Tuple.of(summaryId, countersDelta.getOpenLoanCount(), countersDelta.getLostItemCount(),
+          countersDelta.getClaimedReturnedCount(), countersDelta.getRecallCount(),
+          Numeric.create(countersDelta.getOutstandingFeeFineBalance())))
+      .mapEmpty();
+  }
+
+  private Future<Void> deleteOpenItems(Conn conn, UUID summaryId, List<String> ids,
+    String tableName, String idColumn) {
+
+    return ids.isEmpty()
+      ? succeededFuture()
+      : conn.execute(formatOpenItemsQuery(DELETE_OPEN_ITEMS_QUERY_TEMPLATE, tableName, idColumn),
+        Tuple.of(summaryId, ids.toArray(String[]::new))).mapEmpty();
+  }
+
+  public Future<Boolean> delete(Conn conn, String id) {
+    log.debug("delete:: parameters id: {}", id);
+    return conn.delete(USER_SUMMARY_TABLE_NAME, id)
+      .map(rowSet -> rowSet.rowCount() == 1)
+      .onSuccess(result -> log.info("delete:: result: {}", result));
+  }
+
+  /**
+   * Writes the summary rebuilt from the event journal together with its new checkpoint in one
+   * transaction. The checkpoint is deleted when there is none.
+   */
+  public Future<String> upsertRebuilt(UserSummary entity,
+    UserSummaryRebuildCheckpoint checkpoint) {
+
+    log.debug("upsertRebuilt:: parameters entity: {}, checkpoint: {}",
+      () -> userSummaryAsString(entity), () -> checkpoint == null
+        ? null : checkpoint.getLastEventSeq());
+    return pgClient.withTrans(conn -> upsert(conn, entity, entity.getId())
+        .compose(upsertedId -> saveRebuildCheckpoint(conn, entity.getId(), checkpoint)
+          .map(upsertedId)))
+      .onSuccess(result -> log.info("upsertRebuilt:: result: {}", result));
+  }
+
+  public Future<Optional<UserSummaryRebuildCheckpoint>> findRebuildCheckpoint(String summaryId) {
+    log.debug("findRebuildCheckpoint:: parameters summaryId: {}", summaryId);
+    String query = String.format(SELECT_REBUILD_CHECKPOINT_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()), REBUILD_CHECKPOINT_TABLE_NAME);
+
+    return pgClient.execute(query, Tuple.of(UUID.fromString(summaryId)))
+      .map(rows -> {
+        RowIterator<Row> iterator = rows.iterator();
+        return iterator.hasNext()
+          ? Optional.of(ObjectMapperTool.readValue(iterator.next().getValue(0).toString(),
+            UserSummaryRebuildCheckpoint.class))
+          : Optional.<UserSummaryRebuildCheckpoint>empty();
+      })
+      .onSuccess(result -> log.info("findRebuildCheckpoint:: result: {}", () -> result
+        .map(UserSummaryRebuildCheckpoint::getLastEventSeq)
+        .orElse(null)));
+  }
+
+  private Future<Void> saveRebuildCheckpoint(Conn conn, String summaryId,
+    UserSummaryRebuildCheckpoint checkpoint) {
+
+    String schema = convertToPsqlStandard(pgClient.getTenantId());
+    if (checkpoint == null) {
+      return conn.execute(String.format(DELETE_REBUILD_CHECKPOINT_QUERY_TEMPLATE, schema,
+          REBUILD_CHECKPOINT_TABLE_NAME), Tuple.of(UUID.fromString(summaryId)))
+        .mapEmpty();
+    }
+
+    try {
+      return conn.execute(String.format(SAVE_REBUILD_CHECKPOINT_QUERY_TEMPLATE, schema,
+            REBUILD_CHECKPOINT_TABLE_NAME),
+          Tuple.of(UUID.fromString(summaryId), PostgresClient.pojo2JsonObject(checkpoint)))
+        .mapEmpty();
+    } catch (JsonProcessingException e) {
+      log.warn("saveRebuildCheckpoint:: Failed to serialize rebuild checkpoint of user " +
+        "summary {}", summaryId, e);
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Finds user summary which has an open fee/fine with the given ID. The query is served by the
+   * index on the fee/fine ID of open fees/fines.
+   */
   public Future<Optional<UserSummary>> findByFeeFineId(String feeFineId) {
     log.debug("findByFeeFineId:: parameters feeFineId: {}", feeFineId);
-    String query = String.format(FIND_SUMMARY_BY_FEE_FINE_ID_QUERY_TEMPLATE, feeFineId);
+    String query = String.format(SELECT_BY_FEE_FINE_ID_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME,
+      OPEN_FEE_FINE_TABLE_NAME);
 
-    return get(query, 0, 1)
-      .map(queryResult -> {
-        Optional<UserSummary> result = queryResult.stream().findFirst();
+    return pgClient.execute(query, Tuple.of(feeFineId))
+      .map(UserSummaryRepository::toUserSummaries)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute))
+      .map(summaries -> {
+        Optional<UserSummary> result = summaries.stream().findFirst();
         if (result.isPresent()) {
-          log.info("findByFeeFineId:: result: {}", () -> asJson(result.get()));
+          log.info("findByFeeFineId:: result: {}", () -> userSummaryAsString(result.get()));
         } else {
           log.info("findByFeeFineId:: result: empty");
         }
@@ -59,6 +519,102 @@ public class UserSummaryRepository extends BaseRepository<UserSummary> {
       });
   }
 
+  /**
+   * Finds user summaries of all the users with one query served by the unique index on userId.
+   * Users without a summary are left out of the result.
+   */
+  public Future<List<UserSummary>> findByUserIds(List<String> userIds) {
+    log.debug("findByUserIds:: parameters userIds: {}", userIds);
+    String query = String.format(SELECT_BY_USER_IDS_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME);
+    String[] lowerCaseUserIds = userIds.stream()
+      .map(userId -> userId.toLowerCase(Locale.ROOT))
+      .toArray(String[]::new);
+
+    return pgClient.execute(query, Tuple.of(lowerCaseUserIds))
+      .map(UserSummaryRepository::toUserSummaries)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute))
+      .onSuccess(result -> log.info("findByUserIds:: result: {} user summaries",
+        result.size()));
+  }
+
+  /**
+   * Claims user summaries whose next overdue transition has passed, the earliest first. A claimed
+   * summary is not returned again, to this or another module instance, until its claim is
+   * released or the given number of seconds has passed. Summaries locked by a running update are
+   * skipped, the next scan picks them up. Candidates are found through the partial index on the
+   * next_overdue_transition column.
+   */
+  public Future<List<UserSummary>> claimWithPassedOverdueTransition(int limit,
+    int claimSeconds) {
+
+    log.debug("claimWithPassedOverdueTransition:: parameters limit: {}, claimSeconds: {}",
+      limit, claimSeconds);
+    String query = String.format(CLAIM_WITH_PASSED_OVERDUE_TRANSITION_QUERY_TEMPLATE,
+      convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME,
+      OVERDUE_TRANSITION_CLAIM_TABLE_NAME);
+
+    return pgClient.execute(query, Tuple.of(limit, claimSeconds))
+      .map(UserSummaryRepository::toUserSummaries)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute))
+      .onSuccess(result -> log.info("claimWithPassedOverdueTransition:: result: {} user " +
+        "summaries", result.size()));
+  }
+
+  public Future<Integer> releaseOverdueTransitionClaims(List<String> summaryIds) {
+    log.debug("releaseOverdueTransitionClaims:: parameters summaryIds: {}", summaryIds);
+    if (summaryIds.isEmpty()) {
+      return succeededFuture(0);
+    }
+
+    return pgClient.execute(String.format(RELEASE_OVERDUE_TRANSITION_CLAIMS_QUERY_TEMPLATE,
+          convertToPsqlStandard(pgClient.getTenantId()), OVERDUE_TRANSITION_CLAIM_TABLE_NAME),
+        Tuple.of(summaryIds.stream()
+          .map(UUID::fromString)
+          .toArray(UUID[]::new)))
+      .map(RowSet::rowCount)
+      .onSuccess(result -> log.info("releaseOverdueTransitionClaims:: result: {}", result));
+  }
+
+  /**
+   * Finds user summaries stored before counters were introduced.
+   */
+  public Future<List<UserSummary>> findWithoutCounters(int limit) {
+    log.debug("findWithoutCounters:: parameters limit: {}", limit);
+    return findByQuery(SELECT_WITHOUT_COUNTERS_QUERY_TEMPLATE, limit)
+      .onSuccess(result -> log.info("findWithoutCounters:: result: {} user summaries",
+        result.size()));
+  }
+
+  private Future<List<UserSummary>> findByQuery(String queryTemplate, int limit) {
+    String query = String.format(queryTemplate,
+      convertToPsqlStandard(pgClient.getTenantId()), USER_SUMMARY_TABLE_NAME);
+
+    return pgClient.execute(query, Tuple.of(limit))
+      .map(UserSummaryRepository::toUserSummaries)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute));
+  }
+
+  @Override
+  public Future<List<UserSummary>> get(String query, int offset, int limit) {
+    return super.get(query, offset, limit)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute));
+  }
+
+  @Override
+  public Future<List<UserSummary>> get(Criterion criterion) {
+    return super.get(criterion)
+      .compose(summaries -> withOpenLoansAndFeesFines(summaries, pgClient::execute));
+  }
+
+  @Override
+  public Future<Optional<UserSummary>> get(String id) {
+    return super.get(id)
+      .compose(summary -> withOpenLoansAndFeesFines(summary.map(List::of).orElseGet(List::of),
+        pgClient::execute))
+      .map(summaries -> summaries.stream().findFirst());
+  }
+
   public Future<Optional<UserSummary>> getByUserId(String userId) {
     log.debug("getByUserId:: parameters userId: {}", userId);
     return this.get(buildCriterionWithUserId(userId))
@@ -69,7 +625,7 @@ public class UserSummaryRepository extends BaseRepository<UserSummary> {
         }
 
         UserSummary result = results.get(0);
-        log.info("getByUserId:: result: {}", () -> asJson(result));
+        log.info("getByUserId:: result: {}", () -> userSummaryAsString(result));
         return succeededFuture(Optional.ofNullable(result));
       });
   }
@@ -78,6 +634,159 @@ public class UserSummaryRepository extends BaseRepository<UserSummary> {
     return delete(buildCriterionWithUserId(userId));
   }
 
+  /**
+   * Reads open loans and fees/fines of all the summaries with one query per table.
+   */
+  private Future<List<UserSummary>> withOpenLoansAndFeesFines(List<UserSummary> userSummaries,
+    BiFunction<String, Tuple, Future<RowSet<Row>>> executor) {
+
+    if (userSummaries.isEmpty()) {
+      return succeededFuture(userSummaries);
+    }
+
+    Tuple summaryIds = Tuple.of(userSummaries.stream()
+      .map(userSummary -> UUID.fromString(userSummary.getId()))
+      .toArray(UUID[]::new));
+
+    return executor.apply(formatOpenItemsQuery(SELECT_OPEN_ITEMS_QUERY_TEMPLATE,
+        OPEN_LOAN_TABLE_NAME, LOAN_ID_COLUMN), summaryIds)
+      .compose(loanRows -> executor.apply(formatOpenItemsQuery(SELECT_OPEN_ITEMS_QUERY_TEMPLATE,
+          OPEN_FEE_FINE_TABLE_NAME, FEE_FINE_ID_COLUMN), summaryIds)
+        .map(feeFineRows -> {
+          Map<UUID, List<OpenLoan>> openLoans = groupBySummaryId(loanRows, OpenLoan.class);
+          Map<UUID, List<OpenFeeFine>> openFeesFines = groupBySummaryId(feeFineRows,
+            OpenFeeFine.class);
+          userSummaries.forEach(userSummary -> {
+            UUID summaryId = UUID.fromString(userSummary.getId());
+            userSummary.setOpenLoans(openLoans.getOrDefault(summaryId, new ArrayList<>()));
+            userSummary.setOpenFeesFines(openFeesFines.getOrDefault(summaryId,
+              new ArrayList<>()));
+          });
+          return userSummaries;
+        }));
+  }
+
+  /**
+   * Deletes rows of loans and fees/fines which are no longer open and writes rows of those which
+   * were added or changed, rows of unchanged loans and fees/fines are left as they are. Only the
+   * first of several loans or fees/fines with the same ID is stored.
+   */
+  private Future<Void> saveOpenLoansAndFeesFines(Conn conn, String summaryId,
+    UserSummary userSummary) {
+
+    Tuple openLoans;
+    Tuple openFeesFines;
+    try {
+      openLoans = toOpenLoansParams(summaryId, userSummary.getOpenLoans());
+      openFeesFines = toOpenItemsParams(summaryId, userSummary.getOpenFeesFines(),
+        OpenFeeFine::getFeeFineId);
+    } catch (JsonProcessingException e) {
+      log.warn("saveOpenLoansAndFeesFines:: Failed to serialize open loans and fees/fines of " +
+        "user summary {}", summaryId, e);
+      return Future.failedFuture(e);
+    }
+
+    return conn.execute(formatOpenItemsQuery(DELETE_OTHER_OPEN_ITEMS_QUERY_TEMPLATE +
+        UPSERT_OPEN_LOANS_QUERY_TEMPLATE, OPEN_LOAN_TABLE_NAME, LOAN_ID_COLUMN), openLoans)
+      .compose(ignored -> conn.execute(formatOpenItemsQuery(
+        DELETE_OTHER_OPEN_ITEMS_QUERY_TEMPLATE + UPSERT_OPEN_FEES_FINES_QUERY_TEMPLATE,
+        OPEN_FEE_FINE_TABLE_NAME, FEE_FINE_ID_COLUMN), openFeesFines))
+      .mapEmpty();
+  }
+
+  private static <T> Tuple toOpenItemsParams(String summaryId, List<T> items,
+    Function<T, String> idGetter) throws JsonProcessingException {
+
+    Map<String, JsonObject> itemsById = new LinkedHashMap<>();
+    if (items != null) {
+      for (T item : items) {
+        String id = idGetter.apply(item);
+        if (id != null && !itemsById.containsKey(id)) {
+          itemsById.put(id, PostgresClient.pojo2JsonObject(item));
+        }
+      }
+    }
+
+    return Tuple.of(UUID.fromString(summaryId), itemsById.keySet().toArray(String[]::new),
+      itemsById.values().toArray(JsonObject[]::new));
+  }
+
+  /**
+   * Loans which are claimed returned have neither a due date nor a next overdue transition,
+   * they do not count as open loans.
+   */
+  private static Tuple toOpenLoansParams(String summaryId, List<OpenLoan> openLoans)
+    throws JsonProcessingException {
+
+    long currentTime = System.currentTimeMillis();
+    Map<String, OpenLoan> loansById = new LinkedHashMap<>();
+    if (openLoans != null) {
+      openLoans.forEach(openLoan -> {
+        if (openLoan.getLoanId() != null) {
+          loansById.putIfAbsent(openLoan.getLoanId(), openLoan);
+        }
+      });
+    }
+
+    List<JsonObject> json = new ArrayList<>(loansById.size());
+    List<OffsetDateTime> dueDates = new ArrayList<>(loansById.size());
+    List<OffsetDateTime> nextOverdueTransitions = new ArrayList<>(loansById.size());
+    for (OpenLoan openLoan : loansById.values()) {
+      json.add(PostgresClient.pojo2JsonObject(openLoan));
+      boolean counted = !Boolean.TRUE.equals(openLoan.getItemClaimedReturned());
+      dueDates.add(counted && openLoan.getDueDate() != null
+        ? toOffsetDateTime(openLoan.getDueDate().getTime())
+        : null);
+      long nextOverdueTransition = getNextOverdueTransitionTime(openLoan, currentTime);
+      nextOverdueTransitions.add(counted && nextOverdueTransition != Long.MAX_VALUE
+        ? toOffsetDateTime(nextOverdueTransition)
+        : null);
+    }
+
+    return Tuple.of(UUID.fromString(summaryId), loansById.keySet().toArray(String[]::new),
+      json.toArray(JsonObject[]::new), dueDates.toArray(OffsetDateTime[]::new),
+      nextOverdueTransitions.toArray(OffsetDateTime[]::new));
+  }
+
+  private static OffsetDateTime toOffsetDateTime(long epochMillis) {
+    return Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC);
+  }
+
+  private static <T> Map<UUID, List<T>> groupBySummaryId(RowSet<Row> rows, Class<T> itemType) {
+    Map<UUID, List<T>> itemsBySummaryId = new HashMap<>();
+    rows.forEach(row -> itemsBySummaryId
+      .computeIfAbsent(row.getUUID("user_summary_id"), id -> new ArrayList<>())
+      .add(ObjectMapperTool.readValue(row.getValue("jsonb").toString(), itemType)));
+    return itemsBySummaryId;
+  }
+
+  /**
+   * Open loans and fees/fines and the rebuild checkpoint are not part of the stored summary
+   * document.
+   */
+  private static UserSummary toSummaryDocument(UserSummary userSummary) {
+    return new UserSummary()
+      .withId(userSummary.getId())
+      .withVersion(userSummary.getVersion())
+      .withUserId(userSummary.getUserId())
+      .withOpenLoans(null)
+      .withOpenFeesFines(null)
+      .withCounters(userSummary.getCounters())
+      .withMetadata(userSummary.getMetadata());
+  }
+
+  private static List<UserSummary> toUserSummaries(RowSet<Row> rows) {
+    List<UserSummary> result = new ArrayList<>(rows.rowCount());
+    rows.forEach(row -> result.add(
+      ObjectMapperTool.readValue(row.getValue(0).toString(), UserSummary.class)));
+    return result;
+  }
+
+  private String formatOpenItemsQuery(String template, String tableName, String idColumn) {
+    return String.format(template, convertToPsqlStandard(pgClient.getTenantId()), tableName,
+      idColumn);
+  }
+
   private UserSummary buildEmptyUserSummary(String userId) {
     return new UserSummary()
       .withId(randomId())
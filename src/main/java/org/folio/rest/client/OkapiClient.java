@@ -48,6 +48,10 @@ public class OkapiClient {
     token = headers.get(TOKEN);
   }
 
+  String getTenant() {
+    return tenant;
+  }
+
   HttpRequest<Buffer> getAbs(String path) {
     return webClient.requestAbs(HttpMethod.GET, okapiUrl + path)
       .putHeader(ACCEPT, APPLICATION_JSON)
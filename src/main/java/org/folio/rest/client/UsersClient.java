@@ -1,29 +1,157 @@
 package org.folio.rest.client;
 
+import static io.vertx.core.Future.failedFuture;
 import static io.vertx.core.Future.succeededFuture;
+import static org.folio.util.ConfigUtil.getInt;
+import static org.folio.util.LogUtil.bodyAsString;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.exception.HttpFailureException;
+import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.rest.jaxrs.model.User;
+import org.folio.util.StringUtil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
 
 public class UsersClient extends OkapiClient {
   private static final Logger log = LogManager.getLogger(UsersClient.class);
 
+  public static final String PATRON_GROUP_CACHE_SIZE_PROPERTY = "PATRON_GROUP_CACHE_SIZE";
+  public static final String PATRON_GROUP_CACHE_TTL_PROPERTY = "PATRON_GROUP_CACHE_TTL_SECONDS";
+  private static final int DEFAULT_PATRON_GROUP_CACHE_SIZE = 10000;
+  private static final int DEFAULT_PATRON_GROUP_CACHE_TTL_SECONDS = 300;
+  // Keeps the URL of a users query well below the request line limits of Okapi and the module
+  private static final int USERS_BY_IDS_CHUNK_SIZE = 50;
+  private static final String USERS_BY_IDS_PATH_TEMPLATE = "/users?limit=%d&query=%s";
+
+  // Patron group IDs of users by tenant, shared by all clients of the tenant
+  private static final Map<String, Cache<String, String>> patronGroupIdCaches =
+    new ConcurrentHashMap<>();
+
   public UsersClient(Vertx vertx, Map<String, String> okapiHeaders) {
     super(vertx, okapiHeaders);
   }
 
+  /**
+   * Patron group IDs are cached for a limited time, a user moved to another patron group is
+   * noticed once the entry expires or is invalidated with
+   * {@link #invalidatePatronGroupId(String, String)}.
+   */
   public Future<String> findPatronGroupIdForUser(String userId) {
+    Cache<String, String> cache = getPatronGroupIdCache(getTenant());
+    String cachedPatronGroupId = cache.getIfPresent(userId);
+    if (cachedPatronGroupId != null) {
+      log.debug("findPatronGroupIdForUser:: Using cached patron group ID {} for user {}",
+        cachedPatronGroupId, userId);
+      return succeededFuture(cachedPatronGroupId);
+    }
+
     return fetchById("users", userId, User.class).compose(user -> {
         String patronGroupId = user.getPatronGroup();
-        log.info("Patron group ID for user {} successfully found: {}", userId, patronGroupId);
+        log.debug("findPatronGroupIdForUser:: Patron group ID for user {} found: {}", userId,
+          patronGroupId);
+        if (patronGroupId != null) {
+          cache.put(userId, patronGroupId);
+        }
         return succeededFuture(patronGroupId);
       }
     );
   }
+
+  /**
+   * Finds patron group IDs of several users. Cached IDs are used where present, the rest are
+   * fetched with a query by user IDs split into chunks, which are sent concurrently.
+   *
+   * @return patron group IDs by user ID, users that were not found are left out
+   */
+  public Future<Map<String, String>> findPatronGroupIdsForUsers(List<String> userIds) {
+    log.debug("findPatronGroupIdsForUsers:: parameters userIds: {}", userIds);
+    Cache<String, String> cache = getPatronGroupIdCache(getTenant());
+    Map<String, String> patronGroupIds = new HashMap<>();
+    List<String> userIdsToFetch = new ArrayList<>();
+    for (String userId : userIds) {
+      String cachedPatronGroupId = cache.getIfPresent(userId);
+      if (cachedPatronGroupId != null) {
+        patronGroupIds.put(userId, cachedPatronGroupId);
+      } else {
+        userIdsToFetch.add(userId);
+      }
+    }
+
+    List<Future<List<User>>> chunks = new ArrayList<>();
+    for (List<String> chunk : Lists.partition(userIdsToFetch, USERS_BY_IDS_CHUNK_SIZE)) {
+      chunks.add(fetchUsersByIds(chunk));
+    }
+
+    return GenericCompositeFuture.all(chunks)
+      .map(ignored -> {
+        chunks.stream()
+          .flatMap(chunk -> chunk.result().stream())
+          .filter(user -> user.getId() != null && user.getPatronGroup() != null)
+          .forEach(user -> {
+            patronGroupIds.put(user.getId(), user.getPatronGroup());
+            cache.put(user.getId(), user.getPatronGroup());
+          });
+        log.info("findPatronGroupIdsForUsers:: Found patron group IDs of {} users out of {}, " +
+          "{} fetched", patronGroupIds.size(), userIds.size(), userIdsToFetch.size());
+        return patronGroupIds;
+      });
+  }
+
+  private Future<List<User>> fetchUsersByIds(List<String> userIds) {
+    String query = "id==(" + String.join(" or ", userIds) + ")";
+    String path = String.format(USERS_BY_IDS_PATH_TEMPLATE, userIds.size(),
+      StringUtil.urlEncode(query));
+
+    Promise<HttpResponse<Buffer>> promise = Promise.promise();
+    getAbs(path).send(promise);
+
+    return promise.future().compose(response -> {
+      if (response.statusCode() != 200) {
+        String errorMessage = String.format("Failed to fetch users by IDs. Response: %d %s",
+          response.statusCode(), bodyAsString(response));
+        log.warn("fetchUsersByIds:: {}", errorMessage);
+        return failedFuture(new HttpFailureException(errorMessage));
+      }
+
+      List<User> users = new ArrayList<>();
+      response.bodyAsJsonObject().getJsonArray("users").forEach(user ->
+        users.add(((JsonObject) user).mapTo(User.class)));
+      return succeededFuture(users);
+    });
+  }
+
+  public static void invalidatePatronGroupId(String tenantId, String userId) {
+    Cache<String, String> cache = patronGroupIdCaches.get(tenantId);
+    if (cache != null) {
+      log.debug("invalidatePatronGroupId:: tenantId: {}, userId: {}", tenantId, userId);
+      cache.invalidate(userId);
+    }
+  }
+
+  private static Cache<String, String> getPatronGroupIdCache(String tenantId) {
+    return patronGroupIdCaches.computeIfAbsent(tenantId, key -> CacheBuilder.newBuilder()
+      .maximumSize(Math.max(0, getInt(PATRON_GROUP_CACHE_SIZE_PROPERTY,
+        DEFAULT_PATRON_GROUP_CACHE_SIZE)))
+      .expireAfterWrite(Math.max(0, getInt(PATRON_GROUP_CACHE_TTL_PROPERTY,
+        DEFAULT_PATRON_GROUP_CACHE_TTL_SECONDS)), TimeUnit.SECONDS)
+      .build());
+  }
 }
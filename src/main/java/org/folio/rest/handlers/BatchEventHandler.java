@@ -0,0 +1,179 @@
+package org.folio.rest.handlers;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.util.LogUtil.asJson;
+import static org.folio.util.PostgresUtils.getPostgresClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.domain.Event;
+import org.folio.okapi.common.GenericCompositeFuture;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.service.EventIngestionExecutor;
+import org.folio.service.EventService;
+import org.folio.service.TenantServices;
+import org.folio.service.UserSummaryService;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Handles a batch of events of mixed types. Events of each user are stored with one insert per
+ * event table and the user's summary is read, updated with all of the user's events and written
+ * back once, all in one transaction per user. Users are handled independently, a failure of one
+ * user's transaction does not affect events of other users. The tenant's ingestion executor
+ * limits how many users are handled at the same time.
+ */
+public class BatchEventHandler {
+  private static final Logger log = LogManager.getLogger(BatchEventHandler.class);
+
+  private final UserSummaryRepository userSummaryRepository;
+  private final EventService eventService;
+  private final UserSummaryService userSummaryService;
+  private final EventIngestionExecutor ingestionExecutor;
+
+  public BatchEventHandler(Map<String, String> okapiHeaders, Vertx vertx) {
+    this(getPostgresClient(okapiHeaders, vertx));
+  }
+
+  public BatchEventHandler(PostgresClient postgresClient) {
+    this(TenantServices.forTenant(postgresClient));
+  }
+
+  private BatchEventHandler(TenantServices services) {
+    this(services.getUserSummaryRepository(), services.getEventService(),
+      services.getUserSummaryService(),
+      EventIngestionExecutor.forTenant(services.getPostgresClient().getTenantId()));
+  }
+
+  public BatchEventHandler(UserSummaryRepository userSummaryRepository,
+    EventService eventService, UserSummaryService userSummaryService,
+    EventIngestionExecutor ingestionExecutor) {
+
+    this.userSummaryRepository = userSummaryRepository;
+    this.eventService = eventService;
+    this.userSummaryService = userSummaryService;
+    this.ingestionExecutor = ingestionExecutor;
+  }
+
+  /**
+   * @return events which failed to be processed, empty when all of them succeeded
+   */
+  public Future<List<Event>> handle(List<Event> events) {
+    log.debug("handle:: parameters events: {}", events::size);
+    if (events.isEmpty()) {
+      return succeededFuture(List.of());
+    }
+
+    return groupEventsByUserId(events)
+      .compose(this::saveEventsAndUpdateUserSummaries)
+      .recover(t -> {
+        log.warn("handle:: Failed to find users of batch of {} event(s)", events.size(), t);
+        return succeededFuture(events);
+      })
+      .onSuccess(failedEvents -> log.info("handle:: Processed {} of {} event(s) successfully",
+        events.size() - failedEvents.size(), events.size()));
+  }
+
+  private Future<GroupedEvents> groupEventsByUserId(List<Event> events) {
+    Map<String, String> userIdsByFeeFineId = new HashMap<>();
+    events.stream()
+      .filter(FeeFineBalanceChangedEvent.class::isInstance)
+      .map(FeeFineBalanceChangedEvent.class::cast)
+      .filter(event -> event.getUserId() != null)
+      .forEach(event -> userIdsByFeeFineId.put(event.getFeeFineId(), event.getUserId()));
+
+    List<Future<Optional<String>>> userIds = new ArrayList<>(events.size());
+    for (Event event : events) {
+      userIds.add(resolveUserId(event, userIdsByFeeFineId));
+    }
+
+    return GenericCompositeFuture.all(userIds)
+      .map(ignored -> {
+        GroupedEvents groupedEvents = new GroupedEvents();
+        for (int i = 0; i < events.size(); i++) {
+          Event event = events.get(i);
+          userIds.get(i).result().ifPresentOrElse(
+            userId -> groupedEvents.eventsByUserId
+              .computeIfAbsent(userId, key -> new ArrayList<>())
+              .add(event),
+            () -> {
+              log.warn("groupEventsByUserId:: User summary for event {} was not found, " +
+                "event is ignored", () -> asJson(event));
+              groupedEvents.eventsWithoutUser.add(event);
+            });
+        }
+        return groupedEvents;
+      });
+  }
+
+  private Future<Optional<String>> resolveUserId(Event event,
+    Map<String, String> userIdsByFeeFineId) {
+
+    if (event.getUserId() != null) {
+      return succeededFuture(Optional.of(event.getUserId()));
+    }
+    if (!(event instanceof FeeFineBalanceChangedEvent)) {
+      return succeededFuture(Optional.empty());
+    }
+
+    String feeFineId = ((FeeFineBalanceChangedEvent) event).getFeeFineId();
+    if (userIdsByFeeFineId.containsKey(feeFineId)) {
+      return succeededFuture(Optional.of(userIdsByFeeFineId.get(feeFineId)));
+    }
+
+    return userSummaryRepository.findByFeeFineId(feeFineId)
+      .map(summary -> summary.map(UserSummary::getUserId));
+  }
+
+  /**
+   * Events without a user are only stored. Waits for all users, whether they succeed or fail.
+   *
+   * @return events of the users whose transaction failed
+   */
+  private Future<List<Event>> saveEventsAndUpdateUserSummaries(GroupedEvents groupedEvents) {
+    List<List<Event>> eventGroups = new ArrayList<>();
+    List<Future<Void>> futures = new ArrayList<>();
+
+    eventGroups.add(groupedEvents.eventsWithoutUser);
+    futures.add(eventService.saveAll(groupedEvents.eventsWithoutUser)
+      .onFailure(t -> log.warn("saveEventsAndUpdateUserSummaries:: Failed to save {} event(s) " +
+        "without user", groupedEvents.eventsWithoutUser.size(), t))
+      .mapEmpty());
+
+    groupedEvents.eventsByUserId.forEach((userId, userEvents) -> {
+      eventGroups.add(userEvents);
+      futures.add(ingestionExecutor.execute(() ->
+          userSummaryService.saveEventsAndUpdateUserSummary(userId, userEvents))
+        .onFailure(t -> log.warn("saveEventsAndUpdateUserSummaries:: Failed to process {} " +
+          "event(s) of user {}", userEvents.size(), userId, t))
+        .mapEmpty());
+    });
+
+    return GenericCompositeFuture.join(futures)
+      .transform(ignored -> {
+        List<Event> failedEvents = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+          if (futures.get(i).failed()) {
+            failedEvents.addAll(eventGroups.get(i));
+          }
+        }
+        return succeededFuture(failedEvents);
+      });
+  }
+
+  private static class GroupedEvents {
+    private final Map<String, List<Event>> eventsByUserId = new LinkedHashMap<>();
+    private final List<Event> eventsWithoutUser = new ArrayList<>();
+  }
+}
@@ -1,8 +1,11 @@
 package org.folio.rest.handlers;
 
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
 import static org.folio.util.LogUtil.asJson;
 import static org.folio.util.PostgresUtils.getPostgresClient;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -10,9 +13,9 @@ import org.apache.logging.log4j.Logger;
 import org.folio.domain.Event;
 import org.folio.domain.EventType;
 import org.folio.repository.UserSummaryRepository;
-import org.folio.rest.jaxrs.model.UserSummary;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.service.EventService;
+import org.folio.service.TenantServices;
 import org.folio.service.UserSummaryService;
 
 import io.vertx.core.AsyncResult;
@@ -26,22 +29,23 @@ public class EventHandler<E extends Event> {
   protected final UserSummaryService userSummaryService;
 
   public EventHandler(Map<String, String> okapiHeaders, Vertx vertx) {
-    PostgresClient postgresClient = getPostgresClient(okapiHeaders, vertx);
-    userSummaryRepository = new UserSummaryRepository(postgresClient);
-    eventService = new EventService(postgresClient);
-    userSummaryService = new UserSummaryService(postgresClient);
+    this(getPostgresClient(okapiHeaders, vertx));
   }
 
   public EventHandler(PostgresClient postgresClient) {
-    userSummaryRepository = new UserSummaryRepository(postgresClient);
-    eventService = new EventService(postgresClient);
-    userSummaryService = new UserSummaryService(postgresClient);
+    TenantServices services = TenantServices.forTenant(postgresClient);
+    userSummaryRepository = services.getUserSummaryRepository();
+    eventService = services.getEventService();
+    userSummaryService = services.getUserSummaryService();
   }
 
   public Future<String> handle(E event) {
     log.debug("handle:: parameters event: {}", () -> asJson(event));
-    return eventService.save(event)
-      .compose(eventId -> updateUserSummary(event))
+    return getUserId(event)
+      .recover(throwable -> eventService.save(event)
+        .compose(eventId -> failedFuture(throwable)))
+      .compose(userId -> userSummaryService.saveEventsAndUpdateUserSummary(userId,
+        List.of(event)))
       .onComplete(result -> logResult(result, event));
   }
 
@@ -52,15 +56,9 @@ public class EventHandler<E extends Event> {
       .onComplete(result -> logResult(result, event));
   }
 
-  private Future<String> updateUserSummary(E event) {
-    log.debug("updateUserSummary:: parameters event: {}", () -> asJson(event));
-    return getUserSummary(event)
-      .compose(userSummary -> userSummaryService.updateUserSummaryWithEvent(userSummary, event));
-  }
-
-  protected Future<UserSummary> getUserSummary(E event) {
-    log.debug("getUserSummary:: parameters event: {}", () -> asJson(event));
-    return userSummaryRepository.findByUserIdOrBuildNew(event.getUserId());
+  protected Future<String> getUserId(E event) {
+    log.debug("getUserId:: parameters event: {}", () -> asJson(event));
+    return succeededFuture(event.getUserId());
   }
 
   private void logResult(AsyncResult<String> result, E event) {
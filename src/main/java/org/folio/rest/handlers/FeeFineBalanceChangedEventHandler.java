@@ -24,19 +24,20 @@ public class FeeFineBalanceChangedEventHandler extends EventHandler<FeeFineBalan
   }
 
   @Override
-  protected Future<UserSummary> getUserSummary(FeeFineBalanceChangedEvent event) {
-    log.debug("getUserSummary:: parameters event: {}", () -> asJson(event));
+  protected Future<String> getUserId(FeeFineBalanceChangedEvent event) {
+    log.debug("getUserId:: parameters event: {}", () -> asJson(event));
     return event.getUserId() != null
-      ? userSummaryRepository.findByUserIdOrBuildNew(event.getUserId())
-      : findSummaryByFeeFineIdOrFail(event.getFeeFineId())
-      .onSuccess(r -> log.info("getUserSummary:: result: {}", () -> asJson(r)));
+      ? Future.succeededFuture(event.getUserId())
+      : findUserIdByFeeFineIdOrFail(event.getFeeFineId())
+      .onSuccess(r -> log.info("getUserId:: result: {}", r));
   }
 
-  private Future<UserSummary> findSummaryByFeeFineIdOrFail(String feeFineId) {
-    log.debug("getUserSummary:: parameters feeFineId: {}", feeFineId);
+  private Future<String> findUserIdByFeeFineIdOrFail(String feeFineId) {
+    log.debug("findUserIdByFeeFineIdOrFail:: parameters feeFineId: {}", feeFineId);
     return userSummaryRepository.findByFeeFineId(feeFineId)
-      .map(summary -> summary.orElseThrow(() -> new EntityNotFoundException(
-        format("User summary with fee/fine %s was not found, event is ignored", feeFineId))));
+      .map(summary -> summary.map(UserSummary::getUserId)
+        .orElseThrow(() -> new EntityNotFoundException(
+          format("User summary with fee/fine %s was not found, event is ignored", feeFineId))));
   }
 
 }
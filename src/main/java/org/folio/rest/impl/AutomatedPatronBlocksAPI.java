@@ -15,10 +15,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.exception.EntityNotFoundException;
 import org.folio.exception.UserIdNotFoundException;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocksBatch;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocksBatchRequest;
+import org.folio.rest.jaxrs.model.BlocksCalculationStats;
 import org.folio.rest.jaxrs.model.SynchronizationJob;
 import org.folio.rest.jaxrs.resource.AutomatedPatronBlocks;
+import org.folio.service.EventCompactionService;
+import org.folio.service.OverdueTransitionService;
 import org.folio.service.PatronBlocksService;
 import org.folio.service.SynchronizationJobService;
+import org.folio.service.TenantServices;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Context;
@@ -55,6 +61,69 @@ public class AutomatedPatronBlocksAPI implements AutomatedPatronBlocks {
           failure.getLocalizedMessage()))));
   }
 
+  @Override
+  public void postAutomatedPatronBlocksBatch(AutomatedPatronBlocksBatchRequest request,
+    Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler,
+    Context vertxContext) {
+
+    log.debug("postAutomatedPatronBlocksBatch:: parameters request: {}, okapiHeaders: {}",
+      () -> asJson(request), () -> headersAsString(okapiHeaders));
+
+    Handler<AsyncResult<Response>> loggingResponseHandler =
+      loggingResponseHandler("postAutomatedPatronBlocksBatch", asyncResultHandler, log);
+
+    new PatronBlocksService(okapiHeaders, vertxContext.owner())
+      .getBlocksForUsers(request.getUserIds())
+      .onSuccess(blocks -> loggingResponseHandler.handle(succeededFuture(
+        PostAutomatedPatronBlocksBatchResponse.respond200WithApplicationJson(
+          new AutomatedPatronBlocksBatch()
+            .withUserAutomatedPatronBlocks(blocks)
+            .withTotalRecords(blocks.size())))))
+      .onFailure(failure -> loggingResponseHandler.handle(succeededFuture(
+        PostAutomatedPatronBlocksBatchResponse.respond500WithTextPlain(
+          failure.getLocalizedMessage()))));
+  }
+
+  @Override
+  public void getAutomatedPatronBlocksCalculationStats(Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    log.debug("getAutomatedPatronBlocksCalculationStats:: parameters okapiHeaders: {}",
+      () -> headersAsString(okapiHeaders));
+
+    BlocksCalculationStats stats = TenantServices.forTenant(okapiHeaders, vertxContext.owner())
+      .getBlocksCalculationLatencyRecorder()
+      .getStats();
+
+    log.info("getAutomatedPatronBlocksCalculationStats:: result: {}", () -> asJson(stats));
+    asyncResultHandler.handle(succeededFuture(
+      GetAutomatedPatronBlocksCalculationStatsResponse.respond200WithApplicationJson(stats)));
+  }
+
+  @Override
+  public void postAutomatedPatronBlocksOverdueTransitionsScan(Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    loggingResponseHandler("postAutomatedPatronBlocksOverdueTransitionsScan", asyncResultHandler,
+      log).handle(succeededFuture(
+        PostAutomatedPatronBlocksOverdueTransitionsScanResponse.respond202()));
+
+    new OverdueTransitionService(okapiHeaders, vertxContext.owner())
+      .scan();
+  }
+
+  @Override
+  public void postAutomatedPatronBlocksEventJournalCompaction(Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    loggingResponseHandler("postAutomatedPatronBlocksEventJournalCompaction", asyncResultHandler,
+      log).handle(succeededFuture(
+        PostAutomatedPatronBlocksEventJournalCompactionResponse.respond202()));
+
+    new EventCompactionService(okapiHeaders, vertxContext.owner())
+      .compact();
+  }
+
   @Override
   public void postAutomatedPatronBlocksSynchronizationJob(SynchronizationJob request,
     Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler,
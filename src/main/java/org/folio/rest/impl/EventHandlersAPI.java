@@ -1,10 +1,20 @@
 package org.folio.rest.impl;
 
 
+import static java.lang.String.format;
+import static org.folio.rest.tools.utils.TenantTool.tenantId;
+import static org.folio.rest.tools.utils.ValidationHelper.createValidationErrorMessage;
 import static org.folio.util.LogUtil.asJson;
 import static org.folio.util.LogUtil.headersAsString;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.ws.rs.core.Response;
 
@@ -12,8 +22,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.domain.Event;
 import org.folio.domain.EventType;
-import org.folio.rest.handlers.EventHandler;
-import org.folio.rest.handlers.FeeFineBalanceChangedEventHandler;
+import org.folio.kafka.KafkaEventConsumerVerticle;
+import org.folio.rest.jaxrs.model.Errors;
+import org.folio.rest.jaxrs.model.EventBatch;
+import org.folio.rest.jaxrs.model.EventBatchEntry;
+import org.folio.rest.jaxrs.model.EventIngestionStats;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
 import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
 import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
@@ -22,7 +35,12 @@ import org.folio.rest.jaxrs.model.ItemClaimedReturnedEvent;
 import org.folio.rest.jaxrs.model.ItemDeclaredLostEvent;
 import org.folio.rest.jaxrs.model.LoanClosedEvent;
 import org.folio.rest.jaxrs.model.LoanDueDateChangedEvent;
+import org.folio.rest.jaxrs.model.Metadata;
 import org.folio.rest.jaxrs.resource.AutomatedPatronBlocksHandlers;
+import org.folio.rest.tools.utils.MetadataUtil;
+import org.folio.service.EventInboxService;
+import org.folio.service.EventIngestionExecutor;
+import org.folio.service.TenantServices;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Context;
@@ -31,6 +49,7 @@ import io.vertx.core.Handler;
 
 public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
   private static final Logger log = LogManager.getLogger(EventHandlersAPI.class);
+  private static final String TOO_MANY_EVENTS_MESSAGE = "Too many events in progress";
 
   @Override
   public void postAutomatedPatronBlocksHandlersFeeFineBalanceChanged(
@@ -39,11 +58,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersFeeFineBalanceChanged", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersFeeFineBalanceChangedResponse.respond204()));
-
-    new FeeFineBalanceChangedEventHandler(okapiHeaders, vertxContext.owner())
-      .handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersFeeFineBalanceChangedResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersFeeFineBalanceChangedResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersFeeFineBalanceChangedResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -53,10 +72,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersItemCheckedOut", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersItemCheckedOutResponse.respond204()));
-
-    new EventHandler<ItemCheckedOutEvent>(okapiHeaders, vertxContext.owner()).handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersItemCheckedOutResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersItemCheckedOutResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersItemCheckedOutResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -66,11 +86,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersItemCheckedIn", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersItemCheckedInResponse.respond204()));
-
-    new EventHandler<ItemCheckedInEvent>(okapiHeaders, vertxContext.owner())
-      .handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersItemCheckedInResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersItemCheckedInResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersItemCheckedInResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -80,11 +100,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersItemDeclaredLost", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersItemDeclaredLostResponse.respond204()));
-
-    new EventHandler<ItemDeclaredLostEvent>(okapiHeaders, vertxContext.owner())
-      .handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersItemDeclaredLostResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersItemDeclaredLostResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersItemDeclaredLostResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -94,10 +114,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersItemAgedToLost", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersItemAgedToLostResponse.respond204()));
-
-    new EventHandler<ItemAgedToLostEvent>(okapiHeaders, vertxContext.owner()).handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersItemAgedToLostResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersItemAgedToLostResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersItemAgedToLostResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -107,11 +128,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersItemClaimedReturned", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersItemClaimedReturnedResponse.respond204()));
-
-    new EventHandler<ItemClaimedReturnedEvent>(okapiHeaders, vertxContext.owner())
-      .handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersItemClaimedReturnedResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersItemClaimedReturnedResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersItemClaimedReturnedResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -121,11 +142,11 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersLoanDueDateChanged", event, okapiHeaders);
 
-    asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersLoanDueDateChangedResponse.respond204()));
-
-    new EventHandler<LoanDueDateChangedEvent>(okapiHeaders, vertxContext.owner())
-      .handle(event);
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersLoanDueDateChangedResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersLoanDueDateChangedResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersLoanDueDateChangedResponse::respond500WithTextPlain);
   }
 
   @Override
@@ -135,11 +156,161 @@ public class EventHandlersAPI implements AutomatedPatronBlocksHandlers {
 
     logEventReceived("postAutomatedPatronBlocksHandlersLoanClosed", event, okapiHeaders);
 
+    addDeliveredEventToInbox(event, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersLoanClosedResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersLoanClosedResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersLoanClosedResponse::respond500WithTextPlain);
+  }
+
+  @Override
+  public void postAutomatedPatronBlocksHandlersBatch(EventBatch entity,
+    Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler,
+    Context vertxContext) {
+
+    log.info("postAutomatedPatronBlocksHandlersBatch:: parameters events: {}, okapiHeaders: {}",
+      () -> entity.getEvents().size(), () -> headersAsString(okapiHeaders));
+
+    List<Event> events = new ArrayList<>(entity.getEvents().size());
+    for (int i = 0; i < entity.getEvents().size(); i++) {
+      List<Event> entryEvents = getEvents(entity.getEvents().get(i));
+      if (entryEvents.size() != 1) {
+        Errors errors = createValidationErrorMessage(format("events[%d]", i),
+          String.valueOf(entryEvents.size()), "Batch entry must contain exactly one event");
+        log.warn("postAutomatedPatronBlocksHandlersBatch:: batch is invalid. Errors: {}",
+          () -> asJson(errors));
+        asyncResultHandler.handle(Future.succeededFuture(
+          PostAutomatedPatronBlocksHandlersBatchResponse.respond422WithApplicationJson(errors)));
+        return;
+      }
+      events.add(entryEvents.get(0));
+    }
+
+    populateMissingMetadata(events, okapiHeaders);
+
+    addToInbox(events, okapiHeaders, vertxContext, asyncResultHandler,
+      PostAutomatedPatronBlocksHandlersBatchResponse.respond204(),
+      PostAutomatedPatronBlocksHandlersBatchResponse
+        .respond429WithTextPlain(TOO_MANY_EVENTS_MESSAGE),
+      PostAutomatedPatronBlocksHandlersBatchResponse::respond500WithTextPlain);
+  }
+
+  private static List<Event> getEvents(EventBatchEntry entry) {
+    return Stream.of(entry.getFeeFineBalanceChanged(), entry.getItemCheckedOut(),
+        entry.getItemCheckedIn(), entry.getItemDeclaredLost(), entry.getItemAgedToLost(),
+        entry.getItemClaimedReturned(), entry.getLoanDueDateChanged(), entry.getLoanClosed())
+      .filter(Objects::nonNull)
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * RMB populates metadata of the request entity only, not of the events nested in a batch.
+   * Creation dates are spread by a millisecond per event so that rebuilding a user summary
+   * replays the events in the order they had in the batch.
+   */
+  private static void populateMissingMetadata(List<Event> events,
+    Map<String, String> okapiHeaders) {
+
+    long createdDate = System.currentTimeMillis();
+    for (Event event : events) {
+      if (event.getMetadata() == null) {
+        Metadata metadata = MetadataUtil.createMetadata(okapiHeaders);
+        Date date = new Date(createdDate++);
+        event.setMetadata(metadata
+          .withCreatedDate(date)
+          .withUpdatedDate(date));
+      }
+    }
+  }
+
+  @Override
+  public void getAutomatedPatronBlocksHandlersStats(Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    log.debug("getAutomatedPatronBlocksHandlersStats:: parameters okapiHeaders: {}",
+      () -> headersAsString(okapiHeaders));
+
+    EventIngestionStats stats = EventIngestionExecutor.forTenant(tenantId(okapiHeaders))
+      .getStats();
+
+    log.info("getAutomatedPatronBlocksHandlersStats:: result: {}", () -> asJson(stats));
     asyncResultHandler.handle(Future.succeededFuture(
-      PostAutomatedPatronBlocksHandlersLoanClosedResponse.respond204()));
+      GetAutomatedPatronBlocksHandlersStatsResponse.respond200WithApplicationJson(stats)));
+  }
+
+  @Override
+  public void postAutomatedPatronBlocksHandlersInboxDrain(Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    log.debug("postAutomatedPatronBlocksHandlersInboxDrain:: parameters okapiHeaders: {}",
+      () -> headersAsString(okapiHeaders));
+
+    String tenantId = tenantId(okapiHeaders);
+    Future.succeededFuture()
+      .compose(ignored -> TenantServices.forTenant(okapiHeaders, vertxContext.owner())
+        .getEventInboxService()
+        .startDrain())
+      .onSuccess(ignored -> asyncResultHandler.handle(Future.succeededFuture(
+        PostAutomatedPatronBlocksHandlersInboxDrainResponse.respond202())))
+      .onFailure(throwable -> {
+        log.warn("postAutomatedPatronBlocksHandlersInboxDrain:: Failed to start draining the " +
+          "inbox of tenant {}", tenantId, throwable);
+        asyncResultHandler.handle(Future.succeededFuture(
+          PostAutomatedPatronBlocksHandlersInboxDrainResponse.respond500WithTextPlain(
+            throwable.getMessage())));
+      });
+  }
+
+  /**
+   * Handles an event delivered by pubsub. When events are consumed from Kafka, pubsub delivers
+   * each event both to its Kafka topic and to this endpoint, so the HTTP delivery is only
+   * acknowledged and the event is handled when it is read from the topic.
+   */
+  private static void addDeliveredEventToInbox(Event event, Map<String, String> okapiHeaders,
+    Context vertxContext, Handler<AsyncResult<Response>> asyncResultHandler,
+    Response acceptedResponse, Response rejectedResponse,
+    Function<Object, Response> failedResponse) {
+
+    if (KafkaEventConsumerVerticle.isEnabled()) {
+      log.debug("addDeliveredEventToInbox:: Events are consumed from Kafka, skipping {} " +
+        "event delivered by pubsub", () -> EventType.getNameByEvent(event));
+      asyncResultHandler.handle(Future.succeededFuture(acceptedResponse));
+      return;
+    }
+
+    addToInbox(List.of(event), okapiHeaders, vertxContext, asyncResultHandler, acceptedResponse,
+      rejectedResponse, failedResponse);
+  }
 
-    new EventHandler<LoanClosedEvent>(okapiHeaders, vertxContext.owner())
-      .handle(event);
+  /**
+   * Stores events in the inbox unless the tenant's inbox is full, in which case the sender is
+   * asked to redeliver them later. Events are acknowledged only after they are stored and
+   * processed asynchronously by draining the inbox.
+   */
+  private static void addToInbox(List<? extends Event> events, Map<String, String> okapiHeaders,
+    Context vertxContext, Handler<AsyncResult<Response>> asyncResultHandler,
+    Response acceptedResponse, Response rejectedResponse,
+    Function<Object, Response> failedResponse) {
+
+    EventInboxService eventInboxService = TenantServices.forTenant(okapiHeaders,
+      vertxContext.owner()).getEventInboxService();
+
+    if (!EventIngestionExecutor.forTenant(tenantId(okapiHeaders)).tryAccept(events.size())) {
+      asyncResultHandler.handle(Future.succeededFuture(rejectedResponse));
+      return;
+    }
+
+    eventInboxService.add(events)
+      .onSuccess(count -> {
+        asyncResultHandler.handle(Future.succeededFuture(acceptedResponse));
+        eventInboxService.drain();
+      })
+      .onFailure(throwable -> {
+        log.warn("addToInbox:: Failed to store {} event(s) in the inbox", events.size(),
+          throwable);
+        asyncResultHandler.handle(Future.succeededFuture(
+          failedResponse.apply(throwable.getLocalizedMessage())));
+      });
   }
 
   private static void logEventReceived(String methodName, Event event,
@@ -0,0 +1,38 @@
+package org.folio.rest.impl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.kafka.KafkaEventConsumerVerticle;
+import org.folio.kafka.KafkaUserEventConsumerVerticle;
+import org.folio.rest.resource.interfaces.InitAPI;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+public class KafkaEventConsumerInitAPI implements InitAPI {
+  private static final Logger log = LogManager.getLogger(KafkaEventConsumerInitAPI.class);
+
+  @Override
+  public void init(Vertx vertx, Context context, Handler<AsyncResult<Boolean>> handler) {
+    if (!KafkaEventConsumerVerticle.isEnabled()) {
+      log.info("init:: Kafka host is not configured, events are received from pubsub");
+      handler.handle(Future.succeededFuture(true));
+      return;
+    }
+
+    int instances = KafkaEventConsumerVerticle.getInstances();
+    vertx.deployVerticle(KafkaEventConsumerVerticle::fromEnvironment,
+        new DeploymentOptions().setInstances(instances))
+      .onSuccess(deploymentId -> log.info("init:: Deployed {} Kafka event consumer(s)",
+        instances))
+      .compose(ignored -> vertx.deployVerticle(KafkaUserEventConsumerVerticle.fromEnvironment()))
+      .onSuccess(deploymentId -> log.info("init:: Deployed Kafka user event consumer"))
+      .onFailure(t -> log.error("init:: Failed to deploy Kafka event consumer", t))
+      .map(true)
+      .onComplete(handler);
+  }
+}
@@ -18,6 +18,7 @@ import org.folio.rest.jaxrs.model.Errors;
 import org.folio.rest.jaxrs.model.PatronBlockCondition;
 import org.folio.rest.jaxrs.resource.PatronBlockConditions;
 import org.folio.rest.persist.PgUtil;
+import org.folio.service.TenantServices;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Context;
@@ -68,7 +69,8 @@ public class PatronBlockConditionsAPI implements PatronBlockConditions {
 
     PgUtil.put(PATRON_BLOCK_CONDITIONS, entity, patronBlockConditionId, okapiHeaders,
       vertxContext, PutPatronBlockConditionsByPatronBlockConditionIdResponse.class,
-      loggingResponseHandler("putPatronBlockConditionsByPatronBlockConditionId", asyncResultHandler, log));
+      invalidatingCachedConfiguration(okapiHeaders, vertxContext, loggingResponseHandler(
+        "putPatronBlockConditionsByPatronBlockConditionId", asyncResultHandler, log)));
   }
 
   @Validate
@@ -86,6 +88,21 @@ public class PatronBlockConditionsAPI implements PatronBlockConditions {
       loggingResponseHandler("getPatronBlockConditionsByPatronBlockConditionId", asyncResultHandler, log));
   }
 
+  /**
+   * Cached conditions of the tenant and blocks calculated from them are invalidated once the
+   * change has been stored.
+   */
+  private static Handler<AsyncResult<Response>> invalidatingCachedConfiguration(
+    Map<String, String> okapiHeaders, Context vertxContext,
+    Handler<AsyncResult<Response>> handler) {
+
+    return response -> {
+      TenantServices.forTenant(okapiHeaders, vertxContext.owner())
+        .invalidatePatronBlockConfiguration();
+      handler.handle(response);
+    };
+  }
+
   private Errors validateEntity(PatronBlockCondition entity) {
 
     if (isMessageBlank(entity) && isAnyFlagTrue(entity)) {
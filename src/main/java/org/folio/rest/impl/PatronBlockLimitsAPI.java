@@ -20,6 +20,7 @@ import org.folio.rest.jaxrs.model.Errors;
 import org.folio.rest.jaxrs.model.PatronBlockLimit;
 import org.folio.rest.jaxrs.resource.PatronBlockLimits;
 import org.folio.rest.persist.PgUtil;
+import org.folio.service.TenantServices;
 
 import com.google.common.collect.ImmutableList;
 
@@ -74,7 +75,8 @@ public class PatronBlockLimitsAPI implements PatronBlockLimits {
 
     PgUtil.post(PATRON_BLOCK_LIMITS_TABLE_NAME, entity, okapiHeaders, vertxContext,
       PostPatronBlockLimitsResponse.class,
-      loggingResponseHandler("postPatronBlockLimits", asyncResultHandler, log));
+      invalidatingCachedConfiguration(okapiHeaders, vertxContext,
+        loggingResponseHandler("postPatronBlockLimits", asyncResultHandler, log)));
   }
 
   @Validate
@@ -98,7 +100,8 @@ public class PatronBlockLimitsAPI implements PatronBlockLimits {
 
     PgUtil.put(PATRON_BLOCK_LIMITS_TABLE_NAME, entity, patronBlockLimitId, okapiHeaders,
       vertxContext, PutPatronBlockLimitsByPatronBlockLimitIdResponse.class,
-      loggingResponseHandler("putPatronBlockLimitsByPatronBlockLimitId", asyncResultHandler, log));
+      invalidatingCachedConfiguration(okapiHeaders, vertxContext, loggingResponseHandler(
+        "putPatronBlockLimitsByPatronBlockLimitId", asyncResultHandler, log)));
   }
 
   @Validate
@@ -128,7 +131,23 @@ public class PatronBlockLimitsAPI implements PatronBlockLimits {
 
     PgUtil.deleteById(PATRON_BLOCK_LIMITS_TABLE_NAME, patronBlockLimitId, okapiHeaders,
       vertxContext, DeletePatronBlockLimitsByPatronBlockLimitIdResponse.class,
-      loggingResponseHandler("deletePatronBlockLimitsByPatronBlockLimitId", asyncResultHandler, log));
+      invalidatingCachedConfiguration(okapiHeaders, vertxContext, loggingResponseHandler(
+        "deletePatronBlockLimitsByPatronBlockLimitId", asyncResultHandler, log)));
+  }
+
+  /**
+   * Cached limits of the tenant and blocks calculated from them are invalidated once the change
+   * has been stored.
+   */
+  private static Handler<AsyncResult<Response>> invalidatingCachedConfiguration(
+    Map<String, String> okapiHeaders, Context vertxContext,
+    Handler<AsyncResult<Response>> handler) {
+
+    return response -> {
+      TenantServices.forTenant(okapiHeaders, vertxContext.owner())
+        .invalidatePatronBlockConfiguration();
+      handler.handle(response);
+    };
   }
 
   private Errors validateEntity(PatronBlockLimit entity) {
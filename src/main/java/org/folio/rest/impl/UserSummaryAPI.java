@@ -4,7 +4,6 @@ import static io.vertx.core.Future.succeededFuture;
 import static java.lang.String.format;
 import static org.folio.util.LogUtil.headersAsString;
 import static org.folio.util.LogUtil.loggingResponseHandler;
-import static org.folio.util.PostgresUtils.getPostgresClient;
 import static org.folio.util.UuidUtil.isUuid;
 
 import java.util.Map;
@@ -15,7 +14,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.exception.EntityNotFoundInDbException;
 import org.folio.rest.jaxrs.resource.UserSummaryUserId;
-import org.folio.service.UserSummaryService;
+import org.folio.service.TenantServices;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Context;
@@ -41,7 +40,9 @@ public class UserSummaryAPI implements UserSummaryUserId {
       return;
     }
 
-    new UserSummaryService(getPostgresClient(okapiHeaders, vertxContext.owner())).getByUserId(userId)
+    TenantServices.forTenant(okapiHeaders, vertxContext.owner())
+      .getUserSummaryService()
+      .getByUserId(userId)
       .onSuccess(userSummary -> loggingHandler.handle(succeededFuture(
         UserSummaryUserId.GetUserSummaryByUserIdResponse.respond200WithApplicationJson(userSummary))))
       .onFailure(failure -> {
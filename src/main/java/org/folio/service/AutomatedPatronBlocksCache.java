@@ -0,0 +1,132 @@
+package org.folio.service;
+
+import static org.folio.util.ConfigUtil.getInt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocks;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+
+/**
+ * Recently calculated automated patron blocks of the users of a tenant, the least recently used
+ * entries are evicted when the cache is full. An entry is only used for the version of the user
+ * summary and of the patron block configuration it was calculated from, so it is invalidated by
+ * any update of either, including updates made by other module instances. Besides, an entry
+ * expires after the configured time to live, which bounds staleness of the patron group of the
+ * user, and at the latest when a loan of the user becomes overdue, since blocks change then
+ * without the summary being changed.
+ */
+public class AutomatedPatronBlocksCache {
+  private static final Logger log = LogManager.getLogger(AutomatedPatronBlocksCache.class);
+
+  public static final String SIZE_PROPERTY = "AUTOMATED_PATRON_BLOCKS_CACHE_SIZE";
+  public static final String TTL_PROPERTY = "AUTOMATED_PATRON_BLOCKS_CACHE_TTL_SECONDS";
+  private static final int DEFAULT_SIZE = 10000;
+  private static final int DEFAULT_TTL_SECONDS = 60;
+
+  private final int maxSize;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+
+  public AutomatedPatronBlocksCache() {
+    this(getInt(SIZE_PROPERTY, DEFAULT_SIZE), getInt(TTL_PROPERTY, DEFAULT_TTL_SECONDS) * 1000L);
+  }
+
+  public AutomatedPatronBlocksCache(int maxSize, long ttlMillis) {
+    this.maxSize = Math.max(0, maxSize);
+    this.ttlMillis = ttlMillis;
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > AutomatedPatronBlocksCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return blocks calculated from the same versions of the summary and the configuration,
+   * unless they have expired
+   */
+  public synchronized Optional<AutomatedPatronBlocks> get(UserSummary userSummary,
+    Long configurationVersion) {
+
+    String userId = userSummary.getUserId();
+    Entry entry = entries.get(userId);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (!entry.isValidFor(userSummary, configurationVersion, System.currentTimeMillis())) {
+      entries.remove(userId);
+      return Optional.empty();
+    }
+
+    log.debug("get:: Using cached blocks of user {}", userId);
+    return Optional.of(copy(entry.blocks));
+  }
+
+  public synchronized void put(UserSummary userSummary, Long configurationVersion,
+    AutomatedPatronBlocks blocks) {
+
+    if (maxSize == 0 || ttlMillis <= 0 || configurationVersion == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    long expiresAt = now + ttlMillis;
+    for (OpenLoan openLoan : userSummary.getOpenLoans()) {
+      expiresAt = Math.min(expiresAt,
+        OverduePeriodCalculator.getNextOverdueTransitionTime(openLoan, now));
+    }
+
+    entries.put(userSummary.getUserId(), new Entry(userSummary.getId(),
+      userSummary.getVersion(), configurationVersion, copy(blocks), expiresAt));
+  }
+
+  public synchronized void invalidate(String userId) {
+    entries.remove(userId);
+  }
+
+  public synchronized void invalidateAll() {
+    log.info("invalidateAll:: Invalidating {} cached entries", entries.size());
+    entries.clear();
+  }
+
+  private static AutomatedPatronBlocks copy(AutomatedPatronBlocks blocks) {
+    return new AutomatedPatronBlocks()
+      .withAutomatedPatronBlocks(new ArrayList<>(blocks.getAutomatedPatronBlocks()));
+  }
+
+  private static class Entry {
+    private final String userSummaryId;
+    private final Integer userSummaryVersion;
+    private final Long configurationVersion;
+    private final AutomatedPatronBlocks blocks;
+    private final long expiresAt;
+
+    private Entry(String userSummaryId, Integer userSummaryVersion, Long configurationVersion,
+      AutomatedPatronBlocks blocks, long expiresAt) {
+
+      this.userSummaryId = userSummaryId;
+      this.userSummaryVersion = userSummaryVersion;
+      this.configurationVersion = configurationVersion;
+      this.blocks = blocks;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isValidFor(UserSummary userSummary, Long configurationVersion,
+      long currentTime) {
+
+      return currentTime < expiresAt &&
+        Objects.equals(userSummaryId, userSummary.getId()) &&
+        Objects.equals(userSummaryVersion, userSummary.getVersion()) &&
+        Objects.equals(this.configurationVersion, configurationVersion);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.okapi.common.XOkapiHeaders.TENANT;
+import static org.folio.util.ConfigUtil.getInt;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.utils.TenantTool;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Removes events which no longer affect user summaries. The summary of each user is rebuilt
+ * first, which moves its checkpoint up to the events created before the checkpoint delay. Events
+ * covered by the checkpoint whose loan or fee/fine is not open in it are then deleted: the next
+ * rebuild starts after them, and a rebuild from scratch builds the same summary without them.
+ * Their deduplication keys are kept for {@link #DEDUPLICATION_KEY_RETENTION_DAYS_PROPERTY} days
+ * after the events were created, every run deletes the keys which have expired.
+ * <p>
+ * Users are compacted one at a time, in batches of users, and a run stops after a limited number
+ * of batches. The next run of the module instance continues after the last compacted user and
+ * starts over once all users have been compacted. Progress is logged after every batch. Only one
+ * compaction of a tenant runs in a module instance at a time.
+ */
+public class EventCompactionService {
+  private static final Logger log = LogManager.getLogger(EventCompactionService.class);
+
+  public static final String BATCH_SIZE_PROPERTY = "EVENT_COMPACTION_BATCH_SIZE";
+  public static final String MAX_BATCHES_PROPERTY = "EVENT_COMPACTION_MAX_BATCHES_PER_RUN";
+  public static final String DEDUPLICATION_KEY_RETENTION_DAYS_PROPERTY =
+    "EVENT_DEDUPLICATION_KEY_RETENTION_DAYS";
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final int DEFAULT_MAX_BATCHES = 10;
+  private static final int DEFAULT_DEDUPLICATION_KEY_RETENTION_DAYS = 30;
+  private static final int DELETE_LIMIT = 1_000;
+
+  private static final Set<String> compactingTenants = ConcurrentHashMap.newKeySet();
+  private static final Map<String, String> lastCompactedUserIds = new ConcurrentHashMap<>();
+
+  private final String tenantId;
+  private final EventService eventService;
+  private final UserSummaryService userSummaryService;
+  private final int batchSize;
+  private final int maxBatches;
+  private final int deduplicationKeyRetentionDays;
+
+  public EventCompactionService(Map<String, String> okapiHeaders, Vertx vertx) {
+    tenantId = TenantTool.calculateTenantId(okapiHeaders.get(TENANT));
+    TenantServices services = TenantServices.forTenant(
+      PostgresClient.getInstance(vertx, tenantId));
+    eventService = services.getEventService();
+    userSummaryService = services.getUserSummaryService();
+    batchSize = getInt(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+    maxBatches = getInt(MAX_BATCHES_PROPERTY, DEFAULT_MAX_BATCHES);
+    deduplicationKeyRetentionDays = getInt(DEDUPLICATION_KEY_RETENTION_DAYS_PROPERTY,
+      DEFAULT_DEDUPLICATION_KEY_RETENTION_DAYS);
+  }
+
+  /**
+   * @return number of deleted events
+   */
+  public Future<Long> compact() {
+    log.debug("compact:: tenantId: {}", tenantId);
+    if (!compactingTenants.add(tenantId)) {
+      log.info("compact:: Compaction of tenant {} is already running", tenantId);
+      return succeededFuture(0L);
+    }
+
+    Progress progress = new Progress();
+    return eventService.removeExpiredDeduplicationKeys(deduplicationKeyRetentionDays)
+      .compose(ignored -> compactBatches(lastCompactedUserIds.get(tenantId), progress))
+      .onComplete(result -> compactingTenants.remove(tenantId))
+      .map(ignored -> progress.deletedEvents)
+      .onSuccess(deleted -> log.info("compact:: Deleted {} event(s) of {} user(s) of tenant {}",
+        deleted, progress.users, tenantId))
+      .onFailure(t -> log.warn("compact:: Failed to compact events of tenant {}", tenantId, t));
+  }
+
+  private Future<Void> compactBatches(String afterUserId, Progress progress) {
+    return eventService.getUserIdsWithEvents(afterUserId, batchSize)
+      .compose(userIds -> compactUsers(userIds.iterator(), progress)
+        .compose(ignored -> {
+          progress.batches++;
+          String lastUserId = userIds.isEmpty() ? null : userIds.get(userIds.size() - 1);
+          log.info("compactBatches:: Tenant {}: batch {} of at most {} done, {} user(s) " +
+              "compacted, {} user(s) failed, {} event(s) deleted, last user {}", tenantId,
+            progress.batches, maxBatches, progress.users, progress.failedUsers,
+            progress.deletedEvents, lastUserId);
+
+          if (userIds.size() < batchSize) {
+            lastCompactedUserIds.remove(tenantId);
+            return succeededFuture();
+          }
+          lastCompactedUserIds.put(tenantId, lastUserId);
+          return progress.batches < maxBatches
+            ? compactBatches(lastUserId, progress)
+            : Future.<Void>succeededFuture();
+        }));
+  }
+
+  private Future<Void> compactUsers(Iterator<String> userIds, Progress progress) {
+    if (!userIds.hasNext()) {
+      return succeededFuture();
+    }
+
+    String userId = userIds.next();
+    return compactUser(userId)
+      .onSuccess(deleted -> {
+        progress.users++;
+        progress.deletedEvents += deleted;
+      })
+      .onFailure(t -> {
+        progress.failedUsers++;
+        log.warn("compactUsers:: Failed to compact events of user {}", userId, t);
+      })
+      .otherwise(0L)
+      .compose(ignored -> compactUsers(userIds, progress));
+  }
+
+  private Future<Long> compactUser(String userId) {
+    return userSummaryService.rebuildUserSummary(userId, false)
+      .compose(rebuildResult -> rebuildResult.getCheckpoint() == null
+        ? succeededFuture(0L)
+        : removeEventsCoveredByCheckpoint(userId, rebuildResult.getCheckpoint(), 0L));
+  }
+
+  /**
+   * Deletes at most {@link #DELETE_LIMIT} events per statement, so that no statement holds
+   * locks on a large number of rows.
+   */
+  private Future<Long> removeEventsCoveredByCheckpoint(String userId,
+    UserSummaryRebuildCheckpoint checkpoint, long deletedSoFar) {
+
+    return eventService.removeEventsCoveredByCheckpoint(userId, checkpoint, DELETE_LIMIT)
+      .compose(deleted -> deleted < DELETE_LIMIT
+        ? succeededFuture(deletedSoFar + deleted)
+        : removeEventsCoveredByCheckpoint(userId, checkpoint, deletedSoFar + deleted));
+  }
+
+  private static class Progress {
+    private int batches;
+    private int users;
+    private int failedUsers;
+    private long deletedEvents;
+  }
+}
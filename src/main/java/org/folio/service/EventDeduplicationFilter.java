@@ -0,0 +1,50 @@
+package org.folio.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Probabilistic set of deduplication keys of events stored by this module instance. A key which
+ * is not in the filter has certainly not been stored by this instance, a key which might be in
+ * the filter has to be checked in the database. The filter is replaced with an empty one when
+ * it is full, the unique index in the database stays the source of truth.
+ */
+public class EventDeduplicationFilter {
+  private static final Logger log = LogManager.getLogger(EventDeduplicationFilter.class);
+
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+  private final int expectedInsertions;
+  private volatile BloomFilter<CharSequence> filter;
+
+  public EventDeduplicationFilter(int expectedInsertions) {
+    this.expectedInsertions = Math.max(1, expectedInsertions);
+    filter = createFilter();
+  }
+
+  public boolean mightContain(String key) {
+    return key != null && filter.mightContain(key);
+  }
+
+  public void put(String key) {
+    if (key == null) {
+      return;
+    }
+    BloomFilter<CharSequence> current = filter;
+    current.put(key);
+    if (current.approximateElementCount() > expectedInsertions) {
+      log.info("put:: Deduplication filter is full, replacing it with an empty one");
+      filter = createFilter();
+    }
+  }
+
+  private BloomFilter<CharSequence> createFilter() {
+    return BloomFilter.create(Funnels.stringFunnel(UTF_8), expectedInsertions,
+      FALSE_POSITIVE_PROBABILITY);
+  }
+}
@@ -0,0 +1,197 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.util.ConfigUtil.getInt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.domain.Event;
+import org.folio.domain.InboxEvent;
+import org.folio.repository.EventInboxRepository;
+import org.folio.rest.handlers.BatchEventHandler;
+import org.folio.rest.persist.PostgresClient;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Received events are stored in the inbox before they are acknowledged and processed later in
+ * batches. Only one drain of a tenant's inbox runs in a module instance at a time, a drain
+ * requested while another one is running starts again once it is finished.
+ * <p>
+ * Events which were processed are removed from the inbox. Events which failed are claimed again
+ * after a delay, and after a number of failed attempts they are moved to the dead-letter state,
+ * so that a failing event never blocks the events received after it.
+ * <p>
+ * The inbox depth is counted whenever events are added and after each processed batch and is
+ * reported to the tenant's ingestion executor, which rejects new events while the inbox is full.
+ */
+public class EventInboxService {
+  private static final Logger log = LogManager.getLogger(EventInboxService.class);
+
+  public static final String BATCH_SIZE_PROPERTY = "EVENT_INBOX_BATCH_SIZE";
+  public static final String LEASE_SECONDS_PROPERTY = "EVENT_INBOX_LEASE_SECONDS";
+  public static final String RETRY_DELAY_SECONDS_PROPERTY = "EVENT_INBOX_RETRY_DELAY_SECONDS";
+  public static final String MAX_ATTEMPTS_PROPERTY = "EVENT_INBOX_MAX_ATTEMPTS";
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  private static final int DEFAULT_LEASE_SECONDS = 300;
+  private static final int DEFAULT_RETRY_DELAY_SECONDS = 60;
+  private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+  private static final Set<String> drainingTenants = ConcurrentHashMap.newKeySet();
+  private static final Map<String, Boolean> drainRequests = new ConcurrentHashMap<>();
+
+  private final String tenantId;
+  private final EventInboxRepository eventInboxRepository;
+  private final BatchEventHandler batchEventHandler;
+  private final EventIngestionExecutor ingestionExecutor;
+  private final int batchSize;
+  private final int leaseSeconds;
+  private final int retryDelaySeconds;
+  private final int maxAttempts;
+
+  public EventInboxService(PostgresClient postgresClient,
+    EventInboxRepository eventInboxRepository, BatchEventHandler batchEventHandler) {
+
+    tenantId = postgresClient.getTenantId();
+    this.eventInboxRepository = eventInboxRepository;
+    this.batchEventHandler = batchEventHandler;
+    ingestionExecutor = EventIngestionExecutor.forTenant(tenantId);
+    batchSize = getInt(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+    leaseSeconds = getInt(LEASE_SECONDS_PROPERTY, DEFAULT_LEASE_SECONDS);
+    retryDelaySeconds = getInt(RETRY_DELAY_SECONDS_PROPERTY, DEFAULT_RETRY_DELAY_SECONDS);
+    maxAttempts = Math.max(1, getInt(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS));
+  }
+
+  /**
+   * Stores the events in the inbox and counts the events in the inbox again, so the depth includes
+   * events other module instances added.
+   */
+  public Future<Integer> add(List<? extends Event> events) {
+    return eventInboxRepository.saveAll(events)
+      .onSuccess(ingestionExecutor::eventsAdded)
+      .compose(count -> refreshInboxDepth().map(count));
+  }
+
+  public Future<Integer> drain() {
+    return drain(Promise.promise());
+  }
+
+  /**
+   * Starts a drain of the inbox without waiting for it to finish.
+   *
+   * @return completed once the first batch is claimed or when a drain is already running, failed
+   * when the first batch can not be claimed
+   */
+  public Future<Void> startDrain() {
+    Promise<Void> started = Promise.promise();
+    drain(started);
+    return started.future();
+  }
+
+  private Future<Integer> drain(Promise<Void> started) {
+    log.debug("drain:: tenantId: {}", tenantId);
+    if (!drainingTenants.add(tenantId)) {
+      drainRequests.put(tenantId, true);
+      started.tryComplete();
+      return succeededFuture(0);
+    }
+    drainRequests.remove(tenantId);
+
+    return drainBatches(0, started)
+      .onComplete(result -> {
+        drainingTenants.remove(tenantId);
+        if (drainRequests.remove(tenantId) != null) {
+          drain();
+        }
+      })
+      .onSuccess(count -> log.info("drain:: Processed {} event(s) from the inbox of tenant {}",
+        count, tenantId))
+      .onFailure(started::tryFail)
+      .onFailure(t -> log.warn("drain:: Failed to drain the inbox of tenant {}", tenantId, t));
+  }
+
+  private Future<Integer> drainBatches(int processedSoFar, Promise<Void> started) {
+    return processNextBatch(started)
+      .compose(count -> count == 0
+        ? succeededFuture(processedSoFar)
+        : drainBatches(processedSoFar + count, started));
+  }
+
+  /**
+   * Claims the next batch of events, processes it and settles each event by its own result.
+   * Counts the events left in the inbox afterwards.
+   *
+   * @return number of claimed events, 0 when there is nothing to claim
+   */
+  Future<Integer> processNextBatch() {
+    return processNextBatch(Promise.promise());
+  }
+
+  private Future<Integer> processNextBatch(Promise<Void> claimed) {
+    return eventInboxRepository.claimNextBatch(batchSize, leaseSeconds)
+      .onSuccess(claimedEvents -> claimed.tryComplete())
+      .compose(claimedEvents -> claimedEvents.isEmpty()
+        ? succeededFuture(0)
+        : process(claimedEvents).map(claimedEvents.size()))
+      .compose(count -> refreshInboxDepth().map(count));
+  }
+
+  private Future<Void> refreshInboxDepth() {
+    return eventInboxRepository.countPending(ingestionExecutor.getMaxQueueSize())
+      .onSuccess(ingestionExecutor::setInboxDepth)
+      .onFailure(t -> log.warn("refreshInboxDepth:: Failed to count events in the inbox of " +
+        "tenant {}", tenantId, t))
+      .<Void>mapEmpty()
+      .otherwiseEmpty();
+  }
+
+  private Future<Void> process(List<InboxEvent> claimedEvents) {
+    List<Event> events = new ArrayList<>(claimedEvents.size());
+    claimedEvents.stream()
+      .map(InboxEvent::getEvent)
+      .filter(Objects::nonNull)
+      .forEach(events::add);
+
+    return batchEventHandler.handle(events)
+      .compose(failedEvents -> settle(claimedEvents, failedEvents));
+  }
+
+  private Future<Void> settle(List<InboxEvent> claimedEvents, List<Event> failedEvents) {
+    Set<Event> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+    failed.addAll(failedEvents);
+
+    List<UUID> processedIds = new ArrayList<>();
+    List<UUID> retryIds = new ArrayList<>();
+    List<UUID> deadLetterIds = new ArrayList<>();
+    for (InboxEvent claimedEvent : claimedEvents) {
+      if (claimedEvent.getEvent() == null || failed.contains(claimedEvent.getEvent()) &&
+        claimedEvent.getAttempts() >= maxAttempts) {
+
+        deadLetterIds.add(claimedEvent.getId());
+      } else if (failed.contains(claimedEvent.getEvent())) {
+        retryIds.add(claimedEvent.getId());
+      } else {
+        processedIds.add(claimedEvent.getId());
+      }
+    }
+
+    return eventInboxRepository.remove(processedIds)
+      .compose(ignored -> eventInboxRepository.release(retryIds, retryDelaySeconds))
+      .compose(ignored -> eventInboxRepository.deadLetter(deadLetterIds))
+      .onSuccess(ignored -> log.info("settle:: Tenant {}: {} event(s) processed, {} to be " +
+        "retried, {} dead-lettered", tenantId, processedIds.size(), retryIds.size(),
+        deadLetterIds.size()))
+      .mapEmpty();
+  }
+}
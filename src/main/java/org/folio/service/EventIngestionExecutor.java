@@ -0,0 +1,139 @@
+package org.folio.service;
+
+import static org.folio.util.ConfigUtil.getInt;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.EventIngestionStats;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Limits the event processing of a tenant in this module instance. Events of at most
+ * maxConcurrency users are processed at the same time, the others wait for their turn.
+ * <p>
+ * Received events wait in the inbox until they are processed. New events are rejected while the
+ * inbox holds maxQueueSize events or more, so that the sender redelivers them later. The inbox is
+ * shared by all module instances, so its depth is counted in the inbox table each time events are
+ * added and after each processed batch, and increased by the events this instance adds in between.
+ */
+public class EventIngestionExecutor {
+  private static final Logger log = LogManager.getLogger(EventIngestionExecutor.class);
+
+  public static final String MAX_CONCURRENCY_PROPERTY = "EVENT_INGESTION_MAX_CONCURRENCY";
+  public static final String MAX_QUEUE_SIZE_PROPERTY = "EVENT_INGESTION_MAX_QUEUE_SIZE";
+  private static final int DEFAULT_MAX_CONCURRENCY = 5;
+  private static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+  private static final Map<String, EventIngestionExecutor> executors = new ConcurrentHashMap<>();
+
+  private final String tenantId;
+  private final int maxConcurrency;
+  private final int maxQueueSize;
+  private final Deque<Runnable> waiting = new ArrayDeque<>();
+  private int inFlight;
+  private int inboxDepth;
+  private long accepted;
+  private long rejected;
+
+  EventIngestionExecutor(String tenantId, int maxConcurrency, int maxQueueSize) {
+    this.tenantId = tenantId;
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.maxQueueSize = Math.max(1, maxQueueSize);
+  }
+
+  public static EventIngestionExecutor forTenant(String tenantId) {
+    return executors.computeIfAbsent(tenantId, id -> new EventIngestionExecutor(id,
+      getInt(MAX_CONCURRENCY_PROPERTY, DEFAULT_MAX_CONCURRENCY),
+      getInt(MAX_QUEUE_SIZE_PROPERTY, DEFAULT_MAX_QUEUE_SIZE)));
+  }
+
+  /**
+   * @return false when the inbox is full and the events are rejected
+   */
+  public synchronized boolean tryAccept(int eventCount) {
+    if (inboxDepth >= maxQueueSize) {
+      rejected += eventCount;
+      log.warn("tryAccept:: Event inbox of tenant {} is full, {} event(s) rejected. " +
+        "Inbox depth: {}", tenantId, eventCount, inboxDepth);
+      return false;
+    }
+    accepted += eventCount;
+    return true;
+  }
+
+  public synchronized void eventsAdded(int eventCount) {
+    inboxDepth += eventCount;
+  }
+
+  public synchronized void setInboxDepth(int inboxDepth) {
+    this.inboxDepth = inboxDepth;
+  }
+
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * Runs the task now or once one of the running tasks completes.
+   */
+  public <T> Future<T> execute(Supplier<Future<T>> task) {
+    Promise<T> promise = Promise.promise();
+    Runnable runnable = () -> run(task, promise);
+    synchronized (this) {
+      if (inFlight >= maxConcurrency) {
+        waiting.addLast(runnable);
+        return promise.future();
+      }
+      inFlight++;
+    }
+
+    runnable.run();
+    return promise.future();
+  }
+
+  public synchronized EventIngestionStats getStats() {
+    return new EventIngestionStats()
+      .withMaxConcurrency(maxConcurrency)
+      .withMaxQueueSize(maxQueueSize)
+      .withInFlight(inFlight)
+      .withQueued(inboxDepth)
+      .withAccepted(accepted)
+      .withRejected(rejected);
+  }
+
+  private <T> void run(Supplier<Future<T>> task, Promise<T> promise) {
+    Future<T> future;
+    try {
+      future = task.get();
+    } catch (Exception e) {
+      log.warn("run:: Failed to start processing of events", e);
+      future = Future.failedFuture(e);
+    }
+
+    future.onComplete(result -> {
+      runNext();
+      promise.handle(result);
+    });
+  }
+
+  private void runNext() {
+    Runnable next;
+    synchronized (this) {
+      next = waiting.pollFirst();
+      if (next == null) {
+        inFlight--;
+        return;
+      }
+    }
+
+    next.run();
+  }
+}
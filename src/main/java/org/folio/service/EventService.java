@@ -1,23 +1,22 @@
 package org.folio.service;
 
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.util.ConfigUtil.getInt;
 import static org.folio.util.LogUtil.asJson;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.domain.Event;
-import org.folio.domain.EventType;
-import org.folio.okapi.common.GenericCompositeFuture;
-import org.folio.repository.EventRepository;
-import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
-import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
-import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
-import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
-import org.folio.rest.jaxrs.model.ItemClaimedReturnedEvent;
-import org.folio.rest.jaxrs.model.ItemDeclaredLostEvent;
-import org.folio.rest.jaxrs.model.LoanClosedEvent;
-import org.folio.rest.jaxrs.model.LoanDueDateChangedEvent;
+import org.folio.domain.EventDeduplicationKey;
+import org.folio.domain.JournalEvent;
+import org.folio.repository.EventJournalRepository;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.Conn;
 import org.folio.rest.persist.PostgresClient;
 
 import io.vertx.core.Future;
@@ -25,160 +24,145 @@ import io.vertx.core.Future;
 public class EventService {
 
   private static final Logger log = LogManager.getLogger(EventService.class);
-  private static final String ITEM_CHECKED_OUT_EVENT_TABLE_NAME = "item_checked_out_event";
-  private static final String ITEM_CHECKED_IN_EVENT_TABLE_NAME = "item_checked_in_event";
-  private static final String ITEM_DECLARED_LOST_EVENT_TABLE_NAME = "item_declared_lost_event";
-  private static final String ITEM_AGED_TO_LOST_EVENT_TABLE_NAME = "item_aged_to_lost_event";
-  private static final String ITEM_CLAIMED_RETURNED_EVENT_TABLE_NAME = "item_claimed_returned_event";
-  private static final String LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME = "loan_due_date_changed_event";
-  private static final String FEE_FINE_BALANCE_CHANGED_EVENT_TABLE_NAME = "fee_fine_balance_changed_event";
-  private static final String LOAN_CLOSED_EVENT_TABLE_NAME = "loan_closed_event";
-
-  private final EventRepository<ItemCheckedOutEvent> itemCheckedOutEventRepository;
-  private final EventRepository<ItemCheckedInEvent> itemCheckedInEventRepository;
-  private final EventRepository<ItemClaimedReturnedEvent> itemClaimedReturnedEventRepository;
-  private final EventRepository<ItemDeclaredLostEvent> itemDeclaredLostEventRepository;
-  private final EventRepository<ItemAgedToLostEvent> itemAgedToLostEventEventRepository;
-  private final EventRepository<LoanDueDateChangedEvent> loanDueDateChangedEventRepository;
-  private final EventRepository<FeeFineBalanceChangedEvent> feeFineBalanceChangedEventRepository;
-  private final EventRepository<LoanClosedEvent> loanClosedEventRepository;
+  public static final String DEDUPLICATION_FILTER_SIZE_PROPERTY =
+    "EVENT_DEDUPLICATION_FILTER_SIZE";
+  private static final int DEFAULT_DEDUPLICATION_FILTER_SIZE = 1_000_000;
 
-  public EventService(PostgresClient postgresClient) {
-    itemCheckedOutEventRepository = new EventRepository<>(postgresClient,
-      ITEM_CHECKED_OUT_EVENT_TABLE_NAME, ItemCheckedOutEvent.class);
-
-    itemCheckedInEventRepository = new EventRepository<>(postgresClient,
-      ITEM_CHECKED_IN_EVENT_TABLE_NAME, ItemCheckedInEvent.class);
-
-    itemClaimedReturnedEventRepository = new EventRepository<>(postgresClient,
-      ITEM_CLAIMED_RETURNED_EVENT_TABLE_NAME, ItemClaimedReturnedEvent.class);
-
-    itemDeclaredLostEventRepository = new EventRepository<>(postgresClient,
-      ITEM_DECLARED_LOST_EVENT_TABLE_NAME, ItemDeclaredLostEvent.class);
-
-    itemAgedToLostEventEventRepository = new EventRepository<>(postgresClient,
-      ITEM_AGED_TO_LOST_EVENT_TABLE_NAME, ItemAgedToLostEvent.class);
+  private final EventJournalRepository eventJournalRepository;
+  private final EventDeduplicationFilter deduplicationFilter;
 
-    loanDueDateChangedEventRepository = new EventRepository<>(postgresClient,
-      LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME, LoanDueDateChangedEvent.class);
-
-    feeFineBalanceChangedEventRepository = new EventRepository<>(postgresClient,
-      FEE_FINE_BALANCE_CHANGED_EVENT_TABLE_NAME, FeeFineBalanceChangedEvent.class);
+  public EventService(PostgresClient postgresClient) {
+    this(new EventJournalRepository(postgresClient));
+  }
 
-    loanClosedEventRepository = new EventRepository<>(postgresClient,
-      LOAN_CLOSED_EVENT_TABLE_NAME, LoanClosedEvent.class);
+  public EventService(EventJournalRepository eventJournalRepository) {
+    this.eventJournalRepository = eventJournalRepository;
+    deduplicationFilter = new EventDeduplicationFilter(
+      getInt(DEDUPLICATION_FILTER_SIZE_PROPERTY, DEFAULT_DEDUPLICATION_FILTER_SIZE));
   }
 
   public Future<String> save(Event event) {
     log.debug("save:: parameters event: {}", () -> asJson(event));
-
-    EventType eventType = EventType.getByEvent(event);
-
-    log.info("save:: event type: {}", eventType);
-
-    switch (eventType) {
-      case ITEM_CHECKED_OUT:
-        return save((ItemCheckedOutEvent) event);
-      case ITEM_CHECKED_IN:
-        return save((ItemCheckedInEvent) event);
-      case ITEM_CLAIMED_RETURNED:
-        return save((ItemClaimedReturnedEvent) event);
-      case ITEM_DECLARED_LOST:
-        return save((ItemDeclaredLostEvent) event);
-      case ITEM_AGED_TO_LOST:
-        return save((ItemAgedToLostEvent) event);
-      case LOAN_DUE_DATE_CHANGED:
-        return save((LoanDueDateChangedEvent) event);
-      case FEE_FINE_BALANCE_CHANGED:
-        return save((FeeFineBalanceChangedEvent) event);
-      case LOAN_CLOSED:
-        return save((LoanClosedEvent) event);
-      default:
-        log.warn("save:: unknown event type: {}", eventType);
-        throw new IllegalStateException("Unexpected value: " + eventType);
+    return eventJournalRepository.save(event)
+      .onSuccess(id -> deduplicationFilter.put(EventDeduplicationKey.of(event)))
+      .onSuccess(result -> log.info("save:: result: {}", result));
+  }
+
+  public Future<List<Event>> saveAll(List<? extends Event> events) {
+    return saveAll(null, events);
+  }
+
+  /**
+   * Saves events with one insert, using the connection of a running transaction when one is
+   * provided. Events whose deduplication key is already stored are skipped. Events saved in a
+   * transaction are added to the deduplication filter only by {@link #rememberStored(List)}
+   * once the transaction has been committed.
+   *
+   * @return saved events in the order they were passed
+   */
+  public Future<List<Event>> saveAll(Conn conn, List<? extends Event> events) {
+    log.debug("saveAll:: parameters events: {}", events::size);
+
+    if (conn != null) {
+      return eventJournalRepository.saveAll(conn, events)
+        .onSuccess(result -> log.info("saveAll:: Saved {} of {} event(s) in transaction",
+          result.size(), events.size()));
     }
-  }
 
-  public Future<String> save(ItemCheckedOutEvent event) {
-    return itemCheckedOutEventRepository.save(event);
-  }
-
-  public Future<String> save(ItemCheckedInEvent event) {
-    return itemCheckedInEventRepository.save(event);
-  }
-
-  public Future<String> save(ItemClaimedReturnedEvent event) {
-    return itemClaimedReturnedEventRepository.save(event);
-  }
+    return eventJournalRepository.saveAll(events)
+      .onSuccess(savedEvents -> rememberStored(events))
+      .onSuccess(result -> log.info("saveAll:: Saved {} of {} event(s)", result.size(),
+        events.size()));
+  }
+
+  /**
+   * Adds the events to the deduplication filter, must only be called once the events are
+   * committed.
+   */
+  public void rememberStored(List<? extends Event> events) {
+    events.forEach(event -> deduplicationFilter.put(EventDeduplicationKey.of(event)));
+  }
+
+  /**
+   * Removes events which have already been stored. Only events which might have been seen
+   * before according to the deduplication filter are looked up in the database.
+   */
+  public Future<List<Event>> discardStoredDuplicates(List<? extends Event> events) {
+    log.debug("discardStoredDuplicates:: parameters events: {}", events::size);
+
+    List<String> suspectedKeys = new ArrayList<>();
+    events.forEach(event -> {
+      String key = EventDeduplicationKey.of(event);
+      if (deduplicationFilter.mightContain(key)) {
+        suspectedKeys.add(key);
+      }
+    });
+
+    if (suspectedKeys.isEmpty()) {
+      return succeededFuture(new ArrayList<Event>(events));
+    }
 
-  public Future<String> save(ItemDeclaredLostEvent event) {
-    return itemDeclaredLostEventRepository.save(event);
+    return eventJournalRepository.findExistingDeduplicationKeys(suspectedKeys)
+      .map(storedKeys -> discard(events, storedKeys))
+      .onSuccess(result -> log.info("discardStoredDuplicates:: Discarded {} of {} event(s)",
+        events.size() - result.size(), events.size()));
   }
 
-  public Future<String> save(ItemAgedToLostEvent event) {
-    return itemAgedToLostEventEventRepository.save(event);
-  }
+  private static List<Event> discard(List<? extends Event> events, Set<String> storedKeys) {
+    List<Event> result = new ArrayList<>(events.size());
+    events.stream()
+      .filter(event -> !storedKeys.contains(EventDeduplicationKey.of(event)))
+      .forEach(result::add);
 
-  public Future<String> save(LoanDueDateChangedEvent event) {
-    return loanDueDateChangedEventRepository.save(event);
+    return result;
   }
 
-  public Future<String> save(FeeFineBalanceChangedEvent event) {
-    return feeFineBalanceChangedEventRepository.save(event);
+  /**
+   * @return events of the user in the order they were created
+   */
+  public Future<List<Event>> getEventsByUserId(String userId) {
+    return eventJournalRepository.getByUserId(userId);
   }
 
-  public Future<String> save(LoanClosedEvent event) {
-    return loanClosedEventRepository.save(event);
-  }
+  /**
+   * @return next page of the events of the user stored after the event with the given sequence
+   * number, in the order they were created
+   */
+  public Future<List<JournalEvent>> getEventPageByUserId(String userId, long afterSeq,
+    JournalEvent previous, int limit) {
 
-  public Future<List<ItemCheckedOutEvent>> getItemCheckedOutEvents(String userId) {
-    return itemCheckedOutEventRepository.getByUserId(userId);
+    return eventJournalRepository.getPageByUserId(userId, afterSeq, previous, limit);
   }
 
-  public Future<List<ItemCheckedInEvent>> getItemCheckedInEvents(String userId) {
-    return itemCheckedInEventRepository.getByUserId(userId);
-  }
+  public Future<Boolean> existsEventCreatedBefore(String userId, long afterSeq,
+    Date createdDate) {
 
-  public Future<List<ItemClaimedReturnedEvent>> getItemClaimedReturnedEvents(String userId) {
-    return itemClaimedReturnedEventRepository.getByUserId(userId);
+    return eventJournalRepository.existsCreatedBefore(userId, afterSeq, createdDate);
   }
 
-  public Future<List<ItemDeclaredLostEvent>> getItemDeclaredLostEvents(String userId) {
-    return itemDeclaredLostEventRepository.getByUserId(userId);
+  public Future<List<String>> getUserIdsWithEvents(String afterUserId, int limit) {
+    return eventJournalRepository.getUserIds(afterUserId, limit);
   }
 
-  public Future<List<ItemAgedToLostEvent>> getItemAgedToLostEvents(String userId) {
-    return itemAgedToLostEventEventRepository.getByUserId(userId);
-  }
+  /**
+   * Removes events which no longer affect the summary of the user once the checkpoint exists,
+   * see {@link EventJournalRepository#removeCoveredByCheckpoint}.
+   */
+  public Future<Integer> removeEventsCoveredByCheckpoint(String userId,
+    UserSummaryRebuildCheckpoint checkpoint, int limit) {
 
-  public Future<List<LoanDueDateChangedEvent>> getLoanDueDateChangedEvents(String userId) {
-    return loanDueDateChangedEventRepository.getByUserId(userId);
+    return eventJournalRepository.removeCoveredByCheckpoint(userId, checkpoint, limit);
   }
 
-  public Future<List<FeeFineBalanceChangedEvent>> getFeeFineBalanceChangedEvents(String userId) {
-    return feeFineBalanceChangedEventRepository.getByUserId(userId);
+  public Future<Integer> removeExpiredDeduplicationKeys(int retentionDays) {
+    return eventJournalRepository.removeExpiredDeduplicationKeys(retentionDays);
   }
 
-  public Future<Void> removeAllEvents(String tenantId) {
-    return GenericCompositeFuture.all(List.of(itemCheckedOutEventRepository.removeAll(tenantId),
-      itemCheckedInEventRepository.removeAll(tenantId),
-      itemClaimedReturnedEventRepository.removeAll(tenantId),
-      itemDeclaredLostEventRepository.removeAll(tenantId),
-      itemAgedToLostEventEventRepository.removeAll(tenantId),
-      loanDueDateChangedEventRepository.removeAll(tenantId),
-      feeFineBalanceChangedEventRepository.removeAll(tenantId))
-    ).mapEmpty();
+  public Future<Void> removeAllEvents() {
+    return eventJournalRepository.removeAll();
   }
 
-  public Future<Void> removeAllEventsForUser(String tenantId, String userId) {
-    return GenericCompositeFuture.all(
-      List.of(itemCheckedOutEventRepository.removeByUserId(tenantId, userId),
-        itemCheckedInEventRepository.removeByUserId(tenantId, userId),
-        itemClaimedReturnedEventRepository.removeByUserId(tenantId, userId),
-        itemDeclaredLostEventRepository.removeByUserId(tenantId, userId),
-        itemAgedToLostEventEventRepository.removeByUserId(tenantId, userId),
-        loanDueDateChangedEventRepository.removeByUserId(tenantId, userId),
-        feeFineBalanceChangedEventRepository.removeByUserId(tenantId, userId))
-    ).mapEmpty();
+  public Future<Void> removeAllEventsForUser(String userId) {
+    return eventJournalRepository.removeByUserId(userId);
   }
 }
@@ -13,32 +13,34 @@ import org.joda.time.DateTime;
 public class OverduePeriodCalculator {
   private static final Logger log = LogManager.getLogger(OverduePeriodCalculator.class);
   private static final int ZERO_MINUTES = 0;
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+  private static final long MINUTES_PER_DAY = 1440L;
 
   private OverduePeriodCalculator() {
     throw new UnsupportedOperationException("Do not instantiate");
   }
 
   public static int calculateOverdueMinutes(OpenLoan openLoan) {
-    log.debug("calculateOverdueMinutes:: parameters openLoan: {}", () -> asJson(openLoan));
+    log.trace("calculateOverdueMinutes:: parameters openLoan: {}", () -> asJson(openLoan));
     final DateTime systemTime = DateTime.now();
 
     int result = loanIsOverdue(openLoan, systemTime)
       ? calculateOverdueMinutes(openLoan, systemTime)
       : ZERO_MINUTES;
-    log.info("calculateOverdueMinutes:: result: {}", result);
+    log.trace("calculateOverdueMinutes:: result: {}", result);
     return result;
   }
 
   private static boolean loanIsOverdue(OpenLoan openLoan, DateTime systemTime) {
-    log.debug("loanIsOverdue:: parameters openLoan: {}, systemTime: {}",
+    log.trace("loanIsOverdue:: parameters openLoan: {}, systemTime: {}",
       () -> asJson(openLoan), () -> systemTime);
     boolean result = openLoan.getDueDate().before(systemTime.toDate());
-    log.info("loanIsOverdue:: result: {}", result);
+    log.trace("loanIsOverdue:: result: {}", result);
     return result;
   }
 
   private static Integer calculateOverdueMinutes(OpenLoan openLoan, DateTime systemTime) {
-    log.debug("calculateOverdueMinutes:: parameters openLoan: {}, systemTime: {}",
+    log.trace("calculateOverdueMinutes:: parameters openLoan: {}, systemTime: {}",
       () -> asJson(openLoan), () -> systemTime);
     DateTime dueDate = new DateTime(openLoan.getDueDate());
     int overdueMinutes = minutesBetween(dueDate, systemTime).getMinutes();
@@ -46,10 +48,36 @@ public class OverduePeriodCalculator {
     int result = overdueMinutes > getGracePeriodMinutes(openLoan)
       ? overdueMinutes
       : ZERO_MINUTES;
-    log.info("calculateOverdueMinutes:: result: {}", result);
+    log.trace("calculateOverdueMinutes:: result: {}", result);
     return result;
   }
 
+  /**
+   * Overdue minutes of a loan change every minute, but blocks only depend on whether the loan is
+   * overdue and, for recalls, on the number of days it is overdue.
+   *
+   * @return time in milliseconds when the loan becomes overdue or, when the recalled loan is
+   * already overdue, when it becomes overdue by one more day; Long.MAX_VALUE when neither applies
+   */
+  public static long getNextOverdueTransitionTime(OpenLoan openLoan, long currentTime) {
+    if (openLoan == null || openLoan.getDueDate() == null) {
+      return Long.MAX_VALUE;
+    }
+
+    long dueDate = openLoan.getDueDate().getTime();
+    long overdueSince = dueDate + (getGracePeriodMinutes(openLoan) + 1L) * MILLIS_PER_MINUTE;
+    if (currentTime < overdueSince) {
+      return overdueSince;
+    }
+    if (!Boolean.TRUE.equals(openLoan.getRecall())) {
+      return Long.MAX_VALUE;
+    }
+
+    long overdueMinutes = (currentTime - dueDate) / MILLIS_PER_MINUTE;
+    long overdueDays = (overdueMinutes + MINUTES_PER_DAY - 1) / MINUTES_PER_DAY;
+    return dueDate + (overdueDays * MINUTES_PER_DAY + 1) * MILLIS_PER_MINUTE;
+  }
+
   private static int getGracePeriodMinutes(OpenLoan openLoan) {
     return ofNullable(openLoan.getGracePeriod())
       .map(Period::from)
@@ -0,0 +1,162 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.okapi.common.XOkapiHeaders.TENANT;
+import static org.folio.util.ConfigUtil.getInt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.okapi.common.GenericCompositeFuture;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.jaxrs.model.UserAutomatedPatronBlocks;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.utils.TenantTool;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Blocks based on overdue loans change with the passage of time rather than with events. Each
+ * user summary keeps the next time one of its loans becomes overdue, or an overdue recall becomes
+ * overdue by one more day, in an indexed column. The scan claims summaries whose transition has
+ * passed, publishes the current blocks of the user and stores the summary again, which moves the
+ * transition to the next one. When publishing fails the transition is left in place, so the user
+ * is picked up again by the next scan. Claims keep module instances from handling the same
+ * transition, a claim left behind by an instance which stopped expires after
+ * OVERDUE_TRANSITION_CLAIM_SECONDS. Only one scan of a tenant runs in a module instance at a
+ * time.
+ */
+public class OverdueTransitionService {
+  private static final Logger log = LogManager.getLogger(OverdueTransitionService.class);
+
+  public static final String BATCH_SIZE_PROPERTY = "OVERDUE_TRANSITION_SCAN_BATCH_SIZE";
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  public static final String CLAIM_SECONDS_PROPERTY = "OVERDUE_TRANSITION_CLAIM_SECONDS";
+  private static final int DEFAULT_CLAIM_SECONDS = 300;
+
+  private static final Set<String> scanningTenants = ConcurrentHashMap.newKeySet();
+
+  private final String tenantId;
+  private final UserSummaryRepository userSummaryRepository;
+  private final UserSummaryService userSummaryService;
+  private final PatronBlocksService patronBlocksService;
+  private final PatronBlocksChangedPublisher publisher;
+  private final int batchSize;
+  private final int claimSeconds;
+
+  public OverdueTransitionService(Map<String, String> okapiHeaders, Vertx vertx) {
+    tenantId = TenantTool.calculateTenantId(okapiHeaders.get(TENANT));
+    TenantServices services = TenantServices.forTenant(
+      PostgresClient.getInstance(vertx, tenantId));
+    userSummaryRepository = services.getUserSummaryRepository();
+    userSummaryService = services.getUserSummaryService();
+    patronBlocksService = new PatronBlocksService(okapiHeaders, vertx);
+    publisher = new PatronBlocksChangedPublisher(okapiHeaders, vertx);
+    batchSize = getInt(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+    claimSeconds = getInt(CLAIM_SECONDS_PROPERTY, DEFAULT_CLAIM_SECONDS);
+  }
+
+  /**
+   * @return number of users whose overdue transition has been handled
+   */
+  public Future<Integer> scan() {
+    log.debug("scan:: tenantId: {}", tenantId);
+    if (!scanningTenants.add(tenantId)) {
+      log.info("scan:: Scan of tenant {} is already running", tenantId);
+      return succeededFuture(0);
+    }
+
+    return refreshSummariesWithoutCounters()
+      .compose(ignored -> scanBatches(0))
+      .onComplete(result -> scanningTenants.remove(tenantId))
+      .onSuccess(count -> log.info("scan:: Handled overdue transitions of {} user(s) of " +
+        "tenant {}", count, tenantId))
+      .onFailure(t -> log.warn("scan:: Failed to scan overdue transitions of tenant {}",
+        tenantId, t));
+  }
+
+  /**
+   * Summaries stored before counters were introduced have no overdue transition, storing them
+   * again adds one. No event is published for them.
+   */
+  private Future<Void> refreshSummariesWithoutCounters() {
+    return userSummaryRepository.findWithoutCounters(batchSize)
+      .compose(summaries -> refreshCounters(summaries)
+        .compose(refreshed -> summaries.size() == batchSize && refreshed == summaries.size()
+          ? refreshSummariesWithoutCounters()
+          : Future.<Void>succeededFuture()));
+  }
+
+  private Future<Integer> refreshCounters(List<UserSummary> summaries) {
+    List<Future<Boolean>> results = summaries.stream()
+      .map(summary -> userSummaryService.refreshCounters(summary.getUserId())
+        .map(true)
+        .otherwise(false))
+      .collect(Collectors.toList());
+
+    return countSucceeded(results);
+  }
+
+  /**
+   * Claims of a batch are released once its transitions have been handled. Scanning stops after
+   * a batch in which not every user was handled, those users would be claimed again right away.
+   */
+  private Future<Integer> scanBatches(int handledSoFar) {
+    return userSummaryRepository.claimWithPassedOverdueTransition(batchSize, claimSeconds)
+      .compose(summaries -> handleTransitions(summaries)
+        .compose(handled -> releaseClaims(summaries)
+          .map(handled))
+        .compose(handled -> summaries.size() == batchSize && handled == summaries.size()
+          ? scanBatches(handledSoFar + handled)
+          : succeededFuture(handledSoFar + handled)));
+  }
+
+  /**
+   * A claim which cannot be released expires, so the failure does not stop the scan.
+   */
+  private Future<Void> releaseClaims(List<UserSummary> summaries) {
+    return userSummaryRepository.releaseOverdueTransitionClaims(summaries.stream()
+        .map(UserSummary::getId)
+        .collect(Collectors.toList()))
+      .onFailure(t -> log.warn("releaseClaims:: Failed to release overdue transition claims " +
+        "of tenant {}", tenantId, t))
+      .<Void>mapEmpty()
+      .otherwiseEmpty();
+  }
+
+  private Future<Integer> handleTransitions(List<UserSummary> summaries) {
+    List<Future<Boolean>> results = summaries.stream()
+      .map(summary -> handleTransition(summary)
+        .map(true)
+        .onFailure(t -> log.warn("handleTransitions:: Failed to handle overdue transition " +
+          "of user {}", summary.getUserId(), t))
+        .otherwise(false))
+      .collect(Collectors.toList());
+
+    return countSucceeded(results);
+  }
+
+  private Future<Void> handleTransition(UserSummary userSummary) {
+    return patronBlocksService.getBlocksAfterOverdueTransition(userSummary)
+      .compose(blocks -> blocks.isPresent()
+        ? publisher.publish(new UserAutomatedPatronBlocks()
+          .withUserId(userSummary.getUserId())
+          .withAutomatedPatronBlocks(blocks.get().getAutomatedPatronBlocks()))
+        : Future.<Void>succeededFuture())
+      .compose(ignored -> userSummaryService.refreshCounters(userSummary.getUserId()));
+  }
+
+  private static Future<Integer> countSucceeded(List<Future<Boolean>> results) {
+    return GenericCompositeFuture.all(results)
+      .map(ignored -> (int) results.stream()
+        .filter(Future::result)
+        .count());
+  }
+}
@@ -0,0 +1,72 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+
+import java.util.Objects;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.domain.PatronBlockConfiguration;
+import org.folio.repository.PatronBlockConditionsRepository;
+import org.folio.repository.PatronBlockConfigurationVersionRepository;
+import org.folio.repository.PatronBlockLimitsRepository;
+
+import io.vertx.core.Future;
+
+/**
+ * Keeps a snapshot of the patron block conditions and limits of a tenant, which change rarely.
+ * The snapshot is loaded again when the configuration version stored in the database differs
+ * from the version of the snapshot, so changes made through any module instance or directly in
+ * the database are noticed by every instance. Writes through this instance also drop the
+ * snapshot right away.
+ */
+public class PatronBlockConfigurationService {
+  private static final Logger log = LogManager.getLogger(PatronBlockConfigurationService.class);
+
+  private final PatronBlockConfigurationVersionRepository versionRepository;
+  private final PatronBlockConditionsRepository conditionsRepository;
+  private final PatronBlockLimitsRepository limitsRepository;
+  private volatile PatronBlockConfiguration snapshot;
+
+  public PatronBlockConfigurationService(
+    PatronBlockConfigurationVersionRepository versionRepository,
+    PatronBlockConditionsRepository conditionsRepository,
+    PatronBlockLimitsRepository limitsRepository) {
+
+    this.versionRepository = versionRepository;
+    this.conditionsRepository = conditionsRepository;
+    this.limitsRepository = limitsRepository;
+  }
+
+  public Future<PatronBlockConfiguration> getConfiguration() {
+    return versionRepository.getVersion()
+      .compose(version -> {
+        PatronBlockConfiguration current = snapshot;
+        if (current != null && version != null && Objects.equals(version, current.getVersion())) {
+          return succeededFuture(current);
+        }
+        return load(version);
+      });
+  }
+
+  public void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * The version is read before the configuration, so a snapshot never has a newer version than
+   * its content and a concurrent change is loaded by the next request.
+   */
+  private Future<PatronBlockConfiguration> load(Long version) {
+    log.debug("load:: parameters version: {}", version);
+    return conditionsRepository.getAllWithDefaultLimit()
+      .compose(conditions -> limitsRepository.getAllWithLimit(Integer.MAX_VALUE)
+        .map(limits -> new PatronBlockConfiguration(version, conditions, limits)))
+      .onSuccess(configuration -> {
+        if (version != null) {
+          snapshot = configuration;
+        }
+        log.info("load:: Loaded patron block configuration version {}", version);
+      });
+  }
+}
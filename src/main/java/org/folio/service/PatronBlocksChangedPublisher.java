@@ -0,0 +1,99 @@
+package org.folio.service;
+
+import static org.folio.okapi.common.XOkapiHeaders.TENANT;
+import static org.folio.util.LogUtil.asJson;
+import static org.folio.util.UuidHelper.randomId;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.kafka.KafkaEventConsumerVerticle;
+import org.folio.rest.jaxrs.model.Event;
+import org.folio.rest.jaxrs.model.EventMetadata;
+import org.folio.rest.jaxrs.model.UserAutomatedPatronBlocks;
+import org.folio.rest.tools.utils.TenantTool;
+import org.folio.rest.util.OkapiConnectionParams;
+import org.folio.util.pubsub.PubSubClientUtils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.producer.KafkaProducer;
+import io.vertx.kafka.client.producer.KafkaProducerRecord;
+
+/**
+ * Publishes PATRON_BLOCKS_CHANGED events the same way events are received: through pubsub or,
+ * when events are consumed from Kafka, directly to the topic pubsub would publish them to. Kafka
+ * records are keyed by user ID, so events of a user stay in order.
+ */
+public class PatronBlocksChangedPublisher {
+  private static final Logger log = LogManager.getLogger(PatronBlocksChangedPublisher.class);
+
+  public static final String PATRON_BLOCKS_CHANGED_EVENT_TYPE = "PATRON_BLOCKS_CHANGED";
+  private static final int EVENT_TTL = 1;
+  private static final String PRODUCER_NAME = "mod-patron-blocks-events";
+
+  private final Vertx vertx;
+  private final Map<String, String> okapiHeaders;
+  private final String tenantId;
+
+  public PatronBlocksChangedPublisher(Map<String, String> okapiHeaders, Vertx vertx) {
+    this.vertx = vertx;
+    this.okapiHeaders = okapiHeaders;
+    tenantId = TenantTool.calculateTenantId(okapiHeaders.get(TENANT));
+  }
+
+  public Future<Void> publish(UserAutomatedPatronBlocks blocks) {
+    log.debug("publish:: parameters blocks: {}", () -> asJson(blocks));
+    Event event = new Event()
+      .withId(randomId())
+      .withEventType(PATRON_BLOCKS_CHANGED_EVENT_TYPE)
+      .withEventMetadata(new EventMetadata()
+        .withTenantId(tenantId)
+        .withEventTTL(EVENT_TTL)
+        .withPublishedBy(PubSubClientUtils.constructModuleName()))
+      .withEventPayload(Json.encode(blocks));
+
+    return (KafkaEventConsumerVerticle.isEnabled()
+      ? publishToKafka(blocks.getUserId(), event)
+      : publishToPubSub(event))
+      .onSuccess(ignored -> log.info("publish:: {} event published for user {}",
+        PATRON_BLOCKS_CHANGED_EVENT_TYPE, blocks.getUserId()));
+  }
+
+  private Future<Void> publishToPubSub(Event event) {
+    return Future.fromCompletionStage(PubSubClientUtils.sendEventMessage(event,
+        new OkapiConnectionParams(okapiHeaders, vertx)), vertx.getOrCreateContext())
+      .compose(published -> Boolean.TRUE.equals(published)
+        ? Future.<Void>succeededFuture()
+        : Future.<Void>failedFuture(String.format("Failed to publish %s event",
+          event.getEventType())));
+  }
+
+  private Future<Void> publishToKafka(String userId, Event event) {
+    return KafkaProducer.<String, String>createShared(vertx, PRODUCER_NAME, buildProducerConfig(
+        KafkaEventConsumerVerticle.getBootstrapServers()))
+      .send(KafkaProducerRecord.create(buildTopicName(KafkaEventConsumerVerticle.getEnvironment(),
+        tenantId), userId, JsonObject.mapFrom(event).encode()))
+      .mapEmpty();
+  }
+
+  public static Map<String, String> buildProducerConfig(String bootstrapServers) {
+    Map<String, String> config = new HashMap<>();
+    config.put("bootstrap.servers", bootstrapServers);
+    config.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+    config.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+    config.put("acks", "all");
+    return config;
+  }
+
+  /**
+   * Topics are named pub-sub.{environment}.{tenant}.{event type} by pubsub.
+   */
+  public static String buildTopicName(String environment, String tenantId) {
+    return String.join(".", "pub-sub", environment, tenantId, PATRON_BLOCKS_CHANGED_EVENT_TYPE);
+  }
+}
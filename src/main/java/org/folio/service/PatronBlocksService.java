@@ -3,28 +3,45 @@ package org.folio.service;
 import static io.vertx.core.Future.failedFuture;
 import static io.vertx.core.Future.succeededFuture;
 import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static org.folio.okapi.common.XOkapiHeaders.TENANT;
+import static org.folio.util.ConfigUtil.getDouble;
 import static org.folio.util.LogUtil.asJson;
+import static org.folio.util.LogUtil.userSummaryAsString;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BinaryOperator;
 import java.util.stream.Collectors;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.domain.ActionBlocks;
-import org.folio.repository.PatronBlockConditionsRepository;
-import org.folio.repository.PatronBlockLimitsRepository;
+import org.folio.domain.Condition;
+import org.folio.domain.PatronBlockConfiguration;
+import org.folio.domain.UserSummaryStatistics;
+import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.rest.client.UsersClient;
 import org.folio.rest.jaxrs.model.AutomatedPatronBlock;
 import org.folio.rest.jaxrs.model.AutomatedPatronBlocks;
 import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.PatronBlockCondition;
 import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.folio.rest.jaxrs.model.UserAutomatedPatronBlocks;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.tools.utils.TenantTool;
 import org.folio.util.AsyncProcessingContext;
@@ -45,46 +62,227 @@ public class PatronBlocksService {
       " saved. Old value: {}, new value: {}", oldValue, newValue);
     return newValue;
   };
+  public static final String DETAIL_LOG_SAMPLING_RATE_PROPERTY =
+    "BLOCKS_CALCULATION_DETAIL_LOG_SAMPLING_RATE";
+  private static final double DETAIL_LOG_SAMPLING_RATE = getDouble(
+    DETAIL_LOG_SAMPLING_RATE_PROPERTY, 0.0);
+  private static final Set<String> OVERDUE_CONDITION_IDS = Set.of(
+    Condition.MAX_NUMBER_OF_OVERDUE_ITEMS.getId(),
+    Condition.MAX_NUMBER_OF_OVERDUE_RECALLS.getId(),
+    Condition.RECALL_OVERDUE_BY_MAX_NUMBER_OF_DAYS.getId());
+  private static final String TOTAL_STEP = "total";
+  private static final String USER_SUMMARY_STEP = "user-summary";
+  private static final String CONFIGURATION_STEP = "configuration";
+  private static final String PATRON_GROUP_STEP = "patron-group";
+  private static final String CALCULATION_STEP = "calculation";
+  private static final String BATCH_TOTAL_STEP = "batch-total";
+  private static final String BATCH_USER_SUMMARY_STEP = "batch-user-summaries";
+  private static final String BATCH_PATRON_GROUP_STEP = "batch-patron-groups";
   private final UserSummaryService userSummaryService;
-  private final PatronBlockConditionsRepository conditionsRepository;
-  private final PatronBlockLimitsRepository limitsRepository;
+  private final PatronBlockConfigurationService configurationService;
   private final UsersClient usersClient;
+  private final AutomatedPatronBlocksCache blocksCache;
+  private final StepLatencyRecorder latencyRecorder;
 
   public PatronBlocksService(Map<String, String> okapiHeaders, Vertx vertx) {
     String tenantId = TenantTool.calculateTenantId(okapiHeaders.get(TENANT));
-    PostgresClient postgresClient = PostgresClient.getInstance(vertx, tenantId);
-    userSummaryService = new UserSummaryService(postgresClient);
-    conditionsRepository = new PatronBlockConditionsRepository(postgresClient);
-    limitsRepository = new PatronBlockLimitsRepository(postgresClient);
+    TenantServices services = TenantServices.forTenant(
+      PostgresClient.getInstance(vertx, tenantId));
+    userSummaryService = services.getUserSummaryService();
+    configurationService = services.getPatronBlockConfigurationService();
     usersClient = new UsersClient(vertx, okapiHeaders);
+    blocksCache = services.getAutomatedPatronBlocksCache();
+    latencyRecorder = services.getBlocksCalculationLatencyRecorder();
   }
 
+  PatronBlocksService(UserSummaryService userSummaryService,
+    PatronBlockConfigurationService configurationService, UsersClient usersClient,
+    AutomatedPatronBlocksCache blocksCache, StepLatencyRecorder latencyRecorder) {
+
+    this.userSummaryService = userSummaryService;
+    this.configurationService = configurationService;
+    this.usersClient = usersClient;
+    this.blocksCache = blocksCache;
+    this.latencyRecorder = latencyRecorder;
+  }
+
+  /**
+   * The summary, the configuration and the patron group of the user do not depend on each
+   * other, so they are looked up concurrently. Patron groups are cached longer than blocks,
+   * so the patron group lookup rarely leaves the module when cached blocks are used.
+   */
   public Future<AutomatedPatronBlocks> getBlocksForUser(String userId) {
     log.debug("getBlocksForUser:: parameters userId: {}", userId);
-    return userSummaryService.getByUserId(userId)
-      .map(userSummary -> new BlocksCalculationContext().withUserSummary(userSummary))
-      .compose(this::getBlocksForSummary)
+    CalculationLog calculationLog = new CalculationLog(userId);
+
+    return latencyRecorder.time(TOTAL_STEP, () -> {
+        Future<UserSummary> userSummary = latencyRecorder.time(USER_SUMMARY_STEP,
+          () -> userSummaryService.getByUserId(userId));
+        Future<PatronBlockConfiguration> configuration = latencyRecorder.time(
+          CONFIGURATION_STEP, configurationService::getConfiguration);
+        Future<String> userGroupId = latencyRecorder.time(PATRON_GROUP_STEP,
+          () -> usersClient.findPatronGroupIdForUser(userId));
+
+        return userSummary.compose(summary -> configuration.compose(config ->
+          getCachedOrCalculatedBlocks(summary, config, userGroupId, calculationLog)));
+      })
+      .onFailure(calculationLog::failed)
       .otherwise(new AutomatedPatronBlocks())
-      .onSuccess(result -> log.info("getBlocksForUser:: result: {}", () -> asJson(result)));
+      .onSuccess(result -> log.info("getBlocksForUser:: {}", calculationLog.summarize(result)));
+  }
+
+  /**
+   * Calculates blocks of several users with one query for their summaries and batched queries
+   * for patron groups of the users whose blocks are not cached, the rest is done in memory.
+   *
+   * @return blocks of each distinct user in the order of the given IDs
+   */
+  public Future<List<UserAutomatedPatronBlocks>> getBlocksForUsers(List<String> userIds) {
+    log.debug("getBlocksForUsers:: parameters userIds: {}", userIds);
+    long startTime = System.nanoTime();
+    List<String> distinctUserIds = userIds.stream().distinct().collect(toList());
+
+    return latencyRecorder.time(BATCH_TOTAL_STEP, () -> {
+        Future<List<UserSummary>> userSummaries = latencyRecorder.time(BATCH_USER_SUMMARY_STEP,
+          () -> userSummaryService.getByUserIds(distinctUserIds));
+
+        return latencyRecorder.time(CONFIGURATION_STEP, configurationService::getConfiguration)
+          .compose(configuration -> userSummaries
+            .compose(summaries -> getCachedOrCalculatedBlocks(summaries, configuration)));
+      })
+      .map(blocksByUserId -> distinctUserIds.stream()
+        .map(userId -> new UserAutomatedPatronBlocks()
+          .withUserId(userId)
+          .withAutomatedPatronBlocks(blocksByUserId.getOrDefault(
+              userId.toLowerCase(Locale.ROOT), new AutomatedPatronBlocks())
+            .getAutomatedPatronBlocks()))
+        .collect(toList()))
+      .onSuccess(result -> log.info("getBlocksForUsers:: users={} blocked={} durationMs={}",
+        result.size(), result.stream()
+          .filter(blocks -> !blocks.getAutomatedPatronBlocks().isEmpty())
+          .count(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+  }
+
+  /**
+   * Calculates blocks of the user after a loan of the user became overdue or an overdue recall
+   * became overdue by one more day. Such a transition can only change the blocks when a limit
+   * of the user's patron group is based on overdue loans, otherwise nothing is calculated.
+   *
+   * @return blocks of the user or empty when no limit of the user's patron group is based on
+   * overdue loans
+   */
+  public Future<Optional<AutomatedPatronBlocks>> getBlocksAfterOverdueTransition(
+    UserSummary userSummary) {
+
+    log.debug("getBlocksAfterOverdueTransition:: parameters userSummary: {}",
+      () -> userSummaryAsString(userSummary));
+    Future<String> userGroupId = usersClient.findPatronGroupIdForUser(userSummary.getUserId());
+
+    return configurationService.getConfiguration()
+      .compose(configuration -> userGroupId.compose(groupId -> {
+        boolean hasOverdueLimits = configuration.getLimits(groupId).stream()
+          .map(PatronBlockLimit::getConditionId)
+          .anyMatch(OVERDUE_CONDITION_IDS::contains);
+        if (!hasOverdueLimits) {
+          return succeededFuture(Optional.<AutomatedPatronBlocks>empty());
+        }
+        return calculateBlocksForUserGroup(new BlocksCalculationContext()
+            .withUserSummary(userSummary)
+            .withConfiguration(configuration)
+            .withUserGroupId(groupId))
+          .map(Optional::of);
+      }))
+      .onSuccess(result -> log.info("getBlocksAfterOverdueTransition:: result: {}",
+        () -> asJson(result.orElse(null))));
+  }
+
+  private Future<Map<String, AutomatedPatronBlocks>> getCachedOrCalculatedBlocks(
+    List<UserSummary> userSummaries, PatronBlockConfiguration configuration) {
+
+    Map<String, AutomatedPatronBlocks> blocksByUserId = new HashMap<>();
+    List<UserSummary> summariesToCalculate = new ArrayList<>();
+    for (UserSummary userSummary : userSummaries) {
+      blocksCache.get(userSummary, configuration.getVersion()).ifPresentOrElse(
+        blocks -> blocksByUserId.put(userSummary.getUserId().toLowerCase(Locale.ROOT), blocks),
+        () -> summariesToCalculate.add(userSummary));
+    }
+
+    if (summariesToCalculate.isEmpty()) {
+      return succeededFuture(blocksByUserId);
+    }
+
+    return latencyRecorder.time(BATCH_PATRON_GROUP_STEP,
+        () -> usersClient.findPatronGroupIdsForUsers(summariesToCalculate.stream()
+          .map(UserSummary::getUserId)
+          .collect(toList())))
+      .onFailure(throwable -> log.warn("getCachedOrCalculatedBlocks:: Failed to find patron " +
+        "groups of users", throwable))
+      .otherwise(emptyMap())
+      .compose(patronGroupIds -> {
+        List<Future<AutomatedPatronBlocks>> calculatedBlocks = new ArrayList<>();
+        for (UserSummary userSummary : summariesToCalculate) {
+          calculatedBlocks.add(calculateBlocksForUserGroup(new BlocksCalculationContext()
+            .withUserSummary(userSummary)
+            .withConfiguration(configuration)
+            .withUserGroupId(patronGroupIds.get(userSummary.getUserId())))
+            .onSuccess(blocks -> blocksCache.put(userSummary, configuration.getVersion(),
+              blocks))
+            .otherwise(new AutomatedPatronBlocks()));
+        }
+
+        return GenericCompositeFuture.all(calculatedBlocks)
+          .map(ignored -> {
+            for (int i = 0; i < summariesToCalculate.size(); i++) {
+              blocksByUserId.put(
+                summariesToCalculate.get(i).getUserId().toLowerCase(Locale.ROOT),
+                calculatedBlocks.get(i).result());
+            }
+            return blocksByUserId;
+          });
+      });
   }
 
-  private Future<AutomatedPatronBlocks> getBlocksForSummary(BlocksCalculationContext ctx) {
-    log.debug("getBlocksForSummary:: parameters ctx: {}", () -> asJson(ctx));
-    return succeededFuture(ctx)
-      .compose(this::addUserGroupIdToContext)
+  private Future<AutomatedPatronBlocks> getCachedOrCalculatedBlocks(UserSummary userSummary,
+    PatronBlockConfiguration configuration, Future<String> userGroupId,
+    CalculationLog calculationLog) {
+
+    calculationLog.userSummary = userSummary;
+    return blocksCache.get(userSummary, configuration.getVersion())
+      .map(Future::succeededFuture)
+      .orElseGet(() -> userGroupId
+        .map(groupId -> new BlocksCalculationContext()
+          .withUserSummary(userSummary)
+          .withConfiguration(configuration)
+          .withUserGroupId(groupId)
+          .withCalculationLog(calculationLog))
+        .compose(this::calculateBlocksForUserGroup)
+        .onSuccess(blocks -> blocksCache.put(userSummary, configuration.getVersion(), blocks)));
+  }
+
+  private Future<AutomatedPatronBlocks> calculateBlocksForUserGroup(
+    BlocksCalculationContext ctx) {
+
+    log.trace("calculateBlocksForUserGroup:: parameters ctx: {}", () -> asJson(ctx));
+    return latencyRecorder.time(CALCULATION_STEP, () -> succeededFuture(ctx)
       .compose(this::addPatronBlockLimitsToContext)
       .compose(this::addAllPatronBlockConditionsToContext)
       .map(this::addOverdueMinutesToContext)
-      .map(this::calculateBlocks)
-      .onSuccess(result -> log.info("getBlocksForSummary:: result: {}", () -> asJson(result)));
+      .map(this::addUserSummaryStatisticsToContext)
+      .map(this::calculateBlocks))
+      .onSuccess(result -> log.debug("calculateBlocksForUserGroup:: result: {}",
+        () -> asJson(result)));
   }
 
   private AutomatedPatronBlocks calculateBlocks(BlocksCalculationContext ctx) {
-    log.debug("calculateBlocks:: parameters ctx: {}", () -> asJson(ctx));
+    log.trace("calculateBlocks:: parameters ctx: {}", () -> asJson(ctx));
     final AutomatedPatronBlocks blocks = new AutomatedPatronBlocks();
+    if (ctx.calculationLog != null) {
+      ctx.calculationLog.calculated(ctx);
+    }
 
     if (ctx.shouldCalculationBeSkipped()) {
-      log.info("calculateBlocks:: skipping calculation");
+      log.debug("calculateBlocks:: skipping calculation");
       return blocks;
     }
 
@@ -97,73 +295,94 @@ public class PatronBlocksService {
       .filter(Objects::nonNull)
       .collect(Collectors.toList()));
 
-    log.info("calculateBlocks:: result: {}", () -> asJson(blocks));
+    log.debug("calculateBlocks:: result: {}", () -> asJson(blocks));
     return blocks;
   }
 
-  private Future<BlocksCalculationContext> addUserGroupIdToContext(BlocksCalculationContext ctx) {
-    log.debug("addUserGroupIdToContext:: parameters ctx: {}", () -> asJson(ctx));
-    if (ctx.userSummary == null || ctx.userSummary.getUserId() == null) {
-      ctx.logFailedValidationError("addUserGroupIdToContext");
-      return failedFuture(DEFAULT_ERROR_MESSAGE);
-    }
-
-    return usersClient.findPatronGroupIdForUser(ctx.userSummary.getUserId())
-      .map(ctx::withUserGroupId)
-      .onSuccess(result -> log.info("addUserGroupIdToContext:: result: {}",
-        () -> asJson(result)));
-  }
-
   private Future<BlocksCalculationContext> addPatronBlockLimitsToContext(
     BlocksCalculationContext ctx) {
 
-    log.debug("addPatronBlockLimitsToContext:: parameters ctx: {}", () -> asJson(ctx));
+    log.trace("addPatronBlockLimitsToContext:: parameters ctx: {}", () -> asJson(ctx));
 
     if (ctx.userGroupId == null) {
       ctx.logFailedValidationError("addPatronBlockLimitsToContext");
       return failedFuture(DEFAULT_ERROR_MESSAGE);
     }
 
-    return limitsRepository.findLimitsForPatronGroup(ctx.userGroupId)
-      .map(ctx::withPatronBlockLimits)
-      .onSuccess(result -> log.info("addPatronBlockLimitsToContext:: result: {}",
-        () -> asJson(result)));
+    BlocksCalculationContext result = ctx.withPatronBlockLimits(
+      ctx.configuration.getLimits(ctx.userGroupId));
+    log.trace("addPatronBlockLimitsToContext:: result: {}", () -> asJson(result));
+    return succeededFuture(result);
   }
 
   private Future<BlocksCalculationContext> addAllPatronBlockConditionsToContext(
     BlocksCalculationContext ctx) {
 
-    log.debug("addAllPatronBlockConditionsToContext:: parameters ctx: {}", () -> asJson(ctx));
+    log.trace("addAllPatronBlockConditionsToContext:: parameters ctx: {}", () -> asJson(ctx));
 
     if (ctx.shouldCalculationBeSkipped()) {
-      log.info("addAllPatronBlockConditionsToContext:: skipping calculation");
+      log.debug("addAllPatronBlockConditionsToContext:: skipping calculation");
       return succeededFuture(ctx);
     }
 
-    return conditionsRepository.getAllWithDefaultLimit().map(ctx::withPatronBlockConditions)
-      .onSuccess(result -> log.info("addAllPatronBlockConditionsToContext:: result: {}",
-        () -> asJson(result)));
+    BlocksCalculationContext result = ctx.withPatronBlockConditions(
+      ctx.configuration.getConditions());
+    log.trace("addAllPatronBlockConditionsToContext:: result: {}", () -> asJson(result));
+    return succeededFuture(result);
   }
 
   private BlocksCalculationContext addOverdueMinutesToContext(BlocksCalculationContext ctx) {
-    log.debug("addOverdueMinutesToContext:: parameters ctx: {}", () -> asJson(ctx));
+    log.trace("addOverdueMinutesToContext:: parameters ctx: {}", () -> asJson(ctx));
     if (ctx.shouldCalculationBeSkipped()) {
-      log.info("addOverdueMinutesToContext:: skipping calculation");
+      log.debug("addOverdueMinutesToContext:: skipping calculation");
       return ctx;
     }
 
+    if (noLoanCanBeOverdue(ctx.userSummary)) {
+      log.debug("addOverdueMinutesToContext:: no loan is overdue yet");
+      return ctx.withOverdueMinutes(emptyMap());
+    }
+
     BlocksCalculationContext result = ctx.withOverdueMinutes(
       ctx.userSummary.getOpenLoans()
         .stream()
-        .filter(PatronBlocksService::validateLoan)
+        .filter(openLoan -> validateLoan(openLoan, ctx.getDetailLogLevel()))
         .collect(toMap(OpenLoan::getLoanId, OverduePeriodCalculator::calculateOverdueMinutes,
           OVERDUE_MINUTES_MERGE_FUNCTION)));
-    log.info("addOverdueMinutesToContext:: result: {}", () -> asJson(result));
+    log.log(ctx.getDetailLogLevel(), "addOverdueMinutesToContext:: overdue minutes by loan " +
+      "ID: {}", result.overdueMinutes);
+    return result;
+  }
+
+  private BlocksCalculationContext addUserSummaryStatisticsToContext(
+    BlocksCalculationContext ctx) {
+
+    log.trace("addUserSummaryStatisticsToContext:: parameters ctx: {}", () -> asJson(ctx));
+    if (ctx.shouldCalculationBeSkipped()) {
+      log.debug("addUserSummaryStatisticsToContext:: skipping calculation");
+      return ctx;
+    }
+
+    BlocksCalculationContext result = ctx.withUserSummaryStatistics(
+      noLoanCanBeOverdue(ctx.userSummary)
+        ? UserSummaryStatistics.withoutOverdueLoans(ctx.userSummary.getCounters())
+        : UserSummaryStatistics.of(ctx.userSummary, ctx.overdueMinutes));
+    log.log(ctx.getDetailLogLevel(), "addUserSummaryStatisticsToContext:: statistics: {}",
+      result.userSummaryStatistics);
     return result;
   }
 
-  private static boolean validateLoan(OpenLoan openLoan) {
-    log.debug("validateLoan:: parameters openLoan: {}", () -> asJson(openLoan));
+  /**
+   * Counters let conditions be decided without iterating the loans as long as the earliest
+   * due date has not passed, loans are only overdue after their due date.
+   */
+  private static boolean noLoanCanBeOverdue(UserSummary userSummary) {
+    UserSummaryCounters counters = userSummary.getCounters();
+    return counters != null && (counters.getEarliestDueDate() == null ||
+      !counters.getEarliestDueDate().before(new Date()));
+  }
+
+  private static boolean validateLoan(OpenLoan openLoan, Level detailLogLevel) {
     if (openLoan == null) {
       log.warn("validateLoan:: Failed to calculate overdue minutes: openLoan is null");
       return false;
@@ -174,15 +393,14 @@ public class PatronBlocksService {
       return false;
     }
 
-    log.info("validateLoan:: result: true");
+    log.log(detailLogLevel, "validateLoan:: loan {} is valid, due date: {}",
+      openLoan.getLoanId(), openLoan.getDueDate());
     return true;
   }
 
   private BlocksCalculationContext addCurrentConditionToContext(
     BlocksCalculationContext ctx) {
 
-    log.debug("addCurrentConditionToContext:: parameters ctx: {}", () -> asJson(ctx));
-
     if (ctx.currentPatronBlockLimit == null ||
       ctx.currentPatronBlockLimit.getConditionId() == null) {
 
@@ -204,18 +422,16 @@ public class PatronBlocksService {
     }
 
     BlocksCalculationContext result = ctx.withCurrentPatronBlockCondition(patronBlockCondition);
-    log.info("addCurrentConditionToContext:: result: {}", () -> asJson(result));
+    log.log(ctx.getDetailLogLevel(), "addCurrentConditionToContext:: limit {}, condition {}",
+      ctx.currentPatronBlockLimit.getId(), conditionId);
     return result;
   }
 
   private BlocksCalculationContext addActionBlocksByLimitAndConditionToContext(
     BlocksCalculationContext ctx) {
 
-    log.debug("addActionBlocksByLimitAndConditionToContext:: parameters ctx: {}",
-      () -> asJson(ctx));
-
-    if (ctx.userSummary == null || ctx.currentPatronBlockLimit == null ||
-      ctx.currentPatronBlockCondition == null || ctx.overdueMinutes == null) {
+    if (ctx.userSummaryStatistics == null || ctx.currentPatronBlockLimit == null ||
+      ctx.currentPatronBlockCondition == null) {
 
       ctx.logFailedValidationError("addActionBlocksByLimitAndConditionToContext");
       return ctx;
@@ -223,8 +439,8 @@ public class PatronBlocksService {
 
     PatronBlockCondition patronBlockCondition = ctx.currentPatronBlockCondition;
 
-    ActionBlocks actionBlocksByLimit = ActionBlocks.byLimit(ctx.userSummary,
-      ctx.currentPatronBlockLimit, ctx.overdueMinutes);
+    ActionBlocks actionBlocksByLimit = ActionBlocks.byLimit(ctx.userSummaryStatistics,
+      ctx.currentPatronBlockLimit);
 
     ActionBlocks actionBlocksByCondition = new ActionBlocks(
       Boolean.TRUE.equals(patronBlockCondition.getBlockBorrowing()),
@@ -233,13 +449,13 @@ public class PatronBlocksService {
 
     BlocksCalculationContext result = ctx.withCurrentActionBlocks(
       ActionBlocks.and(actionBlocksByLimit, actionBlocksByCondition));
-    log.info("addActionBlocksByLimitAndConditionToContext:: result: {}",
-      () -> asJson(result));
+    log.log(ctx.getDetailLogLevel(), "addActionBlocksByLimitAndConditionToContext:: limit {}, " +
+      "value {}: {}", () -> ctx.currentPatronBlockLimit.getId(),
+      () -> ctx.currentPatronBlockLimit.getValue(), () -> asJson(result.currentActionBlocks));
     return result;
   }
 
   private AutomatedPatronBlock createBlockForLimit(BlocksCalculationContext ctx) {
-    log.debug("createBlockForLimit:: parameters ctx: {}", () -> asJson(ctx));
     if (ctx.currentPatronBlockCondition == null || ctx.currentActionBlocks == null) {
       ctx.logFailedValidationError("createBlockForLimit");
       return null;
@@ -251,7 +467,7 @@ public class PatronBlocksService {
       .withBlockRenewals(ctx.currentActionBlocks.getBlockRenewals())
       .withBlockRequests(ctx.currentActionBlocks.getBlockRequests())
       .withMessage(ctx.currentPatronBlockCondition.getMessage());
-    log.info("createBlockForLimit:: result: {}", () -> asJson(result));
+    log.log(ctx.getDetailLogLevel(), "createBlockForLimit:: result: {}", () -> asJson(result));
     return result;
   }
 
@@ -261,22 +477,72 @@ public class PatronBlocksService {
   @Getter
   private static class BlocksCalculationContext extends AsyncProcessingContext {
     final UserSummary userSummary;
+    final PatronBlockConfiguration configuration;
     final String userGroupId;
     final List<PatronBlockLimit> patronBlockLimits;
     final List<PatronBlockCondition> patronBlockConditions;
     final Map<String, Integer> overdueMinutes;
+    final UserSummaryStatistics userSummaryStatistics;
     final PatronBlockLimit currentPatronBlockLimit;
     final PatronBlockCondition currentPatronBlockCondition;
     final ActionBlocks currentActionBlocks;
+    final CalculationLog calculationLog;
 
     @Override
     protected String getName() {
       return "blocks-calculation-context";
     }
 
+    protected Level getDetailLogLevel() {
+      return calculationLog != null && calculationLog.sampled ? Level.INFO : Level.TRACE;
+    }
+
     protected boolean shouldCalculationBeSkipped() {
       return this.patronBlockLimits == null || this.patronBlockLimits.isEmpty();
     }
   }
 
+  /**
+   * Figures of a single blocks request, logged as one line when the request is complete. Per-loan
+   * and per-limit details are logged at TRACE, except for the sampled share of requests which
+   * log them at INFO.
+   */
+  private static class CalculationLog {
+    private final String userId;
+    private final long startTime = System.nanoTime();
+    private final boolean sampled = DETAIL_LOG_SAMPLING_RATE > 0 &&
+      ThreadLocalRandom.current().nextDouble() < DETAIL_LOG_SAMPLING_RATE;
+    private UserSummary userSummary;
+    private boolean cached = true;
+    private int limits;
+    private UserSummaryStatistics statistics;
+    private Throwable failure;
+
+    private CalculationLog(String userId) {
+      this.userId = userId;
+    }
+
+    private void calculated(BlocksCalculationContext ctx) {
+      cached = false;
+      limits = ctx.patronBlockLimits == null ? 0 : ctx.patronBlockLimits.size();
+      statistics = ctx.userSummaryStatistics;
+    }
+
+    private void failed(Throwable throwable) {
+      failure = throwable;
+    }
+
+    private String summarize(AutomatedPatronBlocks blocks) {
+      return format("userId=%s openLoans=%s openFeesFines=%s cached=%s limits=%d " +
+          "overdueItems=%s blocks=%d durationMs=%d sampled=%s failure=%s", userId,
+        userSummary == null ? null : userSummary.getOpenLoans().size(),
+        userSummary == null ? null : userSummary.getOpenFeesFines().size(),
+        userSummary != null && cached, limits,
+        statistics == null ? null : statistics.getNumberOfOverdueItems(),
+        blocks.getAutomatedPatronBlocks().size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), sampled,
+        failure == null ? null : failure.getMessage());
+    }
+  }
+
 }
@@ -0,0 +1,81 @@
+package org.folio.service;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.BlocksCalculationStats;
+import org.folio.rest.jaxrs.model.BlocksCalculationStepStats;
+
+import io.vertx.core.Future;
+
+/**
+ * Latency of the steps of automated patron blocks calculation of a tenant in this module
+ * instance, used to find out which lookup dominates the response time.
+ */
+public class StepLatencyRecorder {
+  private static final Logger log = LogManager.getLogger(StepLatencyRecorder.class);
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private final Map<String, StepStats> statsByStep = new LinkedHashMap<>();
+
+  /**
+   * Starts the step and records its duration once the returned future completes.
+   */
+  public <T> Future<T> time(String step, Supplier<Future<T>> action) {
+    long start = System.nanoTime();
+    Future<T> future;
+    try {
+      future = action.get();
+    } catch (Exception e) {
+      future = Future.failedFuture(e);
+    }
+
+    return future.onComplete(result -> record(step, System.nanoTime() - start,
+      result.succeeded()));
+  }
+
+  public synchronized void record(String step, long durationNanos, boolean succeeded) {
+    log.debug("record:: Step {} took {} ms, succeeded: {}", () -> step,
+      () -> NANOSECONDS.toMillis(durationNanos), () -> succeeded);
+    statsByStep.computeIfAbsent(step, key -> new StepStats())
+      .add(durationNanos, succeeded);
+  }
+
+  public synchronized BlocksCalculationStats getStats() {
+    return new BlocksCalculationStats()
+      .withSteps(statsByStep.entrySet().stream()
+        .map(entry -> entry.getValue().toStepStats(entry.getKey()))
+        .collect(Collectors.toList()));
+  }
+
+  private static class StepStats {
+    private long count;
+    private long failed;
+    private long totalNanos;
+    private long maxNanos;
+
+    private void add(long durationNanos, boolean succeeded) {
+      count++;
+      if (!succeeded) {
+        failed++;
+      }
+      totalNanos += durationNanos;
+      maxNanos = Math.max(maxNanos, durationNanos);
+    }
+
+    private BlocksCalculationStepStats toStepStats(String step) {
+      return new BlocksCalculationStepStats()
+        .withStep(step)
+        .withCount((int) Math.min(count, Integer.MAX_VALUE))
+        .withFailed((int) Math.min(failed, Integer.MAX_VALUE))
+        .withAverageMillis(count == 0 ? 0.0 : totalNanos / NANOS_PER_MILLI / count)
+        .withMaxMillis(maxNanos / NANOS_PER_MILLI);
+    }
+  }
+}
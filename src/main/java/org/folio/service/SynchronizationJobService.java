@@ -46,11 +46,12 @@ public class SynchronizationJobService {
 
   public SynchronizationJobService(Map<String, String> okapiHeaders, Vertx vertx) {
     this.tenantId = TenantTool.tenantId(okapiHeaders);
-    PostgresClient postgresClient = PostgresClient.getInstance(vertx, tenantId);
-    this.syncRepository = new SynchronizationJobRepository(postgresClient);
-    this.userSummaryRepository = new UserSummaryRepository(postgresClient);
-    this.userSummaryService = new UserSummaryService(postgresClient);
-    this.eventService = new EventService(postgresClient);
+    TenantServices services = TenantServices.forTenant(
+      PostgresClient.getInstance(vertx, tenantId));
+    this.syncRepository = services.getSynchronizationJobRepository();
+    this.userSummaryRepository = services.getUserSummaryRepository();
+    this.userSummaryService = services.getUserSummaryService();
+    this.eventService = services.getEventService();
     this.loanEventsGenerationService = new LoanEventsGenerationService(
       okapiHeaders, vertx, syncRepository);
     this.feesFinesEventsGenerationService = new FeesFinesEventsGenerationService(
@@ -159,7 +160,7 @@ public class SynchronizationJobService {
 
     return CompositeFuture.all(userIds.stream()
       .filter(Objects::nonNull)
-      .map(userSummaryService::rebuild)
+      .map(userId -> userSummaryService.rebuild(userId, true))
       .collect(Collectors.toList()))
       .map(job)
       .onSuccess(result -> log.info("rebuildUserSummaries:: result: {}", () -> asJson(result)));
@@ -172,8 +173,8 @@ public class SynchronizationJobService {
     log.debug("cleanExistingEvents:: parameters syncJob: {}, tenantId: {}",
       () -> asJson(syncJob), () -> tenantId);
     return (syncJob.getScope() == FULL
-      ? eventService.removeAllEvents(tenantId)
-      : eventService.removeAllEventsForUser(tenantId, syncJob.getUserId()))
+      ? eventService.removeAllEvents()
+      : eventService.removeAllEventsForUser(syncJob.getUserId()))
       .map(syncJob)
       .onSuccess(result -> log.info("cleanExistingEvents:: result: {}", () -> asJson(result)));
   }
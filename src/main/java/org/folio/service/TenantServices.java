@@ -0,0 +1,89 @@
+package org.folio.service;
+
+import static org.folio.util.PostgresUtils.getPostgresClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.folio.repository.EventInboxRepository;
+import org.folio.repository.EventJournalRepository;
+import org.folio.repository.PatronBlockConditionsRepository;
+import org.folio.repository.PatronBlockConfigurationVersionRepository;
+import org.folio.repository.PatronBlockLimitsRepository;
+import org.folio.repository.SynchronizationJobRepository;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.handlers.BatchEventHandler;
+import org.folio.rest.persist.PostgresClient;
+
+import io.vertx.core.Vertx;
+import lombok.Getter;
+
+/**
+ * Stateless repositories and services of a tenant, created once and shared by all requests of
+ * the tenant. Services which depend on request headers, like clients of other modules, are not
+ * part of it.
+ */
+@Getter
+public class TenantServices {
+  private static final Map<String, TenantServices> instances = new ConcurrentHashMap<>();
+
+  private final PostgresClient postgresClient;
+  private final UserSummaryRepository userSummaryRepository;
+  private final PatronBlockConditionsRepository conditionsRepository;
+  private final PatronBlockLimitsRepository limitsRepository;
+  private final SynchronizationJobRepository synchronizationJobRepository;
+  private final EventInboxRepository eventInboxRepository;
+  private final EventJournalRepository eventJournalRepository;
+  private final EventService eventService;
+  private final UserSummaryService userSummaryService;
+  private final BatchEventHandler batchEventHandler;
+  private final EventInboxService eventInboxService;
+  private final PatronBlockConfigurationService patronBlockConfigurationService;
+  private final AutomatedPatronBlocksCache automatedPatronBlocksCache;
+  private final StepLatencyRecorder blocksCalculationLatencyRecorder;
+
+  private TenantServices(PostgresClient postgresClient) {
+    this.postgresClient = postgresClient;
+    userSummaryRepository = new UserSummaryRepository(postgresClient);
+    conditionsRepository = new PatronBlockConditionsRepository(postgresClient);
+    limitsRepository = new PatronBlockLimitsRepository(postgresClient);
+    synchronizationJobRepository = new SynchronizationJobRepository(postgresClient);
+    eventInboxRepository = new EventInboxRepository(postgresClient);
+    eventJournalRepository = new EventJournalRepository(postgresClient);
+    eventService = new EventService(eventJournalRepository);
+    userSummaryService = new UserSummaryService(postgresClient, userSummaryRepository,
+      eventService);
+    batchEventHandler = new BatchEventHandler(userSummaryRepository, eventService,
+      userSummaryService, EventIngestionExecutor.forTenant(postgresClient.getTenantId()));
+    eventInboxService = new EventInboxService(postgresClient, eventInboxRepository,
+      batchEventHandler);
+    patronBlockConfigurationService = new PatronBlockConfigurationService(
+      new PatronBlockConfigurationVersionRepository(postgresClient), conditionsRepository,
+      limitsRepository);
+    automatedPatronBlocksCache = new AutomatedPatronBlocksCache();
+    blocksCalculationLatencyRecorder = new StepLatencyRecorder();
+  }
+
+  /**
+   * Drops cached patron block conditions and limits and the blocks calculated from them.
+   */
+  public void invalidatePatronBlockConfiguration() {
+    patronBlockConfigurationService.invalidate();
+    automatedPatronBlocksCache.invalidateAll();
+  }
+
+  public static TenantServices forTenant(Map<String, String> okapiHeaders, Vertx vertx) {
+    return forTenant(getPostgresClient(okapiHeaders, vertx));
+  }
+
+  /**
+   * Returns services of the tenant of the client. Services are created again when the client
+   * of the tenant has been replaced, for example after it was closed.
+   */
+  public static TenantServices forTenant(PostgresClient postgresClient) {
+    return instances.compute(postgresClient.getTenantId(), (tenantId, services) ->
+      services != null && services.postgresClient == postgresClient
+        ? services
+        : new TenantServices(postgresClient));
+  }
+}
@@ -6,24 +6,26 @@ import static java.lang.String.format;
 import static org.folio.domain.EventType.ITEM_CHECKED_OUT;
 import static org.folio.domain.EventType.getByEvent;
 import static org.folio.domain.EventType.getNameByEvent;
+import static org.folio.util.ConfigUtil.getInt;
 import static org.folio.util.LogUtil.asJson;
+import static org.folio.util.LogUtil.userSummaryAsString;
+import static org.folio.util.UuidHelper.randomId;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.domain.Event;
 import org.folio.domain.EventType;
-import org.folio.domain.FeeFineType;
+import org.folio.domain.IndexedUserSummary;
+import org.folio.domain.JournalEvent;
+import org.folio.domain.UserSummaryChanges;
 import org.folio.exception.EntityNotFoundInDbException;
 import org.folio.repository.UserSummaryRepository;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
@@ -34,40 +36,54 @@ import org.folio.rest.jaxrs.model.ItemClaimedReturnedEvent;
 import org.folio.rest.jaxrs.model.ItemDeclaredLostEvent;
 import org.folio.rest.jaxrs.model.LoanClosedEvent;
 import org.folio.rest.jaxrs.model.LoanDueDateChangedEvent;
-import org.folio.rest.jaxrs.model.Metadata;
 import org.folio.rest.jaxrs.model.OpenFeeFine;
 import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.Conn;
 import org.folio.rest.persist.PgExceptionUtil;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.util.AsyncProcessingContext;
 
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import lombok.With;
 
 public class UserSummaryService {
   private static final Logger log = LogManager.getLogger(UserSummaryService.class);
 
+  public static final String CHECKPOINT_DELAY_PROPERTY =
+    "USER_SUMMARY_REBUILD_CHECKPOINT_DELAY_SECONDS";
+  private static final int DEFAULT_CHECKPOINT_DELAY_SECONDS = 600;
+
   private static final String LOG_TEMPLATE_UPDATE_USER_SUMMARY =
     "updateUserSummary:: parameters userSummary: {}, event: {}";
   private static final String FAILED_TO_REBUILD_USER_SUMMARY_ERROR_MESSAGE =
     "Failed to rebuild user summary";
   private static final int MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT = 10;
-  private static final List<String> LOST_ITEM_FEE_TYPE_IDS = Arrays.asList(
-    FeeFineType.LOST_ITEM_FEE.getId(),
-    FeeFineType.LOST_ITEM_PROCESSING_FEE.getId()
-  );
+  private static final int REBUILD_EVENT_PAGE_SIZE = 1_000;
 
+  private final PostgresClient postgresClient;
   private final UserSummaryRepository userSummaryRepository;
   private final EventService eventService;
+  private final long checkpointDelayMillis;
 
   public UserSummaryService(PostgresClient postgresClient) {
-    userSummaryRepository = new UserSummaryRepository(postgresClient);
-    eventService = new EventService(postgresClient);
+    this(postgresClient, new UserSummaryRepository(postgresClient),
+      new EventService(postgresClient));
+  }
+
+  public UserSummaryService(PostgresClient postgresClient,
+    UserSummaryRepository userSummaryRepository, EventService eventService) {
+
+    this.postgresClient = postgresClient;
+    this.userSummaryRepository = userSummaryRepository;
+    this.eventService = eventService;
+    checkpointDelayMillis = TimeUnit.SECONDS.toMillis(
+      getInt(CHECKPOINT_DELAY_PROPERTY, DEFAULT_CHECKPOINT_DELAY_SECONDS));
   }
 
   public Future<UserSummary> getByUserId(String userId) {
@@ -75,157 +91,347 @@ public class UserSummaryService {
     return userSummaryRepository.getByUserId(userId)
       .map(optionalUserSummary -> optionalUserSummary.orElseThrow(() ->
         new EntityNotFoundInDbException(format("User summary for user ID %s not found", userId))))
-      .onSuccess(result -> log.info("getByUserId:: result: {}", () -> asJson(result)));
+      .onSuccess(result -> log.info("getByUserId:: result: {}",
+        () -> userSummaryAsString(result)));
   }
 
-  public Future<String> updateUserSummaryWithEvent(UserSummary userSummary, Event event) {
-    log.debug("updateUserSummaryWithEvent:: parameters userSummary: {}, event: {}",
-      () -> asJson(userSummary), () -> asJson(event));
-    return recursivelyUpdateUserSummaryWithEvent(new UpdateRetryContext(userSummary), event)
-      .onSuccess(result -> log.info("updateUserSummaryWithEvent:: result: {}", result));
+  public Future<List<UserSummary>> getByUserIds(List<String> userIds) {
+    log.debug("getByUserIds:: parameters userIds: {}", userIds);
+    return userSummaryRepository.findByUserIds(userIds);
   }
 
-  private Future<String> recursivelyUpdateUserSummaryWithEvent(UpdateRetryContext ctx,
-      Event event) {
+  /**
+   * Saves events and applies them to the summary of the user in one transaction, so either both
+   * the events and the updated summary are stored or neither is. Updates of the same user are
+   * queued and applied one at a time, so concurrent events of a user do not run into version
+   * conflicts. Events which have already been stored are skipped, the summary is not touched
+   * when all of the events are duplicates.
+   *
+   * @return ID of the updated user summary or null when no event was applied
+   */
+  public Future<String> saveEventsAndUpdateUserSummary(String userId,
+    List<? extends Event> events) {
+
+    log.debug("saveEventsAndUpdateUserSummary:: parameters userId: {}, events: {}",
+      () -> userId, () -> asJson(events));
+    return eventService.discardStoredDuplicates(events)
+      .compose(newEvents -> newEvents.isEmpty()
+        ? succeededFuture((String) null)
+        : UserSummaryUpdateQueue.submit(postgresClient.getTenantId(), userId,
+          () -> updateUserSummaryInTransaction(userId, newEvents, 1)))
+      .onSuccess(result -> log.info("saveEventsAndUpdateUserSummary:: result: {}", result));
+  }
 
-    log.debug("recursivelyUpdateUserSummaryWithEvent:: parameters ctx: {}, event: {}",
-      () -> asJson(ctx), () -> asJson(event));
-    return updateAndStoreUserSummary(ctx.userSummary, event)
+  /**
+   * Refreshes the next overdue transition of the summary of the user as of now, only loans whose
+   * transition has passed are read and written. Counters of a summary stored before counters
+   * were introduced are calculated from all of its loans and fees/fines. Queued the same way as
+   * other updates of the user.
+   */
+  public Future<Void> refreshCounters(String userId) {
+    log.debug("refreshCounters:: parameters userId: {}", userId);
+    return UserSummaryUpdateQueue.submit(postgresClient.getTenantId(), userId,
+      () -> postgresClient.withTrans(conn ->
+        userSummaryRepository.refreshOverdueTransitions(conn, userId)))
+      .onSuccess(result -> log.info("refreshCounters:: counters of user {} refreshed", userId));
+  }
+
+  private Future<String> updateUserSummaryInTransaction(String userId,
+    List<? extends Event> events, int attempt) {
+
+    return postgresClient.withTrans(conn ->
+        eventService.saveAll(conn, events)
+          .compose(eventsToApply -> eventsToApply.isEmpty()
+            ? succeededFuture((String) null)
+            : updateAndStoreUserSummary(conn, userId, eventsToApply)))
+      .onSuccess(ignored -> eventService.rememberStored(events))
       .recover(throwable -> {
-        log.warn("recursivelyUpdateUserSummaryWithEvent:: Failed to update user summary", throwable);
-        if (! PgExceptionUtil.isVersionConflict(throwable)) {
-          return Future.failedFuture(throwable);
+        if (!PgExceptionUtil.isVersionConflict(throwable) &&
+          !PgExceptionUtil.isUniqueViolation(throwable)) {
+
+          log.warn("updateUserSummaryInTransaction:: Failed to update user summary. " +
+            "User ID: {}", userId, throwable);
+          return failedFuture(throwable);
+        }
+        if (attempt > MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT) {
+          log.warn("updateUserSummaryInTransaction:: Failed to update user summary due to " +
+            "conflicting update. User ID: {}. Failed attempts: {}", userId, attempt, throwable);
+          return failedFuture(throwable);
+        }
+        log.warn("updateUserSummaryInTransaction:: Conflicting update of user summary. " +
+          "User ID: {}. Attempt # {} of {}", userId, attempt,
+          MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT, throwable);
+        return updateUserSummaryInTransaction(userId, events, attempt + 1);
+      });
+  }
+
+  /**
+   * Reads and writes only the open loans and fees/fines the events can change, so the cost of
+   * an update does not depend on the number of open loans and fees/fines of the user. A new
+   * summary, or one stored before counters were introduced, is written as a whole.
+   */
+  private Future<String> updateAndStoreUserSummary(Conn conn, String userId,
+    List<? extends Event> events) {
+
+    Set<String> loanIds = new HashSet<>();
+    Set<String> feeFineIds = new HashSet<>();
+    events.forEach(event -> collectLoanAndFeeFineIds(event, loanIds, feeFineIds));
+
+    return userSummaryRepository.findByUserIdForUpdate(conn, userId, loanIds, feeFineIds)
+      .compose(userSummary -> {
+        if (userSummary.isEmpty()) {
+          return storeUserSummary(conn, new UserSummary().withId(randomId()).withUserId(userId),
+            events);
         }
-        if (! ctx.shouldRetryUpdate()) {
-          log.warn("recursivelyUpdateUserSummaryWithEvent:: Failed to update user summary due " +
-              "to version conflict. User ID: {}. Failed attempts: {}", ctx.userSummary.getUserId(),
-              MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT, throwable);
-          return Future.failedFuture(throwable);
+        if (userSummary.get().getCounters() == null) {
+          return userSummaryRepository.findByUserIdForUpdate(conn, userId)
+            .compose(fullUserSummary -> storeUserSummary(conn, fullUserSummary.orElseThrow(),
+              events));
         }
-        log.warn("recursivelyUpdateUserSummaryWithEvent:: Version conflict when trying to update " +
-            "user summary. User ID: {}. Attempt # {} of {}", ctx.userSummary.getUserId(),
-            ctx.attemptCounter.get(), MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT, throwable);
-        return userSummaryRepository.findByUserIdOrBuildNew(ctx.userSummary.getUserId())
-            .compose(latestVersionUserSummary -> {
-              ctx.attemptCounter.incrementAndGet();
-              ctx.setUserSummary(latestVersionUserSummary);
-              return recursivelyUpdateUserSummaryWithEvent(ctx, event);
-            })
-          .onSuccess(result -> log.info("recursivelyUpdateUserSummaryWithEvent:: result: {}", result));
+
+        UserSummary before = copyOf(userSummary.get());
+        applyEvents(userSummary.get(), events);
+        return userSummaryRepository.applyChanges(conn, userSummary.get().getId(),
+            UserSummaryChanges.between(before, userSummary.get()))
+          .map(userSummary.get().getId());
       });
   }
 
-  private Future<String> updateAndStoreUserSummary(UserSummary userSummary, Event event) {
-    log.debug("updateAndStoreUserSummary:: parameters userSummary: {}, event: {}",
-      () -> asJson(userSummary), () -> asJson(event));
-    RebuildContext rebuildContext = new RebuildContext().withUserSummary(userSummary);
-    handleEvent(rebuildContext, event);
+  private Future<String> storeUserSummary(Conn conn, UserSummary userSummary,
+    List<? extends Event> events) {
 
-    if (isNotEmpty(rebuildContext.userSummary)) {
-      log.info("updateAndStoreUserSummary:: user summary is not empty");
-      return userSummaryRepository.upsert(rebuildContext.userSummary)
-        .onSuccess(result -> log.info("updateAndStoreUserSummary:: result: {}", result));
-    } else {
-      log.info("updateAndStoreUserSummary:: user summary is empty");
-      return userSummaryRepository.delete(
-        Objects.requireNonNull(rebuildContext.userSummary).getId())
-        .map(rebuildContext.userSummary.getId())
-        .otherwise(rebuildContext.userSummary.getId())
-        .onSuccess(result -> log.info("updateAndStoreUserSummary:: result: {}", result));
-    }
+    applyEvents(userSummary, events);
+
+    return isNotEmpty(userSummary)
+      ? userSummaryRepository.upsert(conn, userSummary)
+      : userSummaryRepository.delete(conn, userSummary.getId()).map(userSummary.getId());
+  }
+
+  /**
+   * Events change open loans and fees/fines in place, so the copy must not share them with the
+   * summary.
+   */
+  private static UserSummary copyOf(UserSummary userSummary) {
+    return JsonObject.mapFrom(userSummary).mapTo(UserSummary.class);
+  }
+
+  /**
+   * Applies the events to open loans and fees/fines of the summary indexed by their IDs, then
+   * writes them back to the summary.
+   */
+  private void applyEvents(UserSummary userSummary, List<? extends Event> events) {
+    RebuildContext rebuildContext = new RebuildContext().withUserSummary(userSummary)
+      .withIndexedUserSummary(IndexedUserSummary.of(userSummary));
+    events.forEach(event -> handleEvent(rebuildContext, event));
+    rebuildContext.indexedUserSummary.writeTo(userSummary);
   }
 
   public Future<String> rebuild(String userId) {
-    log.debug("rebuild:: parameters userId: {}", userId);
+    return rebuild(userId, false);
+  }
 
-    return userSummaryRepository.findByUserIdOrBuildNew(userId)
-      .map(userSummary -> new RebuildContext().withUserSummary(userSummary))
-      .compose(this::loadEventsToContext)
-      .compose(this::cleanUpUserSummary)
-      .compose(this::handleEventsInChronologicalOrder)
+  /**
+   * Rebuilds the summary of the user from the event journal. A rebuild starts from the
+   * checkpoint left by the previous one and applies only the events stored after it. All events
+   * of the user are applied to an empty summary when a reset is requested, when there is no
+   * checkpoint yet or when an event created before the checkpoint has been stored since.
+   * Events are read and applied one page at a time, so memory use does not depend on the number
+   * of events of the user. Events created less than {@link #CHECKPOINT_DELAY_PROPERTY} seconds
+   * ago are applied to the summary but are not covered by the new checkpoint, because events
+   * created at the same time may still be being stored.
+   */
+  public Future<String> rebuild(String userId, boolean reset) {
+    log.debug("rebuild:: parameters userId: {}, reset: {}", userId, reset);
+
+    return rebuildUserSummary(userId, reset)
+      .map(result -> result.getUserSummary().getId())
       .onSuccess(result -> log.info("rebuild:: result: {}", result));
   }
 
-  private Future<RebuildContext> loadEventsToContext(RebuildContext ctx) {
-    log.debug("loadEventsToContext:: parameters ctx: {}", () -> asJson(ctx));
+  /**
+   * Rebuilds the summary the same way as {@link #rebuild(String, boolean)}, queued with other
+   * updates of the user.
+   *
+   * @return rebuilt summary and its checkpoint, the summary has been deleted when it has no
+   * open loans and fees/fines
+   */
+  Future<RebuildResult> rebuildUserSummary(String userId, boolean reset) {
+    return UserSummaryUpdateQueue.submit(postgresClient.getTenantId(), userId,
+      () -> userSummaryRepository.findByUserIdOrBuildNew(userId)
+        .map(userSummary -> new RebuildContext().withUserSummary(userSummary))
+        .compose(ctx -> findCheckpoint(ctx, reset))
+        .compose(this::restoreCheckpoint)
+        .compose(this::handleEventsInChronologicalOrder));
+  }
+
+  private Future<RebuildContext> findCheckpoint(RebuildContext ctx, boolean reset) {
+    log.debug("findCheckpoint:: parameters ctx: {}, reset: {}", () -> asJson(ctx),
+      () -> reset);
     if (ctx.userSummary == null || ctx.userSummary.getUserId() == null) {
-      ctx.logFailedValidationError("loadEventsToContext");
+      ctx.logFailedValidationError("findCheckpoint");
       return failedFuture(FAILED_TO_REBUILD_USER_SUMMARY_ERROR_MESSAGE);
     }
 
     String userId = ctx.userSummary.getUserId();
+    if (reset) {
+      log.info("findCheckpoint:: Applying all events of user {}, reset requested", userId);
+      return succeededFuture(ctx);
+    }
+
+    return userSummaryRepository.findRebuildCheckpoint(ctx.userSummary.getId())
+      .compose(checkpoint -> checkpoint.isEmpty()
+        ? succeededFuture(ctx)
+        : useCheckpointIfValid(ctx, checkpoint.get()))
+      .onSuccess(result -> log.info("findCheckpoint:: result: {}", () -> result.checkpoint == null
+        ? null : result.checkpoint.getLastEventSeq()));
+  }
+
+  private Future<RebuildContext> useCheckpointIfValid(RebuildContext ctx,
+    UserSummaryRebuildCheckpoint checkpoint) {
+
+    String userId = ctx.userSummary.getUserId();
+    return eventService.existsEventCreatedBefore(userId, checkpoint.getLastEventSeq(),
+        checkpoint.getLastEventCreatedDate())
+      .map(createdBefore -> {
+        if (Boolean.TRUE.equals(createdBefore)) {
+          log.info("findCheckpoint:: Events created before the checkpoint have been stored " +
+            "since, applying all events of user {}", userId);
+        } else {
+          ctx.checkpoint = checkpoint;
+        }
+        return ctx;
+      });
+  }
 
-    return succeededFuture(userId)
-      .compose(eventService::getItemCheckedOutEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getItemCheckedInEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getItemClaimedReturnedEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getItemDeclaredLostEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getItemAgedToLostEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getLoanDueDateChangedEvents)
-      .map(ctx.events::addAll)
-      .map(userId)
-      .compose(eventService::getFeeFineBalanceChangedEvents)
-      .map(ctx.events::addAll)
-      .map(ctx)
-      .onSuccess(result -> log.info("loadEventsToContext:: result: {}", () -> asJson(result)));
-  }
-
-  private Future<RebuildContext> cleanUpUserSummary(RebuildContext ctx) {
-    log.debug("cleanUpUserSummary:: parameters ctx: {}", () -> asJson(ctx));
+  private Future<RebuildContext> restoreCheckpoint(RebuildContext ctx) {
+    log.debug("restoreCheckpoint:: parameters ctx: {}", () -> asJson(ctx));
     if (ctx.userSummary == null) {
-      ctx.logFailedValidationError("cleanUpUserSummary");
+      ctx.logFailedValidationError("restoreCheckpoint");
       return failedFuture(FAILED_TO_REBUILD_USER_SUMMARY_ERROR_MESSAGE);
     }
 
-    ctx.userSummary.setOpenLoans(new ArrayList<>());
-    ctx.userSummary.setOpenFeesFines(new ArrayList<>());
+    if (ctx.checkpoint == null) {
+      ctx.userSummary.setOpenLoans(new ArrayList<>());
+      ctx.userSummary.setOpenFeesFines(new ArrayList<>());
+    } else {
+      UserSummaryRebuildCheckpoint copy = copyOf(ctx.checkpoint);
+      ctx.userSummary.setOpenLoans(copy.getOpenLoans());
+      ctx.userSummary.setOpenFeesFines(copy.getOpenFeesFines());
+    }
+    ctx.indexedUserSummary = IndexedUserSummary.of(ctx.userSummary);
 
-    log.info("cleanUpUserSummary:: result: {}", () -> asJson(ctx));
+    log.info("restoreCheckpoint:: result: {}", () -> userSummaryAsString(ctx.userSummary));
     return succeededFuture(ctx);
   }
 
-  private Future<String> handleEventsInChronologicalOrder(RebuildContext ctx) {
+  private Future<RebuildResult> handleEventsInChronologicalOrder(RebuildContext ctx) {
     log.debug("handleEventsInChronologicalOrder:: parameters ctx: {}", () -> asJson(ctx));
-    if (ctx.userSummary == null || ctx.userSummary.getUserId() == null) {
-      ctx.logFailedValidationError("loadEventsToContext");
+    if (ctx.userSummary == null || ctx.userSummary.getUserId() == null ||
+      ctx.indexedUserSummary == null) {
+
+      ctx.logFailedValidationError("handleEventsInChronologicalOrder");
       return failedFuture(FAILED_TO_REBUILD_USER_SUMMARY_ERROR_MESSAGE);
     }
 
-    ctx.events.stream()
-      .sorted(Comparator.comparingLong(event -> Optional.of(event)
-        .map(Event::getMetadata)
-        .map(Metadata::getCreatedDate)
-        .map(Date::getTime)
-        .orElse(0L)))
-      .forEachOrdered(event -> handleEvent(ctx, event));
-
-    if (isNotEmpty(ctx.userSummary)) {
-      log.info("handleEventsInChronologicalOrder:: user summary is not empty");
-      return userSummaryRepository.upsert(ctx.userSummary, ctx.userSummary.getId())
-        .onSuccess(result -> log.info("handleEventsInChronologicalOrder:: result: {}", result));
-    } else {
-      log.info("handleEventsInChronologicalOrder:: user summary is empty");
-      return userSummaryRepository.delete(ctx.userSummary.getId())
-        .map(ctx.userSummary.getId())
-        .otherwise(ctx.userSummary.getId())
-        .onSuccess(result -> log.info("handleEventsInChronologicalOrder:: result: {}", result));
+    CheckpointTracker checkpointTracker = new CheckpointTracker(
+      new Date(System.currentTimeMillis() - checkpointDelayMillis));
+
+    return handleEventPages(ctx, checkpointTracker, null)
+      .compose(ignored -> {
+        ctx.indexedUserSummary.writeTo(ctx.userSummary);
+        RebuildResult rebuildResult = new RebuildResult(ctx.userSummary,
+          checkpointTracker.getCheckpoint(ctx.indexedUserSummary, ctx.checkpoint));
+
+        if (isNotEmpty(ctx.userSummary)) {
+          log.info("handleEventsInChronologicalOrder:: user summary is not empty");
+          return userSummaryRepository.upsertRebuilt(ctx.userSummary,
+              rebuildResult.getCheckpoint())
+            .onSuccess(result -> log.info("handleEventsInChronologicalOrder:: result: {}",
+              result))
+            .map(rebuildResult);
+        } else {
+          log.info("handleEventsInChronologicalOrder:: user summary is empty");
+          return userSummaryRepository.delete(ctx.userSummary.getId())
+            .onSuccess(result -> log.info("handleEventsInChronologicalOrder:: result: {}",
+              ctx.userSummary.getId()))
+            .map(rebuildResult);
+        }
+      });
+  }
+
+  private Future<Void> handleEventPages(RebuildContext ctx, CheckpointTracker checkpointTracker,
+    JournalEvent previous) {
+
+    String userId = ctx.userSummary.getUserId();
+    long afterSeq = ctx.checkpoint == null ? 0 : ctx.checkpoint.getLastEventSeq();
+
+    return eventService.getEventPageByUserId(userId, afterSeq, previous, REBUILD_EVENT_PAGE_SIZE)
+      .compose(events -> {
+        events.forEach(event -> {
+          checkpointTracker.track(event, ctx.indexedUserSummary);
+          handleEvent(ctx, event.getEvent());
+        });
+        return events.size() < REBUILD_EVENT_PAGE_SIZE
+          ? Future.<Void>succeededFuture()
+          : handleEventPages(ctx, checkpointTracker, events.get(events.size() - 1));
+      });
+  }
+
+  /**
+   * Events change open loans and fees/fines in place, so the checkpoint must not share them
+   * with the summary.
+   */
+  private static UserSummaryRebuildCheckpoint copyOf(UserSummaryRebuildCheckpoint checkpoint) {
+    return JsonObject.mapFrom(checkpoint).mapTo(UserSummaryRebuildCheckpoint.class);
+  }
+
+  private static void collectLoanAndFeeFineIds(Event event, Set<String> loanIds,
+    Set<String> feeFineIds) {
+
+    EventType eventType = getByEvent(event);
+    if (eventType == null) {
+      return;
+    }
+
+    switch (eventType) {
+      case ITEM_CHECKED_OUT:
+        addIfNotNull(loanIds, ((ItemCheckedOutEvent) event).getLoanId());
+        break;
+      case ITEM_CHECKED_IN:
+        addIfNotNull(loanIds, ((ItemCheckedInEvent) event).getLoanId());
+        break;
+      case ITEM_CLAIMED_RETURNED:
+        addIfNotNull(loanIds, ((ItemClaimedReturnedEvent) event).getLoanId());
+        break;
+      case ITEM_DECLARED_LOST:
+        addIfNotNull(loanIds, ((ItemDeclaredLostEvent) event).getLoanId());
+        break;
+      case ITEM_AGED_TO_LOST:
+        addIfNotNull(loanIds, ((ItemAgedToLostEvent) event).getLoanId());
+        break;
+      case LOAN_DUE_DATE_CHANGED:
+        addIfNotNull(loanIds, ((LoanDueDateChangedEvent) event).getLoanId());
+        break;
+      case FEE_FINE_BALANCE_CHANGED:
+        addIfNotNull(feeFineIds, ((FeeFineBalanceChangedEvent) event).getFeeFineId());
+        addIfNotNull(loanIds, ((FeeFineBalanceChangedEvent) event).getLoanId());
+        break;
+      case LOAN_CLOSED:
+        addIfNotNull(loanIds, ((LoanClosedEvent) event).getLoanId());
+        break;
+    }
+  }
+
+  private static void addIfNotNull(Set<String> ids, String id) {
+    if (id != null) {
+      ids.add(id);
     }
   }
 
   private void handleEvent(RebuildContext ctx, Event event) {
     log.debug("handleEvent:: parameters ctx: {}, event: {}", () -> asJson(ctx),
       () -> asJson(event));
-    if (ctx.userSummary == null || event == null || getByEvent(event) == null ||
+    if (ctx.indexedUserSummary == null || event == null || getByEvent(event) == null ||
       event.getMetadata() == null) {
 
       ctx.logFailedValidationError("handleEvent");
@@ -236,42 +442,38 @@ public class UserSummaryService {
 
     switch (eventType) {
       case ITEM_CHECKED_OUT:
-        updateUserSummary(ctx.userSummary, (ItemCheckedOutEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (ItemCheckedOutEvent) event);
         break;
       case ITEM_CHECKED_IN:
-        updateUserSummary(ctx.userSummary, (ItemCheckedInEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (ItemCheckedInEvent) event);
         break;
       case ITEM_CLAIMED_RETURNED:
-        updateUserSummary(ctx.userSummary, (ItemClaimedReturnedEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (ItemClaimedReturnedEvent) event);
         break;
       case ITEM_DECLARED_LOST:
-        updateUserSummary(ctx.userSummary, (ItemDeclaredLostEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (ItemDeclaredLostEvent) event);
         break;
       case ITEM_AGED_TO_LOST:
-        updateUserSummary(ctx.userSummary, (ItemAgedToLostEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (ItemAgedToLostEvent) event);
         break;
       case LOAN_DUE_DATE_CHANGED:
-        updateUserSummary(ctx.userSummary, (LoanDueDateChangedEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (LoanDueDateChangedEvent) event);
         break;
       case FEE_FINE_BALANCE_CHANGED:
-        updateUserSummary(ctx.userSummary, (FeeFineBalanceChangedEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (FeeFineBalanceChangedEvent) event);
         break;
       case LOAN_CLOSED:
-        updateUserSummary(ctx.userSummary, (LoanClosedEvent) event);
+        updateUserSummary(ctx.indexedUserSummary, (LoanClosedEvent) event);
         break;
     }
   }
 
-  private void updateUserSummary(UserSummary userSummary, ItemCheckedOutEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary),
+  private void updateUserSummary(IndexedUserSummary userSummary, ItemCheckedOutEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary,
       () -> asJson(event));
-    List<OpenLoan> openLoans = userSummary.getOpenLoans();
-
-    if (openLoans.stream()
-      .noneMatch(loan -> StringUtils.equals(loan.getLoanId(), event.getLoanId()))) {
-
+    if (userSummary.findOpenLoan(event.getLoanId()).isEmpty()) {
       log.info("updateUserSummary:: openLoans does not contain loans with loanId {}", event.getLoanId());
-      openLoans.add(new OpenLoan()
+      userSummary.addOpenLoan(new OpenLoan()
         .withLoanId(event.getLoanId())
         .withDueDate(event.getDueDate())
         .withGracePeriod(event.getGracePeriod()));
@@ -281,17 +483,16 @@ public class UserSummaryService {
     }
   }
 
-  private void updateUserSummary(UserSummary userSummary, ItemCheckedInEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary),
+  private void updateUserSummary(IndexedUserSummary userSummary, ItemCheckedInEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary,
       () -> asJson(event));
     removeLoanFromUserSummary(userSummary, event, event.getLoanId());
   }
 
-  private void removeLoanFromUserSummary(UserSummary userSummary, Event event, String loanId) {
+  private void removeLoanFromUserSummary(IndexedUserSummary userSummary, Event event, String loanId) {
     log.debug("removeLoanFromUserSummary:: parameters userSummary: {}, event: {}, loanId: {}",
-      () -> asJson(userSummary), () -> asJson(event), () -> loanId);
-    boolean loanRemoved = userSummary.getOpenLoans()
-      .removeIf(loan -> StringUtils.equals(loan.getLoanId(), loanId));
+      () -> userSummary, () -> asJson(event), () -> loanId);
+    boolean loanRemoved = userSummary.removeOpenLoan(loanId);
 
     if (!loanRemoved) {
       log.info("removeLoanFromUserSummary:: loan is removed");
@@ -299,47 +500,41 @@ public class UserSummaryService {
     }
   }
 
-  private void updateUserSummary(UserSummary userSummary, ItemClaimedReturnedEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary),
+  private void updateUserSummary(IndexedUserSummary userSummary, ItemClaimedReturnedEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary,
       () -> asJson(event));
-    userSummary.getOpenLoans().stream()
-      .filter(loan -> StringUtils.equals(loan.getLoanId(), event.getLoanId()))
-      .findFirst()
+    userSummary.findOpenLoan(event.getLoanId())
       .ifPresentOrElse(openLoan -> {
         openLoan.setItemClaimedReturned(true);
         openLoan.setItemLost(false);
       }, () -> logOpenLoanNotFound(event, event.getLoanId()));
   }
 
-  private void updateUserSummary(UserSummary userSummary, ItemDeclaredLostEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary),
+  private void updateUserSummary(IndexedUserSummary userSummary, ItemDeclaredLostEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary,
       () -> asJson(event));
     updateUserSummaryForLostItem(userSummary, event, event.getLoanId());
   }
 
-  private void updateUserSummary(UserSummary userSummary, ItemAgedToLostEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary),
+  private void updateUserSummary(IndexedUserSummary userSummary, ItemAgedToLostEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary,
       () -> asJson(event));
     updateUserSummaryForLostItem(userSummary, event, event.getLoanId());
   }
 
-  private void updateUserSummaryForLostItem(UserSummary userSummary, Event event, String loanId) {
+  private void updateUserSummaryForLostItem(IndexedUserSummary userSummary, Event event, String loanId) {
     log.debug("updateUserSummaryForLostItem:: parameters userSummary: {}, event: {}, loanId: {}",
-      () -> asJson(userSummary), () -> asJson(event), () -> loanId);
-    userSummary.getOpenLoans().stream()
-      .filter(loan -> StringUtils.equals(loan.getLoanId(), loanId))
-      .findAny()
+      () -> userSummary, () -> asJson(event), () -> loanId);
+    userSummary.findOpenLoan(loanId)
       .ifPresentOrElse(openLoan -> {
         openLoan.setItemLost(true);
         openLoan.setItemClaimedReturned(false);
       }, () -> logOpenLoanNotFound(event, loanId));
   }
 
-  private void updateUserSummary(UserSummary userSummary, LoanDueDateChangedEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary), () -> asJson(event));
-    userSummary.getOpenLoans().stream()
-      .filter(loan -> StringUtils.equals(loan.getLoanId(), event.getLoanId()))
-      .findFirst()
+  private void updateUserSummary(IndexedUserSummary userSummary, LoanDueDateChangedEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary, () -> asJson(event));
+    userSummary.findOpenLoan(event.getLoanId())
       .ifPresentOrElse(openLoan -> {
         openLoan.setDueDate(event.getDueDate());
         openLoan.setRecall(event.getDueDateChangedByRecall());
@@ -354,25 +549,21 @@ public class UserSummaryService {
       getNameByEvent(event), event.getId(), loanId, event.getUserId());
   }
 
-  private void updateUserSummary(UserSummary userSummary, FeeFineBalanceChangedEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary), () -> asJson(event));
-    List<OpenFeeFine> openFeesFines = userSummary.getOpenFeesFines();
-
-    OpenFeeFine openFeeFine = openFeesFines.stream()
-      .filter(feeFine -> StringUtils.equals(feeFine.getFeeFineId(), event.getFeeFineId()))
-      .findFirst()
+  private void updateUserSummary(IndexedUserSummary userSummary, FeeFineBalanceChangedEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary, () -> asJson(event));
+    OpenFeeFine openFeeFine = userSummary.findOpenFeeFine(event.getFeeFineId())
       .orElseGet(() -> {
         OpenFeeFine newFeeFine = new OpenFeeFine()
           .withFeeFineId(event.getFeeFineId())
           .withFeeFineTypeId(event.getFeeFineTypeId())
           .withBalance(event.getBalance());
-        openFeesFines.add(newFeeFine);
+        userSummary.addOpenFeeFine(newFeeFine);
         return newFeeFine;
       });
 
     if (feeFineIsClosed(event)) {
       log.info("updateUserSummary:: fee/fine is closed");
-      openFeesFines.remove(openFeeFine);
+      userSummary.removeOpenFeeFine(openFeeFine.getFeeFineId());
     } else {
       log.info("updateUserSummary:: fee/fine is open");
       openFeeFine.setBalance(event.getBalance());
@@ -380,8 +571,8 @@ public class UserSummaryService {
     }
   }
 
-  private void updateUserSummary(UserSummary userSummary, LoanClosedEvent event) {
-    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> asJson(userSummary), () -> asJson(event));
+  private void updateUserSummary(IndexedUserSummary userSummary, LoanClosedEvent event) {
+    log.debug(LOG_TEMPLATE_UPDATE_USER_SUMMARY, () -> userSummary, () -> asJson(event));
     removeLoanFromUserSummary(userSummary, event, event.getLoanId());
   }
 
@@ -389,10 +580,6 @@ public class UserSummaryService {
     return BigDecimal.ZERO.compareTo(event.getBalance()) == 0;
   }
 
-  private boolean isLostItemFeeId(String feeFineTypeId) {
-    return LOST_ITEM_FEE_TYPE_IDS.contains(feeFineTypeId);
-  }
-
   private boolean isEmpty(UserSummary userSummary) {
     if (userSummary != null && userSummary.getOpenLoans() != null &&
       userSummary.getOpenFeesFines() != null) {
@@ -413,7 +600,8 @@ public class UserSummaryService {
   @Getter
   private static class RebuildContext extends AsyncProcessingContext {
     final UserSummary userSummary;
-    final List<Event> events = new ArrayList<>();
+    IndexedUserSummary indexedUserSummary;
+    UserSummaryRebuildCheckpoint checkpoint;
 
     @Override
     protected String getName() {
@@ -421,19 +609,74 @@ public class UserSummaryService {
     }
   }
 
+  /**
+   * Summary written by a rebuild and the checkpoint stored with it, the checkpoint is null when
+   * the rebuild left none.
+   */
+  @AllArgsConstructor
   @Getter
-  private static class UpdateRetryContext {
-    @Setter
-    private UserSummary userSummary;
+  static class RebuildResult {
+    private final UserSummary userSummary;
+    private final UserSummaryRebuildCheckpoint checkpoint;
+  }
 
-    private final AtomicInteger attemptCounter = new AtomicInteger(1);
+  /**
+   * Follows the events applied by a rebuild, which come in the order they were created, to find
+   * the end of the new checkpoint. The checkpoint covers the events created before the cutoff,
+   * provided that they all have lower sequence numbers than the events created after it, so the
+   * next rebuild can start after the highest of them. Otherwise the previous checkpoint is kept.
+   */
+  private static class CheckpointTracker {
+    private final Date cutoff;
+    private boolean cutoffPassed;
+    private long highestSeqBeforeCutoff;
+    private long lowestSeqAfterCutoff = Long.MAX_VALUE;
+    private Date lastCreatedDateBeforeCutoff;
+    private UserSummaryRebuildCheckpoint candidate;
+
+    CheckpointTracker(Date cutoff) {
+      this.cutoff = cutoff;
+    }
 
-    public UpdateRetryContext(UserSummary userSummary) {
-      this.userSummary = userSummary;
+    /**
+     * Must be called before the event is applied to the summary.
+     */
+    void track(JournalEvent event, IndexedUserSummary userSummary) {
+      if (!cutoffPassed && !event.getCreatedDate().before(cutoff)) {
+        cutoffPassed = true;
+        candidate = buildCandidate(userSummary);
+      }
+
+      if (cutoffPassed) {
+        lowestSeqAfterCutoff = Math.min(lowestSeqAfterCutoff, event.getSeq());
+      } else {
+        highestSeqBeforeCutoff = Math.max(highestSeqBeforeCutoff, event.getSeq());
+        lastCreatedDateBeforeCutoff = event.getCreatedDate();
+      }
     }
 
-    boolean shouldRetryUpdate() {
-      return attemptCounter.get() <= MAX_NUMBER_OF_RETRIES_ON_VERSION_CONFLICT;
+    UserSummaryRebuildCheckpoint getCheckpoint(IndexedUserSummary userSummary,
+      UserSummaryRebuildCheckpoint previous) {
+
+      if (!cutoffPassed) {
+        candidate = buildCandidate(userSummary);
+      }
+
+      return candidate != null && highestSeqBeforeCutoff < lowestSeqAfterCutoff
+        ? candidate
+        : previous;
+    }
+
+    private UserSummaryRebuildCheckpoint buildCandidate(IndexedUserSummary userSummary) {
+      if (lastCreatedDateBeforeCutoff == null) {
+        return null;
+      }
+
+      return copyOf(new UserSummaryRebuildCheckpoint()
+        .withLastEventSeq(highestSeqBeforeCutoff)
+        .withLastEventCreatedDate(lastCreatedDateBeforeCutoff)
+        .withOpenLoans(userSummary.getOpenLoans())
+        .withOpenFeesFines(userSummary.getOpenFeesFines()));
     }
   }
 }
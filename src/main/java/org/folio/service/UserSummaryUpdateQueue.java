@@ -0,0 +1,94 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+/**
+ * In-process queue which applies user summary updates of the same user one at a time.
+ * Updates of different users are not affected and run in parallel.
+ * <p>
+ * Each user's updates run on the context of the request which started the burst. Updates read
+ * only the part of the summary they change, so nothing is kept in memory between them. Row locks
+ * serialize updates coming from other module instances.
+ */
+public final class UserSummaryUpdateQueue {
+  private static final Logger log = LogManager.getLogger(UserSummaryUpdateQueue.class);
+
+  private static final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+  private UserSummaryUpdateQueue() {
+    throw new UnsupportedOperationException("Do not instantiate");
+  }
+
+  public static <T> Future<T> submit(String tenantId, String userId,
+    Supplier<Future<T>> task) {
+
+    String key = buildKey(tenantId, userId);
+    Slot slot = slots.compute(key, (k, existingSlot) -> {
+      Slot result = existingSlot == null ? new Slot(Vertx.currentContext()) : existingSlot;
+      result.pending++;
+      return result;
+    });
+
+    Promise<Void> done = Promise.promise();
+    Future<Void> previous;
+    synchronized (slot) {
+      previous = slot.tail;
+      slot.tail = done.future();
+    }
+
+    return previous.transform(ignored -> runOnContext(slot, task))
+      .onComplete(ignored -> {
+        done.complete();
+        release(key);
+      });
+  }
+
+  private static <T> Future<T> runOnContext(Slot slot, Supplier<Future<T>> task) {
+    if (slot.context == null || slot.context == Vertx.currentContext()) {
+      return runSafely(task);
+    }
+
+    Promise<T> promise = Promise.promise();
+    slot.context.runOnContext(v -> runSafely(task).onComplete(promise));
+    return promise.future();
+  }
+
+  private static <T> Future<T> runSafely(Supplier<Future<T>> task) {
+    try {
+      return task.get();
+    } catch (Exception e) {
+      log.warn("runSafely:: Failed to run user summary update", e);
+      return Future.failedFuture(e);
+    }
+  }
+
+  private static void release(String key) {
+    slots.computeIfPresent(key, (k, slot) -> --slot.pending == 0 ? null : slot);
+  }
+
+  private static String buildKey(String tenantId, String userId) {
+    return tenantId + ":" + userId;
+  }
+
+  private static final class Slot {
+    private final Context context;
+    private Future<Void> tail = succeededFuture();
+    private int pending;
+
+    private Slot(Context context) {
+      this.context = context;
+    }
+  }
+}
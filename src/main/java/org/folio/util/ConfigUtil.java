@@ -0,0 +1,50 @@
+package org.folio.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class ConfigUtil {
+  private static final Logger log = LogManager.getLogger(ConfigUtil.class);
+
+  private ConfigUtil() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  /**
+   * Resolves a setting from a system property, falling back to the environment variable of the
+   * same name and then to the default value.
+   */
+  public static String getString(String name, String defaultValue) {
+    String value = System.getProperty(name, System.getenv(name));
+    return StringUtils.isBlank(value) ? defaultValue : value.trim();
+  }
+
+  public static int getInt(String name, int defaultValue) {
+    String value = getString(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      log.warn("getInt:: Invalid value of {}: {}, using default value {}", name, value,
+        defaultValue);
+      return defaultValue;
+    }
+  }
+
+  public static double getDouble(String name, double defaultValue) {
+    String value = getString(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      log.warn("getDouble:: Invalid value of {}: {}, using default value {}", name, value,
+        defaultValue);
+      return defaultValue;
+    }
+  }
+}
@@ -12,6 +12,7 @@ import javax.ws.rs.core.Response;
 import org.apache.commons.collections4.map.CaseInsensitiveMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.rest.jaxrs.model.UserSummary;
 import org.folio.rest.persist.PostgresClient;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -83,6 +84,20 @@ public class LogUtil {
     }
   }
 
+  /**
+   * Identifies the summary and the size of its arrays without serializing them, summaries of
+   * users with many loans are too large to be logged on every request.
+   */
+  public static String userSummaryAsString(UserSummary userSummary) {
+    if (userSummary == null) {
+      return null;
+    }
+    return format("UserSummary(id: %s, userId: %s, version: %s, openLoans: %d, " +
+        "openFeesFines: %d)", userSummary.getId(), userSummary.getUserId(),
+      userSummary.getVersion(), userSummary.getOpenLoans().size(),
+      userSummary.getOpenFeesFines().size());
+  }
+
   private static String plural(int number) {
     return number == 1 ? "" : "s";
   }
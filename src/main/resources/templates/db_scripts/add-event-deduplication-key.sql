@@ -0,0 +1,24 @@
+DO $$
+DECLARE
+  event_table text;
+BEGIN
+  FOREACH event_table IN ARRAY ARRAY[
+    'fee_fine_balance_changed_event',
+    'item_checked_out_event',
+    'item_checked_in_event',
+    'item_declared_lost_event',
+    'item_aged_to_lost_event',
+    'item_claimed_returned_event',
+    'loan_due_date_changed_event',
+    'loan_closed_event'
+  ]
+  LOOP
+    CONTINUE WHEN to_regclass(format('${myuniversity}_${mymodule}.%I', event_table)) IS NULL;
+
+    EXECUTE format('ALTER TABLE ${myuniversity}_${mymodule}.%I '
+      'ADD COLUMN IF NOT EXISTS deduplication_key text', event_table);
+    EXECUTE format('CREATE UNIQUE INDEX IF NOT EXISTS %I '
+      'ON ${myuniversity}_${mymodule}.%I (deduplication_key)',
+      event_table || '_deduplication_key_idx_unique', event_table);
+  END LOOP;
+END $$;
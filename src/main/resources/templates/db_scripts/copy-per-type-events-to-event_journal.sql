@@ -0,0 +1,38 @@
+-- Copy events of the per-type tables into the journal. The per-type tables are no longer declared
+-- in schema.json but are not dropped, so that the previous module version keeps working during
+-- an upgrade. Events it stores there after the copy are copied by the next upgrade of the tenant,
+-- so this script runs on every upgrade. Rows keep their IDs, rows which have already been copied
+-- are skipped. Tables which do not exist, for example on a new tenant, are skipped as well.
+DO $$
+DECLARE
+  source_table text;
+  source_event_type text;
+BEGIN
+  FOR source_table, source_event_type IN
+    SELECT * FROM (VALUES
+      ('fee_fine_balance_changed_event', 'FEE_FINE_BALANCE_CHANGED'),
+      ('item_checked_out_event', 'ITEM_CHECKED_OUT'),
+      ('item_checked_in_event', 'ITEM_CHECKED_IN'),
+      ('item_declared_lost_event', 'ITEM_DECLARED_LOST'),
+      ('item_aged_to_lost_event', 'ITEM_AGED_TO_LOST'),
+      ('item_claimed_returned_event', 'ITEM_CLAIMED_RETURNED'),
+      ('loan_due_date_changed_event', 'LOAN_DUE_DATE_CHANGED'),
+      ('loan_closed_event', 'LOAN_CLOSED')
+    ) AS event_tables
+  LOOP
+    CONTINUE WHEN to_regclass(format('${myuniversity}_${mymodule}.%I', source_table)) IS NULL;
+
+    EXECUTE format(
+      'INSERT INTO ${myuniversity}_${mymodule}.event_journal '
+      '(id, jsonb, user_id, event_type, created_date, deduplication_key) '
+      'SELECT id, jsonb, '
+      'CASE WHEN jsonb->>''userId'' ~* '
+      '''^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$'' '
+      'THEN (jsonb->>''userId'')::uuid END, '
+      '%L, (jsonb->''metadata''->>''createdDate'')::timestamptz, deduplication_key '
+      'FROM ${myuniversity}_${mymodule}.%I '
+      'ORDER BY jsonb->''metadata''->>''createdDate'' '
+      'ON CONFLICT DO NOTHING',
+      source_event_type, source_table);
+  END LOOP;
+END $$;
@@ -0,0 +1,10 @@
+-- Deduplication keys of events removed from the journal by compaction. A redelivered event whose
+-- key is here is skipped like one whose event is still in the journal. Keys are deleted once the
+-- event is older than the retention period, after which it is not delivered again.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.event_deduplication_key (
+    deduplication_key text PRIMARY KEY,
+    created_date timestamptz NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS event_deduplication_key_created_date_idx
+    ON ${myuniversity}_${mymodule}.event_deduplication_key (created_date);
@@ -0,0 +1,12 @@
+ALTER TABLE ${myuniversity}_${mymodule}.event_inbox
+    ADD COLUMN IF NOT EXISTS seq bigserial;
+
+CREATE INDEX IF NOT EXISTS event_inbox_seq_idx
+    ON ${myuniversity}_${mymodule}.event_inbox (seq);
+
+-- A claim increments attempts and leases the row until leased_until. Rows whose events failed
+-- too many times get a dead_lettered_date and are no longer claimed.
+ALTER TABLE ${myuniversity}_${mymodule}.event_inbox
+    ADD COLUMN IF NOT EXISTS attempts integer NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS leased_until timestamptz,
+    ADD COLUMN IF NOT EXISTS dead_lettered_date timestamptz;
@@ -0,0 +1,12 @@
+ALTER TABLE ${myuniversity}_${mymodule}.event_journal
+    ADD COLUMN IF NOT EXISTS seq bigserial,
+    ADD COLUMN IF NOT EXISTS user_id uuid,
+    ADD COLUMN IF NOT EXISTS event_type text,
+    ADD COLUMN IF NOT EXISTS created_date timestamptz,
+    ADD COLUMN IF NOT EXISTS deduplication_key text;
+
+CREATE INDEX IF NOT EXISTS event_journal_user_id_created_date_idx
+    ON ${myuniversity}_${mymodule}.event_journal (user_id, created_date, seq);
+
+CREATE UNIQUE INDEX IF NOT EXISTS event_journal_deduplication_key_idx_unique
+    ON ${myuniversity}_${mymodule}.event_journal (deduplication_key);
@@ -0,0 +1,34 @@
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.patron_block_configuration_version (
+    id integer PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+    version bigint NOT NULL
+);
+
+INSERT INTO ${myuniversity}_${mymodule}.patron_block_configuration_version (id, version)
+    VALUES (1, 0)
+    ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.increment_patron_block_configuration_version()
+RETURNS trigger AS $$
+BEGIN
+    UPDATE ${myuniversity}_${mymodule}.patron_block_configuration_version
+        SET version = version + 1
+        WHERE id = 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS increment_patron_block_configuration_version
+    ON ${myuniversity}_${mymodule}.patron_block_limits;
+CREATE TRIGGER increment_patron_block_configuration_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON ${myuniversity}_${mymodule}.patron_block_limits
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION ${myuniversity}_${mymodule}.increment_patron_block_configuration_version();
+
+DROP TRIGGER IF EXISTS increment_patron_block_configuration_version
+    ON ${myuniversity}_${mymodule}.patron_block_conditions;
+CREATE TRIGGER increment_patron_block_configuration_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON ${myuniversity}_${mymodule}.patron_block_conditions
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION ${myuniversity}_${mymodule}.increment_patron_block_configuration_version();
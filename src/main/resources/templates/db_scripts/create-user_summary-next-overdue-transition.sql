@@ -0,0 +1,40 @@
+ALTER TABLE ${myuniversity}_${mymodule}.user_summary
+    ADD COLUMN IF NOT EXISTS next_overdue_transition timestamptz;
+
+-- The column mirrors counters.nextOverdueTransitionDate, casting to timestamptz is not immutable
+-- and cannot be used in an expression index.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.set_user_summary_next_overdue_transition()
+RETURNS trigger AS $$
+BEGIN
+    NEW.next_overdue_transition =
+        (NEW.jsonb->'counters'->>'nextOverdueTransitionDate')::timestamptz;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS set_user_summary_next_overdue_transition
+    ON ${myuniversity}_${mymodule}.user_summary;
+CREATE TRIGGER set_user_summary_next_overdue_transition
+    BEFORE INSERT OR UPDATE
+    ON ${myuniversity}_${mymodule}.user_summary
+    FOR EACH ROW
+    EXECUTE FUNCTION ${myuniversity}_${mymodule}.set_user_summary_next_overdue_transition();
+
+CREATE INDEX IF NOT EXISTS user_summary_next_overdue_transition_idx
+    ON ${myuniversity}_${mymodule}.user_summary (next_overdue_transition)
+    WHERE next_overdue_transition IS NOT NULL;
+
+-- Summaries stored before counters were introduced have no next overdue transition until they
+-- are stored again.
+CREATE INDEX IF NOT EXISTS user_summary_without_counters_idx
+    ON ${myuniversity}_${mymodule}.user_summary (id)
+    WHERE NOT jsonb ? 'counters';
+
+-- Summaries whose overdue transition is being handled by a module instance. A claim keeps other
+-- instances from handling the same transition until it is released or expires. Claims are kept
+-- out of the summary, so claiming does not change the summary or its version.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.user_summary_overdue_transition_claim (
+    user_summary_id uuid PRIMARY KEY
+        REFERENCES ${myuniversity}_${mymodule}.user_summary (id) ON DELETE CASCADE,
+    claimed_until timestamptz NOT NULL
+);
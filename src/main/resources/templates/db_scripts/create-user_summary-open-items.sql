@@ -0,0 +1,67 @@
+-- Open loans and fees/fines of user summaries are stored as rows of their own, so that an event
+-- writes only the rows of the loan or fee/fine it changes instead of the whole summary. Rows are
+-- deleted together with their summary. The seq column keeps the order in which they were added.
+-- Loans which are not claimed returned keep their due date and their next overdue transition in
+-- columns of their own, so the earliest of them is read from an index instead of from every loan.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.open_loan (
+    user_summary_id uuid NOT NULL
+        REFERENCES ${myuniversity}_${mymodule}.user_summary (id) ON DELETE CASCADE,
+    loan_id text NOT NULL,
+    seq bigserial,
+    jsonb jsonb NOT NULL,
+    due_date timestamptz,
+    next_overdue_transition timestamptz,
+    PRIMARY KEY (user_summary_id, loan_id)
+);
+
+CREATE INDEX IF NOT EXISTS open_loan_due_date_idx
+    ON ${myuniversity}_${mymodule}.open_loan (user_summary_id, due_date);
+
+CREATE INDEX IF NOT EXISTS open_loan_next_overdue_transition_idx
+    ON ${myuniversity}_${mymodule}.open_loan (user_summary_id, next_overdue_transition);
+
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.open_fee_fine (
+    user_summary_id uuid NOT NULL
+        REFERENCES ${myuniversity}_${mymodule}.user_summary (id) ON DELETE CASCADE,
+    fee_fine_id text NOT NULL,
+    seq bigserial,
+    jsonb jsonb NOT NULL,
+    PRIMARY KEY (user_summary_id, fee_fine_id)
+);
+
+CREATE INDEX IF NOT EXISTS open_fee_fine_fee_fine_id_idx
+    ON ${myuniversity}_${mymodule}.open_fee_fine (fee_fine_id);
+
+-- An event of a loan reads the fees/fines of the loan as well.
+CREATE INDEX IF NOT EXISTS open_fee_fine_loan_id_idx
+    ON ${myuniversity}_${mymodule}.open_fee_fine (user_summary_id, (jsonb->>'loanId'));
+
+-- Move open loans and fees/fines out of the summary documents. Only the first of several items
+-- with the same ID is kept, which is the one events were applied to. Summaries without the
+-- arrays are skipped, so running the migration again changes nothing. The next overdue
+-- transition of a migrated loan starts at its due date, the overdue transition scan moves it on.
+INSERT INTO ${myuniversity}_${mymodule}.open_loan
+    (user_summary_id, loan_id, jsonb, due_date, next_overdue_transition)
+SELECT id, item->>'loanId', item, loan_due_date, loan_due_date
+FROM ${myuniversity}_${mymodule}.user_summary,
+    jsonb_array_elements(jsonb->'openLoans') WITH ORDINALITY AS items(item, position),
+    LATERAL (SELECT CASE WHEN coalesce((item->>'itemClaimedReturned')::boolean, false)
+        THEN NULL ELSE (item->>'dueDate')::timestamptz END AS loan_due_date) AS loan
+WHERE jsonb_typeof(jsonb->'openLoans') = 'array' AND item->>'loanId' IS NOT NULL
+ORDER BY id, position
+ON CONFLICT DO NOTHING;
+
+INSERT INTO ${myuniversity}_${mymodule}.open_fee_fine (user_summary_id, fee_fine_id, jsonb)
+SELECT id, item->>'feeFineId', item
+FROM ${myuniversity}_${mymodule}.user_summary,
+    jsonb_array_elements(jsonb->'openFeesFines') WITH ORDINALITY AS items(item, position)
+WHERE jsonb_typeof(jsonb->'openFeesFines') = 'array' AND item->>'feeFineId' IS NOT NULL
+ORDER BY id, position
+ON CONFLICT DO NOTHING;
+
+UPDATE ${myuniversity}_${mymodule}.user_summary
+SET jsonb = jsonb - 'openLoans' - 'openFeesFines'
+WHERE jsonb ? 'openLoans' OR jsonb ? 'openFeesFines';
+
+-- Summaries holding a fee/fine are found through open_fee_fine now.
+DROP INDEX IF EXISTS ${myuniversity}_${mymodule}.user_summary_open_fees_fines_idx_gin;
@@ -0,0 +1,19 @@
+-- Rebuild checkpoints hold copies of the open loans and fees/fines of a summary, they are kept
+-- out of the summary document so that only rebuilds write them. Checkpoints are deleted together
+-- with their summary.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.user_summary_rebuild_checkpoint (
+    user_summary_id uuid PRIMARY KEY
+        REFERENCES ${myuniversity}_${mymodule}.user_summary (id) ON DELETE CASCADE,
+    jsonb jsonb NOT NULL
+);
+
+-- Move checkpoints out of the summary documents, running the migration again changes nothing.
+INSERT INTO ${myuniversity}_${mymodule}.user_summary_rebuild_checkpoint (user_summary_id, jsonb)
+SELECT id, jsonb->'rebuildCheckpoint'
+FROM ${myuniversity}_${mymodule}.user_summary
+WHERE jsonb_typeof(jsonb->'rebuildCheckpoint') = 'object'
+ON CONFLICT DO NOTHING;
+
+UPDATE ${myuniversity}_${mymodule}.user_summary
+SET jsonb = jsonb - 'rebuildCheckpoint'
+WHERE jsonb ? 'rebuildCheckpoint';
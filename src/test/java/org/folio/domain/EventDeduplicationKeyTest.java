@@ -0,0 +1,90 @@
+package org.folio.domain;
+
+import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemAgedToLostEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemClaimedReturnedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemDeclaredLostEvent;
+import static org.folio.rest.utils.EntityBuilder.buildLoanClosedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildLoanDueDateChangedEvent;
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.Metadata;
+import org.junit.Test;
+
+public class EventDeduplicationKeyTest {
+
+  @Test
+  public void shouldBuildSameKeyForRedeliveryReceivedAtAnotherTime() {
+    String userId = randomId();
+    String loanId = randomId();
+    Date date = new Date();
+
+    List<Event> firstDeliveries = List.of(
+      buildItemCheckedOutEvent(userId, loanId, date),
+      buildItemCheckedInEvent(userId, loanId, date),
+      buildLoanClosedEvent(userId, loanId));
+    List<Event> redeliveries = List.of(
+      receivedLater(buildItemCheckedOutEvent(userId, loanId, date)),
+      receivedLater(buildItemCheckedInEvent(userId, loanId, date)),
+      receivedLater(buildLoanClosedEvent(userId, loanId)));
+
+    for (int i = 0; i < firstDeliveries.size(); i++) {
+      assertNotNull(EventDeduplicationKey.of(firstDeliveries.get(i)));
+      assertEquals(EventDeduplicationKey.of(firstDeliveries.get(i)),
+        EventDeduplicationKey.of(redeliveries.get(i)));
+    }
+  }
+
+  @Test
+  public void shouldNotDeduplicateRepeatableStateChangesWithoutSourceId() {
+    String userId = randomId();
+    String loanId = randomId();
+    String feeFineId = randomId();
+    Date dueDate = new Date();
+
+    // declared lost, claimed returned and declared lost again
+    assertNull(EventDeduplicationKey.of(buildItemDeclaredLostEvent(userId, loanId)));
+    assertNull(EventDeduplicationKey.of(buildItemClaimedReturnedEvent(userId, loanId)));
+    assertNull(EventDeduplicationKey.of(buildItemAgedToLostEvent(userId, loanId)));
+    // due date changed back to an earlier value
+    assertNull(EventDeduplicationKey.of(
+      buildLoanDueDateChangedEvent(userId, loanId, dueDate, false)));
+    // balance going 10 -> 5 -> 10
+    assertNull(EventDeduplicationKey.of(buildFeeFineBalanceChangedEvent(userId, loanId,
+      feeFineId, randomId(), new BigDecimal("10.00"))));
+  }
+
+  @Test
+  public void shouldDeduplicateRepeatableStateChangesBySourceId() {
+    String userId = randomId();
+    String loanId = randomId();
+    String eventId = randomId();
+
+    assertEquals(
+      EventDeduplicationKey.of(buildItemDeclaredLostEvent(userId, loanId).withId(eventId)),
+      EventDeduplicationKey.of(receivedLater(buildItemDeclaredLostEvent(userId, loanId)
+        .withId(eventId))));
+    assertNotEquals(
+      EventDeduplicationKey.of(buildItemDeclaredLostEvent(userId, loanId).withId(eventId)),
+      EventDeduplicationKey.of(buildItemDeclaredLostEvent(userId, loanId)
+        .withId(randomId())));
+  }
+
+  private static <T extends Event> T receivedLater(T event) {
+    Date receivedDate = new Date(System.currentTimeMillis() + 60_000);
+    event.setMetadata(new Metadata()
+      .withCreatedDate(receivedDate)
+      .withUpdatedDate(receivedDate));
+    return event;
+  }
+}
@@ -0,0 +1,76 @@
+package org.folio.domain;
+
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.junit.Test;
+
+public class IndexedUserSummaryTest {
+
+  @Test
+  public void shouldKeepOrderOfLoansAndFeesFinesWhenWrittenBack() {
+    List<OpenLoan> loans = List.of(openLoan(), openLoan(), openLoan());
+    List<OpenFeeFine> feesFines = List.of(openFeeFine(), openFeeFine());
+    UserSummary userSummary = new UserSummary()
+      .withOpenLoans(new ArrayList<>(loans))
+      .withOpenFeesFines(new ArrayList<>(feesFines));
+
+    IndexedUserSummary indexedUserSummary = IndexedUserSummary.of(userSummary);
+    OpenLoan newLoan = openLoan();
+    indexedUserSummary.addOpenLoan(newLoan);
+    assertTrue(indexedUserSummary.removeOpenLoan(loans.get(1).getLoanId()));
+    indexedUserSummary.removeOpenFeeFine(feesFines.get(0).getFeeFineId());
+    indexedUserSummary.writeTo(userSummary);
+
+    assertEquals(List.of(loans.get(0), loans.get(2), newLoan), userSummary.getOpenLoans());
+    assertEquals(List.of(feesFines.get(1)), userSummary.getOpenFeesFines());
+  }
+
+  @Test
+  public void shouldFindLoansAndFeesFinesById() {
+    OpenLoan loan = openLoan();
+    OpenFeeFine feeFine = openFeeFine();
+    IndexedUserSummary indexedUserSummary = IndexedUserSummary.of(new UserSummary()
+      .withOpenLoans(new ArrayList<>(List.of(openLoan(), loan)))
+      .withOpenFeesFines(new ArrayList<>(List.of(feeFine, openFeeFine()))));
+
+    assertSame(loan, indexedUserSummary.findOpenLoan(loan.getLoanId()).orElseThrow());
+    assertSame(feeFine, indexedUserSummary.findOpenFeeFine(feeFine.getFeeFineId()).orElseThrow());
+    assertFalse(indexedUserSummary.findOpenLoan(randomId()).isPresent());
+    assertFalse(indexedUserSummary.removeOpenLoan(randomId()));
+  }
+
+  @Test
+  public void shouldKeepFirstOfLoansWithSameId() {
+    String loanId = randomId();
+    OpenLoan first = new OpenLoan().withLoanId(loanId).withRecall(true);
+    OpenLoan second = new OpenLoan().withLoanId(loanId).withRecall(false);
+    UserSummary userSummary = new UserSummary()
+      .withOpenLoans(new ArrayList<>(List.of(first, second)));
+
+    IndexedUserSummary indexedUserSummary = IndexedUserSummary.of(userSummary);
+    indexedUserSummary.addOpenLoan(new OpenLoan().withLoanId(loanId));
+
+    assertEquals(List.of(first), indexedUserSummary.writeTo(userSummary).getOpenLoans());
+  }
+
+  private static OpenLoan openLoan() {
+    return new OpenLoan().withLoanId(randomId());
+  }
+
+  private static OpenFeeFine openFeeFine() {
+    return new OpenFeeFine()
+      .withFeeFineId(randomId())
+      .withBalance(BigDecimal.ONE);
+  }
+}
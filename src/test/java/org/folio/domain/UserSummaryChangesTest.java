@@ -0,0 +1,89 @@
+package org.folio.domain;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class UserSummaryChangesTest {
+
+  @Test
+  public void shouldFindAddedChangedAndClosedLoansAndFeesFines() {
+    OpenLoan unchangedLoan = buildLoan();
+    OpenLoan changedLoan = buildLoan();
+    OpenLoan closedLoan = buildLoan();
+    OpenLoan addedLoan = buildLoan();
+    OpenFeeFine unchangedFeeFine = buildFeeFine(BigDecimal.ONE);
+    OpenFeeFine closedFeeFine = buildFeeFine(BigDecimal.TEN);
+    UserSummary before = new UserSummary()
+      .withOpenLoans(asList(unchangedLoan, changedLoan, closedLoan))
+      .withOpenFeesFines(asList(unchangedFeeFine, closedFeeFine));
+
+    UserSummary after = copyOf(before);
+    after.getOpenLoans().get(1).setItemLost(true);
+    after.getOpenLoans().remove(2);
+    after.getOpenLoans().add(addedLoan);
+    after.getOpenFeesFines().remove(1);
+
+    UserSummaryChanges changes = UserSummaryChanges.between(before, after);
+
+    assertFalse(changes.isEmpty());
+    assertEquals(asList(changedLoan.getLoanId(), addedLoan.getLoanId()),
+      loanIds(changes.getChangedOpenLoans()));
+    assertEquals(singletonList(closedLoan.getLoanId()), changes.getClosedLoanIds());
+    assertTrue(changes.getChangedOpenFeesFines().isEmpty());
+    assertEquals(singletonList(closedFeeFine.getFeeFineId()), changes.getClosedFeeFineIds());
+  }
+
+  @Test
+  public void shouldFindNoChangesWhenEventsChangedNothing() {
+    UserSummary before = new UserSummary()
+      .withOpenLoans(singletonList(buildLoan()))
+      .withOpenFeesFines(singletonList(buildFeeFine(BigDecimal.ONE)));
+
+    assertTrue(UserSummaryChanges.between(before, copyOf(before)).isEmpty());
+  }
+
+  private static List<String> loanIds(List<OpenLoan> openLoans) {
+    List<String> loanIds = new ArrayList<>();
+    openLoans.forEach(openLoan -> loanIds.add(openLoan.getLoanId()));
+    return loanIds;
+  }
+
+  private static UserSummary copyOf(UserSummary userSummary) {
+    UserSummary copy = JsonObject.mapFrom(userSummary).mapTo(UserSummary.class);
+    copy.setOpenLoans(new ArrayList<>(copy.getOpenLoans()));
+    copy.setOpenFeesFines(new ArrayList<>(copy.getOpenFeesFines()));
+    return copy;
+  }
+
+  private static OpenLoan buildLoan() {
+    return new OpenLoan()
+      .withLoanId(randomId())
+      .withDueDate(new Date())
+      .withItemLost(false)
+      .withRecall(false)
+      .withItemClaimedReturned(false);
+  }
+
+  private static OpenFeeFine buildFeeFine(BigDecimal balance) {
+    return new OpenFeeFine()
+      .withFeeFineId(randomId())
+      .withFeeFineTypeId(randomId())
+      .withBalance(balance);
+  }
+}
@@ -0,0 +1,96 @@
+package org.folio.domain;
+
+import static java.util.Arrays.asList;
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+import org.junit.Test;
+
+public class UserSummaryCountersCalculatorTest {
+
+  @Test
+  public void shouldCountLoansAndFeesFinesExceptClaimedReturned() {
+    Date earliestDueDate = new Date(1_000_000L);
+    String claimedReturnedLoanId = randomId();
+
+    UserSummary userSummary = new UserSummary()
+      .withOpenLoans(asList(
+        buildLoan(randomId(), new Date(2_000_000L)).withItemLost(true),
+        buildLoan(randomId(), earliestDueDate).withRecall(true),
+        buildLoan(claimedReturnedLoanId, new Date(0L)).withItemClaimedReturned(true)))
+      .withOpenFeesFines(asList(
+        buildFeeFine(claimedReturnedLoanId, BigDecimal.TEN),
+        buildFeeFine(null, new BigDecimal("1.25"))));
+
+    UserSummaryCounters counters = UserSummaryCountersCalculator.calculate(userSummary);
+
+    assertEquals(Integer.valueOf(2), counters.getOpenLoanCount());
+    assertEquals(Integer.valueOf(1), counters.getLostItemCount());
+    assertEquals(Integer.valueOf(1), counters.getClaimedReturnedCount());
+    assertEquals(Integer.valueOf(1), counters.getRecallCount());
+    assertEquals(0, new BigDecimal("1.25").compareTo(counters.getOutstandingFeeFineBalance()));
+    assertEquals(earliestDueDate, counters.getEarliestDueDate());
+  }
+
+  @Test
+  public void shouldHaveNoEarliestDueDateWithoutLoans() {
+    UserSummaryCounters counters = UserSummaryCountersCalculator.calculate(new UserSummary());
+
+    assertEquals(Integer.valueOf(0), counters.getOpenLoanCount());
+    assertNull(counters.getEarliestDueDate());
+  }
+
+  @Test
+  public void shouldCalculateDeltaOfChangedLoansAndFeesFines() {
+    String claimedReturnedLoanId = randomId();
+    UserSummary before = new UserSummary()
+      .withOpenLoans(asList(
+        buildLoan(randomId(), new Date(1_000_000L)).withItemLost(true),
+        buildLoan(claimedReturnedLoanId, new Date(2_000_000L))))
+      .withOpenFeesFines(asList(
+        buildFeeFine(claimedReturnedLoanId, BigDecimal.TEN),
+        buildFeeFine(null, new BigDecimal("1.25"))));
+    UserSummary after = new UserSummary()
+      .withOpenLoans(asList(
+        buildLoan(claimedReturnedLoanId, new Date(2_000_000L)).withItemClaimedReturned(true),
+        buildLoan(randomId(), new Date(3_000_000L)).withRecall(true)))
+      .withOpenFeesFines(asList(
+        buildFeeFine(claimedReturnedLoanId, BigDecimal.TEN),
+        buildFeeFine(null, new BigDecimal("2.50"))));
+
+    UserSummaryCounters delta = UserSummaryCountersCalculator.calculateDelta(before, after);
+
+    assertEquals(Integer.valueOf(-1), delta.getOpenLoanCount());
+    assertEquals(Integer.valueOf(-1), delta.getLostItemCount());
+    assertEquals(Integer.valueOf(1), delta.getClaimedReturnedCount());
+    assertEquals(Integer.valueOf(1), delta.getRecallCount());
+    assertEquals(0, new BigDecimal("-8.75").compareTo(delta.getOutstandingFeeFineBalance()));
+    assertNull(delta.getEarliestDueDate());
+    assertNull(delta.getNextOverdueTransitionDate());
+  }
+
+  private static OpenLoan buildLoan(String loanId, Date dueDate) {
+    return new OpenLoan()
+      .withLoanId(loanId)
+      .withDueDate(dueDate)
+      .withItemLost(false)
+      .withRecall(false)
+      .withItemClaimedReturned(false);
+  }
+
+  private static OpenFeeFine buildFeeFine(String loanId, BigDecimal balance) {
+    return new OpenFeeFine()
+      .withFeeFineId(randomId())
+      .withFeeFineTypeId(randomId())
+      .withLoanId(loanId)
+      .withBalance(balance);
+  }
+}
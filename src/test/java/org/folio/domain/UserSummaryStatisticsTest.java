@@ -0,0 +1,66 @@
+package org.folio.domain;
+
+import static java.util.Arrays.asList;
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.junit.Test;
+
+public class UserSummaryStatisticsTest {
+
+  @Test
+  public void shouldAggregateSummaryIgnoringItemsClaimedReturned() {
+    String lostLoanId = randomId();
+    String overdueRecallId = randomId();
+    String claimedReturnedLoanId = randomId();
+    String overdueClaimedReturnedLoanId = randomId();
+
+    UserSummary userSummary = new UserSummary()
+      .withOpenLoans(asList(
+        buildLoan(lostLoanId, false, false).withItemLost(true),
+        buildLoan(overdueRecallId, true, false),
+        buildLoan(randomId(), false, false),
+        buildLoan(claimedReturnedLoanId, false, true),
+        buildLoan(overdueClaimedReturnedLoanId, true, true)))
+      .withOpenFeesFines(asList(
+        buildFeeFine(lostLoanId, BigDecimal.ONE),
+        buildFeeFine(claimedReturnedLoanId, BigDecimal.TEN),
+        buildFeeFine(null, new BigDecimal("2.50"))));
+
+    UserSummaryStatistics statistics = UserSummaryStatistics.of(userSummary, Map.of(
+      overdueRecallId, 1441,
+      overdueClaimedReturnedLoanId, 10_000));
+
+    assertEquals(3, statistics.getNumberOfOpenLoans());
+    assertEquals(1, statistics.getNumberOfLostItems());
+    assertEquals(1, statistics.getNumberOfOverdueItems());
+    assertEquals(1, statistics.getNumberOfOverdueRecalls());
+    assertEquals(2, statistics.getMaxRecallOverdueDays());
+    assertEquals(0, new BigDecimal("3.50")
+      .compareTo(statistics.getOutstandingFeeFineBalance()));
+  }
+
+  private static OpenLoan buildLoan(String loanId, boolean recall, boolean claimedReturned) {
+    return new OpenLoan()
+      .withLoanId(loanId)
+      .withDueDate(new Date())
+      .withItemLost(false)
+      .withRecall(recall)
+      .withItemClaimedReturned(claimedReturned);
+  }
+
+  private static OpenFeeFine buildFeeFine(String loanId, BigDecimal balance) {
+    return new OpenFeeFine()
+      .withFeeFineId(randomId())
+      .withFeeFineTypeId(randomId())
+      .withLoanId(loanId)
+      .withBalance(balance);
+  }
+}
@@ -0,0 +1,153 @@
+package org.folio.kafka;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.folio.kafka.KafkaEventConsumerVerticle.buildConsumerConfig;
+import static org.folio.kafka.KafkaEventConsumerVerticle.buildConsumerGroupId;
+import static org.folio.kafka.KafkaEventConsumerVerticle.buildDefaultTopicPattern;
+import static org.folio.repository.UserSummaryRepository.USER_SUMMARY_TABLE_NAME;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.awaitility.Awaitility;
+import org.folio.domain.Event;
+import org.folio.domain.EventType;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.persist.PostgresClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.kafka.admin.KafkaAdminClient;
+import io.vertx.kafka.client.common.TopicPartition;
+import io.vertx.kafka.client.producer.KafkaProducer;
+import io.vertx.kafka.client.producer.KafkaProducerRecord;
+
+@RunWith(VertxUnitRunner.class)
+public class KafkaEventConsumerVerticleTest extends TestBase {
+  private static final String ENVIRONMENT = "folio";
+  private static final String UNKNOWN_TENANT = "unknown_tenant";
+
+  @ClassRule
+  public static KafkaContainer kafka = new KafkaContainer(
+    DockerImageName.parse("confluentinc/cp-kafka:7.5.1"));
+
+  private final UserSummaryRepository userSummaryRepository =
+    new UserSummaryRepository(postgresClient);
+
+  @Before
+  public void setUp() {
+    resetMocks();
+    deleteAllFromTable(USER_SUMMARY_TABLE_NAME);
+  }
+
+  @Test
+  public void shouldApplyEventsReadFromKafka(TestContext context) throws Exception {
+    String userId = randomId();
+    String firstLoanId = randomId();
+    String secondLoanId = randomId();
+
+    KafkaProducer<String, String> producer = createProducer();
+    send(producer, userId, buildItemCheckedOutEvent(userId, firstLoanId, new Date()));
+    send(producer, userId, buildItemCheckedOutEvent(userId, secondLoanId, new Date()));
+    waitFor(producer.close());
+
+    String deploymentId = deployConsumer();
+
+    Awaitility.await()
+      .atMost(30, SECONDS)
+      .until(() -> waitFor(userSummaryRepository.getByUserId(userId))
+        .map(summary -> summary.getOpenLoans().size() == 2)
+        .orElse(false));
+
+    UserSummary userSummary = waitFor(userSummaryRepository.getByUserId(userId)).orElseThrow();
+    context.assertEquals(firstLoanId, userSummary.getOpenLoans().get(0).getLoanId());
+    context.assertEquals(secondLoanId, userSummary.getOpenLoans().get(1).getLoanId());
+
+    waitFor(vertx.undeploy(deploymentId));
+  }
+
+  @Test
+  public void shouldSkipEventsOfUnknownTenantAndCommitThem(TestContext context)
+    throws Exception {
+
+    String userId = randomId();
+    String loanId = randomId();
+
+    KafkaProducer<String, String> producer = createProducer();
+    send(producer, UNKNOWN_TENANT, userId, buildItemCheckedOutEvent(userId, randomId(),
+      new Date()));
+    send(producer, userId, buildItemCheckedOutEvent(userId, loanId, new Date()));
+    waitFor(producer.close());
+
+    String deploymentId = deployConsumer();
+
+    Awaitility.await()
+      .atMost(30, SECONDS)
+      .until(() -> waitFor(userSummaryRepository.getByUserId(userId))
+        .map(summary -> summary.getOpenLoans().size() == 1)
+        .orElse(false));
+
+    KafkaAdminClient adminClient = KafkaAdminClient.create(vertx, Map.of(
+      "bootstrap.servers", kafka.getBootstrapServers()));
+    TopicPartition unknownTenantPartition = new TopicPartition(
+      buildTopicName(UNKNOWN_TENANT, EventType.ITEM_CHECKED_OUT.name()), 0);
+    Awaitility.await()
+      .atMost(30, SECONDS)
+      .until(() -> Optional.ofNullable(waitFor(adminClient.listConsumerGroupOffsets(
+          buildConsumerGroupId(ENVIRONMENT))).get(unknownTenantPartition))
+        .map(offset -> offset.getOffset() >= 1)
+        .orElse(false));
+
+    waitFor(adminClient.close());
+    waitFor(vertx.undeploy(deploymentId));
+  }
+
+  private String deployConsumer() {
+    return waitFor(vertx.deployVerticle(new KafkaEventConsumerVerticle(
+      buildConsumerConfig(kafka.getBootstrapServers(), buildConsumerGroupId(ENVIRONMENT), 10),
+      Pattern.compile(buildDefaultTopicPattern(ENVIRONMENT)))));
+  }
+
+  private KafkaProducer<String, String> createProducer() {
+    return KafkaProducer.create(vertx, Map.of(
+      "bootstrap.servers", kafka.getBootstrapServers(),
+      "key.serializer", "org.apache.kafka.common.serialization.StringSerializer",
+      "value.serializer", "org.apache.kafka.common.serialization.StringSerializer"));
+  }
+
+  private static String buildTopicName(String tenantId, String eventType) {
+    return String.join(".", "pub-sub", ENVIRONMENT, tenantId, eventType);
+  }
+
+  private static void send(KafkaProducer<String, String> producer, String userId, Event event)
+    throws Exception {
+
+    send(producer, OKAPI_TENANT, userId, event);
+  }
+
+  private static void send(KafkaProducer<String, String> producer, String tenantId,
+    String userId, Event event) throws Exception {
+
+    String eventType = EventType.getNameByEvent(event);
+    JsonObject envelope = new JsonObject()
+      .put("id", randomId())
+      .put("eventType", eventType)
+      .put("eventMetadata", new JsonObject().put("tenantId", tenantId))
+      .put("eventPayload", PostgresClient.pojo2JsonObject(event).encode());
+
+    waitFor(producer.send(KafkaProducerRecord.create(buildTopicName(tenantId, eventType), userId,
+      envelope.encode())));
+  }
+}
@@ -0,0 +1,27 @@
+package org.folio.kafka;
+
+import static org.folio.kafka.KafkaUserEventConsumerVerticle.INSTANCE_ID_PROPERTY;
+import static org.folio.kafka.KafkaUserEventConsumerVerticle.buildConsumerConfig;
+import static org.folio.kafka.KafkaUserEventConsumerVerticle.buildConsumerGroupId;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class KafkaUserEventConsumerVerticleTest {
+
+  @After
+  public void afterEach() {
+    System.clearProperty(INSTANCE_ID_PROPERTY);
+  }
+
+  @Test
+  public void shouldUseSameConsumerGroupForSameInstance() {
+    System.setProperty(INSTANCE_ID_PROPERTY, "instance-1");
+
+    String groupId = buildConsumerGroupId("folio", KafkaUserEventConsumerVerticle.getInstanceId());
+
+    assertEquals("folio.mod-patron-blocks-users.instance-1", groupId);
+    assertEquals(groupId, buildConsumerConfig("localhost:9092", groupId).get("group.id"));
+  }
+}
@@ -0,0 +1,74 @@
+package org.folio.repository;
+
+import static java.util.stream.Collectors.toList;
+import static org.folio.repository.EventInboxRepository.EVENT_INBOX_TABLE_NAME;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+
+import java.util.Date;
+import java.util.List;
+
+import org.folio.domain.InboxEvent;
+import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
+import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class EventInboxRepositoryTest extends TestBase {
+  private final EventInboxRepository repository = new EventInboxRepository(postgresClient);
+
+  @Before
+  public void setUp() {
+    resetMocks();
+    deleteAllFromTable(EVENT_INBOX_TABLE_NAME);
+  }
+
+  @Test
+  public void shouldClaimEventsInOrderAndRemoveThem(TestContext context) {
+    String userId = randomId();
+    String loanId = randomId();
+    ItemCheckedOutEvent checkOut = buildItemCheckedOutEvent(userId, loanId, new Date());
+    ItemCheckedInEvent checkIn = buildItemCheckedInEvent(userId, loanId, new Date());
+    waitFor(repository.saveAll(List.of(checkOut, checkIn)));
+
+    List<InboxEvent> claimedEvents = waitFor(repository.claimNextBatch(10, 60));
+
+    context.assertEquals(2, claimedEvents.size());
+    context.assertEquals(loanId,
+      ((ItemCheckedOutEvent) claimedEvents.get(0).getEvent()).getLoanId());
+    context.assertEquals(loanId,
+      ((ItemCheckedInEvent) claimedEvents.get(1).getEvent()).getLoanId());
+    context.assertEquals(1, claimedEvents.get(0).getAttempts());
+
+    context.assertEquals(2, waitFor(repository.remove(claimedEvents.stream()
+      .map(InboxEvent::getId)
+      .collect(toList()))));
+    waitFor(repository.release(List.of(), 0));
+    context.assertTrue(waitFor(repository.claimNextBatch(10, 0)).isEmpty());
+  }
+
+  @Test
+  public void shouldNotClaimLeasedOrDeadLetteredEvents(TestContext context) {
+    waitFor(repository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()),
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+    List<InboxEvent> claimedEvents = waitFor(repository.claimNextBatch(10, 60));
+    context.assertEquals(2, claimedEvents.size());
+    context.assertTrue(waitFor(repository.claimNextBatch(10, 60)).isEmpty());
+
+    waitFor(repository.release(List.of(claimedEvents.get(0).getId()), 0));
+    waitFor(repository.deadLetter(List.of(claimedEvents.get(1).getId())));
+    waitFor(repository.release(List.of(claimedEvents.get(1).getId()), 0));
+
+    List<InboxEvent> reclaimedEvents = waitFor(repository.claimNextBatch(10, 60));
+    context.assertEquals(1, reclaimedEvents.size());
+    context.assertEquals(claimedEvents.get(0).getId(), reclaimedEvents.get(0).getId());
+    context.assertEquals(2, reclaimedEvents.get(0).getAttempts());
+  }
+}
@@ -0,0 +1,198 @@
+package org.folio.repository;
+
+import static org.folio.repository.EventJournalRepository.DEDUPLICATION_KEY_TABLE_NAME;
+import static org.folio.repository.EventJournalRepository.EVENT_JOURNAL_TABLE_NAME;
+import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.folio.domain.Event;
+import org.folio.domain.EventDeduplicationKey;
+import org.folio.domain.JournalEvent;
+import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
+import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
+import org.folio.rest.jaxrs.model.OpenFeeFine;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class EventJournalRepositoryTest extends TestBase {
+  private final EventJournalRepository repository = new EventJournalRepository(postgresClient);
+
+  @Before
+  public void setUp() {
+    resetMocks();
+    deleteAllFromTable(EVENT_JOURNAL_TABLE_NAME);
+    deleteAllFromTable(DEDUPLICATION_KEY_TABLE_NAME);
+  }
+
+  @Test
+  public void shouldSkipEventsWhichHaveAlreadyBeenSaved(TestContext context) {
+    String userId = randomId();
+    ItemCheckedOutEvent firstCheckOut = buildItemCheckedOutEvent(userId, randomId(), new Date());
+    ItemCheckedOutEvent secondCheckOut = buildItemCheckedOutEvent(userId, randomId(), new Date());
+
+    context.assertEquals(List.of(firstCheckOut),
+      waitFor(repository.saveAll(List.of(firstCheckOut))));
+    context.assertEquals(List.of(secondCheckOut),
+      waitFor(repository.saveAll(List.of(firstCheckOut, secondCheckOut, secondCheckOut))));
+    context.assertEquals(2, waitFor(repository.getByUserId(userId)).size());
+  }
+
+  @Test
+  public void shouldReturnEventsOfUserInOrderOfCreation(TestContext context) {
+    String userId = randomId();
+    String loanId = randomId();
+    long now = System.currentTimeMillis();
+    ItemCheckedOutEvent checkOut = buildItemCheckedOutEvent(userId, loanId, new Date());
+    checkOut.getMetadata().setCreatedDate(new Date(now));
+    ItemCheckedInEvent checkIn = buildItemCheckedInEvent(userId, loanId, new Date());
+    checkIn.getMetadata().setCreatedDate(new Date(now + 1));
+
+    waitFor(repository.saveAll(List.of(checkIn)));
+    waitFor(repository.saveAll(List.of(checkOut)));
+    waitFor(repository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+
+    List<Event> events = waitFor(repository.getByUserId(userId));
+    context.assertEquals(2, events.size());
+    context.assertEquals(loanId, ((ItemCheckedOutEvent) events.get(0)).getLoanId());
+    context.assertEquals(loanId, ((ItemCheckedInEvent) events.get(1)).getLoanId());
+  }
+
+  @Test
+  public void shouldReadEventsOfUserPageByPageInOrderOfCreation(TestContext context) {
+    String userId = randomId();
+    long now = System.currentTimeMillis();
+    List<ItemCheckedOutEvent> checkOuts = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ItemCheckedOutEvent checkOut = buildItemCheckedOutEvent(userId, randomId(), new Date());
+      // two events per creation date, so pages also break between events created at once
+      checkOut.getMetadata().setCreatedDate(new Date(now + i / 2));
+      checkOuts.add(checkOut);
+    }
+    List<ItemCheckedOutEvent> reversed = new ArrayList<>(checkOuts);
+    Collections.reverse(reversed);
+    reversed.forEach(checkOut -> waitFor(repository.saveAll(List.of(checkOut))));
+
+    List<String> loanIds = new ArrayList<>();
+    JournalEvent previous = null;
+    List<JournalEvent> page;
+    do {
+      page = waitFor(repository.getPageByUserId(userId, 0, previous, 2));
+      page.forEach(event -> loanIds.add(((ItemCheckedOutEvent) event.getEvent()).getLoanId()));
+      previous = page.isEmpty() ? null : page.get(page.size() - 1);
+    } while (page.size() == 2);
+
+    // events created at once are read in the order they were stored
+    context.assertEquals(List.of(checkOuts.get(1).getLoanId(), checkOuts.get(0).getLoanId(),
+      checkOuts.get(3).getLoanId(), checkOuts.get(2).getLoanId(), checkOuts.get(4).getLoanId()),
+      loanIds);
+  }
+
+  @Test
+  public void shouldRemoveEventsOfLoansAndFeesFinesClosedInCheckpoint(TestContext context) {
+    String userId = randomId();
+    String closedLoanId = randomId();
+    String openLoanId = randomId();
+    String closedFeeFineId = randomId();
+    String openFeeFineId = randomId();
+    waitFor(repository.saveAll(List.of(
+      buildItemCheckedOutEvent(userId, closedLoanId, new Date()),
+      buildItemCheckedInEvent(userId, closedLoanId, new Date()),
+      buildItemCheckedOutEvent(userId, openLoanId, new Date()),
+      buildFeeFineBalanceChangedEvent(userId, closedLoanId, closedFeeFineId, randomId(),
+        new BigDecimal("5.00")),
+      buildFeeFineBalanceChangedEvent(userId, closedLoanId, closedFeeFineId, randomId(),
+        BigDecimal.ZERO),
+      buildFeeFineBalanceChangedEvent(userId, openLoanId, openFeeFineId, randomId(),
+        new BigDecimal("3.00")))));
+    long lastEventSeq = waitFor(repository.getPageByUserId(userId, 0, null, 10)).stream()
+      .mapToLong(JournalEvent::getSeq)
+      .max()
+      .orElseThrow();
+
+    UserSummaryRebuildCheckpoint checkpoint = new UserSummaryRebuildCheckpoint()
+      .withLastEventSeq(lastEventSeq)
+      .withOpenLoans(List.of(new OpenLoan().withLoanId(openLoanId)))
+      .withOpenFeesFines(List.of(new OpenFeeFine().withFeeFineId(openFeeFineId)));
+
+    context.assertEquals(4, waitFor(repository.removeCoveredByCheckpoint(userId, checkpoint, 10)));
+    context.assertEquals(2, waitFor(repository.getByUserId(userId)).size());
+    context.assertTrue(waitFor(repository.getUserIds(null, Integer.MAX_VALUE)).contains(userId));
+  }
+
+  @Test
+  public void shouldSkipRedeliveredEventAfterItWasRemovedByCompaction(TestContext context) {
+    String userId = randomId();
+    String loanId = randomId();
+    ItemCheckedOutEvent checkOut = buildItemCheckedOutEvent(userId, loanId, new Date());
+    waitFor(repository.saveAll(List.of(checkOut,
+      buildItemCheckedInEvent(userId, loanId, new Date()))));
+    UserSummaryRebuildCheckpoint checkpoint = new UserSummaryRebuildCheckpoint()
+      .withLastEventSeq(Long.MAX_VALUE)
+      .withOpenLoans(List.of())
+      .withOpenFeesFines(List.of());
+    context.assertEquals(2, waitFor(repository.removeCoveredByCheckpoint(userId, checkpoint,
+      10)));
+
+    context.assertEquals(List.of(), waitFor(repository.saveAll(List.of(checkOut))));
+    context.assertTrue(waitFor(repository.findExistingDeduplicationKeys(List.of(
+      EventDeduplicationKey.of(checkOut)))).contains(EventDeduplicationKey.of(checkOut)));
+    context.assertEquals(0, waitFor(repository.getByUserId(userId)).size());
+
+    context.assertEquals(0, waitFor(repository.removeExpiredDeduplicationKeys(1)));
+    context.assertEquals(2, waitFor(repository.removeExpiredDeduplicationKeys(-1)));
+    context.assertEquals(List.of(checkOut), waitFor(repository.saveAll(List.of(checkOut))));
+  }
+
+  @Test
+  public void shouldKeepEventsWithoutLoanIdWhenRemovingEventsCoveredByCheckpoint(
+    TestContext context) {
+
+    String userId = randomId();
+    ItemCheckedOutEvent checkOutWithoutLoanId = buildItemCheckedOutEvent(userId, randomId(),
+      new Date());
+    checkOutWithoutLoanId.setLoanId(null);
+    waitFor(repository.saveAll(List.of(checkOutWithoutLoanId)));
+
+    for (List<OpenLoan> openLoans : List.of(List.<OpenLoan>of(),
+      List.of(new OpenLoan().withLoanId(randomId())))) {
+
+      UserSummaryRebuildCheckpoint checkpoint = new UserSummaryRebuildCheckpoint()
+        .withLastEventSeq(Long.MAX_VALUE)
+        .withOpenLoans(openLoans)
+        .withOpenFeesFines(List.of());
+      context.assertEquals(0, waitFor(repository.removeCoveredByCheckpoint(userId, checkpoint,
+        10)));
+    }
+    context.assertEquals(1, waitFor(repository.getByUserId(userId)).size());
+  }
+
+  @Test
+  public void shouldRemoveEventsOfUser(TestContext context) {
+    String userId = randomId();
+    String otherUserId = randomId();
+    waitFor(repository.saveAll(List.of(
+      buildItemCheckedOutEvent(userId, randomId(), new Date()),
+      buildItemCheckedOutEvent(otherUserId, randomId(), new Date()))));
+
+    waitFor(repository.removeByUserId(userId));
+
+    context.assertEquals(0, waitFor(repository.getByUserId(userId)).size());
+    context.assertEquals(1, waitFor(repository.getByUserId(otherUserId)).size());
+  }
+}
@@ -3,25 +3,40 @@ package org.folio.repository;
 import static java.math.BigDecimal.TEN;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.folio.repository.UserSummaryRepository.OPEN_LOAN_TABLE_NAME;
+import static org.folio.repository.UserSummaryRepository.REBUILD_CHECKPOINT_TABLE_NAME;
 import static org.folio.repository.UserSummaryRepository.USER_SUMMARY_TABLE_NAME;
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
 
+import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
+import org.folio.domain.UserSummaryChanges;
 import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.rest.TestBase;
 import org.folio.rest.jaxrs.model.OpenFeeFine;
 import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.pgclient.PgException;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
 
 @RunWith(VertxUnitRunner.class)
 public class UserSummaryRepositoryTest extends TestBase {
@@ -111,6 +126,24 @@ public class UserSummaryRepositoryTest extends TestBase {
     assertSummariesAreEqual(expectedUserSummary, retrievedUserSummary.get(), context);
   }
 
+  @Test
+  public void shouldFindUserSummaryByFeeFineId(TestContext context) {
+    UserSummary expectedUserSummary = createUserSummary(randomId(), randomId());
+
+    waitFor(GenericCompositeFuture.all(List.of(
+      repository.save(createUserSummary(randomId(), randomId())),
+      repository.save(expectedUserSummary),
+      repository.save(createUserSummary(randomId(), randomId()))))
+    );
+
+    String feeFineId = expectedUserSummary.getOpenFeesFines().get(0).getFeeFineId();
+    Optional<UserSummary> retrievedUserSummary = waitFor(repository.findByFeeFineId(feeFineId));
+
+    context.assertTrue(retrievedUserSummary.isPresent());
+    assertSummariesAreEqual(expectedUserSummary, retrievedUserSummary.get(), context);
+    context.assertFalse(waitFor(repository.findByFeeFineId(randomId())).isPresent());
+  }
+
   @Test
   public void shouldUpdateUserSummary(TestContext context) {
     String userSummaryId = randomId();
@@ -196,24 +229,258 @@ public class UserSummaryRepositoryTest extends TestBase {
     assertSummariesAreEqual(updatedSummary, retrievedUpdatedSummary.get(), context);
   }
 
+  @Test
+  public void shouldClaimUserSummariesWithPassedOverdueTransitionOnce(TestContext context) {
+    UserSummary summaryWithPassedTransition = createUserSummary(randomId(), randomId());
+
+    waitFor(GenericCompositeFuture.all(List.of(
+      repository.save(createUserSummary(randomId(), randomId())),
+      repository.save(summaryWithPassedTransition))));
+    waitFor(postgresClient.execute(String.format("UPDATE %s.%s SET jsonb = jsonb_set(jsonb, " +
+        "'{counters,nextOverdueTransitionDate}', to_jsonb(now() - interval '1 minute')) " +
+        "WHERE jsonb->>'id' = $1", convertToPsqlStandard(OKAPI_TENANT), USER_SUMMARY_TABLE_NAME),
+      Tuple.of(summaryWithPassedTransition.getId())));
+
+    List<UserSummary> summaries = waitFor(repository.claimWithPassedOverdueTransition(10, 60));
+
+    context.assertEquals(1, summaries.size());
+    context.assertEquals(summaryWithPassedTransition.getId(), summaries.get(0).getId());
+    // a claimed summary is not handed out again, to any module instance, until it is released
+    context.assertTrue(waitFor(repository.claimWithPassedOverdueTransition(10, 60)).isEmpty());
+
+    waitFor(repository.releaseOverdueTransitionClaims(List.of(
+      summaryWithPassedTransition.getId())));
+
+    context.assertEquals(1, waitFor(repository.claimWithPassedOverdueTransition(10, 60)).size());
+  }
+
+  @Test
+  public void shouldClaimUserSummaryAgainAfterClaimExpires(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    waitFor(repository.save(userSummary));
+    waitFor(postgresClient.execute(String.format("UPDATE %s.%s SET jsonb = jsonb_set(jsonb, " +
+        "'{counters,nextOverdueTransitionDate}', to_jsonb(now() - interval '1 minute')) " +
+        "WHERE jsonb->>'id' = $1", convertToPsqlStandard(OKAPI_TENANT), USER_SUMMARY_TABLE_NAME),
+      Tuple.of(userSummary.getId())));
+
+    context.assertEquals(1, waitFor(repository.claimWithPassedOverdueTransition(10, 0)).size());
+    context.assertEquals(1, waitFor(repository.claimWithPassedOverdueTransition(10, 60)).size());
+    context.assertTrue(waitFor(repository.claimWithPassedOverdueTransition(10, 60)).isEmpty());
+  }
+
+  @Test
+  public void shouldWriteOnlyRowsOfChangedOpenLoansAndFeesFines(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    OpenLoan unchangedLoan = userSummary.getOpenLoans().get(0);
+    OpenLoan changedLoan = userSummary.getOpenLoans().get(1);
+    OpenLoan addedLoan = createOpenLoan();
+    OpenFeeFine unchangedFeeFine = userSummary.getOpenFeesFines().get(0);
+    waitFor(repository.save(userSummary));
+    Map<String, String> rowVersionsBeforeUpdate = getOpenLoanRowVersions(userSummary.getId());
+
+    UserSummary storedSummary = waitFor(repository.get(userSummary.getId())).orElseThrow();
+    waitFor(repository.upsert(storedSummary
+      .withOpenLoans(asList(unchangedLoan, changedLoan.withItemLost(true), addedLoan))
+      .withOpenFeesFines(singletonList(unchangedFeeFine))));
+
+    UserSummary updatedSummary = waitFor(repository.get(userSummary.getId())).orElseThrow();
+    context.assertEquals(asList(unchangedLoan.getLoanId(), changedLoan.getLoanId(),
+        addedLoan.getLoanId()),
+      updatedSummary.getOpenLoans().stream().map(OpenLoan::getLoanId).collect(toList()));
+    context.assertTrue(updatedSummary.getOpenLoans().get(1).getItemLost());
+    context.assertEquals(singletonList(unchangedFeeFine.getFeeFineId()),
+      updatedSummary.getOpenFeesFines().stream().map(OpenFeeFine::getFeeFineId)
+        .collect(toList()));
+
+    Map<String, String> rowVersionsAfterUpdate = getOpenLoanRowVersions(userSummary.getId());
+    context.assertEquals(rowVersionsBeforeUpdate.get(unchangedLoan.getLoanId()),
+      rowVersionsAfterUpdate.get(unchangedLoan.getLoanId()));
+    context.assertNotEquals(rowVersionsBeforeUpdate.get(changedLoan.getLoanId()),
+      rowVersionsAfterUpdate.get(changedLoan.getLoanId()));
+  }
+
+  @Test
+  public void shouldReadAndWriteOnlyRowsTouchedByEvents(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    OpenLoan touchedLoan = userSummary.getOpenLoans().get(0);
+    OpenLoan untouchedLoan = userSummary.getOpenLoans().get(1);
+    OpenFeeFine feeFineOfTouchedLoan = userSummary.getOpenFeesFines().get(0)
+      .withLoanId(touchedLoan.getLoanId());
+    waitFor(repository.save(userSummary));
+    Map<String, String> rowVersionsBeforeUpdate = getOpenLoanRowVersions(userSummary.getId());
+    int versionBeforeUpdate = waitFor(repository.get(userSummary.getId())).orElseThrow()
+      .getVersion();
+
+    UserSummary touchedSummary = waitFor(postgresClient.withTrans(conn ->
+      repository.findByUserIdForUpdate(conn, userSummary.getUserId(),
+          Set.of(touchedLoan.getLoanId()), Set.of())
+        .map(Optional::orElseThrow)
+        .compose(summary -> {
+          UserSummary before = JsonObject.mapFrom(summary).mapTo(UserSummary.class);
+          summary.getOpenLoans().get(0).setItemLost(true);
+          return repository.applyChanges(conn, summary.getId(),
+            UserSummaryChanges.between(before, summary)).map(summary);
+        })));
+
+    context.assertEquals(singletonList(touchedLoan.getLoanId()),
+      touchedSummary.getOpenLoans().stream().map(OpenLoan::getLoanId).collect(toList()));
+    context.assertEquals(singletonList(feeFineOfTouchedLoan.getFeeFineId()),
+      touchedSummary.getOpenFeesFines().stream().map(OpenFeeFine::getFeeFineId)
+        .collect(toList()));
+
+    Map<String, String> rowVersionsAfterUpdate = getOpenLoanRowVersions(userSummary.getId());
+    context.assertEquals(rowVersionsBeforeUpdate.get(untouchedLoan.getLoanId()),
+      rowVersionsAfterUpdate.get(untouchedLoan.getLoanId()));
+    context.assertNotEquals(rowVersionsBeforeUpdate.get(touchedLoan.getLoanId()),
+      rowVersionsAfterUpdate.get(touchedLoan.getLoanId()));
+
+    UserSummary updatedSummary = waitFor(repository.get(userSummary.getId())).orElseThrow();
+    context.assertEquals(2, updatedSummary.getOpenLoans().size());
+    context.assertEquals(2, updatedSummary.getOpenFeesFines().size());
+    context.assertEquals(versionBeforeUpdate + 1, updatedSummary.getVersion());
+    context.assertEquals(2, updatedSummary.getCounters().getOpenLoanCount());
+    context.assertEquals(1, updatedSummary.getCounters().getLostItemCount());
+    context.assertEquals(0, new BigDecimal("20").compareTo(
+      updatedSummary.getCounters().getOutstandingFeeFineBalance()));
+  }
+
+  @Test
+  public void shouldDeleteSummaryWhenChangesCloseAllOpenLoansAndFeesFines(TestContext context) {
+    UserSummary userSummary = new UserSummary()
+      .withId(randomId())
+      .withUserId(randomId())
+      .withOpenLoans(singletonList(createOpenLoan()))
+      .withOpenFeesFines(List.of());
+    waitFor(repository.save(userSummary));
+
+    boolean deleted = waitFor(postgresClient.withTrans(conn ->
+      repository.findByUserIdForUpdate(conn, userSummary.getUserId(),
+          Set.of(userSummary.getOpenLoans().get(0).getLoanId()), Set.of())
+        .map(Optional::orElseThrow)
+        .compose(summary -> repository.applyChanges(conn, summary.getId(),
+          UserSummaryChanges.between(summary, new UserSummary())))));
+
+    context.assertTrue(deleted);
+    context.assertTrue(waitFor(repository.get(userSummary.getId())).isEmpty());
+  }
+
+  @Test
+  public void shouldRefreshOnlyLoansWithPassedOverdueTransition(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    OpenLoan passedLoan = userSummary.getOpenLoans().get(0)
+      .withDueDate(new Date(System.currentTimeMillis() + 3_600_000L));
+    OpenLoan otherLoan = userSummary.getOpenLoans().get(1)
+      .withDueDate(new Date(System.currentTimeMillis() + 7_200_000L));
+    waitFor(repository.save(userSummary));
+    waitFor(postgresClient.execute(String.format("UPDATE %s.%s " +
+        "SET next_overdue_transition = now() - interval '1 minute' WHERE loan_id = $1",
+        convertToPsqlStandard(OKAPI_TENANT), OPEN_LOAN_TABLE_NAME),
+      Tuple.of(passedLoan.getLoanId())));
+    Map<String, String> rowVersionsBeforeRefresh = getOpenLoanRowVersions(userSummary.getId());
+
+    waitFor(postgresClient.withTrans(conn ->
+      repository.refreshOverdueTransitions(conn, userSummary.getUserId())));
+
+    Map<String, String> rowVersionsAfterRefresh = getOpenLoanRowVersions(userSummary.getId());
+    context.assertNotEquals(rowVersionsBeforeRefresh.get(passedLoan.getLoanId()),
+      rowVersionsAfterRefresh.get(passedLoan.getLoanId()));
+    context.assertEquals(rowVersionsBeforeRefresh.get(otherLoan.getLoanId()),
+      rowVersionsAfterRefresh.get(otherLoan.getLoanId()));
+
+    UserSummary refreshedSummary = waitFor(repository.get(userSummary.getId())).orElseThrow();
+    context.assertEquals(new Date(passedLoan.getDueDate().getTime() + 60_000L),
+      refreshedSummary.getCounters().getNextOverdueTransitionDate());
+    context.assertEquals(passedLoan.getDueDate(),
+      refreshedSummary.getCounters().getEarliestDueDate());
+    context.assertEquals(2, refreshedSummary.getCounters().getOpenLoanCount());
+  }
+
+  @Test
+  public void shouldDeleteOpenLoansAndFeesFinesWithSummary(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    waitFor(repository.save(userSummary));
+
+    waitFor(repository.delete(userSummary.getId()));
+
+    context.assertTrue(getOpenLoanRowVersions(userSummary.getId()).isEmpty());
+    context.assertTrue(waitFor(repository.findByFeeFineId(
+      userSummary.getOpenFeesFines().get(0).getFeeFineId())).isEmpty());
+  }
+
+  @Test
+  public void shouldKeepRebuildCheckpointOutOfSummaryDocument(TestContext context) {
+    UserSummary userSummary = createUserSummary(randomId(), randomId());
+    UserSummaryRebuildCheckpoint checkpoint = new UserSummaryRebuildCheckpoint()
+      .withLastEventSeq(1L)
+      .withLastEventCreatedDate(new Date())
+      .withOpenLoans(userSummary.getOpenLoans())
+      .withOpenFeesFines(userSummary.getOpenFeesFines());
+    waitFor(repository.upsertRebuilt(userSummary, checkpoint));
+    String checkpointRowVersion = getRebuildCheckpointRowVersion(userSummary.getId());
+
+    UserSummary storedSummary = waitFor(repository.get(userSummary.getId())).orElseThrow();
+    waitFor(repository.upsert(storedSummary.withOpenLoans(singletonList(createOpenLoan()))));
+
+    RowSet<Row> documents = waitFor(postgresClient.execute(String.format(
+        "SELECT jsonb ? 'rebuildCheckpoint' AS has_checkpoint FROM %s.%s WHERE id = $1",
+        convertToPsqlStandard(OKAPI_TENANT), USER_SUMMARY_TABLE_NAME),
+      Tuple.of(UUID.fromString(userSummary.getId()))));
+    context.assertFalse(documents.iterator().next().getBoolean("has_checkpoint"));
+    context.assertEquals(checkpointRowVersion,
+      getRebuildCheckpointRowVersion(userSummary.getId()));
+    context.assertEquals(2, waitFor(repository.findRebuildCheckpoint(userSummary.getId()))
+      .orElseThrow().getOpenLoans().size());
+
+    waitFor(repository.upsertRebuilt(storedSummary, null));
+    context.assertFalse(waitFor(repository.findRebuildCheckpoint(userSummary.getId()))
+      .isPresent());
+  }
+
+  private String getRebuildCheckpointRowVersion(String summaryId) {
+    RowSet<Row> rows = waitFor(postgresClient.execute(String.format(
+        "SELECT xmin::text AS row_version FROM %s.%s WHERE user_summary_id = $1",
+        convertToPsqlStandard(OKAPI_TENANT), REBUILD_CHECKPOINT_TABLE_NAME),
+      Tuple.of(UUID.fromString(summaryId))));
+
+    return rows.iterator().next().getString("row_version");
+  }
+
+  /**
+   * @return transaction IDs of the rows which wrote the open loans of the summary by loan ID
+   */
+  private Map<String, String> getOpenLoanRowVersions(String summaryId) {
+    RowSet<Row> rows = waitFor(postgresClient.execute(String.format(
+        "SELECT loan_id, xmin::text AS row_version FROM %s.%s WHERE user_summary_id = $1",
+        convertToPsqlStandard(OKAPI_TENANT), OPEN_LOAN_TABLE_NAME),
+      Tuple.of(UUID.fromString(summaryId))));
+
+    Map<String, String> rowVersions = new HashMap<>();
+    rows.forEach(row -> rowVersions.put(row.getString("loan_id"),
+      row.getString("row_version")));
+    return rowVersions;
+  }
+
   private UserSummary createUserSummary(String id, String userId) {
+    return new UserSummary()
+      .withId(id)
+      .withUserId(userId)
+      .withOpenLoans(asList(createOpenLoan(), createOpenLoan()))
+      .withOpenFeesFines(asList(createOpenFeeFine(), createOpenFeeFine()));
+  }
 
-    OpenLoan openLoan = new OpenLoan()
+  private static OpenLoan createOpenLoan() {
+    return new OpenLoan()
       .withLoanId(randomId())
       .withRecall(false)
       .withItemLost(false)
       .withDueDate(new Date());
+  }
 
-    OpenFeeFine openFeeFine = new OpenFeeFine()
+  private static OpenFeeFine createOpenFeeFine() {
+    return new OpenFeeFine()
       .withFeeFineId(randomId())
       .withFeeFineTypeId(randomId())
       .withBalance(TEN);
-
-    return new UserSummary()
-      .withId(id)
-      .withUserId(userId)
-      .withOpenLoans(asList(openLoan, openLoan))
-      .withOpenFeesFines(asList(openFeeFine, openFeeFine));
   }
 
   private void assertSummariesAreEqual(UserSummary expected, UserSummary actual, TestContext ctx) {
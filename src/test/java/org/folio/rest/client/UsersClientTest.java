@@ -19,6 +19,7 @@ import org.junit.runner.RunWith;
 
 import com.fasterxml.jackson.core.JsonParseException;
 
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -108,6 +109,25 @@ public class UsersClientTest extends TestBase {
       });
   }
 
+  @Test
+  public void patronGroupIsCachedUntilInvalidated(TestContext context) {
+    String userId = randomId();
+    mockUsersResponse(200, new JsonObject()
+      .put("id", userId)
+      .put("patronGroup", PATRON_GROUP_ID)
+      .encodePrettily());
+
+    context.assertEquals(PATRON_GROUP_ID, waitFor(usersClient.findPatronGroupIdForUser(userId)));
+
+    mockUsersResponse(404, "User not found");
+    context.assertEquals(PATRON_GROUP_ID, waitFor(usersClient.findPatronGroupIdForUser(userId)));
+
+    UsersClient.invalidatePatronGroupId(OKAPI_TENANT, userId);
+    Future<String> afterInvalidation = usersClient.findPatronGroupIdForUser(userId);
+    waitFor(afterInvalidation);
+    context.assertTrue(afterInvalidation.failed());
+  }
+
   private void mockUsersResponse(int responseStatus, String responseBody) {
     wireMock.stubFor(get(urlPathMatching("/users/.+"))
       .willReturn(aResponse()
@@ -2,6 +2,7 @@ package org.folio.rest.impl;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
@@ -21,6 +22,10 @@ import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemClaimedReturnedEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemDeclaredLostEvent;
 import static org.folio.rest.utils.EntityBuilder.buildLoanDueDateChangedEvent;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.joda.time.DateTime.now;
 
@@ -45,6 +50,8 @@ import org.folio.rest.handlers.EventHandler;
 import org.folio.rest.handlers.FeeFineBalanceChangedEventHandler;
 import org.folio.rest.jaxrs.model.AutomatedPatronBlock;
 import org.folio.rest.jaxrs.model.AutomatedPatronBlocks;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocksBatch;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocksBatchRequest;
 import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
 import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
 import org.folio.rest.jaxrs.model.ItemClaimedReturnedEvent;
@@ -54,6 +61,7 @@ import org.folio.rest.jaxrs.model.OpenFeeFine;
 import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.PatronBlockCondition;
 import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.folio.rest.jaxrs.model.UserAutomatedPatronBlocks;
 import org.folio.rest.jaxrs.model.UserSummary;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,6 +70,7 @@ import org.junit.runner.RunWith;
 import io.restassured.http.ContentType;
 import io.restassured.response.Response;
 import io.restassured.response.ValidatableResponse;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
@@ -153,6 +162,46 @@ public class AutomatedPatronBlocksAPITest extends TestBase {
     sendRequestAndCheckResult(userId, emptyBlocksResponse);
   }
 
+  @Test
+  public void shouldReturnBlocksOfSeveralUsersInRequestOrder() {
+    final Condition condition = MAX_NUMBER_OF_ITEMS_CHARGED_OUT;
+    final String userWithoutBlocksId = randomId();
+    final String userWithoutSummaryId = randomId();
+    mockUsersCollectionResponse(userId, userWithoutBlocksId);
+
+    IntStream.range(0, LIMIT_VALUES.get(condition))
+      .forEach(num -> waitFor(itemCheckedOutEventHandler.handle(
+        buildItemCheckedOutEvent(userId, randomId(), now().plusHours(1).toDate()))));
+    waitFor(itemCheckedOutEventHandler.handle(buildItemCheckedOutEvent(userWithoutBlocksId,
+      randomId(), now().plusHours(1).toDate())));
+
+    expectBlockBorrowing = true;
+    String expectedBlocks = createLimitsAndBuildExpectedResponse(condition, SINGLE_LIMIT);
+
+    AutomatedPatronBlocksBatchRequest request = new AutomatedPatronBlocksBatchRequest()
+      .withUserIds(List.of(userWithoutSummaryId, userId, userWithoutBlocksId, userId));
+
+    AutomatedPatronBlocksBatch response = okapiClient.post("automated-patron-blocks/batch",
+        toJson(request))
+      .then()
+      .statusCode(200)
+      .contentType(ContentType.JSON)
+      .extract()
+      .as(AutomatedPatronBlocksBatch.class);
+
+    List<UserAutomatedPatronBlocks> blocks = response.getUserAutomatedPatronBlocks();
+    assertThat(response.getTotalRecords(), is(3));
+    assertThat(blocks.stream().map(UserAutomatedPatronBlocks::getUserId).collect(toList()),
+      contains(userWithoutSummaryId, userId, userWithoutBlocksId));
+    assertThat(blocks.get(0).getAutomatedPatronBlocks(), empty());
+    assertThat(toJson(new AutomatedPatronBlocks()
+      .withAutomatedPatronBlocks(blocks.get(1).getAutomatedPatronBlocks())),
+      equalTo(expectedBlocks));
+    assertThat(blocks.get(2).getAutomatedPatronBlocks(), empty());
+
+    sendRequestAndCheckResult(expectedBlocks);
+  }
+
   private void validateMaxNumberOfItemsChargedOutBlockResponse(int openLoansSizeDelta,
     boolean singleLimit) {
 
@@ -844,6 +893,25 @@ public class AutomatedPatronBlocksAPITest extends TestBase {
       ));
   }
 
+  private void mockUsersCollectionResponse(String... userIds) {
+    JsonArray users = new JsonArray();
+    Arrays.stream(userIds)
+      .forEach(id -> users.add(new JsonObject()
+        .put("id", id)
+        .put("patronGroup", PATRON_GROUP_ID)));
+
+    String mockResponse = new JsonObject()
+      .put("users", users)
+      .put("totalRecords", users.size())
+      .encodePrettily();
+
+    wireMock.stubFor(get(urlPathEqualTo("/users"))
+      .willReturn(aResponse()
+        .withStatus(200)
+        .withBody(mockResponse)
+      ));
+  }
+
   private void updateCondition(Condition condition, boolean blockBorrowing, boolean blockRenewals,
     boolean blockRequests) throws IllegalArgumentException {
 
@@ -2,7 +2,11 @@ package org.folio.rest.impl;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
+import static org.apache.http.HttpStatus.SC_UNPROCESSABLE_ENTITY;
+import static org.folio.kafka.KafkaEventConsumerVerticle.KAFKA_HOST_PROPERTY;
+import static org.folio.repository.EventInboxRepository.EVENT_INBOX_TABLE_NAME;
 import static org.folio.repository.UserSummaryRepository.USER_SUMMARY_TABLE_NAME;
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
 import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemAgedToLostEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
@@ -10,16 +14,20 @@ import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemClaimedReturnedEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemDeclaredLostEvent;
 import static org.folio.rest.utils.EntityBuilder.buildLoanDueDateChangedEvent;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 import org.awaitility.Awaitility;
 import org.folio.domain.Event;
 import org.folio.repository.UserSummaryRepository;
 import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.EventBatch;
+import org.folio.rest.jaxrs.model.EventBatchEntry;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
 import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
 import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
@@ -44,6 +52,7 @@ public class EventHandlersAPITest extends TestBase {
 
   @After
   public void afterEach() {
+    System.clearProperty(KAFKA_HOST_PROPERTY);
     super.resetMocks();
     deleteAllFromTable(USER_SUMMARY_TABLE_NAME);
   }
@@ -147,6 +156,51 @@ public class EventHandlersAPITest extends TestBase {
       createLoanDueDateChangedEvent().withDueDate(null));
   }
 
+  @Test
+  public void eventBatchProcessedSuccessfully() {
+    ItemCheckedOutEvent firstCheckOut = createItemCheckedOutEvent();
+    ItemCheckedOutEvent secondCheckOut = createItemCheckedOutEvent();
+    ItemCheckedInEvent checkIn = buildItemCheckedInEvent(USER_ID, firstCheckOut.getLoanId(),
+      new Date());
+    FeeFineBalanceChangedEvent feeFineBalanceChanged = createFeeFineBalanceChangedEvent();
+
+    assertFalse(getUserSummary().isPresent());
+
+    eventClient.sendEventBatch(new EventBatch().withEvents(List.of(
+      new EventBatchEntry().withItemCheckedOut(firstCheckOut),
+      new EventBatchEntry().withItemCheckedOut(secondCheckOut),
+      new EventBatchEntry().withItemCheckedIn(checkIn),
+      new EventBatchEntry().withFeeFineBalanceChanged(feeFineBalanceChanged))));
+
+    Awaitility.await()
+      .atMost(5, SECONDS)
+      .until(() -> getUserSummary().isPresent());
+
+    UserSummary userSummary = getUserSummary().orElseThrow();
+    assertEquals(1, userSummary.getOpenLoans().size());
+    assertEquals(secondCheckOut.getLoanId(), userSummary.getOpenLoans().get(0).getLoanId());
+    assertEquals(1, userSummary.getOpenFeesFines().size());
+    assertEquals(feeFineBalanceChanged.getFeeFineId(),
+      userSummary.getOpenFeesFines().get(0).getFeeFineId());
+  }
+
+  @Test
+  public void shouldOnlyAcknowledgePubSubDeliveryWhenEventsAreConsumedFromKafka() {
+    System.setProperty(KAFKA_HOST_PROPERTY, "localhost");
+
+    eventClient.sendEvent(createItemCheckedOutEvent());
+
+    assertEquals(0, countInboxEvents());
+    assertFalse(getUserSummary().isPresent());
+  }
+
+  @Test
+  public void eventBatchValidationFailsWhenEntryHasNoEvent() {
+    eventClient.sendEventBatch(new EventBatch().withEvents(List.of(
+      new EventBatchEntry().withItemCheckedOut(createItemCheckedOutEvent()),
+      new EventBatchEntry())), SC_UNPROCESSABLE_ENTITY);
+  }
+
   private static FeeFineBalanceChangedEvent createFeeFineBalanceChangedEvent() {
     return buildFeeFineBalanceChangedEvent(
       USER_ID, randomId(), randomId(), randomId(), BigDecimal.TEN);
@@ -186,6 +240,12 @@ public class EventHandlersAPITest extends TestBase {
       .until(() -> getUserSummary().isPresent());
   }
 
+  private int countInboxEvents() {
+    return waitFor(postgresClient.execute(String.format("SELECT count(*) AS events FROM %s.%s",
+        convertToPsqlStandard(OKAPI_TENANT), EVENT_INBOX_TABLE_NAME)))
+      .iterator().next().getInteger("events");
+  }
+
   private Optional<UserSummary> getUserSummary() {
     return waitFor(userSummaryRepository.getByUserId(USER_ID));
   }
@@ -0,0 +1,235 @@
+package org.folio.rest.impl;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.noContent;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.folio.domain.Condition.MAX_NUMBER_OF_ITEMS_CHARGED_OUT;
+import static org.folio.domain.Condition.MAX_NUMBER_OF_OVERDUE_ITEMS;
+import static org.folio.kafka.KafkaEventConsumerVerticle.KAFKA_HOST_PROPERTY;
+import static org.folio.kafka.KafkaEventConsumerVerticle.KAFKA_PORT_PROPERTY;
+import static org.folio.repository.PatronBlockLimitsRepository.PATRON_BLOCK_LIMITS_TABLE_NAME;
+import static org.folio.repository.UserSummaryRepository.OVERDUE_TRANSITION_CLAIM_TABLE_NAME;
+import static org.folio.repository.UserSummaryRepository.USER_SUMMARY_TABLE_NAME;
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+import static org.folio.service.PatronBlocksChangedPublisher.PATRON_BLOCKS_CHANGED_EVENT_TYPE;
+import static org.folio.service.PatronBlocksChangedPublisher.buildTopicName;
+import static org.hamcrest.Matchers.is;
+import static org.joda.time.DateTime.now;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.awaitility.Awaitility;
+import org.folio.domain.Condition;
+import org.folio.kafka.KafkaEventConsumerVerticle;
+import org.folio.repository.PatronBlockLimitsRepository;
+import org.folio.repository.UserSummaryRepository;
+import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
+import io.vertx.sqlclient.Tuple;
+
+@RunWith(VertxUnitRunner.class)
+public class OverdueTransitionAPITest extends TestBase {
+  private static final String SCAN_PATH = "automated-patron-blocks/overdue-transitions/scan";
+  private static final String PUBSUB_PUBLISH_PATH = "/pubsub/publish";
+  private static final String PATRON_GROUP_ID = randomId();
+
+  @ClassRule
+  public static KafkaContainer kafka = new KafkaContainer(
+    DockerImageName.parse("confluentinc/cp-kafka:7.5.1"));
+
+  private final PatronBlockLimitsRepository limitsRepository =
+    new PatronBlockLimitsRepository(postgresClient);
+  private final UserSummaryRepository summaryRepository =
+    new UserSummaryRepository(postgresClient);
+
+  private String userId;
+
+  @Before
+  public void beforeEach() {
+    super.resetMocks();
+    deleteAllFromTable(PATRON_BLOCK_LIMITS_TABLE_NAME);
+    deleteAllFromTable(USER_SUMMARY_TABLE_NAME);
+
+    userId = randomId();
+    mockUsersResponse();
+    wireMock.stubFor(post(urlEqualTo(PUBSUB_PUBLISH_PATH))
+      .willReturn(noContent()));
+  }
+
+  @After
+  public void afterEach() {
+    System.clearProperty(KAFKA_HOST_PROPERTY);
+    System.clearProperty(KAFKA_PORT_PROPERTY);
+  }
+
+  @Test
+  public void shouldPublishBlocksWhenOverdueTransitionPasses() {
+    createLimit(MAX_NUMBER_OF_OVERDUE_ITEMS, 1);
+    String summaryId = createSummaryWithPassedOverdueTransition();
+
+    scan();
+
+    awaitUntil(() -> isOverdueTransitionPassed(summaryId), is(false));
+    wireMock.verify(1, postRequestedFor(urlEqualTo(PUBSUB_PUBLISH_PATH))
+      .withRequestBody(matchingJsonPath("$.eventType",
+        equalTo(PATRON_BLOCKS_CHANGED_EVENT_TYPE)))
+      .withRequestBody(containing(userId)));
+    awaitUntil(this::countOverdueTransitionClaims, is(0));
+  }
+
+  @Test
+  public void shouldNotPublishBlocksWithoutOverdueBasedLimit() {
+    createLimit(MAX_NUMBER_OF_ITEMS_CHARGED_OUT, 1);
+    String summaryId = createSummaryWithPassedOverdueTransition();
+
+    scan();
+
+    awaitUntil(() -> isOverdueTransitionPassed(summaryId), is(false));
+    wireMock.verify(0, postRequestedFor(urlEqualTo(PUBSUB_PUBLISH_PATH)));
+    awaitUntil(this::countOverdueTransitionClaims, is(0));
+  }
+
+  @Test
+  public void shouldKeepOverdueTransitionWhenPublishingFails(TestContext context) {
+    wireMock.stubFor(post(urlEqualTo(PUBSUB_PUBLISH_PATH))
+      .atPriority(1)
+      .willReturn(serverError()));
+    createLimit(MAX_NUMBER_OF_OVERDUE_ITEMS, 1);
+    String summaryId = createSummaryWithPassedOverdueTransition();
+
+    scan();
+
+    awaitUntil(() -> wireMock.findAll(postRequestedFor(urlEqualTo(PUBSUB_PUBLISH_PATH)))
+      .size(), is(1));
+    // the claim is released, so the next scan picks the user up again
+    awaitUntil(this::countOverdueTransitionClaims, is(0));
+    context.assertTrue(isOverdueTransitionPassed(summaryId));
+  }
+
+  @Test
+  public void shouldPublishBlocksToKafkaWhenEventsAreConsumedFromKafka(TestContext context) {
+    System.setProperty(KAFKA_HOST_PROPERTY, kafka.getHost());
+    System.setProperty(KAFKA_PORT_PROPERTY,
+      String.valueOf(kafka.getMappedPort(KafkaContainer.KAFKA_PORT)));
+    List<KafkaConsumerRecord<String, String>> records = new CopyOnWriteArrayList<>();
+    KafkaConsumer<String, String> consumer = createConsumer();
+    consumer.handler(records::add);
+    waitFor(consumer.subscribe(buildTopicName(KafkaEventConsumerVerticle.getEnvironment(),
+      OKAPI_TENANT)), 30);
+    createLimit(MAX_NUMBER_OF_OVERDUE_ITEMS, 1);
+    String summaryId = createSummaryWithPassedOverdueTransition();
+
+    scan();
+
+    Awaitility.await()
+      .atMost(30, SECONDS)
+      .until(() -> !records.isEmpty());
+    awaitUntil(() -> isOverdueTransitionPassed(summaryId), is(false));
+
+    KafkaConsumerRecord<String, String> record = records.get(0);
+    JsonObject event = new JsonObject(record.value());
+    context.assertEquals(userId, record.key());
+    context.assertEquals(PATRON_BLOCKS_CHANGED_EVENT_TYPE, event.getString("eventType"));
+    context.assertEquals(userId, new JsonObject(event.getString("eventPayload"))
+      .getString("userId"));
+    wireMock.verify(0, postRequestedFor(urlEqualTo(PUBSUB_PUBLISH_PATH)));
+    awaitUntil(this::countOverdueTransitionClaims, is(0));
+
+    waitFor(consumer.close());
+  }
+
+  private void scan() {
+    okapiClient.post(SCAN_PATH, "")
+      .then()
+      .statusCode(202);
+  }
+
+  /**
+   * The loan is not overdue, the transition is moved into the past to make it due for the scan.
+   */
+  private String createSummaryWithPassedOverdueTransition() {
+    String summaryId = waitFor(summaryRepository.save(new UserSummary()
+      .withId(randomId())
+      .withUserId(userId)
+      .withOpenLoans(List.of(new OpenLoan()
+        .withLoanId(randomId())
+        .withDueDate(now().plusHours(1).toDate())
+        .withRecall(false)
+        .withItemLost(false)
+        .withItemClaimedReturned(false)))));
+
+    waitFor(postgresClient.execute(String.format("UPDATE %s.%s SET jsonb = jsonb_set(jsonb, " +
+        "'{counters,nextOverdueTransitionDate}', to_jsonb(now() - interval '1 minute')) " +
+        "WHERE jsonb->>'id' = $1", convertToPsqlStandard(OKAPI_TENANT), USER_SUMMARY_TABLE_NAME),
+      Tuple.of(summaryId)));
+
+    return summaryId;
+  }
+
+  private boolean isOverdueTransitionPassed(String summaryId) {
+    return waitFor(postgresClient.execute(String.format("SELECT " +
+          "coalesce(next_overdue_transition <= now(), false) AS passed FROM %s.%s " +
+          "WHERE jsonb->>'id' = $1", convertToPsqlStandard(OKAPI_TENANT),
+          USER_SUMMARY_TABLE_NAME), Tuple.of(summaryId)))
+      .iterator().next().getBoolean("passed");
+  }
+
+  private int countOverdueTransitionClaims() {
+    return waitFor(postgresClient.execute(String.format("SELECT count(*) AS claims FROM %s.%s",
+        convertToPsqlStandard(OKAPI_TENANT), OVERDUE_TRANSITION_CLAIM_TABLE_NAME)))
+      .iterator().next().getInteger("claims");
+  }
+
+  private void createLimit(Condition condition, double value) {
+    waitFor(limitsRepository.save(new PatronBlockLimit()
+      .withId(randomId())
+      .withConditionId(condition.getId())
+      .withPatronGroupId(PATRON_GROUP_ID)
+      .withValue(value)));
+  }
+
+  private void mockUsersResponse() {
+    wireMock.stubFor(get(urlPathMatching("/users/.+"))
+      .willReturn(aResponse()
+        .withStatus(200)
+        .withBody(new JsonObject()
+          .put("id", userId)
+          .put("patronGroup", PATRON_GROUP_ID)
+          .encodePrettily())));
+  }
+
+  private KafkaConsumer<String, String> createConsumer() {
+    return KafkaConsumer.create(vertx, Map.of(
+      "bootstrap.servers", kafka.getBootstrapServers(),
+      "group.id", randomId(),
+      "auto.offset.reset", "earliest",
+      "key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer",
+      "value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer"));
+  }
+}
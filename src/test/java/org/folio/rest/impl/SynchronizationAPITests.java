@@ -6,7 +6,9 @@ import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
 import static java.lang.String.format;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
+import static org.folio.repository.EventJournalRepository.EVENT_JOURNAL_TABLE_NAME;
 import static org.folio.rest.jaxrs.model.SynchronizationJob.Scope.FULL;
 import static org.folio.rest.jaxrs.model.SynchronizationJob.Scope.USER;
 import static org.folio.rest.utils.EntityBuilder.buildItemAgedToLostEvent;
@@ -21,8 +23,9 @@ import java.util.Date;
 import java.util.List;
 
 import org.awaitility.Awaitility;
+import org.folio.domain.Event;
 import org.folio.domain.SynchronizationStatus;
-import org.folio.repository.EventRepository;
+import org.folio.repository.EventJournalRepository;
 import org.folio.repository.SynchronizationJobRepository;
 import org.folio.repository.UserSummaryRepository;
 import org.folio.rest.TestBase;
@@ -48,12 +51,6 @@ import io.vertx.ext.unit.junit.VertxUnitRunner;
 @RunWith(VertxUnitRunner.class)
 public class SynchronizationAPITests extends TestBase {
   private static final String SYNCHRONIZATION_JOBS_TABLE_NAME = "synchronization_jobs";
-  private static final String ITEM_CHECKED_OUT_EVENT_TABLE_NAME = "item_checked_out_event";
-  private static final String ITEM_DECLARED_LOST_EVENT_TABLE_NAME = "item_declared_lost_event";
-  private static final String ITEM_CLAIMED_RETURNED_EVENT_TABLE_NAME = "item_claimed_returned_event";
-  private static final String ITEM_AGED_TO_LOST_EVENT_TABLE_NAME = "item_aged_to_lost_event";
-  private static final String LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME = "loan_due_date_changed_event";
-  private static final String FEE_FINE_BALANCE_CHANGED_EVENT_TABLE_NAME = "fee_fine_balance_changed_event";
 
   private static final String USER_ID = randomId();
   private static final String ACCOUNT_ID = randomId();
@@ -62,21 +59,8 @@ public class SynchronizationAPITests extends TestBase {
   private static final String JOB_STATUS_DONE = "done";
   private static final String JOB_STATUS_FAILED = "failed";
 
-  private EventRepository<ItemCheckedOutEvent> checkOutEventRepository = new EventRepository<>(
-    postgresClient, ITEM_CHECKED_OUT_EVENT_TABLE_NAME, ItemCheckedOutEvent.class);
-  private EventRepository<ItemClaimedReturnedEvent> itemClaimedReturnedEventRepository =
-    new EventRepository<>(postgresClient, ITEM_CLAIMED_RETURNED_EVENT_TABLE_NAME,
-      ItemClaimedReturnedEvent.class);
-  private EventRepository<ItemDeclaredLostEvent> itemDeclaredLostEventRepository =
-    new EventRepository<>(postgresClient, ITEM_DECLARED_LOST_EVENT_TABLE_NAME,
-      ItemDeclaredLostEvent.class);
-  private EventRepository<ItemAgedToLostEvent> itemAgedToLostEventRepository =
-    new EventRepository<>(postgresClient, ITEM_AGED_TO_LOST_EVENT_TABLE_NAME,
-      ItemAgedToLostEvent.class);
-  private EventRepository<LoanDueDateChangedEvent> loanDueDateChangedEventRepository = new EventRepository<>(
-    postgresClient, LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME, LoanDueDateChangedEvent.class);
-  private EventRepository<FeeFineBalanceChangedEvent> feeFineBalanceChangedEventRepository = new EventRepository<>(
-    postgresClient, FEE_FINE_BALANCE_CHANGED_EVENT_TABLE_NAME, FeeFineBalanceChangedEvent.class);
+  private final EventJournalRepository eventJournalRepository =
+    new EventJournalRepository(postgresClient);
 
   private final SynchronizationJobRepository synchronizationJobRepository =
     new SynchronizationJobRepository(postgresClient);
@@ -86,12 +70,7 @@ public class SynchronizationAPITests extends TestBase {
   @Before
   public void beforeEach() {
     super.resetMocks();
-    deleteAllFromTable(ITEM_CHECKED_OUT_EVENT_TABLE_NAME);
-    deleteAllFromTable(ITEM_DECLARED_LOST_EVENT_TABLE_NAME);
-    deleteAllFromTable(ITEM_CLAIMED_RETURNED_EVENT_TABLE_NAME);
-    deleteAllFromTable(ITEM_AGED_TO_LOST_EVENT_TABLE_NAME);
-    deleteAllFromTable(LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME);
-    deleteAllFromTable(FEE_FINE_BALANCE_CHANGED_EVENT_TABLE_NAME);
+    deleteAllFromTable(EVENT_JOURNAL_TABLE_NAME);
     deleteAllFromTable(SYNCHRONIZATION_JOBS_TABLE_NAME);
   }
 
@@ -134,7 +113,7 @@ public class SynchronizationAPITests extends TestBase {
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(checkOutEventRepository.getByUserId(USER_ID)).size(), is(1));
+      .until(() -> getEvents(USER_ID, ItemCheckedOutEvent.class).size(), is(1));
 
     checkSyncJobUpdatedByLoanEvent(syncJobId);
   }
@@ -149,7 +128,7 @@ public class SynchronizationAPITests extends TestBase {
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(itemClaimedReturnedEventRepository.getByUserId(USER_ID)).size(), is(1));
+      .until(() -> getEvents(USER_ID, ItemClaimedReturnedEvent.class).size(), is(1));
 
     checkSyncJobUpdatedByLoanEvent(syncJobId);
   }
@@ -164,7 +143,7 @@ public class SynchronizationAPITests extends TestBase {
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(itemDeclaredLostEventRepository.getByUserId(USER_ID)).size(), is(1));
+      .until(() -> getEvents(USER_ID, ItemDeclaredLostEvent.class).size(), is(1));
 
     checkSyncJobUpdatedByLoanEvent(syncJobId);
   }
@@ -172,24 +151,27 @@ public class SynchronizationAPITests extends TestBase {
   @Test
   public void agedToLostEventShouldBeDeletedBeforeSynchronizationJobByUser() {
     eventClient.sendEvent(buildItemAgedToLostEvent(USER_ID, randomId()));
-    awaitUntil(() -> waitFor(itemAgedToLostEventRepository.getByUserId(USER_ID)).size(), is(1));
+    awaitUntil(() -> getEvents(USER_ID, ItemAgedToLostEvent.class).size(), is(1));
     String syncJobId = createOpenSynchronizationJobByUser();
 
     runSynchronization();
 
-    awaitUntil(() -> waitFor(itemAgedToLostEventRepository.getByUserId(USER_ID)).size(), is(0));
+    awaitUntil(() -> getEvents(USER_ID, ItemAgedToLostEvent.class).size(), is(0));
 
     checkSyncJob(syncJobId);
   }
 
   @Test
   public void agedToLostEventsShouldBeDeletedBeforeSynchronizationJobFull() {
-    eventClient.sendEvent(buildItemAgedToLostEvent(randomId(), randomId()));
-    eventClient.sendEvent(buildItemAgedToLostEvent(randomId(), randomId()));
+    String firstUserId = randomId();
+    String secondUserId = randomId();
+    eventClient.sendEvent(buildItemAgedToLostEvent(firstUserId, randomId()));
+    eventClient.sendEvent(buildItemAgedToLostEvent(secondUserId, randomId()));
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(itemAgedToLostEventRepository.getAllWithDefaultLimit()).size(), is(2));
+      .until(() -> getEvents(firstUserId, ItemAgedToLostEvent.class).size() +
+        getEvents(secondUserId, ItemAgedToLostEvent.class).size(), is(2));
 
     String syncJobId = createOpenSynchronizationJobFull();
 
@@ -197,7 +179,8 @@ public class SynchronizationAPITests extends TestBase {
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(itemAgedToLostEventRepository.getAllWithDefaultLimit()).size(), is(0));
+      .until(() -> getEvents(firstUserId, ItemAgedToLostEvent.class).size() +
+        getEvents(secondUserId, ItemAgedToLostEvent.class).size(), is(0));
 
     checkSyncJob(syncJobId);
   }
@@ -207,14 +190,12 @@ public class SynchronizationAPITests extends TestBase {
     stubLoans(now().plusHours(1).toDate(), true, "Checked out");
     stubAccountsWithEmptyResponse();
     String syncJobId = createOpenSynchronizationJobByUser();
-    EventRepository<LoanDueDateChangedEvent> loanDueDateChangedEventRepository = new EventRepository<>(
-      postgresClient, LOAN_DUE_DATE_CHANGED_EVENT_TABLE_NAME, LoanDueDateChangedEvent.class);
 
     runSynchronization();
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(loanDueDateChangedEventRepository.getByUserId(USER_ID)).size(), is(1));
+      .until(() -> getEvents(USER_ID, LoanDueDateChangedEvent.class).size(), is(1));
 
     checkSyncJobUpdatedByLoanEvent(syncJobId);
   }
@@ -229,11 +210,10 @@ public class SynchronizationAPITests extends TestBase {
 
     Awaitility.await()
       .atMost(5, SECONDS)
-      .until(() -> waitFor(
-        feeFineBalanceChangedEventRepository.getByUserId(USER_ID)).size(), is(1));
+      .until(() -> getEvents(USER_ID, FeeFineBalanceChangedEvent.class).size(), is(1));
 
-    List<FeeFineBalanceChangedEvent> feeFineBalanceChangedEvents = waitFor(
-      feeFineBalanceChangedEventRepository.getByUserId(USER_ID));
+    List<FeeFineBalanceChangedEvent> feeFineBalanceChangedEvents = getEvents(USER_ID,
+      FeeFineBalanceChangedEvent.class);
     FeeFineBalanceChangedEvent generatedEvent = feeFineBalanceChangedEvents.get(0);
 
     assertThat(generatedEvent.getFeeFineTypeId(), is(FEE_FINE_TYPE_ID));
@@ -254,7 +234,7 @@ public class SynchronizationAPITests extends TestBase {
 
     runSynchronization();
 
-    assertThat(waitFor(feeFineBalanceChangedEventRepository.getByUserId(USER_ID)).size(), is(0));
+    assertThat(getEvents(USER_ID, FeeFineBalanceChangedEvent.class).size(), is(0));
   }
 
   @Test
@@ -264,11 +244,11 @@ public class SynchronizationAPITests extends TestBase {
 
     runSynchronization();
 
-    assertThat(waitFor(checkOutEventRepository.getByUserId(USER_ID)).size(), is(0));
-    assertThat(waitFor(itemClaimedReturnedEventRepository.getByUserId(USER_ID)).size(), is(0));
-    assertThat(waitFor(itemDeclaredLostEventRepository.getByUserId(USER_ID)).size(), is(0));
-    assertThat(waitFor(loanDueDateChangedEventRepository.getByUserId(USER_ID)).size(), is(0));
-    assertThat(waitFor(feeFineBalanceChangedEventRepository.getByUserId(USER_ID)).size(), is(0));
+    assertThat(getEvents(USER_ID, ItemCheckedOutEvent.class).size(), is(0));
+    assertThat(getEvents(USER_ID, ItemClaimedReturnedEvent.class).size(), is(0));
+    assertThat(getEvents(USER_ID, ItemDeclaredLostEvent.class).size(), is(0));
+    assertThat(getEvents(USER_ID, LoanDueDateChangedEvent.class).size(), is(0));
+    assertThat(getEvents(USER_ID, FeeFineBalanceChangedEvent.class).size(), is(0));
   }
 
   @Test
@@ -280,7 +260,7 @@ public class SynchronizationAPITests extends TestBase {
     waitFor(synchronizationJobRepository.save(synchronizationJob));
 
     runSynchronization();
-    assertThat(waitFor(checkOutEventRepository.getByUserId(USER_ID)).size(), is(0));
+    assertThat(getEvents(USER_ID, ItemCheckedOutEvent.class).size(), is(0));
   }
 
   @Test
@@ -369,6 +349,13 @@ public class SynchronizationAPITests extends TestBase {
         .orElse(null), synchronizationJobMatcher(JOB_STATUS_DONE, 0, 0, 1, 0));
   }
 
+  private <T extends Event> List<T> getEvents(String userId, Class<T> eventType) {
+    return waitFor(eventJournalRepository.getByUserId(userId)).stream()
+      .filter(eventType::isInstance)
+      .map(eventType::cast)
+      .collect(toList());
+  }
+
   private String createOpenSynchronizationJobFull() {
     SynchronizationJob synchronizationJob = buildSynchronizationJob(FULL, null,
       SynchronizationStatus.OPEN, 0, 0, 0, 0);
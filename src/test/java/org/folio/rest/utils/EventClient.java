@@ -8,6 +8,7 @@ import static org.junit.Assert.fail;
 import java.util.Map;
 
 import org.folio.domain.Event;
+import org.folio.rest.jaxrs.model.EventBatch;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
 import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
 import org.folio.rest.jaxrs.model.ItemCheckedInEvent;
@@ -36,6 +37,7 @@ public class EventClient {
     EVENT_HANDLERS_ROOT_URL + "item-claimed-returned";
   private static final String LOAN_DUE_DATE_CHANGED_HANDLER_URL =
     EVENT_HANDLERS_ROOT_URL + "loan-due-date-changed";
+  private static final String BATCH_HANDLER_URL = EVENT_HANDLERS_ROOT_URL + "batch";
 
   private final OkapiClient okapiClient;
 
@@ -77,6 +79,15 @@ public class EventClient {
     return sendEvent(eventPayload, getHandlerUrlForEventType(eventType), expectedStatus);
   }
 
+  public ValidatableResponse sendEventBatch(EventBatch eventBatch) {
+    return sendEventBatch(eventBatch, SC_NO_CONTENT);
+  }
+
+  public ValidatableResponse sendEventBatch(EventBatch eventBatch, int expectedStatus) {
+    return sendEvent(JsonObject.mapFrom(eventBatch).encodePrettily(), BATCH_HANDLER_URL,
+      expectedStatus);
+  }
+
   public ValidatableResponse sendEventAndVerifyValidationFailure(Event event) {
     return sendEvent(event, SC_UNPROCESSABLE_ENTITY);
   }
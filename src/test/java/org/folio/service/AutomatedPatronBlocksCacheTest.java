@@ -0,0 +1,101 @@
+package org.folio.service;
+
+import static org.folio.util.UuidHelper.randomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.AutomatedPatronBlock;
+import org.folio.rest.jaxrs.model.AutomatedPatronBlocks;
+import org.folio.rest.jaxrs.model.GracePeriod;
+import org.folio.rest.jaxrs.model.OpenLoan;
+import org.folio.rest.jaxrs.model.UserSummary;
+import org.junit.Test;
+
+public class AutomatedPatronBlocksCacheTest {
+  private static final long ONE_HOUR = 3_600_000L;
+  private static final long ONE_DAY = 24 * ONE_HOUR;
+
+  private final AutomatedPatronBlocks blocks = new AutomatedPatronBlocks()
+    .withAutomatedPatronBlocks(List.of(new AutomatedPatronBlock()
+      .withPatronBlockConditionId(randomId())
+      .withBlockBorrowing(true)));
+
+  @Test
+  public void shouldReturnBlocksForSameVersionOfSummaryOnly() {
+    AutomatedPatronBlocksCache cache = new AutomatedPatronBlocksCache(10, ONE_HOUR);
+    UserSummary userSummary = new UserSummary()
+      .withId(randomId())
+      .withUserId(randomId())
+      .withVersion(1);
+
+    assertFalse(cache.get(userSummary, 1L).isPresent());
+    cache.put(userSummary, 1L, blocks);
+    assertEquals(1, cache.get(userSummary, 1L).orElseThrow().getAutomatedPatronBlocks().size());
+
+    assertFalse(cache.get(userSummary.withVersion(2), 1L).isPresent());
+  }
+
+  @Test
+  public void shouldReturnBlocksForSameVersionOfConfigurationOnly() {
+    AutomatedPatronBlocksCache cache = new AutomatedPatronBlocksCache(10, ONE_HOUR);
+    UserSummary userSummary = new UserSummary()
+      .withId(randomId())
+      .withUserId(randomId());
+
+    cache.put(userSummary, 1L, blocks);
+    assertTrue(cache.get(userSummary, 1L).isPresent());
+
+    assertFalse(cache.get(userSummary, 2L).isPresent());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntry() {
+    AutomatedPatronBlocksCache cache = new AutomatedPatronBlocksCache(2, ONE_HOUR);
+    UserSummary first = new UserSummary().withId(randomId()).withUserId(randomId());
+    UserSummary second = new UserSummary().withId(randomId()).withUserId(randomId());
+    UserSummary third = new UserSummary().withId(randomId()).withUserId(randomId());
+
+    cache.put(first, 1L, blocks);
+    cache.put(second, 1L, blocks);
+    cache.get(first, 1L);
+    cache.put(third, 1L, blocks);
+
+    assertTrue(cache.get(first, 1L).isPresent());
+    assertFalse(cache.get(second, 1L).isPresent());
+    assertTrue(cache.get(third, 1L).isPresent());
+  }
+
+  @Test
+  public void nextOverdueTransitionOfLoanIsEndOfGracePeriod() {
+    long now = System.currentTimeMillis();
+    long dueDate = now + ONE_HOUR;
+    OpenLoan openLoan = new OpenLoan()
+      .withLoanId(randomId())
+      .withDueDate(new Date(dueDate))
+      .withGracePeriod(new GracePeriod()
+        .withDuration(2)
+        .withIntervalId(GracePeriod.IntervalId.HOURS));
+
+    assertEquals(dueDate + 2 * ONE_HOUR + 60_000L,
+      OverduePeriodCalculator.getNextOverdueTransitionTime(openLoan, now));
+  }
+
+  @Test
+  public void nextOverdueTransitionOfOverdueRecallIsNextOverdueDay() {
+    long now = System.currentTimeMillis();
+    long dueDate = now - ONE_DAY - ONE_HOUR;
+    OpenLoan recall = new OpenLoan()
+      .withLoanId(randomId())
+      .withDueDate(new Date(dueDate))
+      .withRecall(true);
+
+    assertEquals(dueDate + 2 * ONE_DAY + 60_000L,
+      OverduePeriodCalculator.getNextOverdueTransitionTime(recall, now));
+    assertEquals(Long.MAX_VALUE,
+      OverduePeriodCalculator.getNextOverdueTransitionTime(recall.withRecall(false), now));
+  }
+}
@@ -0,0 +1,164 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.stream.Collectors.toList;
+import static org.folio.repository.EventInboxRepository.EVENT_INBOX_TABLE_NAME;
+import static org.folio.rest.persist.PostgresClient.convertToPsqlStandard;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.folio.domain.Event;
+import org.folio.repository.EventInboxRepository;
+import org.folio.rest.TestBase;
+import org.folio.rest.handlers.BatchEventHandler;
+import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
+import org.folio.rest.persist.PostgresClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.vertx.core.Future;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+
+@RunWith(VertxUnitRunner.class)
+public class EventInboxServiceTest extends TestBase {
+  private final EventInboxRepository eventInboxRepository =
+    new EventInboxRepository(postgresClient);
+
+  @Mock
+  private BatchEventHandler batchEventHandler;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void beforeEach() {
+    mocks = MockitoAnnotations.openMocks(this);
+    deleteAllFromTable(EVENT_INBOX_TABLE_NAME);
+  }
+
+  @After
+  public void afterEach() throws Exception {
+    System.clearProperty(EventInboxService.MAX_ATTEMPTS_PROPERTY);
+    mocks.close();
+  }
+
+  @Test
+  public void shouldRemoveProcessedEventsAndRetryFailedOneLater(TestContext context) {
+    String failingLoanId = randomId();
+    String loanId = randomId();
+    waitFor(eventInboxRepository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), failingLoanId, new Date()),
+      buildItemCheckedOutEvent(randomId(), loanId, new Date()))));
+    failEventsOfLoan(failingLoanId);
+    EventInboxService eventInboxService = createEventInboxService();
+
+    context.assertEquals(2, waitFor(eventInboxService.processNextBatch()));
+
+    Map<String, Row> rows = getInboxRowsByLoanId();
+    context.assertEquals(1, rows.size());
+    Row failedRow = rows.get(failingLoanId);
+    context.assertEquals(1, failedRow.getInteger("attempts"));
+    context.assertTrue(failedRow.getBoolean("leased"));
+    context.assertFalse(failedRow.getBoolean("dead_lettered"));
+    // the failed event is not claimed again until its retry delay passes
+    context.assertEquals(0, waitFor(eventInboxService.processNextBatch()));
+  }
+
+  @Test
+  public void shouldDeadLetterEventWhichFailedTooManyTimes(TestContext context) {
+    String failingLoanId = randomId();
+    waitFor(eventInboxRepository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), failingLoanId, new Date()),
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+    failEventsOfLoan(failingLoanId);
+    System.setProperty(EventInboxService.MAX_ATTEMPTS_PROPERTY, "1");
+    EventInboxService eventInboxService = createEventInboxService();
+
+    context.assertEquals(2, waitFor(eventInboxService.processNextBatch()));
+
+    Map<String, Row> rows = getInboxRowsByLoanId();
+    context.assertEquals(1, rows.size());
+    Row failedRow = rows.get(failingLoanId);
+    context.assertTrue(failedRow.getBoolean("dead_lettered"));
+    context.assertFalse(failedRow.getBoolean("leased"));
+    context.assertTrue(waitFor(eventInboxRepository.claimNextBatch(10, 60)).isEmpty());
+  }
+
+  @Test
+  public void shouldCountEventsOfOtherInstancesWhenEventsAreAdded(TestContext context) {
+    // events stored by another module instance
+    waitFor(eventInboxRepository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()),
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+    EventIngestionExecutor.forTenant(OKAPI_TENANT).setInboxDepth(0);
+
+    waitFor(createEventInboxService().add(List.of(
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+
+    context.assertEquals(3, EventIngestionExecutor.forTenant(OKAPI_TENANT).getStats()
+      .getQueued());
+  }
+
+  @Test
+  public void shouldStartDrain(TestContext context) {
+    waitFor(eventInboxRepository.saveAll(List.of(
+      buildItemCheckedOutEvent(randomId(), randomId(), new Date()))));
+    when(batchEventHandler.handle(anyList())).thenReturn(succeededFuture(List.of()));
+
+    Future<Void> started = createEventInboxService().startDrain();
+    waitFor(started);
+
+    context.assertTrue(started.succeeded());
+    awaitUntil(() -> getInboxRowsByLoanId().size(), is(0));
+  }
+
+  @Test
+  public void shouldFailToStartDrainWhenInboxCanNotBeRead(TestContext context) {
+    PostgresClient clientOfUnknownTenant = PostgresClient.getInstance(vertx, "unknown_tenant");
+    EventInboxService eventInboxService = new EventInboxService(clientOfUnknownTenant,
+      new EventInboxRepository(clientOfUnknownTenant), batchEventHandler);
+
+    Future<Void> started = eventInboxService.startDrain();
+    waitFor(started);
+
+    context.assertTrue(started.failed());
+  }
+
+  private EventInboxService createEventInboxService() {
+    return new EventInboxService(postgresClient, eventInboxRepository, batchEventHandler);
+  }
+
+  private void failEventsOfLoan(String loanId) {
+    when(batchEventHandler.handle(anyList())).thenAnswer(invocation -> {
+      List<Event> events = invocation.getArgument(0);
+      return succeededFuture(events.stream()
+        .filter(event -> loanId.equals(((ItemCheckedOutEvent) event).getLoanId()))
+        .collect(toList()));
+    });
+  }
+
+  private Map<String, Row> getInboxRowsByLoanId() {
+    RowSet<Row> rows = waitFor(postgresClient.execute(String.format(
+      "SELECT jsonb->'event'->>'loanId' AS loan_id, attempts, " +
+        "coalesce(leased_until > now(), false) AS leased, " +
+        "dead_lettered_date IS NOT NULL AS dead_lettered FROM %s.%s",
+      convertToPsqlStandard(OKAPI_TENANT), EVENT_INBOX_TABLE_NAME)));
+
+    Map<String, Row> rowsByLoanId = new HashMap<>();
+    rows.forEach(row -> rowsByLoanId.put(row.getString("loan_id"), row));
+    return rowsByLoanId;
+  }
+}
@@ -0,0 +1,63 @@
+package org.folio.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.EventIngestionStats;
+import org.junit.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+public class EventIngestionExecutorTest {
+
+  @Test
+  public void shouldProcessNoMoreTasksAtOnceThanAllowed() {
+    EventIngestionExecutor executor = new EventIngestionExecutor("test_tenant", 1, 10);
+    List<Promise<String>> started = new ArrayList<>();
+
+    Future<String> first = executor.execute(() -> start(started));
+    Future<String> second = executor.execute(() -> start(started));
+
+    assertEquals(1, started.size());
+    assertEquals(Integer.valueOf(1), executor.getStats().getInFlight());
+
+    started.get(0).complete("first");
+    assertEquals("first", first.result());
+    assertEquals(2, started.size());
+    assertFalse(second.isComplete());
+
+    started.get(1).fail("second failed");
+    assertTrue(second.failed());
+    assertEquals(Integer.valueOf(0), executor.getStats().getInFlight());
+  }
+
+  @Test
+  public void shouldRejectEventsWhileInboxIsFull() {
+    EventIngestionExecutor executor = new EventIngestionExecutor("test_tenant", 1, 2);
+
+    assertTrue(executor.tryAccept(2));
+    executor.eventsAdded(2);
+    assertFalse(executor.tryAccept(1));
+
+    EventIngestionStats stats = executor.getStats();
+    assertEquals(Integer.valueOf(2), stats.getQueued());
+    assertEquals(Long.valueOf(2), stats.getAccepted());
+    assertEquals(Long.valueOf(1), stats.getRejected());
+
+    // the inbox is counted again after events are added or a batch is processed
+    executor.setInboxDepth(1);
+    assertTrue(executor.tryAccept(1));
+    assertEquals(Integer.valueOf(1), executor.getStats().getQueued());
+  }
+
+  private static Future<String> start(List<Promise<String>> started) {
+    Promise<String> promise = Promise.promise();
+    started.add(promise);
+    return promise.future();
+  }
+}
@@ -0,0 +1,60 @@
+package org.folio.service;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.folio.domain.Event;
+import org.folio.repository.EventJournalRepository;
+import org.folio.rest.TestBase;
+import org.folio.rest.persist.Conn;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class EventServiceTest extends TestBase {
+
+  @Mock
+  private EventJournalRepository eventJournalRepository;
+
+  @Mock
+  private Conn conn;
+
+  @Before
+  public void beforeEach() {
+    MockitoAnnotations.openMocks(this);
+  }
+
+  @Test
+  public void shouldRememberEventsSavedInTransactionOnlyAfterCommit(TestContext context) {
+    EventService eventService = new EventService(eventJournalRepository);
+    List<Event> events = List.of(buildItemCheckedOutEvent(randomId(), randomId(), new Date()));
+    when(eventJournalRepository.saveAll(any(Conn.class), anyList()))
+      .thenReturn(succeededFuture(events));
+    when(eventJournalRepository.findExistingDeduplicationKeys(anyList()))
+      .thenReturn(succeededFuture(Set.of()));
+
+    waitFor(eventService.saveAll(conn, events));
+    waitFor(eventService.discardStoredDuplicates(events));
+    verify(eventJournalRepository, never()).findExistingDeduplicationKeys(anyList());
+
+    eventService.rememberStored(events);
+    waitFor(eventService.discardStoredDuplicates(events));
+    verify(eventJournalRepository, times(1)).findExistingDeduplicationKeys(anyList());
+  }
+}
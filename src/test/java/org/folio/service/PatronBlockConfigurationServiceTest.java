@@ -0,0 +1,54 @@
+package org.folio.service;
+
+import static org.folio.repository.PatronBlockLimitsRepository.PATRON_BLOCK_LIMITS_TABLE_NAME;
+
+import org.folio.domain.Condition;
+import org.folio.domain.PatronBlockConfiguration;
+import org.folio.repository.PatronBlockConditionsRepository;
+import org.folio.repository.PatronBlockConfigurationVersionRepository;
+import org.folio.repository.PatronBlockLimitsRepository;
+import org.folio.rest.TestBase;
+import org.folio.rest.jaxrs.model.PatronBlockLimit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class PatronBlockConfigurationServiceTest extends TestBase {
+  private final PatronBlockLimitsRepository limitsRepository =
+    new PatronBlockLimitsRepository(postgresClient);
+  private final PatronBlockConfigurationService configurationService =
+    new PatronBlockConfigurationService(
+      new PatronBlockConfigurationVersionRepository(postgresClient),
+      new PatronBlockConditionsRepository(postgresClient), limitsRepository);
+
+  @Before
+  public void setUp() {
+    deleteAllFromTable(PATRON_BLOCK_LIMITS_TABLE_NAME);
+  }
+
+  @Test
+  public void shouldReloadConfigurationWhenLimitsChange(TestContext context) {
+    String patronGroupId = randomId();
+
+    PatronBlockConfiguration initialConfiguration =
+      waitFor(configurationService.getConfiguration());
+    context.assertTrue(initialConfiguration.getLimits(patronGroupId).isEmpty());
+    context.assertEquals(Condition.values().length, initialConfiguration.getConditions().size());
+    context.assertTrue(initialConfiguration == waitFor(configurationService.getConfiguration()));
+
+    waitFor(limitsRepository.save(new PatronBlockLimit()
+      .withId(randomId())
+      .withConditionId(Condition.MAX_NUMBER_OF_LOST_ITEMS.getId())
+      .withPatronGroupId(patronGroupId)
+      .withValue(1.0)));
+
+    PatronBlockConfiguration updatedConfiguration =
+      waitFor(configurationService.getConfiguration());
+    context.assertTrue(updatedConfiguration.getVersion() > initialConfiguration.getVersion());
+    context.assertEquals(1, updatedConfiguration.getLimits(patronGroupId).size());
+  }
+}
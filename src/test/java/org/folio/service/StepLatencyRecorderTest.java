@@ -0,0 +1,45 @@
+package org.folio.service;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.folio.rest.jaxrs.model.BlocksCalculationStepStats;
+import org.junit.Test;
+
+import io.vertx.core.Future;
+
+public class StepLatencyRecorderTest {
+
+  @Test
+  public void shouldAggregateLatencyByStep() {
+    StepLatencyRecorder recorder = new StepLatencyRecorder();
+    recorder.record("user-summary", MILLISECONDS.toNanos(10), true);
+    recorder.record("user-summary", MILLISECONDS.toNanos(30), false);
+    recorder.record("patron-group", MILLISECONDS.toNanos(5), true);
+
+    List<BlocksCalculationStepStats> steps = recorder.getStats().getSteps();
+    assertEquals(2, steps.size());
+
+    BlocksCalculationStepStats userSummaryStats = steps.get(0);
+    assertEquals("user-summary", userSummaryStats.getStep());
+    assertEquals(Integer.valueOf(2), userSummaryStats.getCount());
+    assertEquals(Integer.valueOf(1), userSummaryStats.getFailed());
+    assertEquals(20.0, userSummaryStats.getAverageMillis(), 0.001);
+    assertEquals(30.0, userSummaryStats.getMaxMillis(), 0.001);
+    assertEquals("patron-group", steps.get(1).getStep());
+  }
+
+  @Test
+  public void shouldRecordStepWhichFailsToStart() {
+    StepLatencyRecorder recorder = new StepLatencyRecorder();
+    Future<String> result = recorder.time("configuration", () -> {
+      throw new IllegalStateException("Failed to start");
+    });
+
+    assertTrue(result.failed());
+    assertEquals(Integer.valueOf(1), recorder.getStats().getSteps().get(0).getFailed());
+  }
+}
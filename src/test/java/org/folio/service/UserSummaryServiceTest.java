@@ -1,38 +1,59 @@
 package org.folio.service;
 
+import static io.vertx.core.Future.failedFuture;
 import static org.folio.repository.UserSummaryRepository.USER_SUMMARY_TABLE_NAME;
 import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemAgedToLostEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemCheckedInEvent;
 import static org.folio.rest.utils.EntityBuilder.buildItemCheckedOutEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemClaimedReturnedEvent;
+import static org.folio.rest.utils.EntityBuilder.buildItemDeclaredLostEvent;
 import static org.folio.rest.utils.EntityBuilder.buildLoanDueDateChangedEvent;
 import static org.joda.time.DateTime.now;
 import static org.awaitility.Awaitility.await;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
+import org.folio.domain.Event;
+import org.folio.domain.UserSummaryCountersCalculator;
+import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.repository.UserSummaryRepository;
 import org.folio.rest.TestBase;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
 import org.folio.rest.jaxrs.model.ItemAgedToLostEvent;
 import org.folio.rest.jaxrs.model.ItemCheckedOutEvent;
 import org.folio.rest.jaxrs.model.LoanDueDateChangedEvent;
+import org.folio.rest.jaxrs.model.OpenLoan;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.jaxrs.model.UserSummaryCounters;
+import org.folio.rest.jaxrs.model.UserSummaryRebuildCheckpoint;
+import org.folio.rest.persist.Conn;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import io.vertx.core.Future;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.pgclient.PgException;
 
 @RunWith(VertxUnitRunner.class)
 public class UserSummaryServiceTest extends TestBase {
-  private final UserSummaryService userSummaryService =
-    new UserSummaryService(postgresClient);
+  private static final String VERSION_CONFLICT_SQL_STATE = "23F09";
 
   protected final UserSummaryRepository userSummaryRepository =
     new UserSummaryRepository(postgresClient);
 
+  private final EventService eventService = new EventService(postgresClient);
+
+  private final UserSummaryService userSummaryService =
+    new UserSummaryService(postgresClient, userSummaryRepository, eventService);
+
   @Before
   public void beforeEach() {
     super.resetMocks();
@@ -44,13 +65,12 @@ public class UserSummaryServiceTest extends TestBase {
     final String userId = randomId();
     waitFor(userSummaryRepository.save(createUserSummary(randomId(), userId)));
 
-    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
-
     final String feeFineId = randomId();
     FeeFineBalanceChangedEvent feeFineBalanceChangedEvent = buildFeeFineBalanceChangedEvent(
       userId, randomId(), feeFineId, randomId(), new BigDecimal("3.33"));
 
-    userSummaryService.updateUserSummaryWithEvent(userSummary, feeFineBalanceChangedEvent);
+    userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(feeFineBalanceChangedEvent));
 
     await().until(() ->
         waitFor(userSummaryService.getByUserId(userId))
@@ -58,6 +78,23 @@ public class UserSummaryServiceTest extends TestBase {
         .anyMatch(openFeeFine -> openFeeFine.getFeeFineId().equals(feeFineId)));
   }
 
+  @Test
+  public void shouldApplyConcurrentEventsOfSameUserOneAtATime(TestContext context) {
+    String userId = randomId();
+    int numberOfEvents = 20;
+
+    List<Future<String>> futures = new ArrayList<>();
+    for (int i = 0; i < numberOfEvents; i++) {
+      futures.add(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+        List.of(buildItemCheckedOutEvent(userId, randomId(), now().plusHours(1).toDate()))));
+    }
+    waitFor(GenericCompositeFuture.all(futures));
+
+    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
+    context.assertEquals(numberOfEvents, userSummary.getOpenLoans().size());
+    context.assertEquals(numberOfEvents, userSummary.getVersion());
+  }
+
   @Test
   public void loanDueDateChangedEventShouldSetItemLostToFalse(TestContext context) {
     String userId = randomId();
@@ -65,20 +102,22 @@ public class UserSummaryServiceTest extends TestBase {
     Date dueDate = now().plusHours(1).toDate();
 
     waitFor(userSummaryRepository.save(createUserSummary(randomId(), userId)));
-    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
 
     ItemCheckedOutEvent itemCheckedOutEvent = buildItemCheckedOutEvent(userId, loanId, dueDate);
-    userSummaryService.updateUserSummaryWithEvent(userSummary, itemCheckedOutEvent);
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(itemCheckedOutEvent)));
 
     ItemAgedToLostEvent itemAgedToLostEvent = buildItemAgedToLostEvent(userId, loanId);
-    waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, itemAgedToLostEvent));
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(itemAgedToLostEvent)));
 
     UserSummary updatedUserSummary = waitFor(userSummaryService.getByUserId(userId));
     context.assertTrue(updatedUserSummary.getOpenLoans().stream()
       .anyMatch(openLoan -> openLoan.getItemLost().equals(true)));
 
     LoanDueDateChangedEvent loanDueDateChangedEvent = buildLoanDueDateChangedEvent(userId, loanId, now().plusHours(2).toDate(), false);
-    waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, loanDueDateChangedEvent));
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(loanDueDateChangedEvent)));
     updatedUserSummary = waitFor(userSummaryService.getByUserId(userId));
 
     context.assertTrue(updatedUserSummary.getOpenLoans().stream()
@@ -86,53 +125,229 @@ public class UserSummaryServiceTest extends TestBase {
   }
 
   @Test
-  public void shouldDeleteFeeFineAfterRetryingInCaseOfOptimisticLockingError(
-    TestContext context) {
+  public void shouldApplyStateChangesWhichRepeatPreviousOnes(TestContext context) {
+    String userId = randomId();
+    String loanId = randomId();
+    String feeFineId = randomId();
+    String feeFineTypeId = randomId();
+
+    List.of(
+      buildItemCheckedOutEvent(userId, loanId, now().plusHours(1).toDate()),
+      buildItemDeclaredLostEvent(userId, loanId),
+      buildItemClaimedReturnedEvent(userId, loanId),
+      buildItemDeclaredLostEvent(userId, loanId),
+      buildFeeFineBalanceChangedEvent(userId, loanId, feeFineId, feeFineTypeId,
+        new BigDecimal("10.00")),
+      buildFeeFineBalanceChangedEvent(userId, loanId, feeFineId, feeFineTypeId,
+        new BigDecimal("5.00")),
+      buildFeeFineBalanceChangedEvent(userId, loanId, feeFineId, feeFineTypeId,
+        new BigDecimal("10.00"))
+    ).forEach(event -> waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(event))));
+
+    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
+    OpenLoan openLoan = userSummary.getOpenLoans().get(0);
+    context.assertTrue(openLoan.getItemLost());
+    context.assertFalse(openLoan.getItemClaimedReturned());
+    context.assertEquals(0, new BigDecimal("10.00")
+      .compareTo(userSummary.getOpenFeesFines().get(0).getBalance()));
+  }
+
+  @Test
+  public void shouldKeepCountersOfEventsEqualToRecalculatedCounters(TestContext context) {
+    String userId = randomId();
+    String firstLoanId = randomId();
+    String secondLoanId = randomId();
+    String feeFineTypeId = randomId();
+
+    List<Event> events = List.of(
+      buildItemCheckedOutEvent(userId, firstLoanId, now().plusHours(1).toDate()),
+      buildItemCheckedOutEvent(userId, secondLoanId, now().plusHours(2).toDate()),
+      buildFeeFineBalanceChangedEvent(userId, firstLoanId, randomId(), feeFineTypeId,
+        new BigDecimal("10.00")),
+      buildFeeFineBalanceChangedEvent(userId, secondLoanId, randomId(), feeFineTypeId,
+        new BigDecimal("2.50")),
+      buildItemDeclaredLostEvent(userId, secondLoanId),
+      buildItemClaimedReturnedEvent(userId, firstLoanId),
+      buildLoanDueDateChangedEvent(userId, secondLoanId, now().plusHours(3).toDate(), true),
+      buildItemCheckedInEvent(userId, firstLoanId, new Date()));
+    events.forEach(event -> waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(event))));
+
+    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
+    UserSummaryCounters counters = userSummary.getCounters();
+    UserSummaryCounters recalculated = UserSummaryCountersCalculator.calculate(userSummary);
+    context.assertEquals(recalculated.getOpenLoanCount(), counters.getOpenLoanCount());
+    context.assertEquals(recalculated.getLostItemCount(), counters.getLostItemCount());
+    context.assertEquals(recalculated.getClaimedReturnedCount(),
+      counters.getClaimedReturnedCount());
+    context.assertEquals(recalculated.getRecallCount(), counters.getRecallCount());
+    context.assertEquals(0, recalculated.getOutstandingFeeFineBalance()
+      .compareTo(counters.getOutstandingFeeFineBalance()));
+    context.assertEquals(recalculated.getEarliestDueDate(), counters.getEarliestDueDate());
+    context.assertEquals(recalculated.getNextOverdueTransitionDate(),
+      counters.getNextOverdueTransitionDate());
+  }
+
+  @Test
+  public void shouldUpdateBalanceOfExistingFeeFine(TestContext context) {
     final String userId = randomId();
 
     String summaryId = randomId();
-    UserSummary userSummaryToSave = createUserSummary(summaryId, randomId());
-    waitFor(userSummaryRepository.save(userSummaryToSave));
-
-    waitFor(userSummaryRepository.get(summaryId)).ifPresent(userSummary -> {
-      final String feeFineId = randomId();
-      final String loanId = randomId();
-      final String feeFineTypeId = randomId();
-      BigDecimal balance = new BigDecimal("3.33");
-      FeeFineBalanceChangedEvent feeFineBalanceChangedEvent = buildFeeFineBalanceChangedEvent(
-        userId, loanId, feeFineId, feeFineTypeId, balance);
-      waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, feeFineBalanceChangedEvent));
-      waitFor(userSummaryRepository.get(summaryId)).ifPresent(userSummaryAfterFirstUpdate -> {
-        userSummaryAfterFirstUpdate.setVersion(1);
-        BigDecimal newBalance = new BigDecimal("7.77");
-        feeFineBalanceChangedEvent.setBalance(newBalance);
-        waitFor(
-          userSummaryService.updateUserSummaryWithEvent(userSummaryAfterFirstUpdate, feeFineBalanceChangedEvent));
-        waitFor(userSummaryRepository.get(summaryId)).ifPresent(
-          userSummaryAfterSecondUpdate -> context.assertTrue(
-            userSummaryAfterSecondUpdate.getOpenFeesFines().get(0).getBalance().equals(newBalance)));
-      });
-    });
+    waitFor(userSummaryRepository.save(createUserSummary(summaryId, userId)));
+
+    final String feeFineId = randomId();
+    FeeFineBalanceChangedEvent feeFineBalanceChangedEvent = buildFeeFineBalanceChangedEvent(
+      userId, randomId(), feeFineId, randomId(), new BigDecimal("3.33"));
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(feeFineBalanceChangedEvent)));
+
+    BigDecimal newBalance = new BigDecimal("7.77");
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(buildFeeFineBalanceChangedEvent(userId, feeFineBalanceChangedEvent.getLoanId(),
+        feeFineId, feeFineBalanceChangedEvent.getFeeFineTypeId(), newBalance))));
+
+    UserSummary updatedUserSummary = waitFor(userSummaryRepository.get(summaryId)).orElseThrow();
+    context.assertEquals(1, updatedUserSummary.getOpenFeesFines().size());
+    context.assertEquals(newBalance, updatedUserSummary.getOpenFeesFines().get(0).getBalance());
   }
 
   @Test
   public void shouldUpdateNewUserSummaryIfUserSummaryDidNotExist(TestContext context) {
     final String userId = randomId();
-    final String summaryId = randomId();
     FeeFineBalanceChangedEvent feeFineBalanceChangedEvent1 = buildFeeFineBalanceChangedEvent(
       userId, randomId(), randomId(), randomId(), new BigDecimal("3.33"));
     FeeFineBalanceChangedEvent feeFineBalanceChangedEvent2 = buildFeeFineBalanceChangedEvent(
       userId, randomId(), randomId(), randomId(), new BigDecimal("7.77"));
 
-    UserSummary userSummary = createUserSummary(summaryId, userId);
-    waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, feeFineBalanceChangedEvent1));
-    waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, feeFineBalanceChangedEvent2));
-    waitFor(userSummaryRepository.get(summaryId)).ifPresent(userSummaryAfterBothUpdates ->
-      context.assertTrue(userSummaryAfterBothUpdates.getOpenFeesFines().stream()
-        .allMatch(openFeeFine -> openFeeFine.getFeeFineId()
-          .equals(feeFineBalanceChangedEvent1.getFeeFineId()) || openFeeFine.getFeeFineId()
-          .equals(feeFineBalanceChangedEvent2.getFeeFineId()))
-      ));
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(feeFineBalanceChangedEvent1)));
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(feeFineBalanceChangedEvent2)));
+
+    UserSummary userSummaryAfterBothUpdates = waitFor(userSummaryService.getByUserId(userId));
+    context.assertEquals(2, userSummaryAfterBothUpdates.getOpenFeesFines().size());
+    context.assertTrue(userSummaryAfterBothUpdates.getOpenFeesFines().stream()
+      .allMatch(openFeeFine -> openFeeFine.getFeeFineId()
+        .equals(feeFineBalanceChangedEvent1.getFeeFineId()) || openFeeFine.getFeeFineId()
+        .equals(feeFineBalanceChangedEvent2.getFeeFineId())));
+  }
+
+  @Test
+  public void shouldRebuildUserSummaryFromCheckpoint(TestContext context) {
+    String userId = randomId();
+    String firstLoanId = randomId();
+    String secondLoanId = randomId();
+    Date createdDate = now().minusDays(1).toDate();
+
+    ItemCheckedOutEvent firstCheckOut = buildItemCheckedOutEvent(userId, firstLoanId,
+      now().plusDays(1).toDate());
+    firstCheckOut.getMetadata().setCreatedDate(createdDate);
+    waitFor(eventService.saveAll(List.of(firstCheckOut)));
+    waitFor(userSummaryService.rebuild(userId));
+
+    UserSummaryRebuildCheckpoint checkpoint = waitFor(userSummaryRepository
+      .findRebuildCheckpoint(waitFor(userSummaryService.getByUserId(userId)).getId()))
+      .orElse(null);
+    context.assertNotNull(checkpoint);
+    context.assertEquals(firstLoanId, checkpoint.getOpenLoans().get(0).getLoanId());
+
+    // events covered by the checkpoint are not read again, so removing them changes nothing
+    waitFor(eventService.removeAllEventsForUser(userId));
+    ItemCheckedOutEvent secondCheckOut = buildItemCheckedOutEvent(userId, secondLoanId,
+      now().plusDays(1).toDate());
+    secondCheckOut.getMetadata().setCreatedDate(new Date(createdDate.getTime() + 1));
+    waitFor(eventService.saveAll(List.of(secondCheckOut)));
+    waitFor(userSummaryService.rebuild(userId));
+
+    context.assertEquals(2, waitFor(userSummaryService.getByUserId(userId)).getOpenLoans().size());
+
+    waitFor(userSummaryService.rebuild(userId, true));
+
+    List<OpenLoan> openLoans = waitFor(userSummaryService.getByUserId(userId)).getOpenLoans();
+    context.assertEquals(1, openLoans.size());
+    context.assertEquals(secondLoanId, openLoans.get(0).getLoanId());
+  }
+
+  @Test
+  public void shouldRollBackSavedEventsWhenSummaryIsNotStored(TestContext context) {
+    String userId = randomId();
+    ItemCheckedOutEvent itemCheckedOutEvent = buildItemCheckedOutEvent(userId, randomId(),
+      now().plusHours(1).toDate());
+    UserSummaryService failingService = createServiceWithUpsert((conn, userSummary) ->
+      failedFuture(new IllegalStateException("Failed to store user summary")));
+
+    Future<String> update = failingService.saveEventsAndUpdateUserSummary(userId,
+      List.of(itemCheckedOutEvent));
+    waitFor(update);
+
+    context.assertTrue(update.failed());
+    context.assertTrue(waitFor(eventService.getEventsByUserId(userId)).isEmpty());
+    context.assertFalse(waitFor(userSummaryRepository.getByUserId(userId)).isPresent());
+
+    // the rolled back event is not taken for a duplicate when it is delivered again
+    waitFor(userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(itemCheckedOutEvent)));
+
+    context.assertEquals(1, waitFor(eventService.getEventsByUserId(userId)).size());
+    context.assertEquals(1, waitFor(userSummaryService.getByUserId(userId))
+      .getOpenLoans().size());
+  }
+
+  @Test
+  public void shouldRetryWholeTransactionAfterConflictingUpdate(TestContext context) {
+    String userId = randomId();
+    AtomicInteger attempts = new AtomicInteger();
+    UserSummaryService conflictingOnceService = createServiceWithUpsert(
+      (conn, userSummary) -> attempts.incrementAndGet() == 1
+        ? failedFuture(new PgException("", "", VERSION_CONFLICT_SQL_STATE, ""))
+        : userSummaryRepository.upsert(conn, userSummary));
+
+    waitFor(conflictingOnceService.saveEventsAndUpdateUserSummary(userId,
+      List.of(buildItemCheckedOutEvent(userId, randomId(), now().plusHours(1).toDate()))));
+
+    context.assertEquals(2, attempts.get());
+    // the event saved by the first attempt was rolled back, so it is stored only once
+    context.assertEquals(1, waitFor(eventService.getEventsByUserId(userId)).size());
+    UserSummary userSummary = waitFor(userSummaryService.getByUserId(userId));
+    context.assertEquals(1, userSummary.getOpenLoans().size());
+    context.assertEquals(1, userSummary.getVersion());
+  }
+
+  @Test
+  public void shouldNotKeepEventsWhenSummaryUpdateRunsOutOfAttempts(TestContext context) {
+    String userId = randomId();
+    AtomicInteger attempts = new AtomicInteger();
+    UserSummaryService alwaysConflictingService = createServiceWithUpsert(
+      (conn, userSummary) -> {
+        attempts.incrementAndGet();
+        return failedFuture(new PgException("", "", VERSION_CONFLICT_SQL_STATE, ""));
+      });
+
+    Future<String> update = alwaysConflictingService.saveEventsAndUpdateUserSummary(userId,
+      List.of(buildItemCheckedOutEvent(userId, randomId(), now().plusHours(1).toDate()),
+        buildFeeFineBalanceChangedEvent(userId, randomId(), randomId(), randomId(),
+          new BigDecimal("3.33"))));
+    waitFor(update);
+
+    context.assertTrue(update.failed());
+    context.assertEquals(11, attempts.get());
+    // events are never stored without the summary they were applied to
+    context.assertTrue(waitFor(eventService.getEventsByUserId(userId)).isEmpty());
+    context.assertFalse(waitFor(userSummaryRepository.getByUserId(userId)).isPresent());
+  }
+
+  private UserSummaryService createServiceWithUpsert(
+    BiFunction<Conn, UserSummary, Future<String>> upsert) {
+
+    UserSummaryRepository repository = new UserSummaryRepository(postgresClient) {
+      @Override
+      public Future<String> upsert(Conn conn, UserSummary entity) {
+        return upsert.apply(conn, entity);
+      }
+    };
+
+    return new UserSummaryService(postgresClient, repository, eventService);
   }
 
   private UserSummary createUserSummary(String id, String userId) {
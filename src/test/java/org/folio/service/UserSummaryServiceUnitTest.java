@@ -3,18 +3,24 @@ package org.folio.service;
 import static io.vertx.core.Future.failedFuture;
 import static io.vertx.core.Future.succeededFuture;
 import static org.folio.rest.utils.EntityBuilder.buildFeeFineBalanceChangedEvent;
-import static org.mockito.Mockito.doReturn;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
 
 import org.folio.repository.UserSummaryRepository;
 import org.folio.rest.TestBase;
 import org.folio.rest.jaxrs.model.FeeFineBalanceChangedEvent;
 import org.folio.rest.jaxrs.model.UserSummary;
+import org.folio.rest.persist.Conn;
 import org.folio.rest.persist.PostgresClient;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,6 +28,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import io.vertx.core.Future;
+import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.pgclient.PgException;
 
@@ -31,52 +39,48 @@ public class UserSummaryServiceUnitTest extends TestBase {
   @Mock
   private PostgresClient postgresClient;
 
+  @Mock
+  private Conn conn;
+
   @Mock
   private UserSummaryRepository userSummaryRepository;
 
-  private final UserSummaryService userSummaryService = new UserSummaryService(postgresClient);
+  @Mock
+  private EventService eventService;
+
+  private UserSummaryService userSummaryService;
 
   @Before
+  @SuppressWarnings("unchecked")
   public void beforeEach() {
     MockitoAnnotations.openMocks(this);
+    when(postgresClient.getTenantId()).thenReturn(OKAPI_TENANT);
+    when(postgresClient.withTrans(any())).thenAnswer(invocation ->
+      invocation.<Function<Conn, Future<?>>>getArgument(0).apply(conn));
+    when(eventService.discardStoredDuplicates(anyList())).thenAnswer(invocation ->
+      succeededFuture(List.copyOf(invocation.<List<?>>getArgument(0))));
+    when(eventService.saveAll(any(Conn.class), anyList())).thenAnswer(invocation ->
+      succeededFuture(List.copyOf(invocation.<List<?>>getArgument(1))));
+    userSummaryService = new UserSummaryService(postgresClient, userSummaryRepository,
+      eventService);
   }
 
   @Test
-  public void shouldStopRetryingAfterRunningOutOfAttempts() {
+  public void shouldStopRetryingAfterRunningOutOfAttempts(TestContext context) {
     PgException pgException = new PgException("", "", "23F09", "");
     String userId = randomId();
-    String summaryId = randomId();
-    UserSummary userSummary = buildUserSummary(summaryId, userId);
-    BigDecimal balance1 = new BigDecimal("3.33");
-    setInternalState(userSummaryService, "userSummaryRepository", userSummaryRepository);
-    when(userSummaryRepository.save(userSummary)).thenReturn(succeededFuture(summaryId));
-    when(userSummaryRepository.findByUserIdOrBuildNew(userId)).thenReturn(
-      succeededFuture(userSummary));
-    doReturn(failedFuture(pgException)).when(userSummaryRepository).upsert(userSummary);
-    userSummaryRepository.save(userSummary);
-    FeeFineBalanceChangedEvent feeFineBalanceChangedEvent1 = buildFeeFineBalanceChangedEvent(
-      userId, randomId(), randomId(), randomId(), balance1);
-    waitFor(userSummaryService.updateUserSummaryWithEvent(userSummary, feeFineBalanceChangedEvent1));
+    when(userSummaryRepository.findByUserIdForUpdate(eq(conn), eq(userId), anySet(), anySet()))
+      .thenReturn(succeededFuture(Optional.empty()));
+    when(userSummaryRepository.upsert(eq(conn), any(UserSummary.class)))
+      .thenReturn(failedFuture(pgException));
+    FeeFineBalanceChangedEvent feeFineBalanceChangedEvent = buildFeeFineBalanceChangedEvent(
+      userId, randomId(), randomId(), randomId(), new BigDecimal("3.33"));
 
-    verify(userSummaryRepository, times(11)).upsert(userSummary);
-  }
-
-  private UserSummary buildUserSummary(String id, String userId) {
-    return new UserSummary()
-      .withId(id)
-      .withUserId(userId);
-  }
+    Future<String> update = userSummaryService.saveEventsAndUpdateUserSummary(userId,
+      List.of(feeFineBalanceChangedEvent));
+    waitFor(update);
 
-  private static void setInternalState(Object target, String field, Object value) {
-    Class<?> c = target.getClass();
-    try {
-      Field f = c.getDeclaredField(field);
-      f.setAccessible(true);
-      f.set(target, value);
-    } catch (Exception e) {
-      throw new RuntimeException(
-        "Unable to set internal state on a private field. [...]", e);
-    }
+    context.assertTrue(update.failed());
+    verify(userSummaryRepository, times(11)).upsert(eq(conn), any(UserSummary.class));
   }
-
 }